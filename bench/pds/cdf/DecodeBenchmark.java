@@ -0,0 +1,78 @@
+package pds.cdf;
+
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks for decoding attribute and variable values for each data type.
+ *
+ * Run with "-prof gc" to report allocation rates with the throughput.
+ *
+ * @author tking
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DecodeBenchmark {
+	@Param({"1", "2", "4", "8", "11", "12", "14", "21", "22", "31", "32", "33", "41", "44", "45", "51"})
+	int dataType;
+
+	@Param({"1024"})
+	int numElems;
+
+	byte[] mBuffer = null;
+	double[] mValues = null;
+
+	/**
+	 * Fill a buffer with random values of the data type.
+	 */
+	@Setup
+	public void setup() {
+		int size = Constant.getDataTypeSize(dataType);
+		if(size < 1) size = 1;
+		mBuffer = new byte[numElems * size];
+		new Random(1).nextBytes(mBuffer);
+		if(dataType == Constant.CDF_CHAR) {	// Printable text
+			for(int i = 0; i < mBuffer.length; i++) mBuffer[i] = (byte) ('A' + (mBuffer[i] & 0x0F));
+		}
+		mValues = new double[numElems];
+	}
+
+	/**
+	 * Decode the values into strings.
+	 *
+	 * @return the list of values.
+	 */
+	@Benchmark
+	public ArrayList<String> valueToArrayList() {
+		return Constant.valueToArrayList(mBuffer, dataType, numElems);
+	}
+
+	/**
+	 * Decode the values into numbers.
+	 *
+	 * @return the array of values.
+	 */
+	@Benchmark
+	public double[] valueToDoubleArray() {
+		Constant.valueToDoubleArray(mBuffer, dataType, numElems, mValues, 0);
+		return mValues;
+	}
+}
@@ -0,0 +1,124 @@
+package pds.cdf;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Benchmarks for parsing a CDF file and looking up variables.
+ *
+ * The files to use are set with the "file" parameter, for example "-p file=a.cdf,b.cdf".
+ * Run with "-prof gc" to report allocation rates with the throughput.
+ *
+ * @author tking
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParseBenchmark {
+	@Param({"samples/example1.cdf"})
+	String file;
+
+	CDF mCDF = null;
+	ArrayList<String> mNames = null;
+
+	/**
+	 * Parse the file once for the lookup benchmarks.
+	 *
+	 * @throws IOException if the file can not be read.
+	 */
+	@Setup(Level.Trial)
+	public void setup() throws IOException {
+		mCDF = new CDF(file);
+		mNames = mCDF.getVariableNames();
+	}
+
+	/**
+	 * Parse every record in the file with a stream.
+	 *
+	 * @return the parsed {@link CDF}.
+	 *
+	 * @throws IOException if the file can not be read.
+	 */
+	@Benchmark
+	public CDF parseStream() throws IOException {
+		return new CDF(file);
+	}
+
+	/**
+	 * Parse the descriptor records of a mapped file.
+	 *
+	 * @return the parsed {@link CDF}.
+	 *
+	 * @throws IOException if the file can not be read.
+	 */
+	@Benchmark
+	public CDF parseMapped() throws IOException {
+		CDF cdf = new CDF();
+		cdf.setMetadataOnly(true);
+		cdf.parse(new MappedFile(file));
+		return cdf;
+	}
+
+	/**
+	 * Build the list of variable names.
+	 *
+	 * @return the list of names.
+	 */
+	@Benchmark
+	public ArrayList<String> getVariableNames() {
+		return mCDF.getVariableNames();
+	}
+
+	/**
+	 * Look up each variable by name.
+	 *
+	 * @param bh the sink for results.
+	 */
+	@Benchmark
+	public void getVariable(Blackhole bh) {
+		for(String name : mNames) bh.consume(mCDF.getVariable(name));
+	}
+
+	/**
+	 * Build the list of variables which contain data.
+	 *
+	 * @return the list of variables.
+	 */
+	@Benchmark
+	public ArrayList<Variable> getDataVariables() {
+		return mCDF.getDataVariables();
+	}
+
+	/**
+	 * Check the file for compliance with archive requirements.
+	 *
+	 * @return the list of messages.
+	 *
+	 * @throws Exception if the file can not be checked.
+	 */
+	@Benchmark
+	public ArrayList<CheckMessage> checkCDF() throws Exception {
+		Check check = new Check();
+		check.checkCDF(file);
+		return check.mMessages;
+	}
+}
@@ -88,4 +88,18 @@ public class AEDRecord extends Record {
 	public String valueToString() {
 		return Constant.valueToStringList(mValue, mDataType, mNumElems);
 	}
+	
+	/**
+	 * Retrieve a list of values in a space delimited string.
+	 *  
+	 * @param decoder the {@link Decoder} for the encoding of the CDF.
+	 * 
+	 * @return the list of values in a space delimited string.
+	 */
+	public String valueToString(Decoder decoder) {
+		StringBuilder buffer = new StringBuilder();
+		for(String v : decoder.toStringList(mValue, mDataType, mNumElems)) buffer.append(" ").append(v);
+		
+		return buffer.toString();
+	}
 }
@@ -0,0 +1,271 @@
+package pds.cdf;
+
+import java.io.IOException;
+
+/**
+ * Decoder for adaptive Huffman (AHUFF) encoding.
+ *
+ * The tree starts with only the END_OF_STREAM and ESCAPE symbols. A byte value which is not yet
+ * in the tree is sent as the ESCAPE code followed by 8 bits, then added to the tree. After each
+ * symbol the weights are updated and nodes are swapped to keep the tree ordered by weight. When
+ * the weight of the root reaches MAX_WEIGHT all weights are halved and the tree is rebuilt.
+ * Bits are read most significant bit first. This is the scheme from "The Data Compression Book"
+ * by M. Nelson which is used by the CDF library.
+ *
+ * The tree is held in parallel arrays so updating the model does not create any objects.
+ *
+ * @author tking
+ *
+ */
+public class AdaptiveHuffmanDecompressor extends Decompressor {
+	/** Symbol marking the end of the data. */	static final int END_OF_STREAM = 256;
+	/** Symbol preceding a byte value not yet in the tree. */	static final int ESCAPE = 257;
+	/** Number of symbols. */	static final int SYMBOL_COUNT = 258;
+	/** Number of nodes in the tree. */	static final int NODE_TABLE_COUNT = (SYMBOL_COUNT * 2) - 1;
+	/** Index of the root node. */	static final int ROOT_NODE = 0;
+	/** Weight of the root which causes the tree to be rebuilt. */	static final int MAX_WEIGHT = 0x8000;
+
+	int[] mLeaf = new int[SYMBOL_COUNT];	// Node for each symbol
+	int mNextFreeNode = 0;
+	int[] mWeight = new int[NODE_TABLE_COUNT];
+	int[] mParent = new int[NODE_TABLE_COUNT];
+	boolean[] mChildIsLeaf = new boolean[NODE_TABLE_COUNT];
+	int[] mChild = new int[NODE_TABLE_COUNT];	// Symbol if a leaf, otherwise the first of two child nodes
+
+	int mRack = 0;	// Current byte of bits
+	int mBits = 0;	// Bits remaining in the rack
+
+	/**
+	 * Create a decoder for adaptive Huffman encoded data.
+	 */
+	public AdaptiveHuffmanDecompressor() {
+	}
+
+	/**
+	 * Reset the state of the decoder for a new block of compressed data.
+	 */
+	void start() {
+		mRack = 0;
+		mBits = 0;
+
+		mChild[ROOT_NODE] = ROOT_NODE + 1;
+		mChildIsLeaf[ROOT_NODE] = false;
+		mWeight[ROOT_NODE] = 2;
+		mParent[ROOT_NODE] = -1;
+
+		mChild[ROOT_NODE + 1] = END_OF_STREAM;
+		mChildIsLeaf[ROOT_NODE + 1] = true;
+		mWeight[ROOT_NODE + 1] = 1;
+		mParent[ROOT_NODE + 1] = ROOT_NODE;
+		mLeaf[END_OF_STREAM] = ROOT_NODE + 1;
+
+		mChild[ROOT_NODE + 2] = ESCAPE;
+		mChildIsLeaf[ROOT_NODE + 2] = true;
+		mWeight[ROOT_NODE + 2] = 1;
+		mParent[ROOT_NODE + 2] = ROOT_NODE;
+		mLeaf[ESCAPE] = ROOT_NODE + 2;
+
+		mNextFreeNode = ROOT_NODE + 3;
+
+		for(int i = 0; i < END_OF_STREAM; i++) mLeaf[i] = -1;
+	}
+
+	/**
+	 * Decode uncompressed bytes into an array.
+	 *
+	 * @param out the array to place uncompressed bytes in.
+	 * @param off the index in out for the first byte.
+	 * @param len the maximum number of bytes to decode.
+	 *
+	 * @return the number of bytes placed in the array or -1 at the end of the uncompressed data.
+	 *
+	 * @throws IOException if the compressed data is not valid or can not be read.
+	 */
+	public int read(byte[] out, int off, int len) throws IOException {
+		if(len == 0) return 0;
+		if(mEnd) return -1;
+
+		int n = off;
+		int end = off + len;
+		while(n < end) {
+			int c = decodeSymbol();
+			if(c == END_OF_STREAM) { mEnd = true; break; }
+			out[n++] = (byte) c;
+			updateModel(c);
+		}
+
+		return n == off ? -1 : n - off;
+	}
+
+	/**
+	 * Read the next bit of compressed data.
+	 *
+	 * @return the value of the bit.
+	 *
+	 * @throws IOException if there is no more compressed data.
+	 */
+	private int inputBit() throws IOException {
+		if(mBits == 0) { mRack = next(); mBits = 8; }
+		mBits--;
+		return (mRack >> mBits) & 1;
+	}
+
+	/**
+	 * Walk the tree from the root to a leaf to decode a symbol.
+	 * A symbol following ESCAPE is added to the tree.
+	 *
+	 * @return the decoded symbol.
+	 *
+	 * @throws IOException if there is no more compressed data.
+	 */
+	private int decodeSymbol() throws IOException {
+		int node = ROOT_NODE;
+		while( ! mChildIsLeaf[node]) {
+			node = mChild[node] + inputBit();
+		}
+		int c = mChild[node];
+		if(c == ESCAPE) {
+			c = 0;
+			for(int i = 0; i < 8; i++) c = (c << 1) | inputBit();
+			addNewNode(c);
+		}
+
+		return c;
+	}
+
+	/**
+	 * Increment the weight of a symbol and its parents, swapping nodes to keep the tree ordered.
+	 *
+	 * @param c the symbol.
+	 */
+	private void updateModel(int c) {
+		if(mWeight[ROOT_NODE] == MAX_WEIGHT) rebuildTree();
+
+		int current = mLeaf[c];
+		while(current != -1) {
+			mWeight[current]++;
+			int node;
+			for(node = current; node > ROOT_NODE; node--) {
+				if(mWeight[node - 1] >= mWeight[current]) break;
+			}
+			if(current != node) {
+				swapNodes(current, node);
+				current = node;
+			}
+			current = mParent[current];
+		}
+	}
+
+	/**
+	 * Halve all weights and rebuild the tree.
+	 */
+	private void rebuildTree() {
+		// Collect the leaves at the end of the table with halved weights
+		int j = mNextFreeNode - 1;
+		for(int i = j; i >= ROOT_NODE; i--) {
+			if(mChildIsLeaf[i]) {
+				copyNode(i, j);
+				mWeight[j] = (mWeight[j] + 1) / 2;
+				j--;
+			}
+		}
+
+		// Add internal nodes, keeping the table ordered by weight
+		for(int i = mNextFreeNode - 2; j >= ROOT_NODE; i -= 2, j--) {
+			int k = i + 1;
+			mWeight[j] = mWeight[i] + mWeight[k];
+			int weight = mWeight[j];
+			mChildIsLeaf[j] = false;
+			for(k = j + 1; k < mNextFreeNode && weight < mWeight[k]; k++) ;
+			k--;
+			int count = k - j;
+			System.arraycopy(mWeight, j + 1, mWeight, j, count);
+			System.arraycopy(mParent, j + 1, mParent, j, count);
+			System.arraycopy(mChildIsLeaf, j + 1, mChildIsLeaf, j, count);
+			System.arraycopy(mChild, j + 1, mChild, j, count);
+			mWeight[k] = weight;
+			mChild[k] = i;
+			mChildIsLeaf[k] = false;
+		}
+
+		// Restore links
+		for(int i = mNextFreeNode - 1; i >= ROOT_NODE; i--) {
+			int k = mChild[i];
+			if(mChildIsLeaf[i]) {
+				mLeaf[k] = i;
+			} else {
+				mParent[k] = i;
+				mParent[k + 1] = i;
+			}
+		}
+	}
+
+	/**
+	 * Copy the content of a node.
+	 *
+	 * @param from the index of the node to copy.
+	 * @param to the index of the node to replace.
+	 */
+	private void copyNode(int from, int to) {
+		mWeight[to] = mWeight[from];
+		mParent[to] = mParent[from];
+		mChildIsLeaf[to] = mChildIsLeaf[from];
+		mChild[to] = mChild[from];
+	}
+
+	/**
+	 * Swap two nodes, including their children. The parent of each position is not changed.
+	 *
+	 * @param i the index of the first node.
+	 * @param j the index of the second node.
+	 */
+	private void swapNodes(int i, int j) {
+		if(mChildIsLeaf[i]) {
+			mLeaf[mChild[i]] = j;
+		} else {
+			mParent[mChild[i]] = j;
+			mParent[mChild[i] + 1] = j;
+		}
+		if(mChildIsLeaf[j]) {
+			mLeaf[mChild[j]] = i;
+		} else {
+			mParent[mChild[j]] = i;
+			mParent[mChild[j] + 1] = i;
+		}
+
+		int weight = mWeight[i];
+		boolean leaf = mChildIsLeaf[i];
+		int child = mChild[i];
+		mWeight[i] = mWeight[j];
+		mChildIsLeaf[i] = mChildIsLeaf[j];
+		mChild[i] = mChild[j];
+		mWeight[j] = weight;
+		mChildIsLeaf[j] = leaf;
+		mChild[j] = child;
+	}
+
+	/**
+	 * Add a symbol to the tree. The lightest node is split into the old leaf and a new leaf with zero weight.
+	 *
+	 * @param c the symbol to add.
+	 */
+	private void addNewNode(int c) {
+		int lightest = mNextFreeNode - 1;
+		int newNode = mNextFreeNode;
+		int zeroWeight = mNextFreeNode + 1;
+		mNextFreeNode += 2;
+
+		copyNode(lightest, newNode);
+		mParent[newNode] = lightest;
+		mLeaf[mChild[newNode]] = newNode;
+
+		mChild[lightest] = newNode;
+		mChildIsLeaf[lightest] = false;
+
+		mChild[zeroWeight] = c;
+		mChildIsLeaf[zeroWeight] = true;
+		mWeight[zeroWeight] = 0;
+		mParent[zeroWeight] = lightest;
+		mLeaf[c] = zeroWeight;
+	}
+}
@@ -15,6 +15,12 @@ public class Attribute {
 	long	mStartByte = 0L;
 	ArrayList<String> mValues = new ArrayList<String>();
 	
+	// Raw entries. Values are decoded when first requested and the entries are kept for numeric access.
+	ArrayList<AEDRecord> mEntries = new ArrayList<AEDRecord>();
+	int mDecoded = 0;	// Number of entries which have been added to the list of values
+	double[] mDoubleValues = null;
+	Decoder mDecoder = Decoder.BIG_ENDIAN;	// Decoder for the encoding of the CDF
+	
 	/**
 	 * A container of information about an attribute. 
 	 */
@@ -32,7 +38,7 @@ public class Attribute {
 		System.out.println("DataType: " + Constant.getDataTypeName(mDataType));
 		System.out.println("StartByte: " + mStartByte);
 		System.out.println("values: ");
-		for(String v : mValues) {
+		for(String v : getValues()) {
 			System.out.println("   " + v);
 		}
 	}
@@ -76,12 +82,19 @@ public class Attribute {
 	 */
 	public long getStartByte() { return mStartByte; }
 	
+	/**
+	 * Set the decoder used for the values of entries.
+	 * 
+	 * @param decoder the {@link Decoder} for the encoding of the CDF.
+	 */
+	public void setDecoder(Decoder decoder) { mDecoder = decoder; }
+	
 	/**
 	 * Set the array of values associated with the attribute.
 	 * 
 	 * @param values a list of values to associate with the attribute.
 	 */
-	public void setValues(ArrayList<String> values) { mValues.clear(); mValues.addAll(values); } 
+	public synchronized void setValues(ArrayList<String> values) { mEntries.clear(); mDecoded = 0; mDoubleValues = null; mValues.clear(); mValues.addAll(values); } 
 	/**
 	 * Add values to the array of values already associated with the attribute.
 	 * 
@@ -89,13 +102,56 @@ public class Attribute {
 	 * 
 	 * @return the list of all values associated with the attribute.
 	 */
-	public ArrayList<String> addValues(ArrayList<String> values) { mValues.addAll(values); return mValues; } 
+	public synchronized ArrayList<String> addValues(ArrayList<String> values) { decode(); mDoubleValues = null; mValues.addAll(values); return mValues; } 
+	
+	/**
+	 * Add the value of an attribute entry without decoding it.
+	 * The raw bytes of the entry are kept and decoded only when values are requested.
+	 * 
+	 * @param aedr the {@link AEDRecord} containing the value.
+	 */
+	public synchronized void addEntry(AEDRecord aedr) { mEntries.add(aedr); mDoubleValues = null; }
+	
+	/**
+	 * Decode any entries which have not been decoded and add them to the list of values.
+	 * The entries are kept so numeric values can still be decoded from the raw bytes.
+	 */
+	private synchronized void decode() {
+		for(; mDecoded < mEntries.size(); mDecoded++) {
+			AEDRecord aedr = mEntries.get(mDecoded);
+			mValues.addAll(mDecoder.toStringList(aedr.mValue, aedr.mDataType, aedr.mNumElems));
+		}
+	}
+	
+	/**
+	 * Get the values associated with the attribute as numbers.
+	 * Values are decoded directly from the raw bytes of each entry, without creating strings,
+	 * and the result is cached.
+	 * 
+	 * @return an array of values or an empty array if the attribute is not numeric or has no raw entries.
+	 */
+	public synchronized double[] getDoubleValues() {
+		if(mDoubleValues != null) return mDoubleValues;
+		
+		int count = 0;
+		for(AEDRecord aedr : mEntries) {
+			if(aedr.mDataType != Constant.CDF_CHAR) count += aedr.mNumElems;
+		}
+		mDoubleValues = new double[count];
+		int n = 0;
+		for(AEDRecord aedr : mEntries) {
+			if(aedr.mDataType == Constant.CDF_CHAR) continue;
+			n += mDecoder.toDoubleArray(aedr.mValue, aedr.mDataType, aedr.mNumElems, mDoubleValues, n);
+		}
+		
+		return mDoubleValues;
+	}
 	/**
 	 * Get the current list of values associated with the attribute.
 	 * 
 	 * @return the list of values associated with the attribute.
 	 */
-	public ArrayList<String> getValues() { return mValues; }
+	public synchronized ArrayList<String> getValues() { decode(); return mValues; }
 	/**
 	 * Retrieve all values as a space separated list.  
 	 * 
@@ -110,6 +166,6 @@ public class Attribute {
 	 * 
 	 * @return a formatted string containing all values.
 	 */
-	public String getValueString(String delim) { String buffer = ""; String d = ""; for(String v : mValues) { buffer += d + v; d = delim;} return buffer; 	}
+	public String getValueString(String delim) { StringBuilder buffer = new StringBuilder(); String d = ""; for(String v : getValues()) { buffer.append(d).append(v); d = delim;} return buffer.toString(); 	}
 
 }
@@ -0,0 +1,345 @@
+package pds.cdf;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Process many CDF files in one run of a tool.
+ *
+ * Arguments can be files, directories (searched recursively for files ending in ".cdf"),
+ * glob patterns (like "data/2014/*.cdf") or a file containing a list of pathnames.
+ * Files are processed concurrently on a fork-join pool and results are reported
+ * in the order of the expanded file list, so the output does not depend on the number of threads.
+ * A timeout can limit the time spent on each file; a file which takes longer is reported
+ * with a {@link TimeoutException} and the thread processing it is interrupted.
+ *
+ * @author tking
+ *
+ * @param <T> the type of the result produced for each file.
+ */
+public class Batch<T> {
+
+	/**
+	 * The work performed for each file.
+	 *
+	 * @param <T> the type of the result produced for each file.
+	 */
+	public interface Job<T> {
+		/**
+		 * Process a file. Called concurrently from worker threads.
+		 *
+		 * @param pathname the file system path and file name to a CDF file.
+		 *
+		 * @return the result for the file.
+		 *
+		 * @throws Exception if the file can not be processed.
+		 */
+		T process(String pathname) throws Exception;
+
+		/**
+		 * Report the result for a file. Called in file order from a single thread.
+		 *
+		 * @param pathname the file system path and file name to a CDF file.
+		 * @param result the result returned by process() or null if an exception occurred.
+		 * @param error the exception thrown by process() or null if none occurred.
+		 */
+		void report(String pathname, T result, Throwable error);
+	}
+
+	int mThreads = Runtime.getRuntime().availableProcessors();
+	long mTimeout = 0;	// Milliseconds for each file, 0 for no limit
+
+	/**
+	 * Create an instance which uses one thread per processor.
+	 */
+	public Batch() {
+	}
+
+	/**
+	 * Create an instance with a given number of threads.
+	 *
+	 * @param threads the number of worker threads. Values less than 1 use one thread per processor.
+	 */
+	public Batch(int threads) {
+		setThreads(threads);
+	}
+
+	/**
+	 * Expand a list of arguments into a list of files.
+	 *
+	 * Directories are searched recursively for files ending in ".cdf". Arguments which contain
+	 * the characters "*?[{" are treated as glob patterns. Each expansion is sorted by name.
+	 *
+	 * @param args the list of files, directories or patterns.
+	 *
+	 * @return the list of pathnames.
+	 */
+	public static ArrayList<String> expand(List<String> args) {
+		ArrayList<String> files = new ArrayList<String>();
+
+		for(String arg : args) {
+			File file = new File(arg);
+			if(file.isDirectory()) {
+				ArrayList<String> found = new ArrayList<String>();
+				find(file, null, found);
+				files.addAll(found);
+			} else if(isPattern(arg)) {
+				// Search from the part of the path before the first pattern character
+				String base = arg.substring(0, firstPatternChar(arg));
+				int n = base.lastIndexOf(File.separatorChar);
+				if(n == -1 && File.separatorChar != '/') n = base.lastIndexOf('/');
+				File dir = new File(n == -1 ? "." : base.substring(0, n + 1));
+				String glob = (n == -1) ? new File(dir, arg).getPath() : arg;
+				PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + glob);
+				ArrayList<String> found = new ArrayList<String>();
+				find(dir, matcher, found);
+				files.addAll(found);
+			} else {
+				files.add(arg);
+			}
+		}
+
+		return files;
+	}
+
+	/**
+	 * Read a list of pathnames from a file. Blank lines and lines starting with "#" are ignored.
+	 *
+	 * @param pathname the file containing one pathname per line.
+	 *
+	 * @return the list of pathnames.
+	 *
+	 * @throws IOException if the file can not be read.
+	 */
+	public static ArrayList<String> readList(String pathname) throws IOException {
+		ArrayList<String> list = new ArrayList<String>();
+		BufferedReader reader = new BufferedReader(new FileReader(pathname));
+		try {
+			String line;
+			while((line = reader.readLine()) != null) {
+				line = line.trim();
+				if(line.isEmpty() || line.startsWith("#")) continue;
+				list.add(line);
+			}
+		} finally {
+			reader.close();
+		}
+
+		return list;
+	}
+
+	/**
+	 * Search a directory tree for files.
+	 *
+	 * @param dir the directory to search.
+	 * @param matcher the pattern a file path must match or null to match files ending in ".cdf".
+	 * @param found the list to add matching pathnames to.
+	 */
+	private static void find(File dir, PathMatcher matcher, ArrayList<String> found) {
+		File[] list = dir.listFiles();
+		if(list == null) return;
+		Arrays.sort(list);
+
+		for(File file : list) {
+			if(file.isDirectory()) {
+				find(file, matcher, found);
+			} else if(matcher == null) {
+				if(file.getName().toLowerCase().endsWith(".cdf")) found.add(file.getPath());
+			} else {
+				if(matcher.matches(Paths.get(file.getPath()))) found.add(file.getPath());
+			}
+		}
+	}
+
+	/**
+	 * Determine if an argument is a glob pattern.
+	 *
+	 * @param arg the argument.
+	 *
+	 * @return true if the argument contains pattern characters, otherwise false.
+	 */
+	private static boolean isPattern(String arg) { return firstPatternChar(arg) < arg.length(); }
+
+	/**
+	 * Find the first glob pattern character in an argument.
+	 *
+	 * @param arg the argument.
+	 *
+	 * @return the index of the first pattern character or the length of the argument if none.
+	 */
+	private static int firstPatternChar(String arg) {
+		for(int i = 0; i < arg.length(); i++) {
+			if("*?[{".indexOf(arg.charAt(i)) != -1) return i;
+		}
+		return arg.length();
+	}
+
+	/**
+	 * Process each file and report results in file order.
+	 *
+	 * At most a few files per thread are in progress or waiting to be reported at any time,
+	 * so memory use does not grow with the number of files.
+	 *
+	 * @param files the list of pathnames.
+	 * @param job the work to perform for each file.
+	 */
+	public void run(List<String> files, final Job<T> job) {
+		if(mTimeout > 0) {
+			runTimed(files, job);
+			return;
+		}
+		if(mThreads == 1) {	// No need for a pool
+			for(String pathname : files) {
+				T result = null;
+				Throwable error = null;
+				try {
+					result = job.process(pathname);
+				} catch(Throwable e) {
+					error = e;
+				}
+				job.report(pathname, result, error);
+			}
+			return;
+		}
+
+		ForkJoinPool pool = new ForkJoinPool(mThreads);
+		try {
+			int window = mThreads * 4;
+			ArrayDeque<Future<T>> pending = new ArrayDeque<Future<T>>();
+			ArrayDeque<String> names = new ArrayDeque<String>();
+			for(final String pathname : files) {
+				pending.add(pool.submit(() -> job.process(pathname)));
+				names.add(pathname);
+				if(pending.size() >= window) report(pending, names, job);
+			}
+			while( ! pending.isEmpty()) report(pending, names, job);
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	/**
+	 * Process each file with a time limit and report results in file order.
+	 *
+	 * The timer starts when a worker thread starts on a file. When the limit is reached the task
+	 * is cancelled, which interrupts the worker. A job must stop when interrupted (interruptible I/O
+	 * on a file channel does so) for the worker to be freed for the next file.
+	 *
+	 * @param files the list of pathnames.
+	 * @param job the work to perform for each file.
+	 */
+	private void runTimed(List<String> files, final Job<T> job) {
+		ExecutorService pool = Executors.newFixedThreadPool(mThreads, r -> {
+			Thread thread = new Thread(r, "Batch worker");
+			thread.setDaemon(true);	// A job which does not stop when interrupted does not keep the JVM running
+			return thread;
+		});
+		final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread thread = new Thread(r, "Batch timer");
+			thread.setDaemon(true);
+			return thread;
+		});
+		try {
+			int window = mThreads * 4;
+			ArrayDeque<Future<T>> pending = new ArrayDeque<Future<T>>();
+			ArrayDeque<String> names = new ArrayDeque<String>();
+			for(final String pathname : files) {
+				FutureTask<T> task = new FutureTask<T>(() -> job.process(pathname)) {
+					public void run() {
+						ScheduledFuture<?> alarm = timer.schedule(() -> cancel(true), mTimeout, TimeUnit.MILLISECONDS);
+						try {
+							super.run();
+						} finally {
+							alarm.cancel(false);
+						}
+					}
+				};
+				pool.execute(task);
+				pending.add(task);
+				names.add(pathname);
+				if(pending.size() >= window) report(pending, names, job);
+			}
+			while( ! pending.isEmpty()) report(pending, names, job);
+		} finally {
+			pool.shutdownNow();
+			timer.shutdownNow();
+		}
+	}
+
+	/**
+	 * Wait for the oldest file in progress and report the result.
+	 *
+	 * @param pending the results in progress.
+	 * @param names the pathname for each result in progress.
+	 * @param job the work performed for each file.
+	 */
+	private void report(ArrayDeque<Future<T>> pending, ArrayDeque<String> names, Job<T> job) {
+		Future<T> future = pending.poll();
+		String pathname = names.poll();
+		T result = null;
+		Throwable error = null;
+		try {
+			result = future.get();
+		} catch(ExecutionException e) {
+			error = e.getCause();
+		} catch(CancellationException e) {	// Only cancelled when the time limit is reached
+			error = new TimeoutException("Processing took longer than " + (mTimeout / 1000.0) + " seconds.");
+		} catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+			error = e;
+		}
+		job.report(pathname, result, error);
+	}
+
+	/**
+	 * Set the number of worker threads.
+	 *
+	 * @param threads the number of worker threads. Values less than 1 use one thread per processor.
+	 */
+	public void setThreads(int threads) {
+		mThreads = threads < 1 ? Runtime.getRuntime().availableProcessors() : threads;
+	}
+
+	/**
+	 * Retrieve the number of worker threads.
+	 *
+	 * @return the number of worker threads.
+	 */
+	public int getThreads() { return mThreads; }
+
+	/**
+	 * Set the time limit for processing each file.
+	 *
+	 * @param timeout the limit in milliseconds. Values less than 1 mean no limit.
+	 */
+	public void setTimeout(long timeout) {
+		mTimeout = timeout < 1 ? 0 : timeout;
+	}
+
+	/**
+	 * Retrieve the time limit for processing each file.
+	 *
+	 * @return the limit in milliseconds or 0 if there is no limit.
+	 */
+	public long getTimeout() { return mTimeout; }
+}
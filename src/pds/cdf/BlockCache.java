@@ -0,0 +1,203 @@
+package pds.cdf;
+
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A bounded cache of decompressed CVVR data.
+ *
+ * Blocks are held in the buffers they were decompressed into, without copying. Readers decompress
+ * blocks for the cache into direct buffers, so cached data is held outside the Java heap.
+ * Blocks are keyed by the file and the offset of the CVVR in the file.
+ * When the total size of the cached blocks exceeds the limit the least recently used
+ * blocks are removed. A buffer which has been returned remains valid after it is removed from the cache.
+ *
+ * All methods are thread safe. A single cache is shared by all readers unless another is set.
+ *
+ * @author tking
+ *
+ */
+public class BlockCache {
+	/** Default maximum number of bytes held in the cache. */	static final long DEFAULT_MAX_SIZE = 64L * 1024L * 1024L;
+
+	static BlockCache mShared = new BlockCache(DEFAULT_MAX_SIZE);
+
+	LinkedHashMap<Key, ByteBuffer> mBlocks = new LinkedHashMap<Key, ByteBuffer>(64, 0.75f, true);	// In access order
+	long mMaxSize = DEFAULT_MAX_SIZE;
+	long mSize = 0L;
+
+	long mHits = 0L;
+	long mMisses = 0L;
+	long mEvictions = 0L;
+
+	/**
+	 * Create a cache with a limit on the number of bytes held.
+	 *
+	 * @param maxSize the maximum number of bytes of block data to hold.
+	 */
+	public BlockCache(long maxSize) {
+		mMaxSize = maxSize;
+	}
+
+	/**
+	 * Retrieve the cache shared by all readers.
+	 *
+	 * @return the shared {@link BlockCache}.
+	 */
+	static public BlockCache getShared() { return mShared; }
+
+	/**
+	 * Retrieve a block from the cache.
+	 *
+	 * @param file the file containing the block. Typically the pathname, size and modification time of the file.
+	 * @param offset the file offset of the CVVR.
+	 *
+	 * @return a read-only {@link ByteBuffer} of the decompressed data positioned at zero or null if the block is not in the cache.
+	 */
+	public synchronized ByteBuffer get(Object file, long offset) {
+		ByteBuffer block = mBlocks.get(new Key(file, offset));
+		if(block == null) {
+			mMisses++;
+			return null;
+		}
+		mHits++;
+
+		return block.duplicate();
+	}
+
+	/**
+	 * Add a block to the cache.
+	 * The data is kept without copying, so it must not be changed after it is added. A block larger than the cache is not kept.
+	 *
+	 * @param file the file containing the block. Typically the pathname, size and modification time of the file.
+	 * @param offset the file offset of the CVVR.
+	 * @param data the decompressed data from the position to the limit.
+	 *
+	 * @return a read-only {@link ByteBuffer} of the cached data positioned at zero.
+	 */
+	public ByteBuffer put(Object file, long offset, ByteBuffer data) {
+		ByteBuffer block = data.slice().asReadOnlyBuffer();
+		if(block.capacity() > mMaxSize) return block;
+
+		synchronized(this) {
+			ByteBuffer old = mBlocks.put(new Key(file, offset), block);
+			if(old != null) mSize -= old.capacity();
+			mSize += block.capacity();
+			trim();
+		}
+
+		return block.duplicate();
+	}
+
+	/**
+	 * Remove least recently used blocks until the cache is within its size limit.
+	 */
+	private void trim() {
+		Iterator<Map.Entry<Key, ByteBuffer>> it = mBlocks.entrySet().iterator();
+		while(mSize > mMaxSize && it.hasNext()) {
+			mSize -= it.next().getValue().capacity();
+			it.remove();
+			mEvictions++;
+		}
+	}
+
+	/**
+	 * Remove all blocks from the cache. The counters are not changed.
+	 */
+	public synchronized void clear() {
+		mBlocks.clear();
+		mSize = 0L;
+	}
+
+	/**
+	 * Set the maximum number of bytes held in the cache.
+	 * Blocks are removed if the cache is larger than the new limit.
+	 *
+	 * @param maxSize the maximum number of bytes of block data to hold.
+	 */
+	public synchronized void setMaxSize(long maxSize) {
+		mMaxSize = maxSize;
+		trim();
+	}
+
+	/**
+	 * Retrieve the maximum number of bytes held in the cache.
+	 *
+	 * @return the maximum number of bytes.
+	 */
+	public synchronized long getMaxSize() { return mMaxSize; }
+
+	/**
+	 * Retrieve the number of bytes currently held in the cache.
+	 *
+	 * @return the number of bytes.
+	 */
+	public synchronized long getSize() { return mSize; }
+
+	/**
+	 * Retrieve the number of blocks currently held in the cache.
+	 *
+	 * @return the number of blocks.
+	 */
+	public synchronized int getBlockCount() { return mBlocks.size(); }
+
+	/**
+	 * Retrieve the number of requests which found a block in the cache.
+	 *
+	 * @return the number of hits.
+	 */
+	public synchronized long getHits() { return mHits; }
+
+	/**
+	 * Retrieve the number of requests which did not find a block in the cache.
+	 *
+	 * @return the number of misses.
+	 */
+	public synchronized long getMisses() { return mMisses; }
+
+	/**
+	 * Retrieve the number of blocks removed to keep the cache within its size limit.
+	 *
+	 * @return the number of evictions.
+	 */
+	public synchronized long getEvictions() { return mEvictions; }
+
+	/**
+	 * Reset the hit, miss and eviction counters.
+	 */
+	public synchronized void resetCounters() {
+		mHits = 0L;
+		mMisses = 0L;
+		mEvictions = 0L;
+	}
+
+	/**
+	 * Describe the state of the cache.
+	 *
+	 * @return a summary of the size and counters.
+	 */
+	public synchronized String toString() {
+		return "Blocks: " + mBlocks.size() + "; Size: " + mSize + " of " + mMaxSize
+				+ "; Hits: " + mHits + "; Misses: " + mMisses + "; Evictions: " + mEvictions;
+	}
+
+	/**
+	 * The key of a block.
+	 */
+	static class Key {
+		Object mFile;
+		long mOffset;
+
+		Key(Object file, long offset) { mFile = file; mOffset = offset; }
+
+		public int hashCode() { return mFile.hashCode() * 31 + (int) (mOffset ^ (mOffset >>> 32)); }
+
+		public boolean equals(Object o) {
+			if( ! (o instanceof Key)) return false;
+			Key k = (Key) o;
+			return mOffset == k.mOffset && mFile.equals(k.mFile);
+		}
+	}
+}
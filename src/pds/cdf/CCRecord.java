@@ -0,0 +1,84 @@
+package pds.cdf;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+
+/**
+ * Compressed CDF Record (CCR)
+ * A Compressed CDF Record (CCR) holds the compressed contents of a CDF when the
+ * whole file is compressed. The contents are everything following the magic numbers.
+ * The compression type is given in the Compression Parameters Record (CPR) which follows the CCR.
+ * Defined in Section 2.13 of CDF specification.
+ *
+ * @author tking
+ *
+ */
+public class CCRecord extends Record {
+	long mCPROffset = 0L;	// The file offset of the CPR.
+	long mUSize = 0L;	// The size of the uncompressed CDF, not including the magic numbers.
+	int mRfuA = 0;	// Reserved for future use.
+
+	/** Size of the record header in bytes, including the base record fields. */	static final int HEADER_SIZE = 32;
+
+	/**
+	 * Create a CCRecord based on a base record.
+	 *
+	 * @param base the base record to derive a CCRecord.
+	 */
+	public CCRecord(Record base) {
+		mimic(base);
+	}
+
+	/**
+	 * Read the fixed fields of a CCRecord from an input stream.
+	 * The stream is left positioned at the start of the compressed data.
+	 *
+	 * @param offset the current byte offset into the stream
+	 * @param in the input stream to read from.
+	 *
+	 * @return the byte offset after reading the fixed fields.
+	 *
+	 * @throws IOException if any reading error occurs.
+	 */
+	public long read(long offset, DataInputStream in) throws IOException {
+		mCPROffset = in.readLong(); offset += 8;
+		mUSize = in.readLong(); offset += 8;
+		mRfuA = in.readInt(); offset += 4;
+
+		return offset;
+	}
+
+	/**
+	 * Retrieve the file offset of the compressed data.
+	 *
+	 * @return the file offset of the first byte of compressed data.
+	 */
+	public long getDataOffset() { return mOffset + HEADER_SIZE; }
+
+	/**
+	 * Retrieve the number of bytes of compressed data.
+	 *
+	 * @return the number of bytes of compressed data in the record.
+	 */
+	public long getDataSize() { return mSize - HEADER_SIZE; }
+
+	/**
+	 * Retrieve the size of the uncompressed CDF.
+	 *
+	 * @return the number of bytes in the uncompressed CDF, not including the magic numbers.
+	 */
+	public long getUncompressedSize() { return mUSize; }
+
+	/**
+	 * Display a description of the record.
+	 */
+	public void dump() {
+		System.out.println("=================================");
+		System.out.println("              CCR");
+		System.out.println("=================================");
+		System.out.println("CPRoffset: " + Constant.toHexString(mCPROffset));
+		System.out.println("uSize: " + mUSize);
+		System.out.println("rfuA: " + mRfuA);
+		System.out.println("");
+	}
+}
@@ -5,8 +5,16 @@ import java.io.EOFException;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.PushbackInputStream;
+import java.nio.channels.FileChannel;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 
 import org.apache.commons.cli.CommandLine;
 import org.apache.commons.cli.CommandLineParser;
@@ -35,27 +43,44 @@ public class CDF {
 	int mCompression = 0;
 	
 	boolean mVerbose = false;
+	boolean mMetadataOnly = false;	// Do not keep any information about VVR and CVVR records
 	
 	// Stored arguments
 	String mPathName = "-stream-";
 	
+	// Digests of the file content
+	String[] mDigestAlgorithms = null;	// Computed while parsing when set
+	HashMap<String, String> mDigests = new HashMap<String, String>();	// By algorithm
+	Future<FileDigest> mDigestTask = null;	// Digest being computed in parallel with parsing
+	
 	// Record list
 	ArrayList<Record> mRecordList = new ArrayList<Record>();
 	CDRecord mCDR = null;
 	GDRecord mGDR = null;
+	CCRecord mCCR = null;	// Whole-file compression
+	CPRecord mCPR = null;
 	ArrayList<ADRecord> mADRList = new ArrayList<ADRecord>();
 	ArrayList<VXRecord> mVXRList = new ArrayList<VXRecord>();
 	ArrayList<VVRecord> mVVRList = new ArrayList<VVRecord>();
 	ArrayList<VDRecord> mVDRList = new ArrayList<VDRecord>();
 	ArrayList<AEDRecord> mAEDRList = new ArrayList<AEDRecord>();
 	ArrayList<UIRecord> mUIRList = new ArrayList<UIRecord>();
+	OffsetIndex<Record> mIndex = new OffsetIndex<Record>();	// Typed records by file offset
+	OffsetIndex<RecordIndex> mRecordIndexes = new OffsetIndex<RecordIndex>();	// Data record index by VDR offset
+	HashMap<String, Integer> mTimeOrder = new HashMap<String, Integer>();	// Order of checked time variables (1: increasing, -1: decreasing, 0: none)
 
 	// Processed items
 	ArrayList<Attribute> mAttributes = new ArrayList<Attribute>();
 	ArrayList<Variable> mVariables = new ArrayList<Variable>();
+	OffsetIndex<Variable> mVariableIndex = new OffsetIndex<Variable>();	// Description of each variable by VDR offset
+	HashMap<String, VDRecord> mVDRByName = new HashMap<String, VDRecord>();	// First VDR with each name
 	
 	VDRecord mCurrentVDR = null;
 	
+	// Mapped file when parsed by following linked lists
+	MappedFile mMappedFile = null;
+	DataInputStream mRecordStream = null;
+	
 	long mOffset = 0L;
 	
 	ArrayList<String> mMessages = new ArrayList<String>();
@@ -73,6 +98,10 @@ public class CDF {
 		mAppOptions.addOption("v", "verbose", false, "Verbose. Show status at each step.");
 		mAppOptions.addOption("a", "attributes", false, "Attributes. Show attribute information.");
 		mAppOptions.addOption("r", "variables", false, "Variables. Show variable information.");
+		mAppOptions.addOption("s", "stream", false, "Stream. Read every record in the file in sequence instead of following the descriptor records.");
+		mAppOptions.addOption("l", "list", true, "List. Read the names of the files to process from a file, one per line.");
+		mAppOptions.addOption("t", "threads", true, "Threads. The number of files to parse at the same time. Default is one per processor.");
+		mAppOptions.addOption("d", "digest", true, "Digest. Compute digests of the file while parsing with the given algorithms, separated by commas. For example: MD5,SHA-256");
 	}
 
 	/**
@@ -82,13 +111,14 @@ public class CDF {
 	 */
 	public static void main(String[] args) 
 	{
-		CDF me = new CDF();
+		final CDF me = new CDF();
 
 		CommandLineParser parser = new PosixParser();
 		try {
 			boolean showAttributes = false;
 			boolean showVariables = false;
 			boolean verbose = false;
+			boolean stream = false;
 			
 			CommandLine line = parser.parse(me.mAppOptions, args);
 
@@ -96,6 +126,8 @@ public class CDF {
 			if (line.hasOption("v")) verbose = true;
 			if (line.hasOption("a")) showAttributes = true;
 			if (line.hasOption("r")) showVariables = true;
+			if (line.hasOption("s")) stream = true;
+			final String[] digests = line.hasOption("d") ? line.getOptionValue("d").split(",") : null;
 			
 			// Default is to show both attributes and variables
 			if( ! showAttributes && ! showVariables) {
@@ -104,27 +136,70 @@ public class CDF {
 			}
 			
 			// Process arguments looking for variable context
-			if (line.getArgs().length != 1) {
+			ArrayList<String> names = new ArrayList<String>(Arrays.asList(line.getArgs()));
+			if (line.hasOption("l")) names.addAll(Batch.readList(line.getOptionValue("l")));
+			if (names.isEmpty()) {
 				me.showHelp();
 				return;
 			}
 
-			for (String name : line.getArgs()) {
-				if (verbose) {
-					System.out.println("Processing: " + name);
-					File temp = new File(name);
-					System.out.println("File size: " + temp.length());
+			final ArrayList<String> files = Batch.expand(names);
+			final boolean fVerbose = verbose;
+			final boolean fStream = stream;
+			final boolean fAttributes = showAttributes;
+			final boolean fVariables = showVariables;
+			Batch<CDF> batch = new Batch<CDF>();
+			if (line.hasOption("t")) batch.setThreads(Integer.parseInt(line.getOptionValue("t")));
+			if (verbose) batch.setThreads(1);	// Keep status output in order
+			
+			// Files are parsed in parallel and listed in order
+			batch.run(files, new Batch.Job<CDF>() {
+				public CDF process(String name) throws Exception {
+					if (fVerbose) {
+						System.out.println("Processing: " + name);
+						File temp = new File(name);
+						System.out.println("File size: " + temp.length());
+					}
+					CDF cdf = new CDF();
+					cdf.setVerbose(fVerbose);
+					cdf.setMetadataOnly(true);	// Only descriptors and attributes are listed
+					if(digests != null) cdf.setDigestAlgorithms(digests);
+					if(fStream) {
+						DataInputStream in = new DataInputStream(new FileInputStream(name));
+						cdf.setPathName(name);
+						try {
+							cdf.parse(in);
+						} finally {
+							in.close();
+						}
+					} else {
+						cdf.parse(new MappedFile(name));
+					}
+					return cdf;
 				}
-				DataInputStream in = new DataInputStream(new FileInputStream(name));
-				CDF cdf = new CDF();
-				cdf.setVerbose(verbose);
-				cdf.parse(in);;
-				cdf.dump(showAttributes, showVariables);
-
-				for(String message : me.mMessages) {
-					System.out.println(message);
+				
+				public void report(String name, CDF cdf, Throwable error) {
+					if (files.size() > 1) System.out.println("File: " + name);
+					if (error != null) {
+						error.printStackTrace(System.out);
+						return;
+					}
+					cdf.dump(fAttributes, fVariables);
+					if(digests != null) {
+						for(String algorithm : digests) {
+							try {
+								System.out.println(algorithm + ": " + cdf.getDigest(algorithm));
+							} catch(IOException e) {
+								System.out.println(algorithm + ": " + e.getMessage());
+							}
+						}
+					}
+
+					for(String message : me.mMessages) {
+						System.out.println(message);
+					}
 				}
-			}
+			});
 		} catch (Exception e) {
 			e.printStackTrace(System.out);
 		}
@@ -140,7 +215,7 @@ public class CDF {
 		System.out.println(mOverview);
 		System.out.println("");
 		System.out.println("Usage: java " + getClass().getName()
-				+ " [options] file");
+				+ " [options] file|directory|pattern ...");
 		System.out.println("");
 		System.out.println("Options:");
 
@@ -187,6 +262,11 @@ public class CDF {
 	 * @throws IOException
 	 */
 	public void parse(DataInputStream in) throws IOException {
+		FileDigest digest = null;
+		if(mDigestAlgorithms != null) {	// Digest the bytes as they are parsed
+			digest = new FileDigest(mDigestAlgorithms);
+			in = new DataInputStream(digest.tee(in));
+		}
 		
 		// Magic numbers
 		mVersion = in.readInt(); mOffset += 4;		
@@ -194,6 +274,27 @@ public class CDF {
 
 		mCompression = in.readInt();  mOffset += 4;
 
+		parseRecords(in);
+		
+		if(digest != null) {	// Include anything after the last record
+			FileDigest.drain(in);
+			mDigests.putAll(digest.finish());
+		}
+	}
+	
+	/**
+	 * Parse the records of a CDF file in the order they occur in a stream.
+	 * 
+	 * If the CDF is compressed the records are read from a stream which decompresses the
+	 * content of the CCR as it is read. Record offsets are then offsets in the uncompressed file.
+	 * 
+	 * @param in pre-opened {@link DataInputStream} positioned after the magic numbers.
+	 * 
+	 * @throws IOException if the CDF is compressed and the content can not be decompressed.
+	 */
+	void parseRecords(DataInputStream in) throws IOException {
+		if(isCompressed()) in = openCompressed(in);
+		
 		long endOfCDF = -1;
 		
 		try {
@@ -216,46 +317,65 @@ public class CDF {
 				case Constant.RECORD_ADR: // ADR
 					ADRecord adr = new ADRecord(rec);
 					mADRList.add(adr);
+					mIndex.put(adr.mOffset, adr);
 					mOffset = adr.read(mOffset, in);
 					break;
 				case Constant.RECORD_AGREDR: // AgrEDR
 				case Constant.RECORD_AZEDR: // AzEDR
 					AEDRecord aedr = new AEDRecord(rec);
 					mAEDRList.add(aedr);
+					mIndex.put(aedr.mOffset, aedr);
 					mOffset = aedr.read(mOffset, in);
 					break;
 				case Constant.RECORD_VXR: // VXR
 					VXRecord vxr = new VXRecord(rec);
 					mVXRList.add(vxr);
+					mIndex.put(vxr.mOffset, vxr);
 					mOffset = vxr.read(mOffset, in);
 					break;					
 				case Constant.RECORD_VVR: // VVR
+					if(mMetadataOnly) { mOffset += skip(in, rec.getSize() - 12); break; }
 					VVRecord vvr = new VVRecord(rec);
 					mVVRList.add(vvr);
+					mIndex.put(vvr.mOffset, vvr);
 					mOffset = vvr.read(mOffset, in);
 					break;
 				case Constant.RECORD_RVDR: // rVDR
-					VDRecord rvdr = new VDRecord(rec, mGDR.mRNumDims);
+					VDRecord rvdr = new VDRecord(rec, mGDR.mRNumDims, getDecoder());
 					mCurrentVDR = rvdr;
 					mVDRList.add(rvdr);
+					mIndex.put(rvdr.mOffset, rvdr);
 					mOffset = rvdr.read(mOffset, in);
 					break;
 				case Constant.RECORD_ZVDR: // zVDR
-					VDRecord zvdr = new VDRecord(rec, 0);
+					VDRecord zvdr = new VDRecord(rec, 0, getDecoder());
 					mCurrentVDR = zvdr;
 					mVDRList.add(zvdr);
+					mIndex.put(zvdr.mOffset, zvdr);
 					mOffset = zvdr.read(mOffset, in);
 					break;
 				case Constant.RECORD_UIR: // UIR
 					UIRecord uir = new UIRecord(rec);
 					mUIRList.add(uir);
+					mIndex.put(uir.mOffset, uir);
 					mOffset = uir.read(mOffset, in);
 					break;
+				case Constant.RECORD_CPR: // CPR
+					CPRecord cpr = new CPRecord(rec);
+					mIndex.put(cpr.mOffset, cpr);
+					mOffset = cpr.read(mOffset, in);
+					break;
+				case Constant.RECORD_CVVR: // CVVR
+					if(mMetadataOnly) { mOffset += skip(in, rec.getSize() - 12); break; }
+					CVVRecord cvvr = new CVVRecord(rec);
+					mIndex.put(cvvr.mOffset, cvvr);
+					mOffset = cvvr.read(mOffset, in);
+					break;
 				default:	// All others
 					if(rec.getSize() <= 0) { more = false; break; } 	// Something wrong - Maybe checksum at end of file
 					long loffset = rec.getSize() - 12;
 					if(loffset > 0) {
-						in.skip(loffset); mOffset += loffset;
+						mOffset += skip(in, loffset);
 					}
 					break;
 				}
@@ -270,12 +390,302 @@ public class CDF {
 			// ex.printStackTrace(System.out);
 		}
 		
+		resolve();
+	}
+	
+	/**
+	 * Read the CCR of a compressed CDF and create a stream of the uncompressed content.
+	 * 
+	 * The compression type is read from the CPR which follows the compressed data.
+	 * When the CDF is not from a file the CPR can not be reached, so only GZIP, which
+	 * can be recognized from the data, is supported.
+	 * 
+	 * @param in pre-opened {@link DataInputStream} positioned at the CCR.
+	 * 
+	 * @return a {@link DataInputStream} positioned at the first record after the magic numbers in the uncompressed CDF.
+	 * 
+	 * @throws IOException if the CCR is not valid or the compression type is not supported.
+	 */
+	private DataInputStream openCompressed(DataInputStream in) throws IOException {
+		Record rec = new Record(mOffset);
+		rec.read(in);
+		if(rec.getType() != Constant.RECORD_CCR) throw new IOException("The first record is not a CCR.");
+		mCCR = new CCRecord(rec);
+		mCCR.read(mOffset + 12, in);
+		if(mVerbose) mCCR.dump();
+		
+		// Compression parameters
+		MappedFile file = mMappedFile;
+		if(file == null && ! mPathName.equals("-stream-")) file = new MappedFile(mPathName);
+		if(file != null) {
+			long offset = mCCR.mCPROffset;
+			Record base = new Record(offset);
+			DataInputStream cpr = file.getStream(offset, file.getRecordSize(offset));
+			base.read(cpr);
+			if(base.getType() != Constant.RECORD_CPR) throw new IOException("There is no CPR at offset " + offset + ".");
+			mCPR = new CPRecord(base);
+			mCPR.read(offset + 12, cpr);
+			if(mVerbose) mCPR.dump();
+			return new DataInputStream(Decompressor.getStream(in, mCCR.getDataSize(), mCPR));
+		}
+		
+		// Stream only - look for the GZIP identification bytes
+		PushbackInputStream data = new PushbackInputStream(in, 2);
+		byte[] id = new byte[2];
+		new DataInputStream(data).readFully(id);
+		data.unread(id);
+		if((id[0] & 0xFF) != 0x1F || (id[1] & 0xFF) != 0x8B) {
+			throw new IOException("Compression type can not be determined from a stream. Parse the CDF from a file.");
+		}
+		return new DataInputStream(Decompressor.getStream(data, mCCR.getDataSize(), Constant.COMPRESSION_GZIP));
+	}
+	
+	/**
+	 * Parse a CDF file by following the linked lists of descriptor records.
+	 * 
+	 * The file is mapped into memory and only the records reachable from the GDR are read.
+	 * The content of each VVR is not touched, only the record header is read.
+	 * 
+	 * @param channel pre-opened {@link FileChannel} to a CDF file.
+	 * 
+	 * @throws IOException
+	 */
+	public void parse(FileChannel channel) throws IOException {
+		parse(new MappedFile(channel));
+	}
+	
+	/**
+	 * Parse a mapped CDF file by following the linked lists of descriptor records.
+	 * 
+	 * Starting with the GDR the chains of ADR, AEDR, VDR and VXR records are followed.
+	 * Only the pages of the file containing these records are read. 
+	 * 
+	 * @param file the {@link MappedFile} for a CDF file.
+	 * 
+	 * @throws IOException
+	 */
+	public void parse(MappedFile file) throws IOException {
+		mMappedFile = file;
+		if( ! file.getPathName().equals("-channel-")) mPathName = file.getPathName();
+		if(mDigestAlgorithms != null) startDigest(file);
+		
+		boolean parsed = false;
+		try {
+			parsed = parseMapped(file);
+		} finally {
+			if( ! parsed) cancelDigest();	// Do not read the rest of a file which could not be parsed
+		}
+	}
+	
+	/**
+	 * Parse the records of a mapped CDF file.
+	 * 
+	 * @param file the {@link MappedFile} for a CDF file.
+	 * 
+	 * @return true if the file was parsed, false if it is not a well formed CDF.
+	 * 
+	 * @throws IOException
+	 */
+	private boolean parseMapped(MappedFile file) throws IOException {
+		// Magic numbers
+		DataInputStream in = file.getStream(0, 8);
+		mVersion = in.readInt();
+		mCompression = in.readInt();
+		mOffset = 8;
+		
+		if(isCompressed()) {	// Records can only be read in order from the uncompressed content
+			try {
+				parseRecords(new DataInputStream(file.getRegionStream(mOffset, file.length() - mOffset)));
+			} finally {
+				mMappedFile = null;	// Offsets are not offsets in the file
+			}
+			return true;
+		}
+		
+		try {
+			Record rec = readRecord(8L);
+			if(rec.getType() != Constant.RECORD_CDR) {
+				System.out.println("File does not appear to be a well formed CDF.");
+				return false;
+			}
+			mCDR = new CDRecord(rec);
+			mOffset = mCDR.read(mOffset, mRecordStream);
+			
+			rec = readRecord(mCDR.mGDROffset);
+			mGDR = new GDRecord(rec);
+			mOffset = mGDR.read(mOffset, mRecordStream);
+			if(mVerbose) { System.out.println("EndOfCDF: " + mGDR.mEOF); }
+			
+			// Attributes and entries
+			long next = mGDR.mADRhead;
+			while(next != 0 && getADR(next) == null) {
+				ADRecord adr = new ADRecord(readRecord(next));
+				mADRList.add(adr);
+				mIndex.put(adr.mOffset, adr);
+				mOffset = adr.read(mOffset, mRecordStream);
+				readAEDRChain(adr.mAgrEDRhead);
+				readAEDRChain(adr.mAzEDRhead);
+				next = adr.mADRnext;
+			}
+			
+			// Variables and indexes
+			readVDRChain(mGDR.mRVDRhead);
+			readVDRChain(mGDR.mZVDRhead);
+			
+			// Unused records
+			next = mGDR.mUIRhead;
+			while(next != 0 && getUIR(next) == null) {
+				UIRecord uir = new UIRecord(readRecord(next));
+				mUIRList.add(uir);
+				mIndex.put(uir.mOffset, uir);
+				mOffset = uir.read(mOffset, mRecordStream);
+				next = uir.mNextUIR;
+			}
+		} catch(EOFException ex) {
+			System.out.println("Unexpected EOF at: " + mOffset);
+			// Done
+		} catch(Exception ex) {
+			System.out.println("File does not appear to be a well formed CDF.");
+			return false;
+		} finally {
+			mRecordStream = null;
+		}
+		
+		resolve();
+		return true;
+	}
+	
+	/**
+	 * Read a chain of {@link AEDRecord} from a mapped file.
+	 * 
+	 * @param next the file offset of the first record in the chain.
+	 * 
+	 * @throws IOException
+	 */
+	private void readAEDRChain(long next) throws IOException {
+		while(next != 0 && getAEDR(next) == null) {
+			AEDRecord aedr = new AEDRecord(readRecord(next));
+			mAEDRList.add(aedr);
+			mIndex.put(aedr.mOffset, aedr);
+			mOffset = aedr.read(mOffset, mRecordStream);
+			next = aedr.mAEDRnext;
+		}
+	}
+	
+	/**
+	 * Read a chain of {@link VDRecord} and the associated index records from a mapped file.
+	 * 
+	 * @param next the file offset of the first record in the chain.
+	 * 
+	 * @throws IOException
+	 */
+	private void readVDRChain(long next) throws IOException {
+		while(next != 0 && getVDR(next) == null) {
+			Record rec = readRecord(next);
+			VDRecord vdr = new VDRecord(rec, rec.getType() == Constant.RECORD_RVDR ? mGDR.mRNumDims : 0, getDecoder());
+			mCurrentVDR = vdr;
+			mVDRList.add(vdr);
+			mIndex.put(vdr.mOffset, vdr);
+			mOffset = vdr.read(mOffset, mRecordStream);
+			if(vdr.mCPRorSPRoffset > 0 && vdr.mCPRorSPRoffset < mMappedFile.length()) {	// CPR or SPR
+				Record param = readRecord(vdr.mCPRorSPRoffset);
+				if(param.getType() == Constant.RECORD_CPR && getCPR(param.mOffset) == null) {
+					CPRecord cpr = new CPRecord(param);
+					mIndex.put(cpr.mOffset, cpr);
+					mOffset = cpr.read(mOffset, mRecordStream);
+				}
+			}
+			readVXRChain(vdr.mVXRHead);
+			next = vdr.mVDRnext;
+		}
+	}
+	
+	/**
+	 * Read a chain of {@link VXRecord} from a mapped file. 
+	 * Entries which refer to lower level VXRs are followed. For entries which refer 
+	 * to a VVR only the record header is read.
+	 * 
+	 * @param next the file offset of the first record in the chain.
+	 * 
+	 * @throws IOException
+	 */
+	private void readVXRChain(long next) throws IOException {
+		while(next != 0 && getVXR(next) == null) {
+			VXRecord vxr = new VXRecord(readRecord(next));
+			mVXRList.add(vxr);
+			mIndex.put(vxr.mOffset, vxr);
+			mOffset = vxr.read(mOffset, mRecordStream);
+			for(int i = 0; i < vxr.mNusedEntries; i++) {
+				long offset = vxr.mVVRList[i];
+				if(offset == 0) continue;
+				switch(mMappedFile.getRecordType(offset)) {
+				case Constant.RECORD_VXR:
+					readVXRChain(offset);
+					break;
+				case Constant.RECORD_VVR:
+					if(mMetadataOnly || getVVR(offset) != null) break;
+					VVRecord vvr = new VVRecord(readRecordHeader(offset));
+					mVVRList.add(vvr);
+					mIndex.put(vvr.mOffset, vvr);
+					vvr.mDataStartByte = mOffset;
+					break;
+				default:	// CVVR
+					if(mMetadataOnly || getCVVR(offset) != null) break;
+					CVVRecord cvvr = new CVVRecord(readRecordHeader(offset));
+					mIndex.put(cvvr.mOffset, cvvr);
+					mOffset = cvvr.readHeader(mOffset, mMappedFile.getStream(mOffset, CVVRecord.HEADER_SIZE - 12));
+					break;
+				}
+			}
+			next = vxr.mVXRnext;
+		}
+	}
+	
+	/**
+	 * Read a record from a mapped file. 
+	 * The stream positioned after the record header is available in mRecordStream.
+	 * 
+	 * @param offset the file offset of the record.
+	 * 
+	 * @return a {@link Record} containing the record header.
+	 * 
+	 * @throws IOException
+	 */
+	private Record readRecord(long offset) throws IOException {
+		mOffset = offset;
+		mRecordStream = mMappedFile.getStream(offset, mMappedFile.getRecordSize(offset));
+		Record rec = readRecord(mRecordStream);
+		if(mVerbose) rec.dump();
+		return rec;
+	}
+	
+	/**
+	 * Read only the header of a record from a mapped file. 
+	 * 
+	 * @param offset the file offset of the record.
+	 * 
+	 * @return a {@link Record} containing the record header.
+	 * 
+	 * @throws IOException
+	 */
+	private Record readRecordHeader(long offset) throws IOException {
+		mOffset = offset;
+		Record rec = readRecord(mMappedFile.getStream(offset, 12));
+		if(mVerbose) rec.dump();
+		return rec;
+	}
+	
+	/**
+	 * Define global attributes, variables and variable attributes from the parsed records.
+	 */
+	private void resolve() {
 		// Define global attributes
 		for(ADRecord adr : mADRList) {
 			if(adr.mScope == Constant.SCOPE_GLOBAL || adr.mScope == Constant.SCOPE_GLOBAL_ASSUME) {
 				Attribute attr = new Attribute();
 				mAttributes.add(attr);
 				attr.setName(adr.mName);
+				attr.setDecoder(getDecoder());
 				
 				AEDRecord aedr = null;
 				if(adr.mAgrEDRhead != 0) { aedr = getAEDR(adr.mAgrEDRhead); }
@@ -284,7 +694,7 @@ public class CDF {
 					attr.setDataType(aedr.mDataType);
 					attr.setStartByte(aedr.mDataStartByte);
 					while(aedr != null) {
-						attr.addValues(Constant.valueToArrayList(aedr.mValue, aedr.mDataType, aedr.mNumElems));
+						attr.addEntry(aedr);
 						aedr = getAEDR(aedr.mAEDRnext);
 					}
 				}				
@@ -296,6 +706,8 @@ public class CDF {
 		for(VDRecord vdr : mVDRList) {
 			Variable v = new Variable();
 			mVariables.add(v);
+			mVariableIndex.put(vdr.mOffset, v);
+			if( ! mVDRByName.containsKey(vdr.mName)) mVDRByName.put(vdr.mName, vdr);
 			v.setName(vdr.mName);
 			v.setDataType(vdr.mDataType);
 			v.setIndex(vdr.mNum);
@@ -326,6 +738,7 @@ public class CDF {
 			if(adr.mScope == Constant.SCOPE_VARIABLE || adr.mScope == Constant.SCOPE_VARIABLE_ASSUME) {
 				Attribute attr = new Attribute();
 				attr.setName(adr.mName);
+				attr.setDecoder(getDecoder());
 				
 				AEDRecord aedr = null;
 				if(adr.mAgrEDRhead != 0) { aedr = getAEDR(adr.mAgrEDRhead); }
@@ -344,7 +757,7 @@ public class CDF {
 				for(int i = 0; i < listSize; i++) values.add("");
 				
 				while(aedr != null) {	// Element number corresponds to variable number
-					mVariables.get(aedr.mNum).setAttribute(adr.mName, Constant.valueToArrayList(aedr.mValue, aedr.mDataType, aedr.mNumElems));
+					mVariables.get(aedr.mNum).setAttribute(adr.mName, aedr, getDecoder());
 					aedr = getAEDR(aedr.mAEDRnext);
 				}			
 			}
@@ -364,11 +777,47 @@ public class CDF {
 	 */
 	public Record readRecord(DataInputStream in) throws IOException {
 		Record rec = new Record(mOffset);
-		mRecordList.add(rec);
 		mOffset = rec.read(in);
+		if( ! (mMetadataOnly && isDataRecord(rec.getType()))) mRecordList.add(rec);
 		
 		return rec;
 	}
+	
+	/**
+	 * Determine if a record type holds variable data (VVR or CVVR).
+	 * 
+	 * @param type the record type.
+	 * 
+	 * @return true if the record holds variable data, otherwise false.
+	 */
+	static boolean isDataRecord(int type) {
+		return type == Constant.RECORD_VVR || type == Constant.RECORD_CVVR;
+	}
+	
+	/**
+	 * Skip bytes in an input stream. 
+	 * For a file stream this is a seek, so the skipped bytes are not read.
+	 * 
+	 * @param in the input stream.
+	 * @param count the number of bytes to skip.
+	 * 
+	 * @return the number of bytes skipped.
+	 * 
+	 * @throws IOException if any reading error occurs.
+	 */
+	static long skip(DataInputStream in, long count) throws IOException {
+		long total = 0;
+		while(total < count) {
+			long n = in.skip(count - total);
+			if(n <= 0) {	// Skip may not be supported - read instead
+				if(in.read() < 0) throw new EOFException();
+				n = 1;
+			}
+			total += n;
+		}
+		
+		return total;
+	}
 
 	/**
 	 * Retrieve a {@link ADRecord} with the given index.
@@ -378,13 +827,10 @@ public class CDF {
 	 * @return the corresponding {@link ADRecord} or null if none found.
 	 */
 	public ADRecord getADR(long index) {
-		ADRecord adr = null;
+		Record rec = mIndex.get(index);
+		if(rec instanceof ADRecord) return (ADRecord) rec;
 		
-		for(ADRecord a : mADRList) {	// Scan list of ADR for matching index
-			if(a.mOffset == index) adr = a; 
-		}
-		
-		return adr;
+		return null;
 	}
 	
 	/**
@@ -395,13 +841,10 @@ public class CDF {
 	 * @return the corresponding {@link AEDRecord} or null if none found.
 	 */	
 	public AEDRecord getAEDR(long index) {
-		AEDRecord aedr = null;
-		
-		for(AEDRecord a : mAEDRList) {	// Scan list of ADR for matching index
-			if(a.mOffset == index) aedr = a; 
-		}
+		Record rec = mIndex.get(index);
+		if(rec instanceof AEDRecord) return (AEDRecord) rec;
 		
-		return aedr;
+		return null;
 	}
 	
 	/**
@@ -412,13 +855,10 @@ public class CDF {
 	 * @return the corresponding {@link VDRecord} or null if none found.
 	 */	
 	public VDRecord getVDR(long index) {
-		VDRecord vdr = null;
-		
-		for(VDRecord a : mVDRList) {	// Scan list of ADR for matching index
-			if(a.mOffset == index) vdr = a; 
-		}
+		Record rec = mIndex.get(index);
+		if(rec instanceof VDRecord) return (VDRecord) rec;
 		
-		return vdr;
+		return null;
 	}
 	
 	/**
@@ -429,13 +869,10 @@ public class CDF {
 	 * @return the corresponding {@link VXRecord} or null if none found.
 	 */	
 	public VXRecord getVXR(long index) {
-		VXRecord vxr = null;
+		Record rec = mIndex.get(index);
+		if(rec instanceof VXRecord) return (VXRecord) rec;
 		
-		for(VXRecord a : mVXRList) {	// Scan list of ADR for matching index
-			if(a.mOffset == index) vxr = a; 
-		}
-		
-		return vxr;
+		return null;
 	}
 	
 	/**
@@ -446,13 +883,10 @@ public class CDF {
 	 * @return the corresponding {@link UIRecord} or null if none found.
 	 */	
 	public UIRecord getUIR(long index) {
-		UIRecord uir = null;
+		Record rec = mIndex.get(index);
+		if(rec instanceof UIRecord) return (UIRecord) rec;
 		
-		for(UIRecord a : mUIRList) {	// Scan list of ADR for matching index
-			if(a.mOffset == index) uir = a; 
-		}
-		
-		return uir;
+		return null;
 	}
 	
 	/**
@@ -463,13 +897,38 @@ public class CDF {
 	 * @return the corresponding {@link VVRecord} or null if none found.
 	 */	
 	public VVRecord getVVR(long index) {
-		VVRecord vvr = null;
+		Record rec = mIndex.get(index);
+		if(rec instanceof VVRecord) return (VVRecord) rec;
 		
-		for(VVRecord a : mVVRList) {	// Scan list of ADR for matching index
-			if(a.mOffset == index) vvr = a; 
-		}
+		return null;
+	}
+	
+	/**
+	 * Retrieve a CVVRecord with the given index.
+	 * 
+	 * @param index the file offset as defined in the CDF file.
+	 * 
+	 * @return the corresponding {@link CVVRecord} or null if none found.
+	 */	
+	public CVVRecord getCVVR(long index) {
+		Record rec = mIndex.get(index);
+		if(rec instanceof CVVRecord) return (CVVRecord) rec;
+		
+		return null;
+	}
+	
+	/**
+	 * Retrieve a CPRecord with the given index.
+	 * 
+	 * @param index the file offset as defined in the CDF file.
+	 * 
+	 * @return the corresponding {@link CPRecord} or null if none found.
+	 */	
+	public CPRecord getCPR(long index) {
+		Record rec = mIndex.get(index);
+		if(rec instanceof CPRecord) return (CPRecord) rec;
 		
-		return vvr;
+		return null;
 	}
 	
 	/**
@@ -503,12 +962,12 @@ public class CDF {
 		
 		AEDRecord aedr = getAEDR(adr.mAgrEDRhead);
 		while(aedr != null) {
-			values.add(aedr.valueToString());
+			values.add(aedr.valueToString(getDecoder()));
 			aedr = getAEDR(aedr.mAEDRnext);
 		}	
 		aedr = getAEDR(adr.mAzEDRhead);
 		while(aedr != null) {
-			values.add(aedr.valueToString());
+			values.add(aedr.valueToString(getDecoder()));
 			aedr = getAEDR(aedr.mAEDRnext);
 		}	
 		
@@ -627,8 +1086,9 @@ public class CDF {
 	 * @return the {@link VDRecord} associated with the name or null if no variable exists.
 	 */
 	public VDRecord getVariable(String name) {
-		VDRecord vdr = null;
+		if( ! mVDRByName.isEmpty()) return mVDRByName.get(name);	// Indexed when resolved
 		
+		VDRecord vdr = null;
 		for(VDRecord v : mVDRList) {	// Scan list of ADR for matching index
 			if(v.mName.equals(name)) { vdr = v; break; } 
 		}
@@ -636,6 +1096,15 @@ public class CDF {
 		return vdr;
 	}
 	
+	/**
+	 * Retrieve the description of a variable with its attributes.
+	 * 
+	 * @param vdr the {@link VDRecord} of the variable.
+	 * 
+	 * @return the {@link Variable} or null if the variable is not part of the CDF.
+	 */
+	public Variable getDescription(VDRecord vdr) { return mVariableIndex.get(vdr.mOffset); }
+	
 	/** 
 	 * Retrieve the start byte of the data for a variable with a given name.
 	 * 
@@ -653,18 +1122,55 @@ public class CDF {
 	 * @return the start byte of the variable data or zero if the variable does not exist.
 	 */
 	public long getVariableStartByte(VDRecord vdr) {
-		long startByte = 0L;
+		if(vdr == null) return 0L;
 		
-		VXRecord vxr = getVXR(vdr.mVXRHead);
+		RecordIndex index = getRecordIndex(vdr);
+		if(index.getBlockCount() == 0) return 0L;
 		
-		if(vxr == null) return startByte;
+		long startByte = index.getDataOffset(0);
+		if(startByte < 0) startByte = 0L;	// Compressed
 		
-		if(vxr.mNentries > 0 && vxr.mNusedEntries > 0) {	// We use just the first one for start byte
-				VVRecord vvr = getVVR(vxr.mVVRList[0]);
-				startByte = vvr.mDataStartByte;
-		} 
 		return startByte;
 	}
+	
+	/**
+	 * Retrieve the index of data records for a variable.
+	 * The index is built from the complete VXR hierarchy on first use.
+	 * 
+	 * @param vdr the {@link VDRecord} for the variable.
+	 * 
+	 * @return the {@link RecordIndex} for the variable.
+	 */
+	public RecordIndex getRecordIndex(VDRecord vdr) {
+		RecordIndex index = mRecordIndexes.get(vdr.mOffset);
+		if(index == null) {
+			index = new RecordIndex(this, vdr);
+			mRecordIndexes.put(vdr.mOffset, index);
+		}
+		
+		return index;
+	}
+	
+	/**
+	 * Determine the number of bytes in each record of a variable.
+	 * Only dimensions which vary contribute to the size of a record.
+	 * 
+	 * @param vdr the {@link VDRecord} for the variable.
+	 * 
+	 * @return the number of bytes in each record.
+	 */
+	public int getRecordSize(VDRecord vdr) {
+		int size = Constant.getDataTypeSize(vdr.mDataType) * vdr.mNumElems;
+		int[] dims = vdr.mZDimSize;
+		if(vdr.mType == Constant.RECORD_RVDR && mGDR != null) dims = mGDR.rDimSizes;
+		if(dims != null && vdr.mDimVarys != null) {
+			for(int i = 0; i < dims.length && i < vdr.mDimVarys.length; i++) {
+				if(vdr.mDimVarys[i] != 0) size *= dims[i];
+			}
+		}
+		
+		return size;
+	}
 
  	/** 
      * Generate a nested HashMap for the CDF file that includes file information.
@@ -694,14 +1200,98 @@ public class CDF {
 		map.put("pathName", mPathName);
 		
 		map.put("fileMD5", "");
-		if( ! mPathName.equals("-stream-")) {	// if pathname defined
+		try {
+			String md5 = getDigest(FileDigest.MD5);
+			if(md5 != null) map.put("fileMD5", md5);
+			if(mDigests.containsKey(FileDigest.SHA_256)) map.put("fileSHA256", mDigests.get(FileDigest.SHA_256));
+		} catch(Exception e) {
+			// Do nothing
+		}
+		return map;
+	}
+	
+	/**
+	 * Set the digest algorithms to compute while parsing.
+	 * 
+	 * When parsing from a stream the digests are computed from the bytes as they are read,
+	 * so the file is read once. The rest of the stream after the last record is read to complete the digests.
+	 * When parsing a {@link MappedFile} only the descriptor records are read, so the digests are computed
+	 * by reading the whole mapping sequentially on a separate thread while the records are parsed.
+	 * 
+	 * Only the requested digests are computed. A digest which was not requested, like the fileMD5 of
+	 * {@link #getHashMap()}, is computed by reading the file when it is first retrieved.
+	 * 
+	 * @param algorithms the names of the digest algorithms, like {@link FileDigest#MD5} and {@link FileDigest#SHA_256}, or null for none.
+	 */
+	public void setDigestAlgorithms(String... algorithms) {
+		mDigestAlgorithms = (algorithms == null) ? null : algorithms.clone();
+	}
+	
+	/**
+	 * Start computing the digests of a mapped file on a separate thread.
+	 * 
+	 * @param file the {@link MappedFile} being parsed.
+	 */
+	private synchronized void startDigest(final MappedFile file) {
+		final String[] algorithms = mDigestAlgorithms;
+		FutureTask<FileDigest> task = new FutureTask<FileDigest>(() -> FileDigest.digest(file, algorithms));
+		Thread thread = new Thread(task, "CDF digest");
+		thread.setDaemon(true);
+		thread.start();
+		mDigestTask = task;
+	}
+	
+	/**
+	 * Stop computing the digests started by {@link #startDigest(MappedFile)}.
+	 * A digest requested later is computed by reading the file.
+	 */
+	private synchronized void cancelDigest() {
+		if(mDigestTask == null) return;
+		mDigestTask.cancel(true);
+		mDigestTask = null;
+	}
+	
+	/**
+	 * Retrieve a digest of the content of the file.
+	 * 
+	 * Digests computed while parsing are returned without reading the file again. Otherwise the file
+	 * is read once to compute the digest and any others set with {@link #setDigestAlgorithms(String...)}.
+	 * Each digest is computed at most once.
+	 * 
+	 * @param algorithm the name of the digest algorithm, like {@link FileDigest#MD5}.
+	 * 
+	 * @return the digest as lower case hexadecimal digits or null if the CDF was parsed from a stream which was not digested.
+	 * 
+	 * @throws IOException if the file can not be read or the algorithm is not supported.
+	 */
+	public synchronized String getDigest(String algorithm) throws IOException {
+		if(mDigestTask != null) {	// Wait for the digest computed while parsing
 			try {
-				map.put("fileMD5", igpp.util.Digest.digestFile(mPathName));
-			} catch(Exception e) {
-				// Do nothing
+				mDigests.putAll(mDigestTask.get().finish());
+			} catch(ExecutionException e) {
+				throw (e.getCause() instanceof IOException) ? (IOException) e.getCause() : new IOException(e.getCause());
+			} catch(CancellationException e) {
+				// Computed below
+			} catch(InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("Interrupted while computing digest.");
+			} finally {
+				mDigestTask = null;
 			}
 		}
-		return map;
+		
+		String value = mDigests.get(algorithm);
+		if(value != null || mPathName.equals("-stream-")) return value;
+		
+		// Digests already computed are not computed again
+		ArrayList<String> algorithms = new ArrayList<String>();
+		algorithms.add(algorithm);
+		if(mDigestAlgorithms != null) {
+			for(String name : mDigestAlgorithms) if( ! mDigests.containsKey(name)) algorithms.add(name);
+		}
+		mDigests.putAll(FileDigest.digest(mPathName, algorithms.toArray(new String[algorithms.size()])).finish());
+		
+		return mDigests.get(algorithm);
 	}
 
 	/**
@@ -779,6 +1369,20 @@ public class CDF {
 	 */
 	public boolean isCompressed() { return Constant.isCompressed(mCompression); }
 	
+	/**
+	 * Retrieve the {@link CCRecord} of a compressed CDF.
+	 * 
+	 * @return the {@link CCRecord} or null if the CDF is not compressed.
+	 */
+	public CCRecord getCCR() { return mCCR; }
+	
+	/**
+	 * Retrieve the {@link CPRecord} for the compression of a compressed CDF.
+	 * 
+	 * @return the {@link CPRecord} or null if the CDF is not compressed or the CPR was not read.
+	 */
+	public CPRecord getCPR() { return mCPR; }
+	
 	/**
 	 * Set the offset value used maintained during the parsing of the CDF file.
 	 * 
@@ -800,12 +1404,135 @@ public class CDF {
 	 */
 	public String getPathName() { return mPathName; }
 	
+	/**
+	 * Set the pathname of the file a stream is parsed from.
+	 * The file is used to read records which can not be reached in the stream, such as the CPR of a compressed CDF.
+	 * 
+	 * @param pathname the file system path and file name to the CDF file.
+	 */
+	public void setPathName(String pathname) { mPathName = pathname; }
+	
+	/**
+	 * Retrieve the {@link MappedFile} used when parsing by following linked lists.
+	 * 
+	 * @return the {@link MappedFile} or null if the CDF was parsed from a stream.
+	 */
+	public MappedFile getMappedFile() { return mMappedFile; }
+	
+	/**
+	 * Map the CDF file into memory if it is not already mapped.
+	 * 
+	 * @return the {@link MappedFile} for the CDF.
+	 * 
+	 * @throws IOException if the CDF was parsed from a stream without a pathname or the file can not be mapped.
+	 */
+	public MappedFile map() throws IOException {
+		if(mMappedFile != null) return mMappedFile;
+		if(mPathName.equals("-stream-")) throw new IOException("CDF was parsed from a stream and can not be mapped.");
+		if(isCompressed()) throw new IOException("CDF is compressed and can not be mapped.");
+		
+		mMappedFile = new MappedFile(mPathName);
+		return mMappedFile;
+	}
+	
+	/**
+	 * Create a {@link VariableReader} for the variable with the given name.
+	 * 
+	 * @param name the name associated with the variable.
+	 * 
+	 * @return a {@link VariableReader} for the variable or null if no variable exists.
+	 * 
+	 * @throws IOException if the file can not be mapped or the index records are not valid.
+	 */
+	public VariableReader getReader(String name) throws IOException {
+		VDRecord vdr = getVariable(name);
+		if(vdr == null) return null;
+		
+		return new VariableReader(this, vdr);
+	}
+	
+	/**
+	 * Find the records of a variable within a time interval. Both ends of the interval are included.
+	 * 
+	 * The times of the records are the values of the variable named by the DEPEND_0 attribute of the variable.
+	 * A time variable without a DEPEND_0 attribute is searched by its own values. If the time variable has a
+	 * MONOTON attribute of "INCREASE" or "DECREASE" the times are taken to be in that order. Otherwise
+	 * the order of the times is checked once and kept for later queries.
+	 * 
+	 * @param name the name of the variable.
+	 * @param start the start of the interval as nanoseconds since 1970-01-01T00:00:00 UTC.
+	 * @param end the end of the interval as nanoseconds since 1970-01-01T00:00:00 UTC.
+	 * 
+	 * @return a {@link TimeRange} with the records in the interval.
+	 * 
+	 * @throws IOException if the variable or its time variable does not exist, the times are not in order or the data can not be read.
+	 */
+	public TimeRange query(String name, long start, long end) throws IOException {
+		VDRecord vdr = getVariable(name);
+		if(vdr == null) throw new IOException("Variable '" + name + "' does not exist.");
+		
+		Variable variable = getDescription(vdr);
+		String epochName = (variable == null) ? "" : variable.getAttributeValue("DEPEND_0").trim();
+		if(epochName.isEmpty() && TimeRange.isTimeType(vdr.mDataType)) epochName = name;
+		if(epochName.isEmpty()) throw new IOException("Variable '" + name + "' has no DEPEND_0 attribute.");
+		VDRecord epochVDR = getVariable(epochName);
+		if(epochVDR == null) throw new IOException("Time variable '" + epochName + "' of '" + name + "' does not exist.");
+		
+		VariableReader reader = new VariableReader(this, vdr);
+		VariableReader epoch = (epochVDR == vdr) ? reader : new VariableReader(this, epochVDR);
+		
+		return new TimeRange(reader, epoch, getTimeOrder(epoch) > 0, start, end);
+	}
+	
+	/**
+	 * Determine the order of the values of a time variable.
+	 * The MONOTON attribute is used if present, otherwise the values are checked once and the result is kept.
+	 * 
+	 * @param epoch the {@link VariableReader} for the time variable.
+	 * 
+	 * @return 1 if the times increase, -1 if the times decrease.
+	 * 
+	 * @throws IOException if the times are not in order or can not be read.
+	 */
+	private int getTimeOrder(VariableReader epoch) throws IOException {
+		String name = epoch.getVDR().mName;
+		Variable variable = getDescription(epoch.getVDR());
+		if(variable != null) {
+			String monoton = variable.getAttributeValue("MONOTON").trim();
+			if(monoton.equalsIgnoreCase("INCREASE")) return 1;
+			if(monoton.equalsIgnoreCase("DECREASE")) return -1;
+		}
+		
+		synchronized(mTimeOrder) {
+			Integer order = mTimeOrder.get(name);
+			if(order == null) {
+				order = 0;
+				if(TimeRange.isSorted(epoch, true)) order = 1;
+				else if(TimeRange.isSorted(epoch, false)) order = -1;
+				mTimeOrder.put(name, order);
+			}
+			if(order == 0) throw new IOException("Times in '" + name + "' are not in order.");
+			return order;
+		}
+	}
+	
 	/**
 	 * Retrieve the {@link CDRecord} for the CDF.
 	 * @return the {@link CDRecord} for the CDF.
 	 */
 	public CDRecord getCDR() { return mCDR; }
 	
+	/**
+	 * Retrieve the {@link Decoder} for the encoding of the CDF.
+	 * 
+	 * @return the {@link Decoder} for the encoding in the CDR or the network (big-endian) decoder if the CDR has not been read.
+	 */
+	public Decoder getDecoder() {
+		if(mCDR == null) return Decoder.BIG_ENDIAN;
+		
+		return Decoder.getDecoder(mCDR.getEncoding());
+	}
+	
 	/**
 	 * Retrieve the {@link GDRecord} for the CDF.
 	 * 
@@ -910,6 +1637,25 @@ public class CDF {
 	 */
 	public boolean setVerbose(boolean state) { mVerbose = state; return mVerbose; }
 	
+	/**
+	 * Set the metadata only state.
+	 * When on, no information is kept about VVR or CVVR records. The data in these records is skipped
+	 * and for a mapped file the records are not read. Byte offsets to the start of variable data are
+	 * still determined from the VXR records.
+	 * 
+	 * @param state	true to turn metadata only mode on, otherwise false.
+	 * 
+	 * @return the current metadata only state. 
+	 */
+	public boolean setMetadataOnly(boolean state) { mMetadataOnly = state; return mMetadataOnly; }
+	
+	/**
+	 * Return the current metadata only state.
+	 * 
+	 * @return the current metadata only state.
+	 */
+	public boolean getMetadataOnly() { return mMetadataOnly; }
+	
 	/**
 	 * Return the current verbose state.
 	 * 
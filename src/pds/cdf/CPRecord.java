@@ -0,0 +1,81 @@
+package pds.cdf;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+
+/**
+ * Compression Parameters Record (CPR)
+ * A Compression Parameters Record (CPR) contains the type of compression and
+ * the parameters used to compress either the whole CDF or the values of a variable.
+ * Defined in Section 2.14 of CDF specification.
+ *
+ * @author tking
+ *
+ */
+public class CPRecord extends Record {
+	int mCType = 0;	// The type of compression.
+	int mRfuA = 0;	// Reserved for future use.
+	int mPCount = 0;	// The number of compression parameters.
+	int[] mCParms = new int[0];	// The compression parameters.
+
+	/**
+	 * Create a CPRecord based on a base record.
+	 *
+	 * @param base the base record to derive a CPRecord.
+	 */
+	public CPRecord(Record base) {
+		mimic(base);
+	}
+
+	/**
+	 * Read the contents of a CPRecord from an input stream.
+	 *
+	 * @param offset the current byte offset into the stream
+	 * @param in the input stream to read from.
+	 *
+	 * @return the byte offset after reading the record.
+	 *
+	 * @throws IOException if any reading error occurs.
+	 */
+	public long read(long offset, DataInputStream in) throws IOException {
+		mCType = in.readInt(); offset += 4;
+		mRfuA = in.readInt(); offset += 4;
+		mPCount = in.readInt(); offset += 4;
+		mCParms = new int[mPCount];
+		for(int i = 0; i < mPCount; i++) {
+			mCParms[i] = in.readInt(); offset += 4;
+		}
+
+		return offset;
+	}
+
+	/**
+	 * Retrieve the type of compression.
+	 *
+	 * @return the compression type as defined in {@link Constant}.
+	 */
+	public int getCompressionType() { return mCType; }
+
+	/**
+	 * Retrieve the compression parameters.
+	 *
+	 * @return the array of compression parameters.
+	 */
+	public int[] getParameters() { return mCParms; }
+
+	/**
+	 * Display a description of the record.
+	 */
+	public void dump() {
+		System.out.println("=================================");
+		System.out.println("              CPR");
+		System.out.println("=================================");
+		System.out.println("cType: " + Constant.getCompressionName(mCType));
+		System.out.println("rfuA: " + mRfuA);
+		System.out.println("pCount: " + mPCount);
+		for(int i = 0; i < mPCount; i++) {
+			System.out.println("cParms[" + i + "]: " + mCParms[i]);
+		}
+		System.out.println("");
+	}
+}
@@ -0,0 +1,80 @@
+package pds.cdf;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+
+/**
+ * Compressed Variable Value Record (CVVR)
+ * Compressed Variable Value Records (CVVRs) store the compressed form of the records
+ * which would otherwise be held in a VVR. The type of compression is defined in the
+ * CPR referenced by the VDR of the variable.
+ * Defined in Section 2.12 of CDF specification.
+ *
+ * @author tking
+ *
+ */
+public class CVVRecord extends Record {
+	int mRfuA = 0;	// Reserved for future use.
+	long mCSize = 0L;	// The number of bytes of compressed data.
+	long mDataStartByte = 0L;
+
+	/** Size of the record header in bytes, including the base record fields. */	static final int HEADER_SIZE = 24;
+
+	/**
+	 * Create a CVVRecord based on a base record.
+	 *
+	 * @param base the base record to derive a CVVRecord.
+	 */
+	public CVVRecord(Record base) {
+		mimic(base);
+	}
+
+	/**
+	 * Read the contents of a CVVRecord from an input stream.
+	 * The compressed data is skipped.
+	 *
+	 * @param offset the current byte offset into the stream
+	 * @param in the input stream to read from.
+	 *
+	 * @return the byte offset after reading the record.
+	 *
+	 * @throws IOException if any reading error occurs.
+	 */
+	public long read(long offset, DataInputStream in) throws IOException {
+		offset = readHeader(offset, in);
+		long loffset = getSize() - HEADER_SIZE;
+		if(loffset > 0) offset += CDF.skip(in, loffset);
+
+		return offset;
+	}
+
+	/**
+	 * Read the fixed fields of a CVVRecord from an input stream.
+	 *
+	 * @param offset the current byte offset into the stream
+	 * @param in the input stream to read from.
+	 *
+	 * @return the byte offset after reading the fixed fields.
+	 *
+	 * @throws IOException if any reading error occurs.
+	 */
+	public long readHeader(long offset, DataInputStream in) throws IOException {
+		mRfuA = in.readInt(); offset += 4;
+		mCSize = in.readLong(); offset += 8;
+		mDataStartByte = offset;
+
+		return offset;
+	}
+
+	/**
+	 * Display a description of the record.
+	 */
+	public void dump() {
+		System.out.println("=================================");
+		System.out.println("              CVVR");
+		System.out.println("=================================");
+		System.out.println("cSize: " + mCSize);
+		System.out.println("DataStartByte: " + mDataStartByte);
+		System.out.println("");
+	}
+}
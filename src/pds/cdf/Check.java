@@ -1,8 +1,18 @@
 package pds.cdf;
 
-import java.io.DataInputStream;
-import java.io.FileInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.regex.Pattern;
 
 import org.apache.commons.cli.Options;
 import org.apache.commons.cli.CommandLine;
@@ -16,6 +26,10 @@ import org.apache.commons.cli.HelpFormatter;
  * Checks the CDF file and determines if the file complies with the CDF tools, ISTP/CDF and PDS archiving requirements
  * for structure and content.   
  * 
+ * Each check is a {@link Rule} applied once to the file or a {@link VariableRule} applied once to each variable.
+ * Rules use a {@link CheckModel} which indexes the variables and attributes of the CDF, so the time to check
+ * a file increases only in proportion to the number of variables. Other rules can be added.
+ * 
  * @author tking
  *
  */
@@ -27,12 +41,77 @@ public class Check {
 							 ;
 	private String mAcknowledge = "Development funded by NASA's PDS project at UCLA.";
 
+	/** Version of the rules. Change when rules or messages change so cached results are discarded. */	static final String RULES_VERSION = "4";
+
+	/** Allowed characters in a variable name. */	static final Pattern NAME_PATTERN = Pattern.compile("[a-zA-Z0-9_]+");
+
+	/** Variable attributes required by CDF tools. */
+	static final String[] CDF_TOOLS_ATTRIBUTES =  { "FORMAT", "VALIDMIN", "VALIDMAX", "FILLVAL",
+			"MONOTON", "SCALEMIN", "SCALEMAX"
+			};
+	
+	/** Global attributes required by ISTP. From ISTP Spec. http://spdf.gsfc.nasa.gov/istp_guide/istp_guide.html */
+	static final String[] ISTP_GLOBAL_ATTRIBUTES =  { "Project", "Source_name", "Discipline", "Data_type",
+			"Descriptor", "Data_version", "Logical_file_id", "PI_name", "PI_affiliation",
+			"TEXT", "Instrument_type", "Mission_group", "Logical_source", "Logical_source_description"
+			};
+	
+	/*
+	String[] ISTPGlobalAttributesOptional = { "Generated_by", "Generation_date", "HTTP_LINK", "LINK_TEXT", "LINK_TITLE",
+			"MODS ", "Parents ", "Rules_of_use", "Skeleton_version", "Software_version",
+			"Time_resolution", "TITLE", "Validate"};
+	*/
+	
+	/** Variable attributes required by ISTP. Names with alternates are not checked. */
+	static final String[] ISTP_VARIABLE_ATTRIBUTES =  { "CATDESC", "DEPEND_0", "DISPLAY_TYPE", "FIELDNAM",
+			"FORM_PTR", "LABELAXIS/LABEL_PTR_i", "UNITS/UNIT_PTR", "VAR_TYPE"
+			};
+	
+	/**
+	 * A check of the whole file.
+	 */
+	public interface Rule {
+		/**
+		 * Check the file.
+		 * 
+		 * @param model the indexed CDF.
+		 * @param messages the list to add a message to for each problem found.
+		 * 
+		 * @throws IOException if the file can not be read.
+		 */
+		void check(CheckModel model, ArrayList<CheckMessage> messages) throws IOException;
+	}
+	
+	/**
+	 * A check of a single zVariable.
+	 */
+	public interface VariableRule {
+		/**
+		 * Check a variable.
+		 * 
+		 * @param model the indexed CDF.
+		 * @param vdr the {@link VDRecord} of the variable.
+		 * @param variable the description of the variable with its attributes.
+		 * @param messages the list to add a message to for each problem found.
+		 * 
+		 * @return a status for verbose output, starting with a space, or an empty string if no problem was found.
+		 */
+		String check(CheckModel model, VDRecord vdr, Variable variable, ArrayList<CheckMessage> messages);
+	}
+
 	private boolean mVerbose = false;
+	private boolean mCheckData = false;	// Check data values against attributes
+	private boolean mJSON = false;	// Output JSON Lines
+	private boolean mHashFile = false;	// Compute the SHA-256 hash of the file while checking
+	String mHash = null;	// SHA-256 hash of the file when checked, if computed
 
 	// create the Options
 	Options mAppOptions = new org.apache.commons.cli.Options();
 
-	ArrayList<String> mMessages = new ArrayList<String>();
+	ArrayList<CheckMessage> mMessages = new ArrayList<CheckMessage>();
+	
+	ArrayList<Rule> mRules = new ArrayList<Rule>();
+	ArrayList<VariableRule> mVariableRules = new ArrayList<VariableRule>();
 	
 	/**
 	 * Create an instance.
@@ -42,6 +121,26 @@ public class Check {
 		mAppOptions.addOption("h", "help", false, "Dispay this text");
 		mAppOptions.addOption("v", "verbose", false,
 				"Verbose. Show status at each step.");
+		mAppOptions.addOption("l", "list", true, "List. Read the names of the files to check from a file, one per line.");
+		mAppOptions.addOption("t", "threads", true, "Threads. The number of files to check at the same time. Default is one per processor.");
+		mAppOptions.addOption("d", "data", false, "Data. Check data values against VALIDMIN, VALIDMAX and FILLVAL and check the order of DEPEND_0 times.");
+		mAppOptions.addOption("j", "json", false, "JSON. Output one JSON object per line for each message with the members file, rule, severity, entity, offset and message, then a result for each file. Verbose output is not shown.");
+		mAppOptions.addOption("T", "timeout", true, "Timeout. The maximum number of seconds to check each file. Default: no limit.");
+		mAppOptions.addOption("C", "cache", true, "Cache. Keep the results of checking each file in the given cache file and reuse them for files which have not changed.");
+		
+		addRule(this::checkGlobalAttributes);
+		addRule(this::checkVariableNames);
+		addRule(this::checkToolsAttributes);
+		addRule(this::checkISTPAttributes);
+		addRule(this::checkStorage);
+		addRule(this::checkEncoding);
+		addRule(this::checkRecordTypes);
+		addRule(this::checkVXRs);
+		
+		addVariableRule(this::checkCompression);
+		addVariableRule(this::checkRecords);
+		addVariableRule(this::checkDataVariable);
+		addVariableRule(this::checkDimensions);
 	}
 
 	/**
@@ -53,7 +152,7 @@ public class Check {
 	 */
 	public static void main(String[] args) 
 	{
-		Check me = new Check();
+		final Check me = new Check();
 
 		CommandLineParser parser = new PosixParser();
 		try {
@@ -61,33 +160,121 @@ public class Check {
 
 			if (line.hasOption("h")) me.showHelp();
 			if (line.hasOption("v")) me.mVerbose = true;
+			if (line.hasOption("d")) me.mCheckData = true;
+			if (line.hasOption("j")) {
+				me.mJSON = true;
+				me.mVerbose = false;	// Status lines would break the JSON Lines output
+			}
+			
 			// Process arguments looking for variable context
-			if (line.getArgs().length != 1) {
+			ArrayList<String> names = new ArrayList<String>(Arrays.asList(line.getArgs()));
+			if (line.hasOption("l")) names.addAll(Batch.readList(line.getOptionValue("l")));
+			if (names.isEmpty()) {
 				me.showHelp();
 				return;
 			}
+			
+			final ArrayList<String> files = Batch.expand(names);
+			Batch<ArrayList<CheckMessage>> batch = new Batch<ArrayList<CheckMessage>>();
+			if (line.hasOption("t")) batch.setThreads(Integer.parseInt(line.getOptionValue("t")));
+			if (line.hasOption("T")) batch.setTimeout((long) (Double.parseDouble(line.getOptionValue("T")) * 1000));
+			if (me.mVerbose) batch.setThreads(1);	// Keep status output in order
+			
+			final CheckCache cache = line.hasOption("C") ? new CheckCache(line.getOptionValue("C"), RULES_VERSION) : null;
+			if (cache != null) cache.load();
 
-			for (String name : line.getArgs()) {
-				if (me.mVerbose) System.out.println("Processing: " + name);
-				me.checkCDF(name);
-				
-				// Output messages
-				if(me.mMessages.isEmpty()) {
-					System.out.println("PDS4 compliance is OK.");
-				} else {
-					System.out.println("CDF file is PDS4 non-compliant.");
-					System.out.println("Reasons:");
+			batch.run(files, new Batch.Job<ArrayList<CheckMessage>>() {
+				public ArrayList<CheckMessage> process(String name) throws Exception {
+					if (me.mVerbose) System.out.println("Processing: " + name);
+					File file = new File(name);
+					long size = file.length();
+					long modified = file.lastModified();
+					if (cache != null) {
+						ArrayList<CheckMessage> messages = cache.get(file, me.getCacheMode());
+						if (messages != null) {
+							if (me.mVerbose) System.out.println("Unchanged since last checked. Using cached results.");
+							return messages;
+						}
+					}
+					Check check = new Check();
+					check.mVerbose = me.mVerbose;
+					check.mCheckData = me.mCheckData;
+					check.mHashFile = (cache != null);
+					check.checkCDF(name);
+					if (cache != null) cache.put(file, me.getCacheMode(), size, modified, check.mHash, check.mMessages);
+					return check.mMessages;
 				}
 				
-				for(String message : me.mMessages) {
-					System.out.println(message);
+				public void report(String name, ArrayList<CheckMessage> messages, Throwable error) {
+					if (me.mJSON) {
+						me.reportJSON(name, messages, error);
+						return;
+					}
+					if (files.size() > 1) System.out.println("File: " + name);
+					if (error != null) {
+						error.printStackTrace(System.out);
+						return;
+					}
+					
+					// Output messages
+					if( ! CheckMessage.ERROR.equals(CheckMessage.getHighestSeverity(messages))) {
+						System.out.println("PDS4 compliance is OK.");
+						if( ! messages.isEmpty()) System.out.println("Notes:");
+					} else {
+						System.out.println("CDF file is PDS4 non-compliant.");
+						System.out.println("Reasons:");
+					}
+					
+					for(CheckMessage message : messages) {
+						System.out.println(message);
+					}
 				}
-			}
+			});
+			
+			if (cache != null) cache.save();
 		} catch (Exception e) {
 			e.printStackTrace(System.out);
 		}
 	}
 	
+	/**
+	 * Output the result of checking a file as JSON Lines.
+	 * Each message is a line, followed by a line with the rule "result" giving the overall result.
+	 * The severity of the result is the highest severity of the messages. The file is non-compliant only if there is an error.
+	 * A file which could not be checked or took too long is a single line with the rule "exception" or "timeout".
+	 * Output is flushed after each file so results can be read while other files are being checked.
+	 * 
+	 * @param name the pathname of the file.
+	 * @param messages the messages for the file or null if the file could not be checked.
+	 * @param error the reason the file could not be checked or null.
+	 */
+	public void reportJSON(String name, ArrayList<CheckMessage> messages, Throwable error) {
+		StringBuilder buffer = new StringBuilder();
+		if (error != null) {
+			String rule = (error instanceof TimeoutException) ? "timeout" : "exception";
+			String text = (error.getMessage() == null) ? error.toString() : error.getMessage();
+			buffer.append(new CheckMessage(rule, "", -1, text).toJSON(name)).append('\n');
+		} else {
+			for(CheckMessage message : messages) buffer.append(message.toJSON(name)).append('\n');
+			String severity = CheckMessage.getHighestSeverity(messages);
+			CheckMessage result = CheckMessage.ERROR.equals(severity)
+					? new CheckMessage("result", CheckMessage.ERROR, "", -1, "CDF file is PDS4 non-compliant.")
+					: new CheckMessage("result", severity == null ? CheckMessage.INFO : severity, "", -1, "PDS4 compliance is OK.");
+			buffer.append(result.toJSON(name)).append('\n');
+		}
+		System.out.print(buffer);
+		System.out.flush();
+	}
+	
+	/**
+	 * Retrieve the options which change the results of a check.
+	 * 
+	 * @return the mode used to key cached results.
+	 */
+	public String getCacheMode() {
+		return mCheckData ? "data" : "metadata";
+	}
+	
 	/**
 	 * Display help information.
 	 **/
@@ -98,7 +285,7 @@ public class Check {
 		System.out.println(mOverview);
 		System.out.println("");
 		System.out.println("Usage: java " + getClass().getName()
-				+ " [options] file");
+				+ " [options] file|directory|pattern ...");
 		System.out.println("");
 		System.out.println("Options:");
 
@@ -116,6 +303,9 @@ public class Check {
 	 * Parse a CDF file and check for compliance with CDF tools, ISTP/CDF and PDS archiving requirements
 	 * for structure and content.
 	 * 
+	 * The file must be readable and have a GDR, then each {@link Rule} is applied in the order it was added.
+	 * If a hash of the file is requested it is computed from the same read as parsing and set when the check is complete.
+	 * 
 	 * @param pathname the file system path and filename to the CDF file.
 	 * 
 	 * @throws Exception if any non-recoverable errors occur.
@@ -123,219 +313,298 @@ public class Check {
 	public void checkCDF(String pathname)
 			throws Exception
 	{
-		DataInputStream in = new DataInputStream(new FileInputStream(pathname));
-		String	stat = "";
+		// CDF - only descriptors and attributes are needed
+		CDF cdf = new CDF();
+		cdf.setMetadataOnly(true);
+		if(mHashFile) cdf.setDigestAlgorithms(FileDigest.SHA_256);
+		cdf.parse(new MappedFile(pathname));
 		
-		// CDF
-		CDF cdf = new CDF(in);
+		checkCDF(cdf, pathname);
+		if(mHashFile) mHash = cdf.getDigest(FileDigest.SHA_256);
+	}
+	
+	/**
+	 * Check a parsed CDF file.
+	 * 
+	 * @param cdf the parsed {@link CDF}.
+	 * @param pathname the file system path and filename to the CDF file.
+	 * 
+	 * @throws Exception if any non-recoverable errors occur.
+	 */
+	private void checkCDF(CDF cdf, String pathname)
+			throws Exception
+	{
 
 		if(mVerbose) {
 			System.out.println("Version: " + Constant.toHexString(cdf.getVersion()));
 			System.out.println("Compression: " + Constant.toHexString(cdf.getCompression()));
 		}
 		if(cdf.mVersion < 0xCDF30000) {
-			mMessages.add("Version is prior to 3.0.");
+			mMessages.add(new CheckMessage("version", "", -1, "Version is prior to 3.0."));
 			return;
 		}
-		if(cdf.isCompressed()) {
-			mMessages.add("File is compressed.");
-			return;
+		if(cdf.isCompressed()) {	// Content is checked after decompression
+			mMessages.add(new CheckMessage("file-compression", "", cdf.getCCR() == null ? -1 : cdf.getCCR().getOffset(), "File is compressed."));
 		}
 
 		GDRecord gdr = cdf.getGDR();
 		if(gdr == null) {
-			mMessages.add("Error parsing CDF. There is no GDR record.");
+			mMessages.add(new CheckMessage("gdr", "", -1, "Error parsing CDF. There is no GDR record."));
 			return;
 		}
 		if(gdr.mUIRhead != 0L) {
-			mMessages.add("There are unused records in the CDF, most likely remenants of deleted or overwritten variables or attributes. These must be removed.");
-			mMessages.add("The CDF tool 'cdfconvert <src> <dest>' can fix this issue in many cases. ");
-			mMessages.add("Unused record contains: " + cdf.getUIR(gdr.mUIRhead).mSize + " bytes at offset: " + cdf.getUIR(gdr.mUIRhead).mOffset + " bytes.");
+			UIRecord uir = cdf.getUIR(gdr.mUIRhead);
+			mMessages.add(new CheckMessage("unused-records", "", uir.mOffset, "There are unused records in the CDF, most likely remenants of deleted or overwritten variables or attributes. These must be removed."));
+			mMessages.add(new CheckMessage("unused-records", CheckMessage.INFO, "", uir.mOffset, "The CDF tool 'cdfconvert <src> <dest>' can fix this issue in many cases. "));
+			mMessages.add(new CheckMessage("unused-records", CheckMessage.INFO, "", uir.mOffset, "Unused record contains: " + uir.mSize + " bytes at offset: " + uir.mOffset + " bytes."));
 			
 		}
 		if(cdf.hasSparseness()) {
-			mMessages.add("There are sparse records in the CDF. These must be removed.");
+			mMessages.add(new CheckMessage("sparse-records", "", -1, "There are sparse records in the CDF. These must be removed."));
 			
 		}
 
-		// Check for CDF tools compliance
-		String[] CDFToolsAttributes =  { "FORMAT", "VALIDMIN", "VALIDMAX", "FILLVAL",
-				"MONOTON", "SCALEMIN", "SCALEMAX"
-				};
-		
-		// Check for required attributes.
-		// From ISTP Spec. http://spdf.gsfc.nasa.gov/istp_guide/istp_guide.html
-		String[] ISTPGlobalAttributes =  { "Project", "Source_name", "Discipline", "Data_type",
-				"Descriptor", "Data_version", "Logical_file_id", "PI_name", "PI_affiliation",
-				"TEXT", "Instrument_type", "Mission_group", "Logical_source", "Logical_source_description"
-				};
-		
-		/*
-		String[] ISTPGlobalAttributesOptional = { "Generated_by", "Generation_date", "HTTP_LINK", "LINK_TEXT", "LINK_TITLE",
-				"MODS ", "Parents ", "Rules_of_use", "Skeleton_version", "Software_version",
-				"Time_resolution", "TITLE", "Validate"};
-		*/
-		
-		stat = "";
+		CheckModel model = new CheckModel(cdf);
+		for(Rule rule : mRules) {
+			if(Thread.interrupted()) throw new InterruptedIOException("Check of '" + pathname + "' was interrupted.");
+			rule.check(model, mMessages);
+		}
+		if(mCheckData) checkData(model, mMessages);
+	}
+	
+	/**
+	 * Add a check of the whole file. Rules are applied in the order they are added.
+	 * 
+	 * @param rule the {@link Rule} to add.
+	 */
+	public void addRule(Rule rule) { mRules.add(rule); }
+	
+	/**
+	 * Add a check of each zVariable. Rules are applied to each variable in the order they are added.
+	 * 
+	 * @param rule the {@link VariableRule} to add.
+	 */
+	public void addVariableRule(VariableRule rule) { mVariableRules.add(rule); }
+	
+	/**
+	 * Report each attribute in a list which is not defined.
+	 * 
+	 * @param rule the identifier of the rule.
+	 * @param title the description of the attributes for verbose output.
+	 * @param names the names of the attributes. Names with alternates (containing "/") are skipped.
+	 * @param global true for global attributes, false for variable attributes.
+	 * @param prefix the text of the message before the name of a missing attribute.
+	 * @param model the indexed CDF.
+	 * @param messages the list of messages.
+	 */
+	private void checkAttributes(String rule, String title, String[] names, boolean global, String prefix, CheckModel model, ArrayList<CheckMessage> messages) {
 		if(mVerbose) {
-			System.out.print("Checking Global ISTP attributes:");
+			System.out.print(title);
 			String delim = " ";
-			for(String v : ISTPGlobalAttributes) {
+			for(String v : names) {
 				System.out.print(delim + v);
 				delim = ", ";
 			}
 			System.out.println("");
 		}
-		for(String v : ISTPGlobalAttributes) {
-			if(cdf.getGlobalAttribute(v) == null) {
-				mMessages.add("Global ISTP required attribute '" + v + "' is missing.");
+		String stat = "";
+		for(String v : names) {
+			if(v.contains("/")) continue;	// Skip ones with alternates
+			ADRecord adr = global ? model.getGlobalAttribute(v) : model.getVariableAttribute(v);
+			if(adr == null) {
+				messages.add(new CheckMessage(rule, v, -1, prefix + " '" + v + "' is missing."));
 				stat = "Missing one or more attributes.";
 			}
 		}
 		if(stat.isEmpty()) stat = " OK";
 		if(mVerbose)  System.out.println(stat);
-		
-		
-		// Check variables
-		// According to ISTP spec.
-		// CDF Variable names must begin with a letter and can contain numbers and undercores, but no other special characters.
+	}
+	
+	/**
+	 * Check for the global attributes required by ISTP.
+	 * From ISTP Spec. http://spdf.gsfc.nasa.gov/istp_guide/istp_guide.html
+	 * 
+	 * @param model the indexed CDF.
+	 * @param messages the list of messages.
+	 */
+	void checkGlobalAttributes(CheckModel model, ArrayList<CheckMessage> messages) {
+		checkAttributes("istp-global-attribute", "Checking Global ISTP attributes:", ISTP_GLOBAL_ATTRIBUTES, true, "Global ISTP required attribute", model, messages);
+	}
+	
+	/**
+	 * Check the names of variables.
+	 * According to ISTP spec. CDF Variable names must begin with a letter and can contain numbers and undercores, but no other special characters.
+	 * 
+	 * @param model the indexed CDF.
+	 * @param messages the list of messages.
+	 */
+	void checkVariableNames(CheckModel model, ArrayList<CheckMessage> messages) {
 		// Data is always either Real or Integer type. Data is always time (record) varying, 
 		// but can be of any dimensionality. Real or Integer data are always defined as having one element. 
-
 		if(mVerbose) {
 			System.out.println("Variables: Checking variable types, attributes, compression and physical storage.");
 		}
 		
-		ArrayList<String> names = cdf.getVariableNames();
-		for(String name : names) {
+		ArrayList<VDRecord> vdrs = new ArrayList<VDRecord>(model.getRVDRs());
+		vdrs.addAll(model.getZVDRs());
+		for(VDRecord vdr : vdrs) {
+			String name = vdr.mName;
 			if( ! Character.isLetter(name.charAt(0)) ) {
-				mMessages.add("Variable name '" + name + "' does not start with a letter.");
-				stat += " Bad variable name";				
+				messages.add(new CheckMessage("variable-name", name, vdr.getOffset(), "Variable name '" + name + "' does not start with a letter."));
 			}
-			if( ! name.matches("[a-zA-Z0-9_]+") ) {
-				mMessages.add("Variable name '" + name + "' contains special characters.");
-				stat += " Bad variable name";				
+			if( ! NAME_PATTERN.matcher(name).matches() ) {
+				messages.add(new CheckMessage("variable-name", name, vdr.getOffset(), "Variable name '" + name + "' contains special characters."));
 			}
 		}
-		if(mVerbose) {
-			System.out.print("Checking for CDF Tools attributes:");
-			String delim = " ";
-			for(String v : CDFToolsAttributes) {
-				System.out.print(delim + v);
-				delim = ", ";
-			}
-			System.out.println("");
+	}
+	
+	/**
+	 * Check for the variable attributes required by CDF tools.
+	 * 
+	 * @param model the indexed CDF.
+	 * @param messages the list of messages.
+	 */
+	void checkToolsAttributes(CheckModel model, ArrayList<CheckMessage> messages) {
+		checkAttributes("cdf-tools-attribute", "Checking for CDF Tools attributes:", CDF_TOOLS_ATTRIBUTES, false, "CDF tool required attribute", model, messages);
+	}
+	
+	/**
+	 * Check for the variable attributes required by ISTP.
+	 * 
+	 * @param model the indexed CDF.
+	 * @param messages the list of messages.
+	 */
+	void checkISTPAttributes(CheckModel model, ArrayList<CheckMessage> messages) {
+		checkAttributes("istp-variable-attribute", "Checking for ISTP variable attributes:", ISTP_VARIABLE_ATTRIBUTES, false, "ISTP required attribute", model, messages);
+	}
+	
+	/**
+	 * Check the physical storage of each variable. Each {@link VariableRule} is applied to each zVariable.
+	 * 
+	 * @param model the indexed CDF.
+	 * @param messages the list of messages.
+	 */
+	void checkStorage(CheckModel model, ArrayList<CheckMessage> messages) {
+		if(mVerbose)  System.out.println("Checking physical storage.");
+
+		if( ! model.getRVDRs().isEmpty()) {
+			messages.add(new CheckMessage("r-variables", "", model.getRVDRs().get(0).getOffset(), "File contains r-Variables. This is not allowed."));			
 		}
-		stat = "";
-		for(String v : CDFToolsAttributes) {
-			if(cdf.getVariableAttribute(v) == null) {
-				mMessages.add("CDF tool required attribute '" + v + "' is missing.");
-				stat = "Missing one or more attributes.";
-			}
+		
+		for(VDRecord vdr : model.getZVDRs()) {
+			if(mVerbose) System.out.print("   " + vdr.mName + ":");
+			Variable variable = model.getVariable(vdr);
+			String stat = "";
+			for(VariableRule rule : mVariableRules) stat += rule.check(model, vdr, variable, messages);
+			if(stat.isEmpty()) stat = " OK";
+			if(mVerbose)  System.out.println(stat);
+		}
+	}
+	
+	/**
+	 * Check for compression at the variable level.
+	 * 
+	 * @param model the indexed CDF.
+	 * @param vdr the {@link VDRecord} of the variable.
+	 * @param variable the description of the variable.
+	 * @param messages the list of messages.
+	 * 
+	 * @return the status for verbose output.
+	 */
+	String checkCompression(CheckModel model, VDRecord vdr, Variable variable, ArrayList<CheckMessage> messages) {
+		if((vdr.mFlags & Constant.FLAG_COMPRESSION) == Constant.FLAG_COMPRESSION) {
+			messages.add(new CheckMessage("variable-compression", vdr.mName, vdr.getOffset(), "Variable '" + vdr.mName + "' is compressed. You can use the CDF tool 'cdfconvert' to remove the compression."));
+			return " Compressed";
 		}
-		if(stat.isEmpty()) stat = " OK";
-		if(mVerbose)  System.out.println(stat);
-
-		// Check for ISTP compliance
-		String[] ISTPVariableAttributes =  { "CATDESC", "DEPEND_0", "DISPLAY_TYPE", "FIELDNAM",
-				"FORM_PTR", "LABELAXIS/LABEL_PTR_i", "UNITS/UNIT_PTR", "VAR_TYPE"
-				};
 		
-		if(mVerbose) {
-			System.out.print("Checking for ISTP variable attributes:");
-			String delim = " ";
-			for(String v : ISTPVariableAttributes) {
-				System.out.print(delim + v);
-				delim = ", ";
-			}
-			System.out.println("");
+		return "";
+	}
+	
+	/**
+	 * Check if the variable has data (is not virtual) and the records are contiguous.
+	 * 
+	 * @param model the indexed CDF.
+	 * @param vdr the {@link VDRecord} of the variable.
+	 * @param variable the description of the variable.
+	 * @param messages the list of messages.
+	 * 
+	 * @return the status for verbose output.
+	 */
+	String checkRecords(CheckModel model, VDRecord vdr, Variable variable, ArrayList<CheckMessage> messages) {
+		VXRecord vxr = model.getCDF().getVXR(vdr.mVXRHead);
+		if(vxr == null) {	// Not data - must be virtual
+			messages.add(new CheckMessage("virtual-variable", vdr.mName, vdr.getOffset(), "Variable '" + vdr.mName + "' does not contain any data and may be calculated (virtual)."));				
+			return " Virtual";
 		}
-		stat = "";
-		for(String v : ISTPVariableAttributes) {
-			if(v.contains("/")) continue;	// Skip ones with alternates
-			if(cdf.getVariableAttribute(v) == null) {
-				mMessages.add("ISTP required attribute '" + v + "' is missing.");
-				stat = "Missing one or more attributes.";
-			}
+		if(vxr.mNusedEntries > 1) {
+			messages.add(new CheckMessage("fragmented-variable", vdr.mName, vxr.getOffset(), "Records for variable '" + vdr.mName + "' are fragmented (not contiguous). Running the CDF tool 'cdfconvert' on the data file will fix this."));
+			return " Fragmented";
 		}
-		if(stat.isEmpty()) stat = " OK";
-		if(mVerbose)  System.out.println(stat);
-
-		if(mVerbose)  System.out.println("Checking physical storage.");
-
-   		VDRecord vdr = cdf.getVDR(cdf.getGDR().mRVDRhead);
-		if(vdr != null) {
-			mMessages.add("File contains r-Variables. This is not allowed.");			
+		
+		return "";
+	}
+	
+	/**
+	 * Check if the records of a data variable vary and the data type is allowed.
+	 * 
+	 * @param model the indexed CDF.
+	 * @param vdr the {@link VDRecord} of the variable.
+	 * @param variable the description of the variable.
+	 * @param messages the list of messages.
+	 * 
+	 * @return the status for verbose output.
+	 */
+	String checkDataVariable(CheckModel model, VDRecord vdr, Variable variable, ArrayList<CheckMessage> messages) {
+		if(variable == null || ! variable.getAttributeValue("VAR_TYPE").equals("data")) return "";
+		
+		String stat = "";
+		if((variable.mFlags & Constant.FLAG_VARIANCE) != Constant.FLAG_VARIANCE ) {
+			messages.add(new CheckMessage("record-variance", vdr.mName, vdr.getOffset(), "Records for variable '" + vdr.mName + "' do not vary. If the variable is a constant you could set VAR_TYPE to 'support_data' to make it conforming."));
+			stat += " Record Variant";			
+		}
+		switch(variable.getDataType()) {
+		case Constant.CDF_EPOCH16:
+			messages.add(new CheckMessage("data-type", vdr.mName, vdr.getOffset(), "Variable '" + vdr.mName + "' has the non-allowed data type of " + Constant.getDataTypeName(variable.getDataType()) + "."));
+			stat += " Data Type";			
 		}
 		
-		vdr = cdf.getVDR(cdf.getGDR().mZVDRhead);
-		while(vdr != null) {
-			if(mVerbose) System.out.print("   " + vdr.mName + ":");
-			stat = "";
-			
-			// Check for compression at the variable level
-			if(vdr.mFlags == Constant.FLAG_COMPRESSION) {
-				mMessages.add("Variable '" + vdr.mName + "' is compressed. You can use the CDF tool 'cdfconvert' to remove the compression.");
-				stat += " Compressed";
-			}
-			
-			// Check if virtual
-			VXRecord vxr = cdf.getVXR(vdr.mVXRHead);
-			if(vxr == null) {	// Not data - must be virtual
-				mMessages.add("Variable '" + vdr.mName + "' does not contain any data and may be calculated (virtual).");				
-				stat += " Virtual";
-			} else {
-				if(vxr.mNusedEntries > 1) {
-					mMessages.add("Records for variable '" + vdr.mName + "' are fragmented (not contiguous). Running the CDF tool 'cdfconvert' on the data file will fix this.");
-					stat += " Fragmented";
-				}
-			}
-			
-			// Check if record variance and data type conforms
-			// We do this on the processed variable stack so we can access the attributes
-			for(Variable v : cdf.getVariables()) {
-				if(v.getAttributeValue("VAR_TYPE").equals("data")) {
-					if((v.mFlags & Constant.FLAG_VARIANCE) != Constant.FLAG_VARIANCE ) {
-						mMessages.add("Records for variable '" + vdr.mName + "' do not vary. If the variable is a constant you could set VAR_TYPE to 'support_data' to make it conforming.");
-						stat += " Record Variant";			
-					}
-					switch(v.getDataType()) {
-					case Constant.CDF_EPOCH16:
-						mMessages.add("Variable '" + vdr.mName + "' has the non-allowed data type of " + Constant.getDataTypeName(v.getDataType()) + ".");
-						stat += " Data Type";			
-					}
-				}
-			}
-			
-			// Check if invariant dimensions
-			int vStart = 0;
-			if(vdr.mDataType != Constant.CDF_CHAR) {
-				vStart = 1;	// Character fields are allowed to have the first dimension to be variant
-			}
-			if(vdr.mType == Constant.RECORD_ZVDR) {
-				for(int i = vStart; i < vdr.mZNumDims; i++) {
-					if(vdr.mDimVarys[i] != -1) {
-						mMessages.add("Variable '" + vdr.mName + "' dimensions are not constant.");
-						stat += " Variant";
-					}
-				}
-			} else {
-				for(int i = vStart; i < vdr.mRNumDims; i++) {
-					if(vdr.mDimVarys[i] != -1) {
-						mMessages.add("Variable '" + vdr.mName + "' dimensions are not constant.");
-						stat += " Variant";
-					}
-				}					
+		return stat;
+	}
+	
+	/**
+	 * Check if the dimensions of the variable are invariant.
+	 * 
+	 * @param model the indexed CDF.
+	 * @param vdr the {@link VDRecord} of the variable.
+	 * @param variable the description of the variable.
+	 * @param messages the list of messages.
+	 * 
+	 * @return the status for verbose output.
+	 */
+	String checkDimensions(CheckModel model, VDRecord vdr, Variable variable, ArrayList<CheckMessage> messages) {
+		int vStart = 0;
+		if(vdr.mDataType != Constant.CDF_CHAR) {
+			vStart = 1;	// Character fields are allowed to have the first dimension to be variant
+		}
+		int count = (vdr.mType == Constant.RECORD_ZVDR) ? vdr.mZNumDims : vdr.mRNumDims;
+		for(int i = vStart; i < count; i++) {
+			if(vdr.mDimVarys[i] != -1) {
+				messages.add(new CheckMessage("dimension-variance", vdr.mName, vdr.getOffset(), "Variable '" + vdr.mName + "' dimensions are not constant."));
+				return " Variant";
 			}
-
-			if(stat.isEmpty()) stat = " OK";
-			if(mVerbose)  System.out.println(stat);
-			
-			vdr = cdf.getVDR(vdr.mVDRnext);
 		}
 		
-		// Print Assessment
-		switch(cdf.getCDR().getEncoding()) {
+		return "";
+	}
+	
+	/**
+	 * Check the encoding of the CDF.
+	 * 
+	 * @param model the indexed CDF.
+	 * @param messages the list of messages.
+	 */
+	void checkEncoding(CheckModel model, ArrayList<CheckMessage> messages) {
+		switch(model.getCDF().getCDR().getEncoding()) {
 		case 1:	// NETWORK_ENCODING
 		case 2: // SUN_ENCODING
 		case 5: // SGi_ENCODING
@@ -345,41 +614,204 @@ public class Check {
 			if(mVerbose) System.out.println("Encoding is OK.");
 			break;
 		default:
-			mMessages.add("Encoding is not MSB.");
+			messages.add(new CheckMessage("encoding", "", model.getCDF().getCDR().getOffset(), "Encoding is not MSB."));
 			break;
 		}
-		
-		// Check for disallowed records
-		for(Record rec : cdf.mRecordList) {
+	}
+	
+	/**
+	 * Check for disallowed records. Each kind of record is reported once.
+	 * 
+	 * @param model the indexed CDF.
+	 * @param messages the list of messages.
+	 */
+	void checkRecordTypes(CheckModel model, ArrayList<CheckMessage> messages) {
+		LinkedHashMap<String, CheckMessage> found = new LinkedHashMap<String, CheckMessage>();	// First record of each kind
+		for(Record rec : model.getCDF().mRecordList) {
+			String text = null;
 			switch(rec.getType()) {
 			case Constant.RECORD_UIR:	// UIR - Unused
 				// Unused records, but may not be referenced - Check of referenced UIR is already done.
 				// mMessages.add("There are unused variables in the CDF. These must be removed.");
 				break;
 			case Constant.RECORD_RVDR: // rVDR - Non-contiguous storage format
-				mMessages.add("There are rVariables present. These need to be converted to zVariables.");
+				text = "There are rVariables present. These need to be converted to zVariables.";
 				break;
 			case Constant.RECORD_CCR:	// CCR - Compressed
-				mMessages.add("There are compressed records in the CDF.");
+				text = "There are compressed records in the CDF.";
 				break;
 			case Constant.RECORD_CPR:	// CPR - Compressed
-				mMessages.add("There are compressed parameters in the CDF.");
+				text = "There are compressed parameters in the CDF.";
 				break;
 			case Constant.RECORD_SPR:	// SPR - Sparse
-				mMessages.add("There are sparse parameters in the CDF.");
+				text = "There are sparse parameters in the CDF.";
 				break;
 			case Constant.RECORD_CVVR:	// CVVR - Compressed
-				mMessages.add("There are compressed variables in the CDF.");
+				text = "There are compressed variables in the CDF.";
 				break;					
 			}
+			if(text != null && ! found.containsKey(text)) {
+				found.put(text, new CheckMessage("record-type", Constant.getRecTypeName(rec.getType()), rec.getOffset(), text));
+			}
 		}
 
-		// Scan VXR list
-		for(VXRecord vxr : cdf.mVXRList) {
-			if(vxr.mVXRnext != 0L) mMessages.add("Variable records are fragmented. A possible cause could be that the records were written incrementally. Re-writing the file may correct the problem.");
+		// Compressed variable records are not kept when parsing only metadata
+		String text = "There are compressed variables in the CDF.";
+		for(VDRecord v : model.getCDF().mVDRList) {
+			if(found.containsKey(text)) break;
+			if((v.mFlags & Constant.FLAG_COMPRESSION) != Constant.FLAG_COMPRESSION) continue;
+			RecordIndex index = model.getCDF().getRecordIndex(v);
+			if(index.getBlockCount() > 0) {
+				found.put(text, new CheckMessage("record-type", Constant.getRecTypeName(Constant.RECORD_CVVR), index.getOffset(0), text));
+			}
 		}
+		
+		messages.addAll(found.values());
+	}
+	
+	/**
+	 * Check if the VXRs of any variable are chained (fragmented).
+	 * 
+	 * @param model the indexed CDF.
+	 * @param messages the list of messages.
+	 */
+	void checkVXRs(CheckModel model, ArrayList<CheckMessage> messages) {
+		for(VXRecord vxr : model.getCDF().mVXRList) {
+			if(vxr.mVXRnext != 0L) {
+				messages.add(new CheckMessage("fragmented-vxr", "", vxr.getOffset(), "Variable records are fragmented. A possible cause could be that the records were written incrementally. Re-writing the file may correct the problem."));
+				break;
+			}
+		}
+	}
+	
+	/**
+	 * Check the data values of each data variable against its attributes.
+	 * 
+	 * Values are counted which are outside VALIDMIN and VALIDMAX, are NaN but NaN is not the fill value
+	 * or are the pad value declared by the variable (never written). Stored values which equal the default pad value
+	 * of the data type are ordinary values. Records of a sparse variable which are not stored are not examined.
+	 * A fill value within the valid range is reported.
+	 * The times of each DEPEND_0 variable are checked to be in the order given by its MONOTON attribute,
+	 * or increasing if there is none.
+	 * The data of each variable is read once. Blocks of all variables and the DEPEND_0 variables
+	 * are checked at the same time using the common {@link ForkJoinPool}.
+	 * 
+	 * @param model the indexed CDF.
+	 * @param messages the list of messages.
+	 * 
+	 * @throws IOException if the data can not be read.
+	 */
+	public void checkData(CheckModel model, ArrayList<CheckMessage> messages)
+			throws IOException
+	{
+		CDF cdf = model.getCDF();
+		if(mVerbose)  System.out.println("Checking data values.");
+		if(cdf.isCompressed()) {
+			messages.add(new CheckMessage("data-skipped", CheckMessage.WARNING, "", -1, "Data values were not checked because the file is compressed."));
+			return;
+		}
+		
+		ForkJoinPool pool = ForkJoinPool.commonPool();
+		
+		// Order of DEPEND_0 times is checked while the statistics are determined
+		LinkedHashMap<String, Future<Long>> breaks = new LinkedHashMap<String, Future<Long>>();
+		AtomicBoolean stop = new AtomicBoolean(false);	// Pool threads are not interrupted, so running checks are stopped with a flag
+		try {
+			checkData(model, messages, pool, breaks, stop);
+		} finally {
+			stop.set(true);
+			for(Future<Long> future : breaks.values()) future.cancel(false);
+		}
+	}
+	
+	/**
+	 * Check the data values of each data variable using a pool.
+	 * 
+	 * @param model the indexed CDF.
+	 * @param messages the list of messages.
+	 * @param pool the {@link ForkJoinPool} to run the checks.
+	 * @param breaks the map to add the check of the order of times of each DEPEND_0 variable to.
+	 * @param stop the flag which is set to stop the checks of the order of times.
+	 * 
+	 * @throws IOException if the data can not be read.
+	 * @throws InterruptedIOException if the thread is interrupted.
+	 */
+	private void checkData(CheckModel model, ArrayList<CheckMessage> messages, ForkJoinPool pool, LinkedHashMap<String, Future<Long>> breaks, AtomicBoolean stop)
+			throws IOException
+	{
+		CDF cdf = model.getCDF();
+		for(Variable v : model.getDataVariables()) {
+			String depend = v.getAttributeValue("DEPEND_0").trim();
+			if(depend.isEmpty() || breaks.containsKey(depend)) continue;
+			
+			VDRecord epochVDR = model.getVDR(depend);
+			if(epochVDR == null) {
+				messages.add(new CheckMessage("depend-0", v.getName(), offset(model, v.getName()), "DEPEND_0 of variable '" + v.getName() + "' is '" + depend + "' which does not exist."));
+				continue;
+			}
+			if( ! TimeRange.isTimeType(epochVDR.mDataType)) continue;
+			
+			Variable e = model.getVariable(depend);
+			final boolean increasing = (e == null) || ! e.getAttributeValue("MONOTON").trim().equalsIgnoreCase("DECREASE");
+			final VariableReader epoch = new VariableReader(cdf, epochVDR);
+			breaks.put(depend, pool.submit(() -> TimeRange.countBreaks(epoch, increasing, stop)));
+		}
+		
+		for(Statistics s : Statistics.compute(cdf, pool)) {
+			String name = s.getName();
+			long offset = offset(model, name);
+			String stat = "";
+			if(s.getBelowMinCount() > 0) {
+				messages.add(new CheckMessage("valid-min", name, offset, "Variable '" + name + "' has " + s.getBelowMinCount() + " values less than VALIDMIN."));
+				stat += " Range";
+			}
+			if(s.getAboveMaxCount() > 0) {
+				messages.add(new CheckMessage("valid-max", name, offset, "Variable '" + name + "' has " + s.getAboveMaxCount() + " values greater than VALIDMAX."));
+				if( ! stat.contains("Range")) stat += " Range";
+			}
+			if(s.getNaNCount() > 0 && ! (s.hasFill() && Double.isNaN(s.getFill()))) {
+				messages.add(new CheckMessage("nan", name, offset, "Variable '" + name + "' has " + s.getNaNCount() + " NaN values which are not the fill value."));
+				stat += " NaN";
+			}
+			if(s.hasPad() && s.getPadCount() > 0) {
+				messages.add(new CheckMessage("pad", name, offset, "Variable '" + name + "' has " + s.getPadCount() + " values which are the declared pad value and may not have been written."));
+				stat += " Pad";
+			}
+			double[] min = s.getValidMin();
+			double[] max = s.getValidMax();
+			if(s.hasFill() && min.length == 1 && max.length == 1 && s.getFill() >= min[0] && s.getFill() <= max[0]) {
+				messages.add(new CheckMessage("fill-value", name, offset, "FILLVAL of variable '" + name + "' is within VALIDMIN and VALIDMAX."));
+				stat += " Fill";
+			}
+			if(stat.isEmpty()) stat = " OK";
+			if(mVerbose)  System.out.println("   " + name + ":" + stat + " (" + s.getValidCount() + " values, " + s.getFillCount() + " fill)");
+		}
+		
+		for(Map.Entry<String, Future<Long>> entry : breaks.entrySet()) {
+			long count = 0;
+			try {
+				count = entry.getValue().get();
+			} catch(ExecutionException e) {
+				throw VariableReader.getIOException(e);
+			} catch(InterruptedException e) {
+				throw new InterruptedIOException("Interrupted while checking the order of '" + entry.getKey() + "'.");
+			}
+			if(count > 0) messages.add(new CheckMessage("time-order", entry.getKey(), offset(model, entry.getKey()), "Times in DEPEND_0 variable '" + entry.getKey() + "' are out of order " + count + " times."));
+			if(mVerbose)  System.out.println("   " + entry.getKey() + ":" + (count > 0 ? " Order" : " OK"));
+		}
+	}
 
-				
-		in.close();
+	/**
+	 * Find the offset of the VDR of a variable.
+	 * 
+	 * @param model the indexed CDF.
+	 * @param name the name of the variable.
+	 * 
+	 * @return the file offset of the VDR or -1 if there is no variable with the name.
+	 */
+	private static long offset(CheckModel model, String name) {
+		VDRecord vdr = model.getVDR(name);
+		
+		return (vdr == null) ? -1 : vdr.getOffset();
 	}
 }
@@ -0,0 +1,260 @@
+package pds.cdf;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A persistent cache of the results of checking files.
+ *
+ * Results are kept for each file by path and mode with the size, modification time and a SHA-256 hash of the content
+ * at the time the file was checked. The mode names the options which change the results, so the results of
+ * checking a file with different options are kept side by side. A file with the same size and modification time
+ * is unchanged. If only the modification time differs the content is hashed and compared, so a file which was
+ * copied or touched is not checked again. The cache is discarded when the version of the rules changes.
+ *
+ * Lookups and updates can be made concurrently from many threads.
+ *
+ * @author tking
+ *
+ */
+public class CheckCache {
+	static final String HEADER = "# pds.cdf.Check cache";
+
+	/**
+	 * The results of checking a file.
+	 */
+	static class Entry {
+		String mPath = "";
+		String mMode = "";
+		long mSize = 0;
+		long mModified = 0;
+		String mHash = "";
+		ArrayList<CheckMessage> mMessages = new ArrayList<CheckMessage>();
+	}
+
+	String mPathname = null;
+	String mVersion = "";
+	ConcurrentHashMap<String, Entry> mEntries = new ConcurrentHashMap<String, Entry>();	// By key of path and mode
+
+	/**
+	 * Create an instance.
+	 *
+	 * @param pathname the file system path and file name of the cache file.
+	 * @param version the version of the rules used to check files. Results for other versions are discarded.
+	 */
+	public CheckCache(String pathname, String version) {
+		mPathname = pathname;
+		mVersion = version;
+	}
+
+	/**
+	 * Read the cache file. A missing file or one written for a different version leaves the cache empty.
+	 *
+	 * @throws IOException if the file can not be read or is not a cache file.
+	 */
+	public void load() throws IOException {
+		mEntries.clear();
+		File file = new File(mPathname);
+		if( ! file.exists()) return;
+
+		BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8));
+		try {
+			String line = reader.readLine();
+			if(line == null) return;
+			String[] part = line.split("\t", -1);
+			if( ! part[0].equals(HEADER)) throw new IOException("'" + mPathname + "' is not a check cache file.");
+			if(part.length < 2 || ! unescape(part[1]).equals(mVersion)) return;	// Rules have changed
+
+			Entry entry = null;
+			while((line = reader.readLine()) != null) {
+				part = line.split("\t", -1);
+				if(part[0].equals("F") && part.length == 6) {
+					entry = new Entry();
+					entry.mPath = unescape(part[1]);
+					entry.mMode = unescape(part[2]);
+					entry.mSize = Long.parseLong(part[3]);
+					entry.mModified = Long.parseLong(part[4]);
+					entry.mHash = part[5];
+					mEntries.put(key(entry.mPath, entry.mMode), entry);
+				} else if(part[0].equals("M") && part.length == 6 && entry != null) {
+					entry.mMessages.add(new CheckMessage(unescape(part[1]), unescape(part[2]), unescape(part[3]), Long.parseLong(part[4]), unescape(part[5])));
+				} else {
+					throw new IOException("Invalid line in check cache file '" + mPathname + "': " + line);
+				}
+			}
+		} finally {
+			reader.close();
+		}
+	}
+
+	/**
+	 * Write the cache file. The file is written to a temporary file then renamed, so an interrupted
+	 * write does not leave a partial cache.
+	 *
+	 * @throws IOException if the file can not be written.
+	 */
+	public void save() throws IOException {
+		File file = new File(mPathname);
+		File temp = new File(mPathname + ".tmp");
+
+		BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(temp), StandardCharsets.UTF_8));
+		try {
+			writer.write(HEADER + "\t" + escape(mVersion) + "\n");
+			for(Map.Entry<String, Entry> item : new TreeMap<String, Entry>(mEntries).entrySet()) {
+				Entry entry = item.getValue();
+				writer.write("F\t" + escape(entry.mPath) + "\t" + escape(entry.mMode) + "\t" + entry.mSize + "\t" + entry.mModified + "\t" + entry.mHash + "\n");
+				for(CheckMessage message : entry.mMessages) {
+					writer.write("M\t" + escape(message.getRule()) + "\t" + escape(message.getSeverity()) + "\t" + escape(message.getEntity())
+							+ "\t" + message.getOffset() + "\t" + escape(message.getText()) + "\n");
+				}
+			}
+		} finally {
+			writer.close();
+		}
+		Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/**
+	 * Retrieve the results of checking a file if it has not changed since it was checked.
+	 *
+	 * @param file the file.
+	 * @param mode the options used to check the file.
+	 *
+	 * @return the messages found when the file was checked or null if the file is not in the cache or has changed.
+	 *
+	 * @throws IOException if the file can not be read.
+	 */
+	public ArrayList<CheckMessage> get(File file, String mode) throws IOException {
+		Entry entry = mEntries.get(key(file.getAbsolutePath(), mode));
+		if(entry == null) return null;
+
+		long size = file.length();
+		long modified = file.lastModified();
+		if(size != entry.mSize) return null;
+		if(modified != entry.mModified) {	// Same size, compare content
+			if( ! hash(file).equals(entry.mHash)) return null;
+			entry.mModified = modified;
+		}
+
+		return new ArrayList<CheckMessage>(entry.mMessages);
+	}
+
+	/**
+	 * Store the results of checking a file.
+	 * Nothing is stored if the file changed after it was checked.
+	 *
+	 * @param file the file.
+	 * @param mode the options used to check the file.
+	 * @param size the size of the file in bytes before it was checked.
+	 * @param modified the modification time of the file before it was checked.
+	 * @param hash the SHA-256 hash of the content computed while the file was checked, or null to read the file to compute it.
+	 * @param messages the messages found when the file was checked.
+	 *
+	 * @throws IOException if the file can not be read.
+	 */
+	public void put(File file, String mode, long size, long modified, String hash, ArrayList<CheckMessage> messages) throws IOException {
+		Entry entry = new Entry();
+		entry.mPath = file.getAbsolutePath();
+		entry.mMode = mode;
+		entry.mSize = file.length();
+		entry.mModified = file.lastModified();
+		if(entry.mSize != size || entry.mModified != modified) return;
+		entry.mHash = (hash != null) ? hash : hash(file);
+		entry.mMessages.addAll(messages);
+
+		mEntries.put(key(entry.mPath, entry.mMode), entry);
+	}
+
+	/**
+	 * Retrieve the number of files in the cache.
+	 *
+	 * @return the number of files.
+	 */
+	public int size() { return mEntries.size(); }
+
+	/**
+	 * Form the key of the results of checking a file.
+	 *
+	 * @param path the absolute path of the file.
+	 * @param mode the options used to check the file.
+	 *
+	 * @return the key.
+	 */
+	static String key(String path, String mode) { return mode + "\n" + path; }
+
+	/**
+	 * Compute the SHA-256 hash of the content of a file.
+	 *
+	 * @param file the file.
+	 *
+	 * @return the hash as hexadecimal digits.
+	 *
+	 * @throws IOException if the file can not be read.
+	 */
+	static String hash(File file) throws IOException {
+		return FileDigest.digest(file.getPath(), FileDigest.SHA_256).get(FileDigest.SHA_256);
+	}
+
+	/**
+	 * Escape the characters in a field which separate fields and lines.
+	 *
+	 * @param text the field.
+	 *
+	 * @return the escaped text.
+	 */
+	static String escape(String text) {
+		StringBuilder buffer = new StringBuilder(text.length());
+		for(int i = 0; i < text.length(); i++) {
+			char c = text.charAt(i);
+			switch(c) {
+			case '\\': buffer.append("\\\\"); break;
+			case '\t': buffer.append("\\t"); break;
+			case '\n': buffer.append("\\n"); break;
+			case '\r': buffer.append("\\r"); break;
+			default: buffer.append(c);
+			}
+		}
+
+		return buffer.toString();
+	}
+
+	/**
+	 * Restore the characters in a field escaped by {@link #escape(String)}.
+	 *
+	 * @param text the escaped field.
+	 *
+	 * @return the original text.
+	 */
+	static String unescape(String text) {
+		if(text.indexOf('\\') == -1) return text;
+
+		StringBuilder buffer = new StringBuilder(text.length());
+		for(int i = 0; i < text.length(); i++) {
+			char c = text.charAt(i);
+			if(c == '\\' && i + 1 < text.length()) {
+				c = text.charAt(++i);
+				switch(c) {
+				case 't': c = '\t'; break;
+				case 'n': c = '\n'; break;
+				case 'r': c = '\r'; break;
+				}
+			}
+			buffer.append(c);
+		}
+
+		return buffer.toString();
+	}
+}
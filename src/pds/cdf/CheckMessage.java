@@ -0,0 +1,158 @@
+package pds.cdf;
+
+import java.util.List;
+
+/**
+ * A problem found when checking a CDF file for compliance.
+ *
+ * Each message names the rule which found the problem, its severity, the entity it applies to
+ * (a variable, attribute or record type, or empty for the whole file) and the file offset of the
+ * record involved, if there is one. The text is the description shown to a person.
+ *
+ * @author tking
+ *
+ */
+public class CheckMessage {
+	/** Severity of a problem which makes the file non-compliant. */	static final public String ERROR = "error";
+	/** Severity of a problem which should be reviewed. */	static final public String WARNING = "warning";
+	/** Severity of a message which is not a problem. */	static final public String INFO = "info";
+
+	String mRule = "";
+	String mSeverity = ERROR;
+	String mEntity = "";
+	long mOffset = -1L;	// -1 if there is no record
+	String mText = "";
+
+	/**
+	 * Create an error message.
+	 *
+	 * @param rule the identifier of the rule which found the problem.
+	 * @param entity the name of the variable, attribute or record type or an empty string for the whole file.
+	 * @param offset the file offset of the record involved or -1 if there is none.
+	 * @param text the description of the problem.
+	 */
+	public CheckMessage(String rule, String entity, long offset, String text) {
+		this(rule, ERROR, entity, offset, text);
+	}
+
+	/**
+	 * Create a message.
+	 *
+	 * @param rule the identifier of the rule which found the problem.
+	 * @param severity the severity: {@link #ERROR}, {@link #WARNING} or {@link #INFO}.
+	 * @param entity the name of the variable, attribute or record type or an empty string for the whole file.
+	 * @param offset the file offset of the record involved or -1 if there is none.
+	 * @param text the description of the problem.
+	 */
+	public CheckMessage(String rule, String severity, String entity, long offset, String text) {
+		mRule = rule;
+		mSeverity = severity;
+		mEntity = (entity == null) ? "" : entity;
+		mOffset = offset;
+		mText = text;
+	}
+
+	/**
+	 * Retrieve the identifier of the rule which found the problem.
+	 *
+	 * @return the rule identifier.
+	 */
+	public String getRule() { return mRule; }
+
+	/**
+	 * Retrieve the severity of the problem.
+	 *
+	 * @return {@link #ERROR}, {@link #WARNING} or {@link #INFO}.
+	 */
+	public String getSeverity() { return mSeverity; }
+
+	/**
+	 * Retrieve the entity the problem applies to.
+	 *
+	 * @return the name of the variable, attribute or record type or an empty string for the whole file.
+	 */
+	public String getEntity() { return mEntity; }
+
+	/**
+	 * Retrieve the file offset of the record involved.
+	 *
+	 * @return the offset or -1 if there is none.
+	 */
+	public long getOffset() { return mOffset; }
+
+	/**
+	 * Retrieve the description of the problem.
+	 *
+	 * @return the text of the message.
+	 */
+	public String getText() { return mText; }
+
+	/**
+	 * Determine the highest severity of a list of messages.
+	 *
+	 * @param messages the messages.
+	 *
+	 * @return {@link #ERROR}, {@link #WARNING} or {@link #INFO}, or null if there are no messages.
+	 */
+	public static String getHighestSeverity(List<CheckMessage> messages) {
+		String highest = null;
+		for(CheckMessage message : messages) {
+			if(ERROR.equals(message.mSeverity)) return ERROR;
+			if(WARNING.equals(message.mSeverity)) highest = WARNING;
+			else if(highest == null) highest = INFO;
+		}
+
+		return highest;
+	}
+
+	/**
+	 * Format the message as a single line JSON object.
+	 *
+	 * @param file the pathname of the file which was checked.
+	 *
+	 * @return the JSON text with the members "file", "rule", "severity", "entity", "offset" (null if there is no record) and "message".
+	 */
+	public String toJSON(String file) {
+		StringBuilder buffer = new StringBuilder(128 + mText.length());
+		buffer.append("{\"file\":"); quote(buffer, file);
+		buffer.append(",\"rule\":"); quote(buffer, mRule);
+		buffer.append(",\"severity\":"); quote(buffer, mSeverity);
+		buffer.append(",\"entity\":"); quote(buffer, mEntity);
+		buffer.append(",\"offset\":").append(mOffset < 0 ? "null" : Long.toString(mOffset));
+		buffer.append(",\"message\":"); quote(buffer, mText);
+		buffer.append('}');
+
+		return buffer.toString();
+	}
+
+	/**
+	 * Append text as a JSON string.
+	 *
+	 * @param buffer the buffer to append to.
+	 * @param text the text.
+	 */
+	static void quote(StringBuilder buffer, String text) {
+		buffer.append('"');
+		for(int i = 0; i < text.length(); i++) {
+			char c = text.charAt(i);
+			switch(c) {
+			case '"': buffer.append("\\\""); break;
+			case '\\': buffer.append("\\\\"); break;
+			case '\n': buffer.append("\\n"); break;
+			case '\r': buffer.append("\\r"); break;
+			case '\t': buffer.append("\\t"); break;
+			default:
+				if(c < 0x20) buffer.append(String.format("\\u%04x", (int) c));
+				else buffer.append(c);
+			}
+		}
+		buffer.append('"');
+	}
+
+	/**
+	 * Retrieve the description of the problem.
+	 *
+	 * @return the text of the message.
+	 */
+	public String toString() { return mText; }
+}
@@ -0,0 +1,173 @@
+package pds.cdf;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+
+/**
+ * An index of the descriptors of a parsed CDF used to check compliance.
+ *
+ * Variables and attributes are indexed by name and VDRs by number once, so each check
+ * of a variable or attribute is a single lookup rather than a scan of the lists of the CDF.
+ *
+ * @author tking
+ *
+ */
+public class CheckModel {
+	CDF mCDF = null;
+	LinkedHashMap<String, Variable> mVariables = new LinkedHashMap<String, Variable>();	// By name, in the order of the CDF
+	LinkedHashMap<String, VDRecord> mVDRs = new LinkedHashMap<String, VDRecord>();	// By name
+	IdentityHashMap<VDRecord, Variable> mVariableOfVDR = new IdentityHashMap<VDRecord, Variable>();
+	HashMap<String, ADRecord> mGlobalAttributes = new HashMap<String, ADRecord>();
+	HashMap<String, ADRecord> mVariableAttributes = new HashMap<String, ADRecord>();
+	ArrayList<VDRecord> mRVDRs = new ArrayList<VDRecord>();	// In the order of the rVDR chain
+	ArrayList<VDRecord> mZVDRs = new ArrayList<VDRecord>();	// In the order of the zVDR chain
+	HashMap<Integer, VDRecord> mZVDRByNumber = new HashMap<Integer, VDRecord>();
+	ArrayList<Variable> mDataVariables = null;
+
+	/**
+	 * Index the descriptors of a CDF.
+	 *
+	 * @param cdf the parsed CDF. Must have a GDR.
+	 */
+	public CheckModel(CDF cdf) {
+		mCDF = cdf;
+
+		// Variables are defined in the same order as the VDRs
+		ArrayList<Variable> variables = cdf.getVariables();
+		for(int i = 0; i < cdf.mVDRList.size(); i++) {
+			VDRecord vdr = cdf.mVDRList.get(i);
+			if( ! mVDRs.containsKey(vdr.mName)) mVDRs.put(vdr.mName, vdr);
+			if(i < variables.size()) mVariableOfVDR.put(vdr, variables.get(i));
+		}
+		for(Variable v : variables) {
+			if( ! mVariables.containsKey(v.getName())) mVariables.put(v.getName(), v);
+		}
+
+		for(ADRecord adr : cdf.mADRList) {
+			HashMap<String, ADRecord> map = null;
+			switch(adr.mScope) {
+			case Constant.SCOPE_GLOBAL:
+			case Constant.SCOPE_GLOBAL_ASSUME:
+				map = mGlobalAttributes;
+				break;
+			case Constant.SCOPE_VARIABLE:
+			case Constant.SCOPE_VARIABLE_ASSUME:
+				map = mVariableAttributes;
+				break;
+			default:
+				continue;
+			}
+			if( ! map.containsKey(adr.mName)) map.put(adr.mName, adr);	// First match as found by a scan
+		}
+
+		GDRecord gdr = cdf.getGDR();
+		VDRecord vdr = cdf.getVDR(gdr.mRVDRhead);
+		while(vdr != null) {
+			mRVDRs.add(vdr);
+			vdr = cdf.getVDR(vdr.mVDRnext);
+		}
+		vdr = cdf.getVDR(gdr.mZVDRhead);
+		while(vdr != null) {
+			mZVDRs.add(vdr);
+			mZVDRByNumber.put(vdr.mNum, vdr);
+			vdr = cdf.getVDR(vdr.mVDRnext);
+		}
+	}
+
+	/**
+	 * Retrieve the CDF.
+	 *
+	 * @return the parsed CDF.
+	 */
+	public CDF getCDF() { return mCDF; }
+
+	/**
+	 * Retrieve the description of each variable.
+	 *
+	 * @return the {@link Variable} descriptions in the order of the CDF.
+	 */
+	public ArrayList<Variable> getVariables() { return mCDF.getVariables(); }
+
+	/**
+	 * Retrieve the description of each variable which has the VAR_TYPE attribute of "data".
+	 *
+	 * @return the {@link Variable} descriptions.
+	 *
+	 * @see CDF#getDataVariables()
+	 */
+	public ArrayList<Variable> getDataVariables() {
+		if(mDataVariables == null) mDataVariables = mCDF.getDataVariables();
+
+		return mDataVariables;
+	}
+
+	/**
+	 * Retrieve the description of a variable.
+	 *
+	 * @param name the name of the variable.
+	 *
+	 * @return the {@link Variable} or null if no variable has the name.
+	 */
+	public Variable getVariable(String name) { return mVariables.get(name); }
+
+	/**
+	 * Retrieve the description of the variable defined by a VDR.
+	 *
+	 * @param vdr the {@link VDRecord} of the variable.
+	 *
+	 * @return the {@link Variable} or null if the VDR is not part of the CDF.
+	 */
+	public Variable getVariable(VDRecord vdr) { return mVariableOfVDR.get(vdr); }
+
+	/**
+	 * Retrieve the VDR of a variable.
+	 *
+	 * @param name the name of the variable.
+	 *
+	 * @return the {@link VDRecord} or null if no variable has the name.
+	 */
+	public VDRecord getVDR(String name) { return mVDRs.get(name); }
+
+	/**
+	 * Retrieve the zVDR with a variable number.
+	 *
+	 * @param number the number of the zVariable.
+	 *
+	 * @return the {@link VDRecord} or null if there is no zVariable with the number.
+	 */
+	public VDRecord getZVDR(int number) { return mZVDRByNumber.get(number); }
+
+	/**
+	 * Retrieve the rVDRs.
+	 *
+	 * @return the {@link VDRecord} of each rVariable in the order of the rVDR chain.
+	 */
+	public ArrayList<VDRecord> getRVDRs() { return mRVDRs; }
+
+	/**
+	 * Retrieve the zVDRs.
+	 *
+	 * @return the {@link VDRecord} of each zVariable in the order of the zVDR chain.
+	 */
+	public ArrayList<VDRecord> getZVDRs() { return mZVDRs; }
+
+	/**
+	 * Retrieve a global attribute.
+	 *
+	 * @param name the name of the attribute.
+	 *
+	 * @return the {@link ADRecord} or null if no global attribute has the name.
+	 */
+	public ADRecord getGlobalAttribute(String name) { return mGlobalAttributes.get(name); }
+
+	/**
+	 * Retrieve a variable attribute.
+	 *
+	 * @param name the name of the attribute.
+	 *
+	 * @return the {@link ADRecord} or null if no variable attribute has the name.
+	 */
+	public ADRecord getVariableAttribute(String name) { return mVariableAttributes.get(name); }
+}
@@ -1,6 +1,7 @@
 package pds.cdf;
 
 import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.util.ArrayList;
 import java.lang.Integer;
 
@@ -54,6 +55,18 @@ public class Constant {
 	/** Compression on value. */	static final public int CompressionOn = 0xCCCC0001;
 	/** Compression off value. */	static final public int CompressionOff = 0x0000FFFF;
 
+	// Compression types
+	/** No compression. */				static final public int COMPRESSION_NONE=0;
+	/** Run-length encoding. */			static final public int COMPRESSION_RLE=1;
+	/** Huffman. */						static final public int COMPRESSION_HUFF=2;
+	/** Adaptive Huffman. */			static final public int COMPRESSION_AHUFF=3;
+	/** GNU zip. */						static final public int COMPRESSION_GZIP=5;
+
+	// Sparse record types
+	/** Missing records are not allowed. */		static final public int SPARSE_RECORDS_NONE=0;
+	/** Missing records have the pad value. */		static final public int SPARSE_RECORDS_PAD=1;
+	/** Missing records have the previous value. */	static final public int SPARSE_RECORDS_PREVIOUS=2;
+
 	/** eXternal Data Representation */ 	static final public int ENCODING_NETWORK=1;
 	/** Sun representation */				static final public int ENCODING_SUN=2;
 	/** VAX representation */				static final public int ENCODING_VAX=3;
@@ -90,6 +103,27 @@ public class Constant {
 	}
 	
 
+	/**
+	 * Determine the byte order of data values for an encoding.
+	 * 
+	 * @param encoding the CDF encoding value.
+	 * 
+	 * @return {@link ByteOrder#BIG_ENDIAN} for MSB encodings, otherwise {@link ByteOrder#LITTLE_ENDIAN}.
+	 */
+	static public ByteOrder getByteOrder(int encoding) {
+		switch(encoding) {
+		case ENCODING_NETWORK:
+		case ENCODING_SUN:
+		case ENCODING_SGi:
+		case ENCODING_IBMRS:
+		case ENCODING_MAC:
+		case ENCODING_NeXT:
+			return ByteOrder.BIG_ENDIAN;
+		}
+		
+		return ByteOrder.LITTLE_ENDIAN;
+	}
+	
 	/**
 	 * Determine if the version if a valid CDF version.
 	 * 
@@ -121,6 +155,78 @@ public class Constant {
 		return false;
 	}
 	
+	/**
+	 * Translate a compression type into a name.
+	 * 
+	 * @param cType the compression type.
+	 * 
+	 * @return The name of the compression type.
+	 */
+	static public String getCompressionName(int cType)
+	{
+		switch(cType) {
+		case COMPRESSION_NONE: return("NONE");
+		case COMPRESSION_RLE: return("RLE");
+		case COMPRESSION_HUFF: return("HUFF");
+		case COMPRESSION_AHUFF: return("AHUFF");
+		case COMPRESSION_GZIP: return("GZIP");
+		}
+		
+		return("Unknown [" + cType + "]");
+	}
+	
+	/**
+	 * Translate a sparse record type into a name.
+	 * 
+	 * @param sRecords the sparse record type.
+	 * 
+	 * @return The name of the sparse record type.
+	 */
+	static public String getSparseRecordsName(int sRecords)
+	{
+		switch(sRecords) {
+		case SPARSE_RECORDS_NONE: return("NONE");
+		case SPARSE_RECORDS_PAD: return("PAD");
+		case SPARSE_RECORDS_PREVIOUS: return("PREVIOUS");
+		}
+		
+		return("Unknown [" + sRecords + "]");
+	}
+	
+	/**
+	 * Retrieve the default pad value for a data type as used by the CDF library.
+	 * The default is used when a variable does not declare a pad value.
+	 * 
+	 * @param dataType the data type token.
+	 * @param order the byte order of the value.
+	 * 
+	 * @return the bytes of one element of the data type or an empty array if the data type is not known.
+	 */
+	static public byte[] getDefaultPad(int dataType, ByteOrder order)
+	{
+		ByteBuffer buffer = ByteBuffer.allocate(getDataTypeSize(dataType)).order(order);
+		switch(dataType) {
+		case CDF_INT1: buffer.put((byte) -127); break;
+		case CDF_UINT1: buffer.put((byte) 254); break;
+		case CDF_BYTE: buffer.put((byte) -127); break;
+		case CDF_INT2: buffer.putShort((short) -32767); break;
+		case CDF_UINT2: buffer.putShort((short) 65534); break;
+		case CDF_INT4: buffer.putInt(-2147483647); break;
+		case CDF_UINT4: buffer.putInt(-2); break;
+		case CDF_INT8: buffer.putLong(-9223372036854775807L); break;
+		case CDF_REAL4: buffer.putFloat(-1.0e30f); break;
+		case CDF_FLOAT: buffer.putFloat(-1.0e30f); break;
+		case CDF_REAL8: buffer.putDouble(-1.0e30); break;
+		case CDF_DOUBLE: buffer.putDouble(-1.0e30); break;
+		case CDF_EPOCH: buffer.putDouble(0.0); break;
+		case CDF_EPOCH16: buffer.putDouble(0.0); buffer.putDouble(0.0); break;
+		case CDF_TIME_TT2000: buffer.putLong(-9223372036854775807L); break;
+		case CDF_CHAR: buffer.put((byte) ' '); break;
+		}
+		
+		return buffer.array();
+	}
+	
 	/**
 	 * Translate a record type token into a name.
 	 * 
@@ -332,7 +438,7 @@ public class Constant {
 		
 		ArrayList<String> values = valueToArrayList(buffer, dataType, numElems);
 		for(String v : values) {
-			text = " " + v;
+			text += " " + v;
 		}
 		return text;
 	}
@@ -342,6 +448,7 @@ public class Constant {
 	 * 
 	 * A binary array of bytes are parsed based on the given data type.
 	 * The value of with the given element index is transformed.
+	 * Values are in network (big-endian) order. Use {@link Decoder} for other encodings.
 	 * 
 	 * @param buffer the bytes containing the value.
 	 * @param dataType the data type of the value.
@@ -350,28 +457,7 @@ public class Constant {
 	 * @return the string with a representation of the value.
 	 */
 	static public String valueToString(byte[] buffer, int dataType, int elem) {
-		ByteBuffer bb = ByteBuffer.wrap(buffer);
-		
-		switch(dataType) {
-		case CDF_INT1: return("" + buffer[elem]); 
-		case CDF_INT2: return("" + bb.getShort(elem));
-		case CDF_INT4: return("" + bb.getInt(elem));
-		case CDF_INT8: return("" + bb.getLong(elem));
-		case CDF_UINT1: return("" + buffer[elem]);
-		case CDF_UINT2: return("" + bb.getInt(elem));
-		case CDF_UINT4: return("" + bb.getInt(elem));
-		case CDF_BYTE: return("" + buffer[elem]);
-		case CDF_REAL4: return("" + bb.getFloat(elem));
-		case CDF_REAL8: return("" + bb.getDouble(elem));
-		case CDF_FLOAT: return("" + bb.getFloat(elem));
-		case CDF_DOUBLE: return("" + bb.getDouble(elem));
-		case CDF_EPOCH: return("" + bb.getDouble(elem));
-		case CDF_EPOCH16: return(bb.getDouble((elem*2)) + ":" + bb.getInt((elem*2)+1));	// (2) 8-byte values
-		case CDF_TIME_TT2000: return("" + bb.getDouble(elem));
-		case CDF_CHAR: return(new String(buffer).trim());
-		}
-		
-		return "";
+		return Decoder.BIG_ENDIAN.toString(buffer, dataType, elem);
 	}
 	
 	/**
@@ -379,6 +465,7 @@ public class Constant {
 	 * 
 	 * A binary array of bytes are parsed based on the given data type.
 	 * The value of each element, up to the number of elements given, is transformed.
+	 * Values are in network (big-endian) order. Use {@link Decoder} for other encodings.
 	 * 
 	 * @param buffer the bytes containing the value.
 	 * @param dataType the data type of the value.
@@ -387,35 +474,27 @@ public class Constant {
 	 * @return the list of strings representing the value of each element.
 	 */
 	static public ArrayList<String> valueToArrayList(byte[] buffer, int dataType, int numElems) {
-		ArrayList<String> values = new ArrayList<String>();
-
-		if(dataType == CDF_CHAR) {	// The numElems is the length of the string 
-			values.add(new String(buffer).trim());
-		} else {	// Array of values
-			ByteBuffer bb = ByteBuffer.wrap(buffer);
-
-			for(int i = 0; i < numElems; i++) {
-				switch(dataType) {
-				case CDF_INT1: values.add("" + buffer[i]); break;
-				case CDF_INT2: values.add("" + bb.getShort(i)); break;
-				case CDF_INT4: values.add("" + bb.getInt(i)); break;
-				case CDF_INT8: values.add("" + bb.getLong(i)); break;
-				case CDF_UINT1: values.add("" + buffer[i]); break;
-				case CDF_UINT2: values.add("" + bb.getShort(i)); break;
-				case CDF_UINT4: values.add("" + bb.getInt(i)); break;
-				case CDF_BYTE: values.add("" + buffer[i]); break;
-				case CDF_REAL4: values.add("" + bb.getFloat(i)); break;
-				case CDF_REAL8: values.add("" + bb.getDouble(i)); break;
-				case CDF_FLOAT: values.add("" + bb.getFloat(i)); break;
-				case CDF_DOUBLE: values.add("" + bb.getDouble(i)); break;
-				case CDF_EPOCH: values.add("" + bb.getDouble(i)); break;
-				case CDF_EPOCH16: values.add(bb.getDouble((i*2)) + ":" + bb.getInt((i*2)+1)); break;	// (2) 8-byte values
-				case CDF_TIME_TT2000: values.add("" + bb.getDouble(i)); break;
-				}
-			}
-		}
-		
-		return values;
+		return Decoder.BIG_ENDIAN.toStringList(buffer, dataType, numElems);
+	}
+	
+	/**
+	 * Transform a set of values into numbers.
+	 * 
+	 * A binary array of bytes are parsed based on the given data type.
+	 * The value of each element, up to the number of elements given, is transformed.
+	 * For CDF_EPOCH16 only the seconds portion of each value is returned.
+	 * Values are in network (big-endian) order. Use {@link Decoder} for other encodings.
+	 * 
+	 * @param buffer the bytes containing the value.
+	 * @param dataType the data type of the value.
+	 * @param numElems the number of elements to transform.
+	 * @param values the array to place values in.
+	 * @param start the index in values for the first value.
+	 * 
+	 * @return the number of values placed in the array.
+	 */
+	static public int valueToDoubleArray(byte[] buffer, int dataType, int numElems, double[] values, int start) {
+		return Decoder.BIG_ENDIAN.toDoubleArray(buffer, dataType, numElems, values, start);
 	}
 	
 }
@@ -0,0 +1,408 @@
+package pds.cdf;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.ShortBuffer;
+import java.util.ArrayList;
+
+/**
+ * Decode arrays of data values in the byte order of a CDF encoding.
+ *
+ * A decoder is selected once for a file with {@link #getDecoder(int)} using the encoding
+ * in the CDR. The byte order is set once on each buffer and each call decodes an array of values,
+ * so the data type is tested once per call rather than once per value.
+ * The same decoders are used for pad values, attribute entries and variable data.
+ *
+ * @author tking
+ *
+ */
+public class Decoder {
+	/** Decoder for MSB (big-endian) encodings. */
+	static final public Decoder BIG_ENDIAN = new Decoder(ByteOrder.BIG_ENDIAN);
+	/** Decoder for LSB (little-endian) encodings. */
+	static final public Decoder LITTLE_ENDIAN = new Decoder(ByteOrder.LITTLE_ENDIAN);
+
+	static ThreadLocal<TimeConverter> mConverters = new ThreadLocal<TimeConverter>();	// Reused for each call, a converter is not thread safe
+
+	ByteOrder mOrder = ByteOrder.BIG_ENDIAN;
+
+	/**
+	 * Create a decoder for a byte order.
+	 *
+	 * @param order the byte order of values.
+	 */
+	private Decoder(ByteOrder order) {
+		mOrder = order;
+	}
+
+	/**
+	 * Retrieve the decoder for an encoding.
+	 *
+	 * @param encoding the CDF encoding value.
+	 *
+	 * @return the decoder for the byte order of the encoding.
+	 */
+	static public Decoder getDecoder(int encoding) {
+		if(Constant.getByteOrder(encoding) == ByteOrder.BIG_ENDIAN) return BIG_ENDIAN;
+
+		return LITTLE_ENDIAN;
+	}
+
+	/**
+	 * Retrieve the byte order of the decoder.
+	 *
+	 * @return the byte order.
+	 */
+	public ByteOrder getOrder() { return mOrder; }
+
+	/**
+	 * Create a view of bytes in the byte order of the decoder.
+	 *
+	 * @param buffer the bytes containing values.
+	 *
+	 * @return a {@link ByteBuffer} with the byte order set.
+	 */
+	public ByteBuffer wrap(byte[] buffer) { return ByteBuffer.wrap(buffer).order(mOrder); }
+
+	/**
+	 * Determine the number of whole values in a buffer.
+	 *
+	 * @param remaining the number of bytes available.
+	 * @param dataType the data type of the values.
+	 * @param count the number of values requested.
+	 *
+	 * @return the number of values which can be decoded.
+	 */
+	private static int limit(int remaining, int dataType, int count) {
+		int size = Constant.getDataTypeSize(dataType);
+		if(size == 0) return 0;
+		if((long) count * size > remaining) count = remaining / size;
+
+		return count;
+	}
+
+	/**
+	 * Decode values into numbers.
+	 *
+	 * For CDF_EPOCH16 only the seconds portion of each value is returned.
+	 * Unsigned types are returned as positive values.
+	 * Values are read starting at the current position of the buffer. The position is not changed.
+	 *
+	 * @param buffer the buffer containing the values.
+	 * @param dataType the data type of the values.
+	 * @param count the number of values to decode.
+	 * @param values the array to place values in.
+	 * @param start the index in values for the first value.
+	 *
+	 * @return the number of values placed in the array.
+	 */
+	public int toDoubleArray(ByteBuffer buffer, int dataType, int count, double[] values, int start) {
+		if(dataType == Constant.CDF_CHAR) return 0;
+		count = limit(buffer.remaining(), dataType, count);
+		ByteBuffer bb = buffer.slice().order(mOrder);
+
+		switch(dataType) {
+		case Constant.CDF_INT1:
+		case Constant.CDF_BYTE:
+			for(int i = 0; i < count; i++) values[start + i] = bb.get(i);
+			break;
+		case Constant.CDF_UINT1:
+			for(int i = 0; i < count; i++) values[start + i] = bb.get(i) & 0xFF;
+			break;
+		case Constant.CDF_INT2: {
+			ShortBuffer sb = bb.asShortBuffer();
+			for(int i = 0; i < count; i++) values[start + i] = sb.get(i);
+			} break;
+		case Constant.CDF_UINT2: {
+			ShortBuffer sb = bb.asShortBuffer();
+			for(int i = 0; i < count; i++) values[start + i] = sb.get(i) & 0xFFFF;
+			} break;
+		case Constant.CDF_INT4: {
+			IntBuffer ib = bb.asIntBuffer();
+			for(int i = 0; i < count; i++) values[start + i] = ib.get(i);
+			} break;
+		case Constant.CDF_UINT4: {
+			IntBuffer ib = bb.asIntBuffer();
+			for(int i = 0; i < count; i++) values[start + i] = ib.get(i) & 0xFFFFFFFFL;
+			} break;
+		case Constant.CDF_INT8:
+		case Constant.CDF_TIME_TT2000: {
+			LongBuffer lb = bb.asLongBuffer();
+			for(int i = 0; i < count; i++) values[start + i] = lb.get(i);
+			} break;
+		case Constant.CDF_REAL4:
+		case Constant.CDF_FLOAT: {
+			FloatBuffer fb = bb.asFloatBuffer();
+			for(int i = 0; i < count; i++) values[start + i] = fb.get(i);
+			} break;
+		case Constant.CDF_REAL8:
+		case Constant.CDF_DOUBLE:
+		case Constant.CDF_EPOCH:
+			bb.asDoubleBuffer().get(values, start, count);	// Bulk copy
+			break;
+		case Constant.CDF_EPOCH16: {	// (2) 8-byte values
+			DoubleBuffer db = bb.asDoubleBuffer();
+			for(int i = 0; i < count; i++) values[start + i] = db.get(i * 2);
+			} break;
+		default:
+			return 0;
+		}
+
+		return count;
+	}
+
+	/**
+	 * Decode values into numbers.
+	 *
+	 * @param buffer the bytes containing the values.
+	 * @param dataType the data type of the values.
+	 * @param count the number of values to decode.
+	 * @param values the array to place values in.
+	 * @param start the index in values for the first value.
+	 *
+	 * @return the number of values placed in the array.
+	 */
+	public int toDoubleArray(byte[] buffer, int dataType, int count, double[] values, int start) {
+		return toDoubleArray(ByteBuffer.wrap(buffer), dataType, count, values, start);
+	}
+
+	/**
+	 * Decode integer values without loss of precision.
+	 *
+	 * Integer types (including CDF_TIME_TT2000) are returned exactly. Unsigned types are returned as positive values.
+	 * Values are read starting at the current position of the buffer. The position is not changed.
+	 *
+	 * @param buffer the buffer containing the values.
+	 * @param dataType the data type of the values.
+	 * @param count the number of values to decode.
+	 * @param values the array to place values in.
+	 * @param start the index in values for the first value.
+	 *
+	 * @return the number of values placed in the array or 0 if the data type is not an integer type.
+	 */
+	public int toLongArray(ByteBuffer buffer, int dataType, int count, long[] values, int start) {
+		count = limit(buffer.remaining(), dataType, count);
+		ByteBuffer bb = buffer.slice().order(mOrder);
+
+		switch(dataType) {
+		case Constant.CDF_INT1:
+		case Constant.CDF_BYTE:
+			for(int i = 0; i < count; i++) values[start + i] = bb.get(i);
+			break;
+		case Constant.CDF_UINT1:
+			for(int i = 0; i < count; i++) values[start + i] = bb.get(i) & 0xFF;
+			break;
+		case Constant.CDF_INT2: {
+			ShortBuffer sb = bb.asShortBuffer();
+			for(int i = 0; i < count; i++) values[start + i] = sb.get(i);
+			} break;
+		case Constant.CDF_UINT2: {
+			ShortBuffer sb = bb.asShortBuffer();
+			for(int i = 0; i < count; i++) values[start + i] = sb.get(i) & 0xFFFF;
+			} break;
+		case Constant.CDF_INT4: {
+			IntBuffer ib = bb.asIntBuffer();
+			for(int i = 0; i < count; i++) values[start + i] = ib.get(i);
+			} break;
+		case Constant.CDF_UINT4: {
+			IntBuffer ib = bb.asIntBuffer();
+			for(int i = 0; i < count; i++) values[start + i] = ib.get(i) & 0xFFFFFFFFL;
+			} break;
+		case Constant.CDF_INT8:
+		case Constant.CDF_TIME_TT2000:
+			bb.asLongBuffer().get(values, start, count);	// Bulk copy
+			break;
+		default:
+			return 0;
+		}
+
+		return count;
+	}
+
+	/**
+	 * Retrieve the {@link TimeConverter} for the current thread.
+	 * A new converter is created when the leap second table has changed.
+	 *
+	 * @return the {@link TimeConverter}.
+	 */
+	static TimeConverter getConverter() {
+		TimeConverter converter = mConverters.get();
+		if(converter == null || converter.mTable != TimeConverter.mLeapTable) {
+			converter = new TimeConverter();
+			mConverters.set(converter);
+		}
+
+		return converter;
+	}
+
+	/**
+	 * Convert time values to Unix time.
+	 *
+	 * Each CDF_EPOCH, CDF_EPOCH16 or CDF_TIME_TT2000 value is converted to nanoseconds since
+	 * 1970-01-01T00:00:00 UTC using the {@link TimeConverter} of the thread, so no objects are created for each value or call.
+	 * Values are read starting at the current position of the buffer. The position is not changed.
+	 *
+	 * @param buffer the buffer containing the values.
+	 * @param dataType the data type of the values.
+	 * @param count the number of values to convert.
+	 * @param values the array to place times in. Fill values are {@link TimeConverter#FILL}.
+	 * @param start the index in values for the first time.
+	 *
+	 * @return the number of times placed in the array or 0 if the data type is not a time type.
+	 */
+	public int toUnixNanos(ByteBuffer buffer, int dataType, int count, long[] values, int start) {
+		count = limit(buffer.remaining(), dataType, count);
+		ByteBuffer bb = buffer.slice().order(mOrder);
+		TimeConverter converter = getConverter();
+
+		switch(dataType) {
+		case Constant.CDF_EPOCH: {
+			DoubleBuffer db = bb.asDoubleBuffer();
+			for(int i = 0; i < count; i++) {
+				converter.setEpoch(db.get(i));
+				values[start + i] = converter.getUnixNanos();
+			}
+			} break;
+		case Constant.CDF_EPOCH16: {	// (2) 8-byte values
+			DoubleBuffer db = bb.asDoubleBuffer();
+			for(int i = 0; i < count; i++) {
+				converter.setEpoch16(db.get(i * 2), db.get((i * 2) + 1));
+				values[start + i] = converter.getUnixNanos();
+			}
+			} break;
+		case Constant.CDF_TIME_TT2000: {
+			LongBuffer lb = bb.asLongBuffer();
+			for(int i = 0; i < count; i++) {
+				converter.setTT2000(lb.get(i));
+				values[start + i] = converter.getUnixNanos();
+			}
+			} break;
+		default:
+			return 0;
+		}
+
+		return count;
+	}
+
+	/**
+	 * Convert time values to ISO-8601 text.
+	 *
+	 * Each CDF_EPOCH, CDF_EPOCH16 or CDF_TIME_TT2000 value is placed in the array as
+	 * {@link TimeConverter#ISO_LENGTH} characters (yyyy-mm-ddThh:mm:ss.nnnnnnnnn) with no separator.
+	 * No objects are created for each value or call.
+	 * Values are read starting at the current position of the buffer. The position is not changed.
+	 *
+	 * @param buffer the buffer containing the values.
+	 * @param dataType the data type of the values.
+	 * @param count the number of values to convert.
+	 * @param text the array to place the text in. Must have room for count times {@link TimeConverter#ISO_LENGTH} characters after start.
+	 * @param start the index in text for the first character.
+	 *
+	 * @return the number of times placed in the array or 0 if the data type is not a time type.
+	 */
+	public int toISOText(ByteBuffer buffer, int dataType, int count, char[] text, int start) {
+		count = limit(buffer.remaining(), dataType, count);
+		ByteBuffer bb = buffer.slice().order(mOrder);
+		TimeConverter converter = getConverter();
+
+		switch(dataType) {
+		case Constant.CDF_EPOCH: {
+			DoubleBuffer db = bb.asDoubleBuffer();
+			for(int i = 0; i < count; i++) {
+				converter.setEpoch(db.get(i));
+				converter.format(text, start + i * TimeConverter.ISO_LENGTH);
+			}
+			} break;
+		case Constant.CDF_EPOCH16: {	// (2) 8-byte values
+			DoubleBuffer db = bb.asDoubleBuffer();
+			for(int i = 0; i < count; i++) {
+				converter.setEpoch16(db.get(i * 2), db.get((i * 2) + 1));
+				converter.format(text, start + i * TimeConverter.ISO_LENGTH);
+			}
+			} break;
+		case Constant.CDF_TIME_TT2000: {
+			LongBuffer lb = bb.asLongBuffer();
+			for(int i = 0; i < count; i++) {
+				converter.setTT2000(lb.get(i));
+				converter.format(text, start + i * TimeConverter.ISO_LENGTH);
+			}
+			} break;
+		default:
+			return 0;
+		}
+
+		return count;
+	}
+
+	/**
+	 * Decode values into a list of strings.
+	 *
+	 * For CDF_CHAR the whole buffer is a single string. For CDF_EPOCH16 each value is
+	 * shown as seconds and picoseconds separated by a colon.
+	 *
+	 * @param buffer the bytes containing the values.
+	 * @param dataType the data type of the values.
+	 * @param count the number of values to decode.
+	 *
+	 * @return the list of strings representing each value.
+	 */
+	public ArrayList<String> toStringList(byte[] buffer, int dataType, int count) {
+		ArrayList<String> values = new ArrayList<String>();
+
+		if(dataType == Constant.CDF_CHAR) {	// The count is the length of the string
+			values.add(new String(buffer).trim());
+			return values;
+		}
+
+		count = limit(buffer.length, dataType, count);
+		switch(dataType) {
+		case Constant.CDF_REAL4:
+		case Constant.CDF_FLOAT: {
+			FloatBuffer fb = wrap(buffer).asFloatBuffer();
+			for(int i = 0; i < count; i++) values.add(String.valueOf(fb.get(i)));
+			} break;
+		case Constant.CDF_REAL8:
+		case Constant.CDF_DOUBLE:
+		case Constant.CDF_EPOCH: {
+			DoubleBuffer db = wrap(buffer).asDoubleBuffer();
+			for(int i = 0; i < count; i++) values.add(String.valueOf(db.get(i)));
+			} break;
+		case Constant.CDF_EPOCH16: {	// (2) 8-byte values
+			DoubleBuffer db = wrap(buffer).asDoubleBuffer();
+			for(int i = 0; i < count; i++) values.add(db.get(i * 2) + ":" + db.get((i * 2) + 1));
+			} break;
+		default: {	// Integer types
+			long[] list = new long[count];
+			count = toLongArray(ByteBuffer.wrap(buffer), dataType, count, list, 0);
+			for(int i = 0; i < count; i++) values.add(String.valueOf(list[i]));
+			} break;
+		}
+
+		return values;
+	}
+
+	/**
+	 * Decode a single value into a string.
+	 *
+	 * @param buffer the bytes containing the values.
+	 * @param dataType the data type of the values.
+	 * @param elem the index of the value to decode.
+	 *
+	 * @return the string representing the value or an empty string if the element is not in the buffer.
+	 */
+	public String toString(byte[] buffer, int dataType, int elem) {
+		if(dataType == Constant.CDF_CHAR) return new String(buffer).trim();
+
+		int size = Constant.getDataTypeSize(dataType);
+		if(size == 0 || (elem + 1) * size > buffer.length) return "";
+		byte[] value = new byte[size];
+		System.arraycopy(buffer, elem * size, value, 0, size);
+		ArrayList<String> list = toStringList(value, dataType, 1);
+
+		return list.isEmpty() ? "" : list.get(0);
+	}
+}
@@ -0,0 +1,318 @@
+package pds.cdf;
+
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Decoder for data compressed with one of the CDF compression types.
+ *
+ * A decompressor is created once for a compression type with {@link #getDecompressor(int)}, or shared
+ * by all readers on a thread with {@link #getThreadDecompressor(int)}, and then reset for each block of compressed data. The compressed data can be a {@link ByteBuffer},
+ * such as a view of a mapped file, or an {@link InputStream}. Uncompressed data is placed directly in
+ * arrays or buffers supplied by the caller, so a block can be decompressed into a direct buffer.
+ * All decoder state is allocated when the decompressor is created,
+ * so decoding does not create any objects. A decompressor is not thread safe.
+ *
+ * Compressed data is read as it is needed, so a whole-file compressed CDF can be
+ * parsed without holding either the compressed or the uncompressed file in memory.
+ * The compression type and parameters are defined in a {@link CPRecord}.
+ *
+ * @author tking
+ *
+ */
+public abstract class Decompressor {
+	/** Size of the buffer used when reading compressed data from a stream. */	static final int BUFFER_SIZE = 65536;
+	/** Size of the array used to decode into a buffer without a backing array. */	static final int CHUNK_SIZE = 8192;
+
+	static ThreadLocal<Decompressor[]> mThreadDecompressors = ThreadLocal.withInitial(() -> new Decompressor[Constant.COMPRESSION_GZIP + 1]);	// By compression type, shared by all readers on a thread
+
+	ByteBuffer mSource = ByteBuffer.allocate(0);	// Compressed data
+	InputStream mIn = null;	// Stream which refills the source
+	byte[] mBuffer = null;	// Backing array of the source when reading a stream
+	boolean mEnd = false;	// End of the uncompressed data
+	byte[] mChunk = null;	// Decoded bytes on the way to a direct buffer
+
+	/**
+	 * Create a decompressor for a compression type.
+	 *
+	 * @param cType the type of compression as defined in {@link Constant}.
+	 *
+	 * @return a new {@link Decompressor}.
+	 *
+	 * @throws IOException if the compression type is not supported.
+	 */
+	static public Decompressor getDecompressor(int cType) throws IOException {
+		switch(cType) {
+		case Constant.COMPRESSION_RLE:
+			return new RLEDecompressor();
+		case Constant.COMPRESSION_HUFF:
+			return new HuffmanDecompressor();
+		case Constant.COMPRESSION_AHUFF:
+			return new AdaptiveHuffmanDecompressor();
+		case Constant.COMPRESSION_GZIP:
+			return new GZIPDecompressor();
+		}
+
+		throw new IOException("Compression type " + Constant.getCompressionName(cType) + " is not supported.");
+	}
+
+	/**
+	 * Retrieve the decompressor of the current thread for a compression type.
+	 * The decompressor is created on first use and then shared by every caller on the thread,
+	 * so its decoder state (such as the {@link java.util.zip.Inflater} for GZIP) is allocated once per thread.
+	 * It must be reset and used to completion before it is retrieved again on the same thread.
+	 *
+	 * @param cType the type of compression as defined in {@link Constant}.
+	 *
+	 * @return the {@link Decompressor} for the thread.
+	 *
+	 * @throws IOException if the compression type is not supported.
+	 */
+	static public Decompressor getThreadDecompressor(int cType) throws IOException {
+		Decompressor[] decompressors = mThreadDecompressors.get();
+		if(cType < 0 || cType >= decompressors.length) return getDecompressor(cType);
+
+		Decompressor decompressor = decompressors[cType];
+		if(decompressor == null) {
+			decompressor = getDecompressor(cType);
+			decompressors[cType] = decompressor;
+		}
+
+		return decompressor;
+	}
+
+	/**
+	 * Create a stream which decompresses data.
+	 *
+	 * @param in the stream containing the compressed data.
+	 * @param length the number of bytes of compressed data. Bytes after this are not read.
+	 * @param cpr the {@link CPRecord} defining the type of compression.
+	 *
+	 * @return an {@link InputStream} of the uncompressed data.
+	 *
+	 * @throws IOException if the compression type is not supported or the stream can not be read.
+	 */
+	static public InputStream getStream(InputStream in, long length, CPRecord cpr) throws IOException {
+		return getStream(in, length, cpr.mCType);
+	}
+
+	/**
+	 * Create a stream which decompresses data.
+	 *
+	 * @param in the stream containing the compressed data.
+	 * @param length the number of bytes of compressed data. Bytes after this are not read.
+	 * @param cType the type of compression as defined in {@link Constant}.
+	 *
+	 * @return an {@link InputStream} of the uncompressed data.
+	 *
+	 * @throws IOException if the compression type is not supported or the stream can not be read.
+	 */
+	static public InputStream getStream(InputStream in, long length, int cType) throws IOException {
+		InputStream data = new BoundedStream(in, length);
+		if(cType == Constant.COMPRESSION_NONE) return data;
+
+		return new DecompressorStream(getDecompressor(cType).reset(data));
+	}
+
+	/**
+	 * Prepare to decode compressed data held in a buffer.
+	 * The buffer is read from its position to its limit. The position of the buffer is not changed.
+	 *
+	 * @param source the compressed data.
+	 *
+	 * @return this decompressor.
+	 */
+	public Decompressor reset(ByteBuffer source) {
+		mSource = source.duplicate();
+		mIn = null;
+		mEnd = false;
+		start();
+		return this;
+	}
+
+	/**
+	 * Prepare to decode compressed data read from a stream.
+	 *
+	 * @param in the stream of compressed data. Reading stops at the end of the compressed data.
+	 *
+	 * @return this decompressor.
+	 */
+	public Decompressor reset(InputStream in) {
+		if(mBuffer == null) mBuffer = new byte[BUFFER_SIZE];
+		mSource = ByteBuffer.wrap(mBuffer, 0, 0);
+		mIn = in;
+		mEnd = false;
+		start();
+		return this;
+	}
+
+	/**
+	 * Reset the state of the decoder for a new block of compressed data.
+	 */
+	abstract void start();
+
+	/**
+	 * Decode uncompressed bytes into an array.
+	 *
+	 * @param out the array to place uncompressed bytes in.
+	 * @param off the index in out for the first byte.
+	 * @param len the maximum number of bytes to decode.
+	 *
+	 * @return the number of bytes placed in the array or -1 at the end of the uncompressed data.
+	 *
+	 * @throws IOException if the compressed data is not valid or can not be read.
+	 */
+	abstract public int read(byte[] out, int off, int len) throws IOException;
+
+	/**
+	 * Decode exactly the given number of uncompressed bytes into an array.
+	 *
+	 * @param out the array to place uncompressed bytes in.
+	 * @param off the index in out for the first byte.
+	 * @param len the number of bytes to decode.
+	 *
+	 * @throws IOException if the compressed data ends early, is not valid or can not be read.
+	 */
+	public void readFully(byte[] out, int off, int len) throws IOException {
+		int n = 0;
+		while(n < len) {
+			int count = read(out, off + n, len - n);
+			if(count < 0) throw new EOFException("Compressed data ends after " + n + " of " + len + " bytes.");
+			n += count;
+		}
+	}
+
+	/**
+	 * Decode uncompressed bytes into a buffer.
+	 * Bytes are placed from the position of the buffer up to its limit and the position is advanced.
+	 * A buffer with a backing array is decoded into directly, others through a small reused array.
+	 *
+	 * @param out the buffer to place uncompressed bytes in.
+	 *
+	 * @return the number of bytes placed in the buffer or -1 at the end of the uncompressed data.
+	 *
+	 * @throws IOException if the compressed data is not valid or can not be read.
+	 */
+	public int read(ByteBuffer out) throws IOException {
+		if( ! out.hasRemaining()) return 0;
+		if(out.hasArray()) {
+			int n = read(out.array(), out.arrayOffset() + out.position(), out.remaining());
+			if(n > 0) out.position(out.position() + n);
+			return n;
+		}
+
+		if(mChunk == null) mChunk = new byte[CHUNK_SIZE];
+		int n = read(mChunk, 0, Math.min(mChunk.length, out.remaining()));
+		if(n > 0) out.put(mChunk, 0, n);
+
+		return n;
+	}
+
+	/**
+	 * Decode uncompressed bytes to fill a buffer from its position to its limit.
+	 *
+	 * @param out the buffer to place uncompressed bytes in. The position is advanced to the limit.
+	 *
+	 * @throws IOException if the compressed data ends early, is not valid or can not be read.
+	 */
+	public void readFully(ByteBuffer out) throws IOException {
+		int len = out.remaining();
+		while(out.hasRemaining()) {
+			if(read(out) < 0) throw new EOFException("Compressed data ends after " + (len - out.remaining()) + " of " + len + " bytes.");
+		}
+	}
+
+	/**
+	 * Make more compressed data available in the source.
+	 *
+	 * @return true if there is data in the source, false at the end of the compressed data.
+	 *
+	 * @throws IOException if the stream can not be read.
+	 */
+	boolean fill() throws IOException {
+		if(mSource.hasRemaining()) return true;
+		if(mIn == null) return false;
+		int n = mIn.read(mBuffer, 0, mBuffer.length);
+		if(n <= 0) return false;
+		mSource.clear();
+		mSource.limit(n);
+		return true;
+	}
+
+	/**
+	 * Read the next byte of compressed data.
+	 *
+	 * @return the next byte as a value from 0 to 255.
+	 *
+	 * @throws IOException if there is no more compressed data or the stream can not be read.
+	 */
+	final int next() throws IOException {
+		if( ! mSource.hasRemaining() && ! fill()) throw new EOFException("Unexpected end of compressed data.");
+		return mSource.get() & 0xFF;
+	}
+
+	/**
+	 * An {@link InputStream} which reads the output of a {@link Decompressor}.
+	 */
+	static class DecompressorStream extends InputStream {
+		Decompressor mDecompressor;
+		byte[] mOne = new byte[1];
+
+		DecompressorStream(Decompressor decompressor) { mDecompressor = decompressor; }
+
+		public int read() throws IOException {
+			int n = mDecompressor.read(mOne, 0, 1);
+			return n <= 0 ? -1 : mOne[0] & 0xFF;
+		}
+
+		public int read(byte[] b, int off, int len) throws IOException {
+			if(len == 0) return 0;
+			return mDecompressor.read(b, off, len);
+		}
+
+		public boolean markSupported() { return false; }
+	}
+
+	/**
+	 * An {@link InputStream} which reads at most a fixed number of bytes from another stream.
+	 * Closing the stream does not close the underlying stream.
+	 */
+	static class BoundedStream extends FilterInputStream {
+		long mRemaining;
+
+		BoundedStream(InputStream in, long length) {
+			super(in);
+			mRemaining = length;
+		}
+
+		public int read() throws IOException {
+			if(mRemaining <= 0) return -1;
+			int b = in.read();
+			if(b >= 0) mRemaining--;
+			return b;
+		}
+
+		public int read(byte[] b, int off, int len) throws IOException {
+			if(len == 0) return 0;
+			if(mRemaining <= 0) return -1;
+			int n = in.read(b, off, (int) Math.min(len, mRemaining));
+			if(n > 0) mRemaining -= n;
+			return n;
+		}
+
+		public long skip(long n) throws IOException {
+			long s = in.skip(Math.min(n, mRemaining));
+			if(s > 0) mRemaining -= s;
+			return s;
+		}
+
+		public int available() throws IOException { return (int) Math.min(in.available(), mRemaining); }
+
+		public boolean markSupported() { return false; }
+
+		public void close() { mRemaining = 0; }
+	}
+}
@@ -3,6 +3,7 @@ package pds.cdf;
 import java.io.DataInputStream;
 import java.io.FileInputStream;
 import java.util.ArrayList;
+import java.util.Arrays;
 
 import org.apache.commons.cli.Options;
 import org.apache.commons.cli.CommandLine;
@@ -34,6 +35,8 @@ public class Dump {
 		mAppOptions.addOption("h", "help", false, "Dispay this text");
 		mAppOptions.addOption("v", "verbose", false,
 				"Verbose. Show status at each step.");
+		mAppOptions.addOption("l", "list", true, "List. Read the names of the files to scan from a file, one per line.");
+		mAppOptions.addOption("t", "threads", true, "Threads. The number of files to parse at the same time. Default is one per processor.");
 	}
 
 	/**
@@ -45,7 +48,7 @@ public class Dump {
 	 */
 	public static void main(String[] args) 
 	{
-		Dump me = new Dump();
+		final Dump me = new Dump();
 
 		CommandLineParser parser = new PosixParser();
 		try {
@@ -53,16 +56,36 @@ public class Dump {
 
 			if (line.hasOption("h")) me.showHelp();
 			if (line.hasOption("v")) me.mVerbose = true;
+			
 			// Process arguments looking for variable context
-			if (line.getArgs().length != 1) {
+			ArrayList<String> names = new ArrayList<String>(Arrays.asList(line.getArgs()));
+			if (line.hasOption("l")) names.addAll(Batch.readList(line.getOptionValue("l")));
+			if (names.isEmpty()) {
 				me.showHelp();
 				return;
 			}
 
-			for (String name : line.getArgs()) {
-				if (me.mVerbose) System.out.println("Processing: " + name);
-				me.scanCDF(name);
-			}
+			final ArrayList<String> files = Batch.expand(names);
+			Batch<CDF> batch = new Batch<CDF>();
+			if (line.hasOption("t")) batch.setThreads(Integer.parseInt(line.getOptionValue("t")));
+			if (me.mVerbose) batch.setThreads(1);	// Keep status output in order
+
+			// Files are parsed in parallel and displayed in order
+			batch.run(files, new Batch.Job<CDF>() {
+				public CDF process(String name) throws Exception {
+					if (me.mVerbose) System.out.println("Processing: " + name);
+					return me.parseCDF(name);
+				}
+				
+				public void report(String name, CDF cdf, Throwable error) {
+					if (files.size() > 1) System.out.println("File: " + name);
+					if (error != null) {
+						error.printStackTrace(System.out);
+						return;
+					}
+					me.dump(cdf);
+				}
+			});
 		} catch (Exception e) {
 			e.printStackTrace(System.out);
 		}
@@ -78,7 +101,7 @@ public class Dump {
 		System.out.println(mOverview);
 		System.out.println("");
 		System.out.println("Usage: java " + getClass().getName()
-				+ " [options] file");
+				+ " [options] file|directory|pattern ...");
 		System.out.println("");
 		System.out.println("Options:");
 
@@ -101,11 +124,40 @@ public class Dump {
 	 */
 	public void scanCDF(String pathname)
 			throws Exception
+	{
+		dump(parseCDF(pathname));
+	}
+
+	/**
+	 * Parse a CDF file reading every record in the file.
+	 * 
+	 * @param pathname the file system path and filename to the CDF file.
+	 * 
+	 * @return the parsed {@link CDF}.
+	 * 
+	 * @throws Exception if any non-recoverable errors occur.
+	 */
+	public CDF parseCDF(String pathname)
+			throws Exception
 	{
 		DataInputStream in = new DataInputStream(new FileInputStream(pathname));
-		
-		// CDF
-		CDF cdf = new CDF(in);
+		try {
+			CDF cdf = new CDF();
+			cdf.setPathName(pathname);
+			cdf.parse(in);
+			return cdf;
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Display detailed information about the internal structure and contents of a parsed CDF file.
+	 * 
+	 * @param cdf the parsed {@link CDF}.
+	 */
+	public void dump(CDF cdf)
+	{
 		System.out.println("Version: " + Constant.toHexString(cdf.getVersion()));
 		System.out.println("Compression: " + Constant.toHexString(cdf.getCompression()));
 
@@ -145,7 +197,5 @@ public class Dump {
 		for(Variable v : var) {
 			v.dump();
 		}
-		
-		in.close();
 	}
 }
@@ -0,0 +1,223 @@
+package pds.cdf;
+
+import java.io.FileInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Compute one or more message digests of the content of a file in a single read.
+ *
+ * Bytes can be added directly, read through a stream returned by {@link #tee(InputStream)}
+ * so the digests are computed from the same read which feeds a parser, or read from a
+ * file or a {@link MappedFile}. Each digest is formatted as lower case hexadecimal digits.
+ *
+ * @author tking
+ *
+ */
+public class FileDigest {
+	/** Name of the MD5 algorithm. */	static final public String MD5 = "MD5";
+	/** Name of the SHA-256 algorithm. */	static final public String SHA_256 = "SHA-256";
+
+	/** Number of bytes read at a time. */	static final int BUFFER_SIZE = 1 << 20;
+
+	LinkedHashMap<String, MessageDigest> mDigests = new LinkedHashMap<String, MessageDigest>();
+	LinkedHashMap<String, String> mValues = null;	// Set when finished
+
+	/**
+	 * Create an instance.
+	 *
+	 * @param algorithms the names of the digest algorithms, like {@link #MD5} and {@link #SHA_256}.
+	 *
+	 * @throws IOException if an algorithm is not supported.
+	 */
+	public FileDigest(String... algorithms) throws IOException {
+		for(String algorithm : algorithms) {
+			if(mDigests.containsKey(algorithm)) continue;
+			try {
+				mDigests.put(algorithm, MessageDigest.getInstance(algorithm));
+			} catch(NoSuchAlgorithmException e) {
+				throw new IOException("Digest algorithm '" + algorithm + "' is not supported.", e);
+			}
+		}
+	}
+
+	/**
+	 * Compute the digests of a file.
+	 *
+	 * @param pathname the file system path and file name of the file.
+	 * @param algorithms the names of the digest algorithms.
+	 *
+	 * @return the finished {@link FileDigest}.
+	 *
+	 * @throws IOException if the file can not be read or an algorithm is not supported.
+	 */
+	public static FileDigest digest(String pathname, String... algorithms) throws IOException {
+		FileDigest digest = new FileDigest(algorithms);
+
+		FileInputStream stream = new FileInputStream(pathname);
+		try {
+			FileChannel channel = stream.getChannel();
+			ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+			while(channel.read(buffer) != -1) {
+				buffer.flip();
+				digest.update(buffer);
+				buffer.clear();
+			}
+		} finally {
+			stream.close();
+		}
+		digest.finish();
+
+		return digest;
+	}
+
+	/**
+	 * Compute the digests of a mapped file. The file is read sequentially
+	 * from the mapping, so no bytes are copied to the heap. Reading stops if the thread is interrupted.
+	 *
+	 * @param file the {@link MappedFile}.
+	 * @param algorithms the names of the digest algorithms.
+	 *
+	 * @return the finished {@link FileDigest}.
+	 *
+	 * @throws IOException if an algorithm is not supported.
+	 * @throws InterruptedIOException if the thread is interrupted.
+	 */
+	public static FileDigest digest(MappedFile file, String... algorithms) throws IOException {
+		FileDigest digest = new FileDigest(algorithms);
+
+		long offset = 0;
+		while(offset < file.length()) {
+			if(Thread.currentThread().isInterrupted()) throw new InterruptedIOException("Interrupted while computing digest.");
+			long len = Math.min(file.length() - offset, BUFFER_SIZE);
+			digest.update(file.slice(offset, len));
+			offset += len;
+		}
+		digest.finish();
+
+		return digest;
+	}
+
+	/**
+	 * Add bytes to each digest.
+	 *
+	 * @param b the array of bytes.
+	 * @param off the index of the first byte to add.
+	 * @param len the number of bytes to add.
+	 */
+	public void update(byte[] b, int off, int len) {
+		for(MessageDigest md : mDigests.values()) md.update(b, off, len);
+	}
+
+	/**
+	 * Add the remaining bytes of a buffer to each digest. The position of the buffer is moved to the limit.
+	 *
+	 * @param buffer the {@link ByteBuffer}.
+	 */
+	public void update(ByteBuffer buffer) {
+		for(MessageDigest md : mDigests.values()) md.update(buffer.duplicate());
+		buffer.position(buffer.limit());
+	}
+
+	/**
+	 * Complete each digest. Calling again returns the same values.
+	 *
+	 * @return the hexadecimal value of each digest by algorithm name.
+	 */
+	public Map<String, String> finish() {
+		if(mValues != null) return mValues;
+
+		mValues = new LinkedHashMap<String, String>();
+		for(Map.Entry<String, MessageDigest> item : mDigests.entrySet()) {
+			mValues.put(item.getKey(), toHex(item.getValue().digest()));
+		}
+
+		return mValues;
+	}
+
+	/**
+	 * Retrieve the value of a digest.
+	 *
+	 * @param algorithm the name of the digest algorithm.
+	 *
+	 * @return the hexadecimal value or null if the algorithm was not computed.
+	 */
+	public String get(String algorithm) { return finish().get(algorithm); }
+
+	/**
+	 * Create a stream which adds each byte read or skipped to the digests.
+	 *
+	 * @param in the stream to read.
+	 *
+	 * @return the {@link InputStream} which reads through to the stream.
+	 */
+	public InputStream tee(InputStream in) { return new TeeStream(in); }
+
+	/**
+	 * Read the rest of a stream so all bytes are added to the digests.
+	 *
+	 * @param in the stream returned by {@link #tee(InputStream)}, or a stream which reads from it.
+	 *
+	 * @throws IOException if the stream can not be read.
+	 */
+	public static void drain(InputStream in) throws IOException {
+		byte[] buffer = new byte[8192];
+		while(in.read(buffer, 0, buffer.length) != -1) ;
+	}
+
+	/**
+	 * Format bytes as hexadecimal digits.
+	 *
+	 * @param value the bytes.
+	 *
+	 * @return the lower case hexadecimal digits.
+	 */
+	static String toHex(byte[] value) {
+		StringBuilder text = new StringBuilder(value.length * 2);
+		for(byte b : value) {
+			text.append(Character.forDigit((b >> 4) & 0xf, 16));
+			text.append(Character.forDigit(b & 0xf, 16));
+		}
+
+		return text.toString();
+	}
+
+	/**
+	 * An {@link InputStream} which adds the bytes it reads to the digests.
+	 * Skipped bytes are read so they are included.
+	 */
+	class TeeStream extends FilterInputStream {
+		byte[] mSkip = null;
+
+		TeeStream(InputStream in) { super(in); }
+
+		public int read() throws IOException {
+			int c = in.read();
+			if(c != -1) for(MessageDigest md : mDigests.values()) md.update((byte) c);
+			return c;
+		}
+
+		public int read(byte[] b, int off, int len) throws IOException {
+			int n = in.read(b, off, len);
+			if(n > 0) update(b, off, n);
+			return n;
+		}
+
+		public long skip(long n) throws IOException {
+			if(n <= 0) return 0;
+			if(mSkip == null) mSkip = new byte[8192];
+			int len = read(mSkip, 0, (int) Math.min(n, mSkip.length));
+			return (len < 0) ? 0 : len;
+		}
+
+		public boolean markSupported() { return false; }
+	}
+}
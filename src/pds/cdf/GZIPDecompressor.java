@@ -0,0 +1,167 @@
+package pds.cdf;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Decoder for GZIP encoding.
+ *
+ * The GZIP header is read, then the deflate data is inflated with a reusable {@link Inflater}
+ * which reads directly from the source buffer and writes directly to the output array or buffer. When the end of the deflate data is reached
+ * the CRC and size in the GZIP trailer are checked.
+ *
+ * @author tking
+ *
+ */
+public class GZIPDecompressor extends Decompressor {
+	// Header flags
+	/** Header CRC is present. */	static final int FHCRC = 0x02;
+	/** Extra field is present. */	static final int FEXTRA = 0x04;
+	/** File name is present. */	static final int FNAME = 0x08;
+	/** Comment is present. */	static final int FCOMMENT = 0x10;
+
+	Inflater mInflater = new Inflater(true);	// Raw deflate data
+	CRC32 mCRC = new CRC32();
+	boolean mStarted = false;	// Header has been read
+
+	/**
+	 * Create a decoder for GZIP encoded data.
+	 */
+	public GZIPDecompressor() {
+	}
+
+	/**
+	 * Reset the state of the decoder for a new block of compressed data.
+	 */
+	void start() {
+		mInflater.reset();
+		mCRC.reset();
+		mStarted = false;
+	}
+
+	/**
+	 * Read and check the GZIP header.
+	 *
+	 * @throws IOException if the header is not valid or can not be read.
+	 */
+	private void readHeader() throws IOException {
+		if(next() != 0x1F || next() != 0x8B) throw new IOException("Compressed data is not in GZIP format.");
+		if(next() != 8) throw new IOException("GZIP compression method is not deflate.");
+		int flags = next();
+		for(int i = 0; i < 6; i++) next();	// MTIME, XFL, OS
+		if((flags & FEXTRA) != 0) {
+			int length = next() | (next() << 8);
+			for(int i = 0; i < length; i++) next();
+		}
+		if((flags & FNAME) != 0) while(next() != 0) ;
+		if((flags & FCOMMENT) != 0) while(next() != 0) ;
+		if((flags & FHCRC) != 0) { next(); next(); }
+		mStarted = true;
+	}
+
+	/**
+	 * Read and check the GZIP trailer.
+	 *
+	 * @throws IOException if the CRC or size does not match the uncompressed data.
+	 */
+	private void readTrailer() throws IOException {
+		long crc = readInt();
+		long size = readInt();
+		if(crc != mCRC.getValue()) throw new IOException("GZIP CRC does not match the uncompressed data.");
+		if(size != (mInflater.getBytesWritten() & 0xFFFFFFFFL)) throw new IOException("GZIP size does not match the uncompressed data.");
+		mEnd = true;
+	}
+
+	/**
+	 * Read a 4-byte little-endian value.
+	 *
+	 * @return the unsigned value.
+	 *
+	 * @throws IOException if there is no more compressed data.
+	 */
+	private long readInt() throws IOException {
+		return (next() | (next() << 8) | (next() << 16) | ((long) next() << 24)) & 0xFFFFFFFFL;
+	}
+
+	/**
+	 * Decode uncompressed bytes into an array.
+	 *
+	 * @param out the array to place uncompressed bytes in.
+	 * @param off the index in out for the first byte.
+	 * @param len the maximum number of bytes to decode.
+	 *
+	 * @return the number of bytes placed in the array or -1 at the end of the uncompressed data.
+	 *
+	 * @throws IOException if the compressed data is not valid or can not be read.
+	 */
+	public int read(byte[] out, int off, int len) throws IOException {
+		if(len == 0) return 0;
+
+		int n = inflate(null, out, off, len);
+		if(n > 0) mCRC.update(out, off, n);
+		if(mInflater.finished() && ! mEnd) readTrailer();
+
+		return n;
+	}
+
+	/**
+	 * Decode uncompressed bytes into a buffer, which may be a direct buffer.
+	 *
+	 * @param out the buffer to place uncompressed bytes in. The position is advanced past the bytes.
+	 *
+	 * @return the number of bytes placed in the buffer or -1 at the end of the uncompressed data.
+	 *
+	 * @throws IOException if the compressed data is not valid or can not be read.
+	 */
+	public int read(ByteBuffer out) throws IOException {
+		if( ! out.hasRemaining()) return 0;
+
+		int start = out.position();
+		int n = inflate(out, null, 0, 0);
+		if(n > 0) {
+			ByteBuffer data = out.duplicate();
+			data.position(start);
+			mCRC.update(data);
+		}
+		if(mInflater.finished() && ! mEnd) readTrailer();
+
+		return n;
+	}
+
+	/**
+	 * Inflate at least one byte into a buffer or an array.
+	 *
+	 * @param buffer the buffer to place uncompressed bytes in or null to use the array.
+	 * @param out the array to place uncompressed bytes in.
+	 * @param off the index in out for the first byte.
+	 * @param len the maximum number of bytes to decode.
+	 *
+	 * @return the number of bytes inflated or -1 at the end of the uncompressed data.
+	 *
+	 * @throws IOException if the compressed data is not valid or can not be read.
+	 */
+	private int inflate(ByteBuffer buffer, byte[] out, int off, int len) throws IOException {
+		if(mEnd) return -1;
+		if( ! mStarted) readHeader();
+
+		int n = 0;
+		try {
+			while(n == 0) {
+				if(mInflater.finished()) { readTrailer(); return -1; }
+				if(mInflater.needsInput()) {
+					if( ! fill()) throw new IOException("Unexpected end of compressed data.");
+					mInflater.setInput(mSource);	// Position of the source is advanced as data is inflated
+				}
+				n = (buffer == null) ? mInflater.inflate(out, off, len) : mInflater.inflate(buffer);
+				if(n == 0 && mInflater.needsDictionary()) throw new IOException("GZIP data requires a dictionary.");
+			}
+		} catch(DataFormatException e) {
+			throw new IOException("GZIP data is not valid: " + e.getMessage());
+		}
+
+		return n;
+	}
+}
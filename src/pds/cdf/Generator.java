@@ -0,0 +1,914 @@
+package pds.cdf;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.commons.cli.Options;
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.CommandLineParser;
+import org.apache.commons.cli.PosixParser;
+import org.apache.commons.cli.HelpFormatter;
+
+/**
+ * Write synthetic CDF files for scale and stress testing.
+ *
+ * Files are single-file, uncompressed (at the file level) CDF 3.x files in network (big-endian) encoding
+ * containing only zVariables. The first variable is always "Epoch" (CDF_EPOCH), the others are given
+ * the data types in turn and depend on "Epoch". The number of variables, dimensions, records, attributes and
+ * attribute entries can be set, as can the blocking of records into VVRs, the depth of the VXR tree,
+ * the number of unused internal records (UIR), sparse records and GZIP compression of variable data (CVVR).
+ * As in the CDF library, a block which does not become smaller when compressed is written as a VVR.
+ *
+ * Data is written one block at a time so files larger than memory can be generated.
+ *
+ * @author tking
+ *
+ */
+public class Generator {
+	private String mVersion = "0.0.1";
+	private String mOverview = "Generate a synthetic CDF file with a given number of variables, records and attributes."
+							 + " Options control the layout of the file, including the blocking of records,"
+							 + " the depth of the index tree, unused records, sparse records and compression."
+							 ;
+	private String mAcknowledge = "Development funded by NASA's PDS project at UCLA.";
+
+	private boolean mVerbose = false;
+
+	// create the Options
+	Options mAppOptions = new org.apache.commons.cli.Options();
+
+	// Layout parameters
+	int mVariables = 10;	// Number of variables including Epoch
+	int[] mDimSizes = new int[0];	// Dimensions of each data variable
+	int[] mDataTypes = { Constant.CDF_DOUBLE };	// Data types assigned in turn to data variables
+	int mRecords = 100;	// Records per variable
+	int mGlobalAttributes = 4;	// Number of global attributes
+	int mFanOut = 1;	// Entries per global attribute
+	int mVariableAttributes = 8;	// Number of variable attributes
+	int mBlocking = 1000;	// Records per VVR
+	int mEntries = 10;	// Entries per VXR
+	int mDepth = 1;	// Levels in the VXR tree
+	int mUIRs = 0;	// Number of unused internal records
+	int mSparse = 0;	// Sparse record type (0: none, 1: pad, 2: previous)
+	boolean mCompress = false;	// Compress variable data with GZIP
+
+	static final int CHAR_LENGTH = 8;	// Number of characters in CDF_CHAR values
+	static final int GZIP_LEVEL = 6;
+	static final double START_EPOCH = 63555753600000.0;	// 2014-01-01T00:00:00 in milliseconds since 0000-01-01
+	static final long START_TT2000 = 441806467184000000L;	// 2014-01-01T00:00:00 in nanoseconds since J2000
+
+	static final String[] GLOBAL_NAMES = { "Project", "Source_name", "Discipline", "Data_type", "Descriptor",
+			"Data_version", "Logical_file_id", "Logical_source", "Logical_source_description", "PI_name",
+			"PI_affiliation", "Mission_group", "Instrument_type", "TEXT" };
+	static final String[] VARIABLE_NAMES = { "FIELDNAM", "CATDESC", "VAR_TYPE", "DEPEND_0", "FILLVAL",
+			"VALIDMIN", "VALIDMAX", "UNITS", "LABLAXIS", "FORMAT", "DISPLAY_TYPE", "SCALEMIN", "SCALEMAX", "MONOTON" };
+
+	// Output state
+	FileChannel mChannel = null;
+	CountingStream mCounter = null;
+	DataOutputStream mOut = null;
+
+	/**
+	 * Count the bytes written to a stream.
+	 */
+	static class CountingStream extends FilterOutputStream {
+		long mCount = 0;
+
+		public CountingStream(OutputStream out) { super(out); }
+
+		@Override
+		public void write(int b) throws IOException { out.write(b); mCount++; }
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException { out.write(b, off, len); mCount += len; }
+	}
+
+	/**
+	 * Create an instance.
+	 */
+	public Generator()
+	{
+		mAppOptions.addOption("h", "help", false, "Dispay this text");
+		mAppOptions.addOption("v", "verbose", false, "Verbose. Show status at each step.");
+		mAppOptions.addOption("n", "variables", true, "Variables. The number of variables including Epoch. Default: 10");
+		mAppOptions.addOption("d", "dimensions", true, "Dimensions. Comma separated list of dimension sizes for data variables. Default: none (scalar)");
+		mAppOptions.addOption("y", "types", true, "Types. Comma separated list of data types (names or numbers) assigned in turn to data variables. Default: CDF_DOUBLE");
+		mAppOptions.addOption("r", "records", true, "Records. The number of records for each variable. Default: 100");
+		mAppOptions.addOption("g", "global", true, "Global. The number of global attributes. Default: 4");
+		mAppOptions.addOption("f", "fanout", true, "Fan-out. The number of entries for each global attribute. Default: 1");
+		mAppOptions.addOption("a", "attributes", true, "Attributes. The number of variable attributes. Default: 8");
+		mAppOptions.addOption("b", "blocking", true, "Blocking. The number of records in each VVR. Default: 1000");
+		mAppOptions.addOption("e", "entries", true, "Entries. The number of entries in each VXR. Default: 10");
+		mAppOptions.addOption("x", "depth", true, "Depth. The number of levels of VXRs. Default: 1");
+		mAppOptions.addOption("u", "unused", true, "Unused. The number of unused internal records (UIR) to scatter in the file. Default: 0");
+		mAppOptions.addOption("s", "sparse", true, "Sparse. Omit every other block of records in data variables. Type is 1 for pad or 2 for previous. Default: 0 (none)");
+		mAppOptions.addOption("c", "compress", false, "Compress. Compress variable data with GZIP.");
+	}
+
+	/**
+	 * Run the tools from the command-line.
+	 *
+	 * Use the "-h" option for options and details.
+	 *
+	 * @param args command-line arguments.
+	 */
+	public static void main(String[] args)
+	{
+		Generator me = new Generator();
+
+		CommandLineParser parser = new PosixParser();
+		try {
+			CommandLine line = parser.parse(me.mAppOptions, args);
+
+			if (line.hasOption("h")) me.showHelp();
+			if (line.hasOption("v")) me.mVerbose = true;
+			if (line.hasOption("n")) me.setVariables(Integer.parseInt(line.getOptionValue("n")));
+			if (line.hasOption("d")) me.setDimSizes(parseList(line.getOptionValue("d")));
+			if (line.hasOption("y")) me.setDataTypes(parseTypes(line.getOptionValue("y")));
+			if (line.hasOption("r")) me.setRecords(Integer.parseInt(line.getOptionValue("r")));
+			if (line.hasOption("g")) me.setGlobalAttributes(Integer.parseInt(line.getOptionValue("g")));
+			if (line.hasOption("f")) me.setFanOut(Integer.parseInt(line.getOptionValue("f")));
+			if (line.hasOption("a")) me.setVariableAttributes(Integer.parseInt(line.getOptionValue("a")));
+			if (line.hasOption("b")) me.setBlocking(Integer.parseInt(line.getOptionValue("b")));
+			if (line.hasOption("e")) me.setEntries(Integer.parseInt(line.getOptionValue("e")));
+			if (line.hasOption("x")) me.setDepth(Integer.parseInt(line.getOptionValue("x")));
+			if (line.hasOption("u")) me.setUIRs(Integer.parseInt(line.getOptionValue("u")));
+			if (line.hasOption("s")) me.setSparse(Integer.parseInt(line.getOptionValue("s")));
+			if (line.hasOption("c")) me.setCompress(true);
+
+			// Process arguments looking for variable context
+			if (line.getArgs().length != 1) {
+				me.showHelp();
+				return;
+			}
+
+			for (String name : line.getArgs()) {
+				if (me.mVerbose) System.out.println("Writing: " + name);
+				me.write(name);
+			}
+		} catch (Exception e) {
+			e.printStackTrace(System.out);
+		}
+	}
+
+	/**
+	 * Display help information.
+	 **/
+	public void showHelp()
+	{
+		System.out.println("");
+		System.out.println(getClass().getName() + "; Version: " + mVersion);
+		System.out.println(mOverview);
+		System.out.println("");
+		System.out.println("Usage: java " + getClass().getName()
+				+ " [options] file");
+		System.out.println("");
+		System.out.println("Options:");
+
+		// automatically generate the help statement
+		HelpFormatter formatter = new HelpFormatter();
+		formatter.printHelp(getClass().getName(), mAppOptions);
+
+		System.out.println("");
+		System.out.println("Acknowledgements:");
+		System.out.println(mAcknowledge);
+		System.out.println("");
+	}
+
+	/**
+	 * Parse a comma separated list of integers.
+	 *
+	 * @param value the list of integers.
+	 *
+	 * @return the array of values.
+	 */
+	static int[] parseList(String value) {
+		String[] part = value.split(",");
+		int[] list = new int[part.length];
+		for(int i = 0; i < part.length; i++) list[i] = Integer.parseInt(part[i].trim());
+
+		return list;
+	}
+
+	/**
+	 * Parse a comma separated list of data types. Each data type can be a name (like "CDF_REAL4") or a number.
+	 *
+	 * @param value the list of data types.
+	 *
+	 * @return the array of data type tokens.
+	 *
+	 * @throws IllegalArgumentException if a data type is not recognized.
+	 */
+	static int[] parseTypes(String value) {
+		String[] part = value.split(",");
+		int[] list = new int[part.length];
+		for(int i = 0; i < part.length; i++) {
+			String name = part[i].trim();
+			int type = 0;
+			if(Character.isDigit(name.charAt(0))) {
+				type = Integer.parseInt(name);
+			} else {
+				if( ! name.toUpperCase().startsWith("CDF_")) name = "CDF_" + name;
+				for(int t = 0; t < 64; t++) {
+					if(Constant.getDataTypeName(t).equalsIgnoreCase(name)) { type = t; break; }
+				}
+			}
+			if(Constant.getDataTypeSize(type) == 0) throw new IllegalArgumentException("Unknown data type: " + part[i]);
+			list[i] = type;
+		}
+
+		return list;
+	}
+
+	/**
+	 * Write a CDF file with the current settings.
+	 *
+	 * @param pathname the file system path and filename of the CDF file to create.
+	 *
+	 * @throws IOException if the file can not be written.
+	 */
+	public void write(String pathname) throws IOException {
+		RandomAccessFile file = new RandomAccessFile(pathname, "rw");
+		try {
+			file.setLength(0);
+			mChannel = file.getChannel();
+			mCounter = new CountingStream(new BufferedOutputStream(Channels.newOutputStream(mChannel), 1 << 16));
+			mOut = new DataOutputStream(mCounter);
+			write();
+		} finally {
+			mOut = null;
+			mCounter = null;
+			mChannel = null;
+			file.close();
+		}
+	}
+
+	/**
+	 * Write the records of the CDF file to the output.
+	 *
+	 * @throws IOException if the file can not be written.
+	 */
+	private void write() throws IOException {
+		int nAttr = mGlobalAttributes + mVariableAttributes;
+
+		// Magic numbers
+		mOut.writeInt(0xCDF30001);
+		mOut.writeInt(Constant.CompressionOff);
+
+		// CDR
+		long gdr = 8 + 312;
+		writeHeader(312, Constant.RECORD_CDR);
+		mOut.writeLong(gdr);	// GDRoffset
+		mOut.writeInt(3);	// Version
+		mOut.writeInt(8);	// Release
+		mOut.writeInt(Constant.ENCODING_NETWORK);	// Encoding
+		mOut.writeInt(0x0003);	// Flags: row majority, single file
+		mOut.writeInt(0);	// rfuA
+		mOut.writeInt(0);	// rfuB
+		mOut.writeInt(0);	// Increment
+		mOut.writeInt(-1);	// Identifier
+		mOut.writeInt(-1);	// rfuE
+		writeString("Synthetic CDF written by " + getClass().getName(), 256);	// Copyright
+
+		// GDR - links are set when the file is complete
+		writeHeader(84, Constant.RECORD_GDR);
+		mOut.writeLong(0);	// rVDRhead
+		mOut.writeLong(0);	// zVDRhead
+		mOut.writeLong(nAttr > 0 ? gdr + 84 : 0);	// ADRhead
+		mOut.writeLong(0);	// EOF
+		mOut.writeInt(0);	// NrVars
+		mOut.writeInt(nAttr);	// NumAttr
+		mOut.writeInt(-1);	// rMaxRec
+		mOut.writeInt(0);	// rNumDims
+		mOut.writeInt(mVariables);	// NzVars
+		mOut.writeLong(0);	// UIRhead
+		mOut.writeInt(0);	// rfuC
+		mOut.writeInt(0);	// LeapSecondLastUpdated
+		mOut.writeInt(-1);	// rfuE
+
+		// Attributes
+		for(int i = 0; i < nAttr; i++) {
+			if(mVerbose && i % 1000 == 0) System.out.println("Attribute: " + i);
+			if(i < mGlobalAttributes) writeGlobalAttribute(i, i == nAttr - 1);
+			else writeVariableAttribute(i, i - mGlobalAttributes, i == nAttr - 1);
+		}
+
+		// Variables - index and CPR links are set when the data is written
+		long zVDRhead = (mVariables > 0) ? offset() : 0;
+		long[] vdr = new long[mVariables];
+		for(int i = 0; i < mVariables; i++) {
+			vdr[i] = offset();
+			writeVDR(i, (i == mVariables - 1) ? 0 : vdr[i] + getVDRSize(i));
+		}
+		long cpr = offset();
+
+		// Compression parameters - shared by all variables
+		if(mCompress) {
+			writeHeader(28, Constant.RECORD_CPR);
+			mOut.writeInt(Constant.COMPRESSION_GZIP);	// cType
+			mOut.writeInt(0);	// rfuA
+			mOut.writeInt(1);	// pCount
+			mOut.writeInt(GZIP_LEVEL);	// cParms
+		}
+
+		// Data and index for each variable with unused records scattered between
+		ArrayList<Long> uir = new ArrayList<Long>();
+		Random random = new Random(mVariables);
+		for(int i = 0; i < mVariables; i++) {
+			if(mVerbose && i % 100 == 0) System.out.println("Variable: " + i);
+			long[] index = writeData(i);
+			patchLong(vdr[i] + 28, index[0]);	// VXRhead
+			patchLong(vdr[i] + 36, index[1]);	// VXRtail
+			if(mCompress) patchLong(vdr[i] + 72, cpr);	// CPRorSPRoffset
+
+			int count = (int) ((long) (i + 1) * mUIRs / mVariables - (long) i * mUIRs / mVariables);
+			if(mVariables == 0) count = mUIRs;
+			for(int j = 0; j < count; j++) {
+				uir.add(offset());
+				byte[] garbage = new byte[16 + random.nextInt(240)];
+				random.nextBytes(garbage);
+				writeHeader(28 + garbage.length, Constant.RECORD_UIR);
+				mOut.writeLong(0);	// NextUIR
+				mOut.writeLong(0);	// PrevUIR
+				mOut.write(garbage);
+			}
+		}
+
+		// Link the UIRs
+		for(int i = 0; i < uir.size(); i++) {
+			if(i < uir.size() - 1) patchLong(uir.get(i) + 12, uir.get(i + 1));	// NextUIR
+			if(i > 0) patchLong(uir.get(i) + 20, uir.get(i - 1));	// PrevUIR
+		}
+
+		// Complete the GDR
+		patchLong(gdr + 20, zVDRhead);
+		patchLong(gdr + 36, offset());	// EOF
+		patchLong(gdr + 64, uir.isEmpty() ? 0 : uir.get(0));
+
+		mOut.flush();
+	}
+
+	/**
+	 * Write a global attribute (ADR) followed by its entries (AgrEDR).
+	 *
+	 * @param num the attribute number.
+	 * @param last true if this is the last attribute.
+	 *
+	 * @throws IOException if the file can not be written.
+	 */
+	private void writeGlobalAttribute(int num, boolean last) throws IOException {
+		String name = (num < GLOBAL_NAMES.length) ? GLOBAL_NAMES[num] : "GLOBAL_" + num;
+
+		ArrayList<byte[]> values = new ArrayList<byte[]>();
+		for(int i = 0; i < mFanOut; i++) values.add(("Value " + i + " of " + name).getBytes());
+
+		writeAttribute(num, name, Constant.SCOPE_GLOBAL, values, null, null, last);
+	}
+
+	/**
+	 * Write a variable attribute (ADR) followed by an entry (AzEDR) for each variable.
+	 *
+	 * @param num the attribute number.
+	 * @param n the index of the attribute within the variable attributes.
+	 * @param last true if this is the last attribute.
+	 *
+	 * @throws IOException if the file can not be written.
+	 */
+	private void writeVariableAttribute(int num, int n, boolean last) throws IOException {
+		String name = (n < VARIABLE_NAMES.length) ? VARIABLE_NAMES[n] : "ATTR_" + n;
+
+		ArrayList<byte[]> values = new ArrayList<byte[]>();
+		ArrayList<Integer> types = new ArrayList<Integer>();
+		ArrayList<Integer> vars = new ArrayList<Integer>();
+		for(int i = 0; i < mVariables; i++) {
+			int dataType = getDataType(i);
+			String varName = getVariableName(i);
+			boolean numeric = (dataType != Constant.CDF_CHAR);
+			String text = null;
+			byte[] value = null;
+
+			if(name.equals("FIELDNAM") || name.equals("LABLAXIS")) text = varName;
+			else if(name.equals("CATDESC")) text = "Synthetic variable " + varName;
+			else if(name.equals("VAR_TYPE")) text = (i == 0) ? "support_data" : "data";
+			else if(name.equals("DEPEND_0")) { if(i > 0) text = getVariableName(0); }
+			else if(name.equals("UNITS")) text = (i == 0) ? "ms" : "nT";
+			else if(name.equals("FORMAT")) text = numeric ? "E12.4" : "A" + CHAR_LENGTH;
+			else if(name.equals("DISPLAY_TYPE")) text = "time_series";
+			else if(name.equals("MONOTON")) { if(i == 0) text = "INCREASE"; }
+			else if(name.equals("FILLVAL")) value = getFill(dataType);
+			else if(name.equals("VALIDMIN") || name.equals("SCALEMIN")) { if(numeric) value = getValue(dataType, -1.0, 0); }
+			else if(name.equals("VALIDMAX") || name.equals("SCALEMAX")) { if(numeric) value = getValue(dataType, 1.0, mRecords - 1); }
+			else text = "Value of " + name + " for " + varName;
+
+			if(text != null) { values.add(text.getBytes()); types.add(Constant.CDF_CHAR); vars.add(i); }
+			if(value != null) { values.add(value); types.add(dataType); vars.add(i); }
+		}
+
+		writeAttribute(num, name, Constant.SCOPE_VARIABLE, values, types, vars, last);
+	}
+
+	/**
+	 * Write an attribute descriptor record (ADR) and a chain of entries (AEDR).
+	 *
+	 * @param num the attribute number.
+	 * @param name the attribute name.
+	 * @param scope the scope of the attribute.
+	 * @param values the value of each entry.
+	 * @param types the data type of each entry or null if all are CDF_CHAR.
+	 * @param nums the number of each entry or null if entries are numbered in sequence.
+	 * @param last true if this is the last attribute.
+	 *
+	 * @throws IOException if the file can not be written.
+	 */
+	private void writeAttribute(int num, String name, int scope, ArrayList<byte[]> values, ArrayList<Integer> types,
+			ArrayList<Integer> nums, boolean last) throws IOException {
+		boolean global = (scope == Constant.SCOPE_GLOBAL);
+		long adr = offset();
+		long size = 324;
+		for(byte[] value : values) size += 56 + value.length;
+
+		int max = -1;
+		for(int i = 0; i < values.size(); i++) max = Math.max(max, nums == null ? i : nums.get(i));
+		long head = values.isEmpty() ? 0 : adr + 324;
+
+		writeHeader(324, Constant.RECORD_ADR);
+		mOut.writeLong(last ? 0 : adr + size);	// ADRnext
+		mOut.writeLong(global ? head : 0);	// AgrEDRhead
+		mOut.writeInt(scope);	// Scope
+		mOut.writeInt(num);	// Num
+		mOut.writeInt(global ? values.size() : 0);	// NgrEntries
+		mOut.writeInt(global ? max : -1);	// MAXgrEntry
+		mOut.writeInt(0);	// rfuA
+		mOut.writeLong(global ? 0 : head);	// AzEDRhead
+		mOut.writeInt(global ? 0 : values.size());	// NzEntries
+		mOut.writeInt(global ? -1 : max);	// MAXzEntry
+		mOut.writeInt(-1);	// rfuE
+		writeString(name, 256);
+
+		for(int i = 0; i < values.size(); i++) {
+			byte[] value = values.get(i);
+			int dataType = (types == null) ? Constant.CDF_CHAR : types.get(i);
+			int numElems = (dataType == Constant.CDF_CHAR) ? value.length : value.length / Constant.getDataTypeSize(dataType);
+			long next = (i == values.size() - 1) ? 0 : offset() + 56 + value.length;
+
+			writeHeader(56 + value.length, global ? Constant.RECORD_AGREDR : Constant.RECORD_AZEDR);
+			mOut.writeLong(next);	// AEDRnext
+			mOut.writeInt(num);	// AttrNum
+			mOut.writeInt(dataType);	// DataType
+			mOut.writeInt(nums == null ? i : nums.get(i));	// Num
+			mOut.writeInt(numElems);	// NumElems
+			mOut.writeInt(0);	// NumStrings
+			mOut.writeInt(0);	// rfuB
+			mOut.writeInt(0);	// rfuC
+			mOut.writeInt(-1);	// rfuD
+			mOut.writeInt(-1);	// rfuE
+			mOut.write(value);
+		}
+	}
+
+	/**
+	 * Write a zVariable descriptor record (zVDR).
+	 *
+	 * @param num the variable number.
+	 * @param next the file offset of the next zVDR.
+	 *
+	 * @throws IOException if the file can not be written.
+	 */
+	private void writeVDR(int num, long next) throws IOException {
+		int dataType = getDataType(num);
+		int[] dims = getDimSizes(num);
+		int flags = Constant.FLAG_VARIANCE | Constant.FLAG_PAD;
+		if(mCompress) flags |= Constant.FLAG_COMPRESSION;
+
+		writeHeader(getVDRSize(num), Constant.RECORD_ZVDR);
+		mOut.writeLong(next);	// VDRnext
+		mOut.writeInt(dataType);	// DataType
+		mOut.writeInt(getLastRecord(num));	// MaxRec
+		mOut.writeLong(0);	// VXRhead
+		mOut.writeLong(0);	// VXRtail
+		mOut.writeInt(flags);	// Flags
+		mOut.writeInt(num == 0 ? 0 : mSparse);	// SRecords
+		mOut.writeInt(0);	// rfuB
+		mOut.writeInt(-1);	// rfuC
+		mOut.writeInt(-1);	// rfuF
+		mOut.writeInt(getNumElems(dataType));	// NumElems
+		mOut.writeInt(num);	// Num
+		mOut.writeLong(-1);	// CPRorSPRoffset
+		mOut.writeInt(mBlocking);	// BlockingFactor
+		writeString(getVariableName(num), 256);
+		mOut.writeInt(dims.length);	// zNumDims
+		for(int i = 0; i < dims.length; i++) mOut.writeInt(dims[i]);	// zDimSizes
+		for(int i = 0; i < dims.length; i++) mOut.writeInt(-1);	// DimVarys
+		mOut.write(getPad(dataType));	// PadValues
+	}
+
+	/**
+	 * Write the data records (VVR or CVVR) and index records (VXR) for a variable.
+	 *
+	 * @param num the variable number.
+	 *
+	 * @return the file offsets of the first and last VXR in the top level chain.
+	 *
+	 * @throws IOException if the file can not be written.
+	 */
+	private long[] writeData(int num) throws IOException {
+		int dataType = getDataType(num);
+		int recSize = getRecordSize(num);
+		int values = recSize / Constant.getDataTypeSize(dataType) / getNumElems(dataType);
+		int blocking = Math.max(1, mBlocking);
+		int blocks = (int) ((mRecords + (long) blocking - 1) / blocking);
+		boolean sparse = (num > 0 && mSparse != 0);
+
+		// Data blocks - each node is { first, last, offset }
+		ArrayList<long[]> nodes = new ArrayList<long[]>();
+		ByteBuffer buffer = ByteBuffer.allocate(Math.min(blocking, Math.max(1, mRecords)) * recSize);
+		for(int b = 0; b < blocks; b++) {
+			if(sparse && b % 2 == 1 && b != blocks - 1) continue;	// Leave a gap
+			int first = b * blocking;
+			int last = (int) Math.min((long) first + blocking, mRecords) - 1;
+
+			buffer.clear();
+			for(int r = first; r <= last; r++) {
+				for(int e = 0; e < values; e++) putValue(buffer, num, dataType, r, e);
+			}
+
+			nodes.add(new long[] { first, last, offset() });
+			ByteArrayOutputStream bytes = null;
+			if(mCompress) {
+				bytes = new ByteArrayOutputStream(buffer.position() / 2 + 64);
+				GZIPOutputStream gzip = new GZIPOutputStream(bytes);
+				gzip.write(buffer.array(), 0, buffer.position());
+				gzip.close();
+				if(bytes.size() >= buffer.position()) bytes = null;	// Not smaller, stored as a VVR like the CDF library
+			}
+			if(bytes != null) {
+				writeHeader(24 + bytes.size(), Constant.RECORD_CVVR);
+				mOut.writeInt(0);	// rfuA
+				mOut.writeLong(bytes.size());	// cSize
+				bytes.writeTo(mOut);
+			} else {
+				writeHeader(12 + buffer.position(), Constant.RECORD_VVR);
+				mOut.write(buffer.array(), 0, buffer.position());
+			}
+		}
+		if(nodes.isEmpty()) return new long[] { 0, 0 };
+
+		// Index - build each level from the one below
+		int entries = Math.max(1, mEntries);
+		for(int level = 1; level <= Math.max(1, mDepth); level++) {
+			boolean top = (level >= mDepth);
+			ArrayList<long[]> parents = new ArrayList<long[]>();
+			int size = 28 + (16 * entries);
+			for(int i = 0; i < nodes.size(); i += entries) {
+				int used = Math.min(entries, nodes.size() - i);
+				long next = (top && i + entries < nodes.size()) ? offset() + size : 0;
+				parents.add(new long[] { nodes.get(i)[0], nodes.get(i + used - 1)[1], offset() });
+				writeHeader(size, Constant.RECORD_VXR);
+				mOut.writeLong(next);	// VXRnext
+				mOut.writeInt(entries);	// Nentries
+				mOut.writeInt(used);	// NusedEntries
+				for(int j = 0; j < entries; j++) mOut.writeInt(j < used ? (int) nodes.get(i + j)[0] : -1);	// First
+				for(int j = 0; j < entries; j++) mOut.writeInt(j < used ? (int) nodes.get(i + j)[1] : -1);	// Last
+				for(int j = 0; j < entries; j++) mOut.writeLong(j < used ? nodes.get(i + j)[2] : -1);	// Offset
+			}
+			nodes = parents;
+		}
+
+		return new long[] { nodes.get(0)[2], nodes.get(nodes.size() - 1)[2] };
+	}
+
+	/**
+	 * Place a data value in a buffer. Values follow a sine wave so they vary between records and elements.
+	 * Time values increase by one second per record.
+	 *
+	 * @param buffer the buffer to place the value in.
+	 * @param num the variable number.
+	 * @param dataType the data type of the value.
+	 * @param record the record number.
+	 * @param elem the element number within the record.
+	 */
+	private void putValue(ByteBuffer buffer, int num, int dataType, int record, int elem) {
+		if(dataType == Constant.CDF_CHAR) {
+			for(int i = 0; i < CHAR_LENGTH; i++) buffer.put((byte) ('A' + (record + elem + i) % 26));
+			return;
+		}
+		buffer.put(getValue(dataType, Math.sin((record + (elem * 7) + (num * 13)) / 50.0), record));
+	}
+
+	/**
+	 * Encode a value for a data type.
+	 *
+	 * @param dataType the data type of the value.
+	 * @param x the value in the range -1 to 1, scaled to the range of the data type.
+	 * @param record the record number. Used for time values.
+	 *
+	 * @return the bytes of the value in network encoding.
+	 */
+	static byte[] getValue(int dataType, double x, long record) {
+		ByteBuffer buffer = ByteBuffer.allocate(Constant.getDataTypeSize(dataType));
+		switch(dataType) {
+		case Constant.CDF_INT1: buffer.put((byte) (x * 100)); break;
+		case Constant.CDF_UINT1: buffer.put((byte) ((x + 1) * 100)); break;
+		case Constant.CDF_BYTE: buffer.put((byte) (x * 100)); break;
+		case Constant.CDF_INT2: buffer.putShort((short) (x * 30000)); break;
+		case Constant.CDF_UINT2: buffer.putShort((short) ((x + 1) * 30000)); break;
+		case Constant.CDF_INT4: buffer.putInt((int) (x * 1.0e9)); break;
+		case Constant.CDF_UINT4: buffer.putInt((int) (long) ((x + 1) * 2.0e9)); break;
+		case Constant.CDF_INT8: buffer.putLong((long) (x * 1.0e15)); break;
+		case Constant.CDF_REAL4: buffer.putFloat((float) (x * 1000)); break;
+		case Constant.CDF_FLOAT: buffer.putFloat((float) (x * 1000)); break;
+		case Constant.CDF_REAL8: buffer.putDouble(x * 1000); break;
+		case Constant.CDF_DOUBLE: buffer.putDouble(x * 1000); break;
+		case Constant.CDF_EPOCH: buffer.putDouble(START_EPOCH + (record * 1000.0)); break;
+		case Constant.CDF_EPOCH16: buffer.putDouble(START_EPOCH / 1000 + record); buffer.putDouble(0.0); break;
+		case Constant.CDF_TIME_TT2000: buffer.putLong(START_TT2000 + (record * 1000000000L)); break;
+		}
+
+		return buffer.array();
+	}
+
+	/**
+	 * Retrieve the ISTP fill value for a data type.
+	 *
+	 * @param dataType the data type.
+	 *
+	 * @return the bytes of the fill value in network encoding.
+	 */
+	static byte[] getFill(int dataType) {
+		ByteBuffer buffer = ByteBuffer.allocate(Constant.getDataTypeSize(dataType));
+		switch(dataType) {
+		case Constant.CDF_INT1: buffer.put((byte) -128); break;
+		case Constant.CDF_UINT1: buffer.put((byte) 255); break;
+		case Constant.CDF_BYTE: buffer.put((byte) -128); break;
+		case Constant.CDF_INT2: buffer.putShort((short) -32768); break;
+		case Constant.CDF_UINT2: buffer.putShort((short) 65535); break;
+		case Constant.CDF_INT4: buffer.putInt(Integer.MIN_VALUE); break;
+		case Constant.CDF_UINT4: buffer.putInt(-1); break;
+		case Constant.CDF_INT8: buffer.putLong(Long.MIN_VALUE); break;
+		case Constant.CDF_REAL4: buffer.putFloat(-1.0e31f); break;
+		case Constant.CDF_FLOAT: buffer.putFloat(-1.0e31f); break;
+		case Constant.CDF_REAL8: buffer.putDouble(-1.0e31); break;
+		case Constant.CDF_DOUBLE: buffer.putDouble(-1.0e31); break;
+		case Constant.CDF_EPOCH: buffer.putDouble(-1.0e31); break;
+		case Constant.CDF_EPOCH16: buffer.putDouble(-1.0e31); buffer.putDouble(-1.0e31); break;
+		case Constant.CDF_TIME_TT2000: buffer.putLong(Long.MIN_VALUE); break;
+		case Constant.CDF_CHAR: buffer.put((byte) ' '); break;
+		}
+
+		return buffer.array();
+	}
+
+	/**
+	 * Retrieve the default pad value for a data type as used by the CDF library.
+	 *
+	 * @param dataType the data type.
+	 *
+	 * @return the bytes of the pad value in network encoding.
+	 */
+	byte[] getPad(int dataType) {
+		ByteBuffer buffer = ByteBuffer.allocate(getPadSize(dataType));
+		byte[] pad = Constant.getDefaultPad(dataType, ByteOrder.BIG_ENDIAN);
+		for(int i = 0; i < getNumElems(dataType); i++) buffer.put(pad);
+
+		return buffer.array();
+	}
+
+	/**
+	 * Determine the number of bytes in the pad value of a variable.
+	 *
+	 * @param dataType the data type of the variable.
+	 *
+	 * @return the number of bytes in the pad value.
+	 */
+	int getPadSize(int dataType) { return Constant.getDataTypeSize(dataType) * getNumElems(dataType); }
+
+	/**
+	 * Determine the number of elements of a data type in each value.
+	 *
+	 * @param dataType the data type.
+	 *
+	 * @return the number of characters for CDF_CHAR, otherwise 1.
+	 */
+	int getNumElems(int dataType) { return (dataType == Constant.CDF_CHAR) ? CHAR_LENGTH : 1; }
+
+	/**
+	 * Determine the data type of a variable.
+	 *
+	 * @param num the variable number.
+	 *
+	 * @return CDF_EPOCH for the first variable, otherwise the next type from the list of data types.
+	 */
+	int getDataType(int num) {
+		if(num == 0) return Constant.CDF_EPOCH;
+
+		return mDataTypes[(num - 1) % mDataTypes.length];
+	}
+
+	/**
+	 * Determine the name of a variable.
+	 *
+	 * @param num the variable number.
+	 *
+	 * @return the name of the variable.
+	 */
+	String getVariableName(int num) {
+		if(num == 0) return "Epoch";
+
+		return "var_" + num + "_" + Constant.getDataTypeName(getDataType(num)).substring(4).toLowerCase();
+	}
+
+	/**
+	 * Determine the dimension sizes of a variable.
+	 *
+	 * @param num the variable number.
+	 *
+	 * @return the size of each dimension. Epoch is always a scalar.
+	 */
+	int[] getDimSizes(int num) { return (num == 0) ? new int[0] : mDimSizes; }
+
+	/**
+	 * Determine the size of the zVDR for a variable.
+	 *
+	 * @param num the variable number.
+	 *
+	 * @return the number of bytes in the zVDR including the pad value.
+	 */
+	int getVDRSize(int num) { return 344 + (getDimSizes(num).length * 8) + getPadSize(getDataType(num)); }
+
+	/**
+	 * Determine the number of bytes in each record of a variable.
+	 *
+	 * @param num the variable number.
+	 *
+	 * @return the number of bytes in each record.
+	 */
+	int getRecordSize(int num) {
+		int size = getPadSize(getDataType(num));
+		for(int dim : getDimSizes(num)) size *= dim;
+
+		return size;
+	}
+
+	/**
+	 * Determine the last record written for a variable.
+	 *
+	 * @param num the variable number.
+	 *
+	 * @return the last record number or -1 if no records are written.
+	 */
+	int getLastRecord(int num) { return mRecords - 1; }
+
+	/**
+	 * Write a record header.
+	 *
+	 * @param size the size of the record in bytes including the header.
+	 * @param type the record type.
+	 *
+	 * @throws IOException if the file can not be written.
+	 */
+	private void writeHeader(long size, int type) throws IOException {
+		mOut.writeLong(size);
+		mOut.writeInt(type);
+	}
+
+	/**
+	 * Write a string in a fixed length field padded with nulls.
+	 *
+	 * @param value the string.
+	 * @param length the length of the field.
+	 *
+	 * @throws IOException if the file can not be written.
+	 */
+	private void writeString(String value, int length) throws IOException {
+		byte[] buffer = new byte[length];
+		byte[] bytes = value.getBytes();
+		System.arraycopy(bytes, 0, buffer, 0, Math.min(bytes.length, length));
+		mOut.write(buffer);
+	}
+
+	/**
+	 * Replace a long value previously written to the file.
+	 *
+	 * @param offset the file offset of the value.
+	 * @param value the value to write.
+	 *
+	 * @throws IOException if the file can not be written.
+	 */
+	private void patchLong(long offset, long value) throws IOException {
+		mOut.flush();
+		ByteBuffer buffer = ByteBuffer.allocate(8);
+		buffer.putLong(value);
+		buffer.flip();
+		while(buffer.hasRemaining()) mChannel.write(buffer, offset + buffer.position());
+	}
+
+	/**
+	 * Determine the current offset in the file.
+	 *
+	 * @return the offset of the next byte written.
+	 */
+	private long offset() { return mCounter.mCount; }
+
+	/**
+	 * Set the number of variables, including Epoch.
+	 *
+	 * @param value the number of variables.
+	 */
+	public void setVariables(int value) { mVariables = Math.max(0, value); }
+
+	/**
+	 * Set the dimension sizes of data variables.
+	 *
+	 * @param value the size of each dimension. An empty array is a scalar.
+	 */
+	public void setDimSizes(int[] value) { mDimSizes = value; }
+
+	/**
+	 * Set the data types assigned in turn to data variables.
+	 *
+	 * @param value the list of data types.
+	 */
+	public void setDataTypes(int[] value) { mDataTypes = value; }
+
+	/**
+	 * Set the number of records for each variable.
+	 *
+	 * @param value the number of records.
+	 */
+	public void setRecords(int value) { mRecords = Math.max(0, value); }
+
+	/**
+	 * Set the number of global attributes.
+	 *
+	 * @param value the number of global attributes.
+	 */
+	public void setGlobalAttributes(int value) { mGlobalAttributes = Math.max(0, value); }
+
+	/**
+	 * Set the number of entries for each global attribute.
+	 *
+	 * @param value the number of entries.
+	 */
+	public void setFanOut(int value) { mFanOut = Math.max(0, value); }
+
+	/**
+	 * Set the number of variable attributes.
+	 *
+	 * @param value the number of variable attributes.
+	 */
+	public void setVariableAttributes(int value) { mVariableAttributes = Math.max(0, value); }
+
+	/**
+	 * Set the number of records in each VVR.
+	 *
+	 * @param value the number of records.
+	 */
+	public void setBlocking(int value) { mBlocking = Math.max(1, value); }
+
+	/**
+	 * Set the number of entries in each VXR.
+	 *
+	 * @param value the number of entries.
+	 */
+	public void setEntries(int value) { mEntries = Math.max(1, value); }
+
+	/**
+	 * Set the number of levels of VXRs.
+	 *
+	 * @param value the number of levels.
+	 */
+	public void setDepth(int value) { mDepth = Math.max(1, value); }
+
+	/**
+	 * Set the number of unused internal records (UIR) to scatter in the file.
+	 *
+	 * @param value the number of UIRs.
+	 */
+	public void setUIRs(int value) { mUIRs = Math.max(0, value); }
+
+	/**
+	 * Set the sparse record type for data variables. Every other block of records is omitted when set.
+	 *
+	 * @param value 0 for none, 1 for pad or 2 for previous.
+	 */
+	public void setSparse(int value) { mSparse = value; }
+
+	/**
+	 * Set whether variable data is compressed with GZIP.
+	 *
+	 * @param value true to compress variable data.
+	 */
+	public void setCompress(boolean value) { mCompress = value; }
+}
@@ -0,0 +1,172 @@
+package pds.cdf;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Decoder for static Huffman (HUFF) encoding.
+ *
+ * The compressed data begins with the scaled count of each byte value, stored as ranges
+ * of byte values (first, last, counts) and ending with a first value of zero. The Huffman
+ * tree is built from the counts. Bits are read most significant bit first and the
+ * END_OF_STREAM symbol marks the end of the data. This is the scheme from "The Data Compression Book" by
+ * M. Nelson which is used by the CDF library.
+ *
+ * To decode, the next TABLE_BITS bits are looked up in a table built from the tree. Codes no longer than
+ * TABLE_BITS are decoded with a single lookup, longer codes continue by walking the tree one bit at a time.
+ *
+ * @author tking
+ *
+ */
+public class HuffmanDecompressor extends Decompressor {
+	/** Symbol marking the end of the data. */	static final int END_OF_STREAM = 256;
+	/** Node used as a sentinel with the largest count. */	static final int SENTINEL = 513;
+	/** Number of bits decoded with one table lookup. */	static final int TABLE_BITS = 10;
+	/** Flag for a table entry which is an internal node. */	static final int PARTIAL = 0x80000000;
+
+	int[] mCount = new int[SENTINEL + 1];
+	int[] mChild0 = new int[SENTINEL + 1];
+	int[] mChild1 = new int[SENTINEL + 1];
+	int mRoot = 0;
+	boolean mReady = false;	// Tree is built
+	int[] mTable = new int[1 << TABLE_BITS];	// Symbol and code length, or internal node with PARTIAL set
+
+	long mBuffer = 0L;	// Bits not yet decoded, aligned to the most significant bit
+	int mBits = 0;	// Number of bits in the buffer
+
+	/**
+	 * Create a decoder for static Huffman encoded data.
+	 */
+	public HuffmanDecompressor() {
+	}
+
+	/**
+	 * Reset the state of the decoder for a new block of compressed data.
+	 */
+	void start() {
+		mReady = false;
+		mBuffer = 0L;
+		mBits = 0;
+	}
+
+	/**
+	 * Read the counts and build the Huffman tree.
+	 *
+	 * @throws IOException if the counts are not valid or can not be read.
+	 */
+	private void buildTree() throws IOException {
+		Arrays.fill(mCount, 0);
+
+		// Read counts
+		int first = next();
+		int last = next();
+		while(true) {
+			if(last < first) throw new IOException("Huffman counts are not valid.");
+			for(int i = first; i <= last; i++) mCount[i] = next();
+			first = next();
+			if(first == 0) break;
+			last = next();
+		}
+		mCount[END_OF_STREAM] = 1;
+
+		// Combine the two smallest nodes until one remains
+		mCount[SENTINEL] = 0xFFFF;
+		int nextFree = END_OF_STREAM + 1;
+		for(; ; nextFree++) {
+			int min1 = SENTINEL;
+			int min2 = SENTINEL;
+			for(int i = 0; i < nextFree; i++) {
+				if(mCount[i] == 0) continue;
+				if(mCount[i] < mCount[min1]) {
+					min2 = min1;
+					min1 = i;
+				} else if(mCount[i] < mCount[min2]) {
+					min2 = i;
+				}
+			}
+			if(min2 == SENTINEL) break;
+			mCount[nextFree] = mCount[min1] + mCount[min2];
+			mCount[min1] = 0;
+			mCount[min2] = 0;
+			mChild0[nextFree] = min1;
+			mChild1[nextFree] = min2;
+		}
+		mRoot = nextFree - 1;
+		if(mRoot == END_OF_STREAM) mEnd = true;	// No data
+
+		// Decode table
+		for(int code = 0; code < mTable.length; code++) {
+			int node = mRoot;
+			int length = 0;
+			while(node > END_OF_STREAM && length < TABLE_BITS) {
+				node = ((code >> (TABLE_BITS - 1 - length)) & 1) == 0 ? mChild0[node] : mChild1[node];
+				length++;
+			}
+			if(node > END_OF_STREAM) mTable[code] = PARTIAL | node;
+			else mTable[code] = (length << 16) | node;
+		}
+		mReady = true;
+	}
+
+	/**
+	 * Add whole bytes to the bit buffer until it holds more than 56 bits or the compressed data ends.
+	 *
+	 * @throws IOException if the compressed data can not be read.
+	 */
+	private void refill() throws IOException {
+		while(mBits <= 56) {
+			if( ! mSource.hasRemaining() && ! fill()) return;
+			mBuffer |= (long) (mSource.get() & 0xFF) << (56 - mBits);
+			mBits += 8;
+		}
+	}
+
+	/**
+	 * Decode uncompressed bytes into an array.
+	 *
+	 * @param out the array to place uncompressed bytes in.
+	 * @param off the index in out for the first byte.
+	 * @param len the maximum number of bytes to decode.
+	 *
+	 * @return the number of bytes placed in the array or -1 at the end of the uncompressed data.
+	 *
+	 * @throws IOException if the compressed data is not valid or can not be read.
+	 */
+	public int read(byte[] out, int off, int len) throws IOException {
+		if(len == 0) return 0;
+		if(mEnd) return -1;
+		if( ! mReady) buildTree();
+		if(mEnd) return -1;
+
+		int n = off;
+		int end = off + len;
+		while(n < end) {
+			if(mBits < TABLE_BITS) refill();
+			int entry = mTable[(int) (mBuffer >>> (64 - TABLE_BITS))];
+			int node;
+			if((entry & PARTIAL) == 0) {	// Complete code
+				int length = entry >>> 16;
+				if(length > mBits) throw new IOException("Unexpected end of compressed data.");
+				mBuffer <<= length;
+				mBits -= length;
+				node = entry & 0xFFFF;
+			} else {	// Continue from an internal node
+				if(mBits < TABLE_BITS) throw new IOException("Unexpected end of compressed data.");
+				mBuffer <<= TABLE_BITS;
+				mBits -= TABLE_BITS;
+				node = entry & 0xFFFF;
+				while(node > END_OF_STREAM) {
+					if(mBits == 0) refill();
+					if(mBits == 0) throw new IOException("Unexpected end of compressed data.");
+					node = mBuffer < 0 ? mChild1[node] : mChild0[node];
+					mBuffer <<= 1;
+					mBits--;
+				}
+			}
+			if(node == END_OF_STREAM) { mEnd = true; break; }
+			out[n++] = (byte) node;
+		}
+
+		return n == off ? -1 : n - off;
+	}
+}
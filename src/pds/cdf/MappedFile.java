@@ -0,0 +1,291 @@
+package pds.cdf;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * A read-only memory mapped view of a CDF file.
+ *
+ * The file is mapped in overlapping segments so files larger than 2 GB can be addressed.
+ * Any region smaller than the overlap is always contained in a single segment and can be
+ * returned without copying. Only the pages which are actually read are brought into memory.
+ *
+ * @author tking
+ *
+ */
+public class MappedFile {
+	/** Size of each mapped segment. */	static final long SEGMENT_SIZE = 1L << 30;
+	/** Overlap between segments. */	static final long SEGMENT_OVERLAP = 1L << 26;
+
+	String mPathName = "-channel-";
+	long mLength = 0L;
+	long mModified = 0L;	// Modification time of the file when mapped
+	MappedByteBuffer[] mSegments = null;
+
+	/**
+	 * Map a CDF file.
+	 *
+	 * @param pathname the file system path and file name to a CDF file.
+	 *
+	 * @throws IOException if the file can not be mapped.
+	 */
+	public MappedFile(String pathname) throws IOException {
+		mModified = new File(pathname).lastModified();
+		RandomAccessFile file = new RandomAccessFile(pathname, "r");
+		try {
+			map(file.getChannel());
+		} finally {
+			file.close();	// Mapping remains valid after the channel is closed
+		}
+		mPathName = pathname;
+	}
+
+	/**
+	 * Map a CDF file using a pre-opened channel.
+	 *
+	 * @param channel a {@link FileChannel} opened for reading.
+	 *
+	 * @throws IOException if the file can not be mapped.
+	 */
+	public MappedFile(FileChannel channel) throws IOException {
+		map(channel);
+	}
+
+	/**
+	 * Map the entire content of a channel into memory.
+	 *
+	 * @param channel a {@link FileChannel} opened for reading.
+	 *
+	 * @throws IOException if the file can not be mapped.
+	 */
+	void map(FileChannel channel) throws IOException {
+		mLength = channel.size();
+		int count = (int) ((mLength + SEGMENT_SIZE - 1) / SEGMENT_SIZE);
+		if(count == 0) count = 1;
+		mSegments = new MappedByteBuffer[count];
+		for(int i = 0; i < count; i++) {
+			long start = i * SEGMENT_SIZE;
+			long size = Math.min(SEGMENT_SIZE + SEGMENT_OVERLAP, mLength - start);
+			if(size < 0) size = 0;
+			mSegments[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, size);
+		}
+	}
+
+	/**
+	 * Retrieve a region of the file as a {@link ByteBuffer}.
+	 *
+	 * The returned buffer is positioned at zero and has a limit of length.
+	 * If the region is held in a single segment the buffer is a view of the mapped file,
+	 * otherwise the bytes are copied into a heap buffer.
+	 * The byte order of the buffer is big-endian.
+	 *
+	 * @param offset the byte offset of the start of the region.
+	 * @param length the number of bytes in the region.
+	 *
+	 * @return a {@link ByteBuffer} containing the region.
+	 *
+	 * @throws IOException if the region is outside the file.
+	 */
+	public ByteBuffer slice(long offset, long length) throws IOException {
+		if(offset < 0 || length < 0 || offset + length > mLength) {
+			throw new IOException("Region at offset " + offset + " with length " + length + " is outside the file.");
+		}
+		if(length == 0) return ByteBuffer.allocate(0);
+
+		int n = (int) (offset / SEGMENT_SIZE);
+		long start = n * SEGMENT_SIZE;
+		if(offset + length <= start + mSegments[n].capacity()) {	// In one segment
+			ByteBuffer buffer = mSegments[n].duplicate();
+			buffer.position((int) (offset - start));
+			buffer.limit((int) (offset - start + length));
+			return buffer.slice();
+		}
+
+		// Spans segments - copy
+		if(length > Integer.MAX_VALUE) {
+			throw new IOException("Region at offset " + offset + " with length " + length + " is too large to copy.");
+		}
+		ByteBuffer buffer = ByteBuffer.allocate((int) length);
+		long pos = offset;
+		while(buffer.hasRemaining()) {
+			n = (int) (pos / SEGMENT_SIZE);
+			start = n * SEGMENT_SIZE;
+			ByteBuffer part = mSegments[n].duplicate();
+			part.position((int) (pos - start));
+			int len = (int) Math.min(buffer.remaining(), SEGMENT_SIZE - (pos - start));
+			part.limit(part.position() + len);
+			buffer.put(part);
+			pos += len;
+		}
+		buffer.flip();
+
+		return buffer;
+	}
+
+	/**
+	 * Retrieve a region of the file as a {@link DataInputStream}.
+	 *
+	 * @param offset the byte offset of the start of the region.
+	 * @param length the number of bytes in the region.
+	 *
+	 * @return a {@link DataInputStream} which reads the region.
+	 *
+	 * @throws IOException if the region is outside the file.
+	 */
+	public DataInputStream getStream(long offset, long length) throws IOException {
+		return new DataInputStream(new BufferStream(slice(offset, length)));
+	}
+
+	/**
+	 * Retrieve a region of the file as an {@link InputStream} which is read sequentially.
+	 *
+	 * Unlike {@link #getStream(long, long)} the region may be any size. It is read one
+	 * segment at a time, so bytes are never copied to the heap.
+	 *
+	 * @param offset the byte offset of the start of the region.
+	 * @param length the number of bytes in the region.
+	 *
+	 * @return an {@link InputStream} which reads the region.
+	 *
+	 * @throws IOException if the region is outside the file.
+	 */
+	public InputStream getRegionStream(long offset, long length) throws IOException {
+		if(offset < 0 || length < 0 || offset + length > mLength) {
+			throw new IOException("Region at offset " + offset + " with length " + length + " is outside the file.");
+		}
+		return new RegionStream(offset, offset + length);
+	}
+
+	/**
+	 * Retrieve the size of the record which begins at the given offset.
+	 *
+	 * @param offset the byte offset of the start of the record.
+	 *
+	 * @return the record size as declared in the record header.
+	 *
+	 * @throws IOException if the record header is outside the file.
+	 */
+	public long getRecordSize(long offset) throws IOException {
+		return slice(offset, 8).getLong(0);
+	}
+
+	/**
+	 * Retrieve the type of the record which begins at the given offset.
+	 *
+	 * @param offset the byte offset of the start of the record.
+	 *
+	 * @return the record type as declared in the record header.
+	 *
+	 * @throws IOException if the record header is outside the file.
+	 */
+	public int getRecordType(long offset) throws IOException {
+		return slice(offset, 12).getInt(8);
+	}
+
+	/**
+	 * Retrieve the number of bytes in the mapped file.
+	 *
+	 * @return the number of bytes in the mapped file.
+	 */
+	public long length() { return mLength; }
+
+	/**
+	 * Retrieve the modification time of the file when it was mapped.
+	 *
+	 * @return the time in milliseconds since the epoch or 0 if the file was mapped from a channel.
+	 */
+	public long lastModified() { return mModified; }
+
+	/**
+	 * Retrieve the pathname of the mapped file.
+	 *
+	 * @return the pathname of the mapped file.
+	 */
+	public String getPathName() { return mPathName; }
+
+	/**
+	 * An {@link InputStream} which reads from a {@link ByteBuffer}.
+	 */
+	static class BufferStream extends InputStream {
+		ByteBuffer mBuffer;
+
+		BufferStream(ByteBuffer buffer) { mBuffer = buffer; }
+
+		public int read() {
+			if( ! mBuffer.hasRemaining()) return -1;
+			return mBuffer.get() & 0xFF;
+		}
+
+		public int read(byte[] b, int off, int len) {
+			if(len == 0) return 0;
+			if( ! mBuffer.hasRemaining()) return -1;
+			len = Math.min(len, mBuffer.remaining());
+			mBuffer.get(b, off, len);
+			return len;
+		}
+
+		public long skip(long n) {
+			if(n <= 0) return 0;
+			int len = (int) Math.min(n, mBuffer.remaining());
+			mBuffer.position(mBuffer.position() + len);
+			return len;
+		}
+
+		public int available() { return mBuffer.remaining(); }
+	}
+
+	/**
+	 * An {@link InputStream} which reads a region of the file one segment at a time.
+	 */
+	class RegionStream extends InputStream {
+		long mPosition;
+		long mEnd;
+		ByteBuffer mBuffer = ByteBuffer.allocate(0);
+
+		RegionStream(long offset, long end) { mPosition = offset; mEnd = end; }
+
+		/**
+		 * Make the next part of the region available, ending at a segment boundary.
+		 *
+		 * @return true if there are bytes to read, false at the end of the region.
+		 */
+		private boolean fill() throws IOException {
+			if(mBuffer.hasRemaining()) return true;
+			if(mPosition >= mEnd) return false;
+			long len = Math.min(mEnd - mPosition, SEGMENT_SIZE - (mPosition % SEGMENT_SIZE));
+			mBuffer = slice(mPosition, len);
+			mPosition += len;
+			return true;
+		}
+
+		public int read() throws IOException {
+			if( ! fill()) return -1;
+			return mBuffer.get() & 0xFF;
+		}
+
+		public int read(byte[] b, int off, int len) throws IOException {
+			if(len == 0) return 0;
+			if( ! fill()) return -1;
+			len = Math.min(len, mBuffer.remaining());
+			mBuffer.get(b, off, len);
+			return len;
+		}
+
+		public long skip(long n) throws IOException {
+			if(n <= 0) return 0;
+			long total = Math.min(n, mBuffer.remaining() + (mEnd - mPosition));
+			long part = Math.min(total, mBuffer.remaining());
+			mBuffer.position(mBuffer.position() + (int) part);
+			mPosition += total - part;
+			return total;
+		}
+
+		public int available() { return (int) Math.min(Integer.MAX_VALUE, mBuffer.remaining() + (mEnd - mPosition)); }
+	}
+}
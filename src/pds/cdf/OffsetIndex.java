@@ -0,0 +1,149 @@
+package pds.cdf;
+
+import java.util.Arrays;
+
+/**
+ * A map of file offsets to objects.
+ *
+ * Uses open addressing with linear probing on a primitive long key so lookups
+ * do not create any objects. A key of zero is treated as "no record" in a CDF,
+ * but may still be stored.
+ *
+ * @author tking
+ *
+ * @param <T> the type of object stored in the index.
+ */
+public class OffsetIndex<T> {
+	long[] mKeys;
+	Object[] mValues;
+	int mSize = 0;
+	int mMask;
+
+	/**
+	 * Create an index with a default capacity.
+	 */
+	public OffsetIndex() {
+		this(64);
+	}
+
+	/**
+	 * Create an index with room for the given number of entries before resizing.
+	 *
+	 * @param capacity the expected number of entries.
+	 */
+	public OffsetIndex(int capacity) {
+		int size = 16;
+		while(size < capacity * 2) size <<= 1;
+		allocate(size);
+	}
+
+	/**
+	 * Allocate the tables.
+	 *
+	 * @param size the number of slots. Must be a power of 2.
+	 */
+	private void allocate(int size) {
+		mKeys = new long[size];
+		mValues = new Object[size];
+		mMask = size - 1;
+	}
+
+	/**
+	 * Compute the slot for a key.
+	 *
+	 * @param key the key.
+	 *
+	 * @return the initial slot to probe.
+	 */
+	private int slot(long key) {
+		long h = key * 0x9E3779B97F4A7C15L;
+		return (int) (h ^ (h >>> 32)) & mMask;
+	}
+
+	/**
+	 * Associate a value with an offset. Any existing value is replaced.
+	 *
+	 * @param key the file offset.
+	 * @param value the value to associate with the offset. Must not be null.
+	 *
+	 * @return the previous value associated with the offset or null if none.
+	 */
+	@SuppressWarnings("unchecked")
+	public T put(long key, T value) {
+		if(value == null) throw new IllegalArgumentException("Value can not be null.");
+		if((mSize + 1) * 2 > mValues.length) rehash(mValues.length * 2);
+
+		int i = slot(key);
+		while(mValues[i] != null) {
+			if(mKeys[i] == key) {
+				T old = (T) mValues[i];
+				mValues[i] = value;
+				return old;
+			}
+			i = (i + 1) & mMask;
+		}
+		mKeys[i] = key;
+		mValues[i] = value;
+		mSize++;
+
+		return null;
+	}
+
+	/**
+	 * Retrieve the value associated with an offset.
+	 *
+	 * @param key the file offset.
+	 *
+	 * @return the value associated with the offset or null if none.
+	 */
+	@SuppressWarnings("unchecked")
+	public T get(long key) {
+		int i = slot(key);
+		while(mValues[i] != null) {
+			if(mKeys[i] == key) return (T) mValues[i];
+			i = (i + 1) & mMask;
+		}
+
+		return null;
+	}
+
+	/**
+	 * Determine if a value is associated with an offset.
+	 *
+	 * @param key the file offset.
+	 *
+	 * @return true if a value is associated with the offset, otherwise false.
+	 */
+	public boolean containsKey(long key) { return get(key) != null; }
+
+	/**
+	 * Retrieve the number of entries in the index.
+	 *
+	 * @return the number of entries in the index.
+	 */
+	public int size() { return mSize; }
+
+	/**
+	 * Remove all entries from the index.
+	 */
+	public void clear() {
+		Arrays.fill(mValues, null);
+		mSize = 0;
+	}
+
+	/**
+	 * Grow the tables and re-insert all entries.
+	 *
+	 * @param size the new number of slots. Must be a power of 2.
+	 */
+	@SuppressWarnings("unchecked")
+	private void rehash(int size) {
+		long[] keys = mKeys;
+		Object[] values = mValues;
+		allocate(size);
+		mSize = 0;
+		for(int i = 0; i < keys.length; i++) {
+			if(values[i] != null) put(keys[i], (T) values[i]);
+		}
+	}
+}
@@ -0,0 +1,74 @@
+package pds.cdf;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Decoder for run-length encoding (RLE) of zeros.
+ *
+ * Each zero byte in the compressed data is followed by a count. The count plus one is
+ * the number of zeros in the run. All other bytes are copied unchanged.
+ *
+ * @author tking
+ *
+ */
+public class RLEDecompressor extends Decompressor {
+	int mZeros = 0;	// Zeros remaining in the current run
+
+	/**
+	 * Create a decoder for run-length encoded data.
+	 */
+	public RLEDecompressor() {
+	}
+
+	/**
+	 * Reset the state of the decoder for a new block of compressed data.
+	 */
+	void start() {
+		mZeros = 0;
+	}
+
+	/**
+	 * Decode uncompressed bytes into an array.
+	 *
+	 * @param out the array to place uncompressed bytes in.
+	 * @param off the index in out for the first byte.
+	 * @param len the maximum number of bytes to decode.
+	 *
+	 * @return the number of bytes placed in the array or -1 at the end of the uncompressed data.
+	 *
+	 * @throws IOException if a run is missing its count or the compressed data can not be read.
+	 */
+	public int read(byte[] out, int off, int len) throws IOException {
+		if(len == 0) return 0;
+		int n = off;
+		int end = off + len;
+		while(n < end) {
+			if(mZeros > 0) {	// Finish the current run
+				int run = Math.min(mZeros, end - n);
+				Arrays.fill(out, n, n + run, (byte) 0);
+				n += run;
+				mZeros -= run;
+				continue;
+			}
+			if( ! mSource.hasRemaining() && ! fill()) break;
+
+			// Copy literal bytes directly from the source up to the next zero
+			int limit = Math.min(end - n, mSource.remaining());
+			int pos = mSource.position();
+			int i = 0;
+			while(i < limit && mSource.get(pos + i) != 0) {
+				out[n + i] = mSource.get(pos + i);
+				i++;
+			}
+			n += i;
+			mSource.position(pos + i);
+			if(i < limit) {	// Start of a run
+				mSource.get();
+				mZeros = next() + 1;
+			}
+		}
+
+		return n == off ? -1 : n - off;
+	}
+}
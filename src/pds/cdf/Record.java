@@ -48,6 +48,9 @@ public class Record {
 	
 	/**
 	 * Read a data value based on the passed data type.
+	 * For CDF_EPOCH16 both parts are read and the seconds are returned.
+	 * CDF_INT8 and CDF_TIME_TT2000 values beyond 2^53 lose precision; use {@link Decoder#toLongArray}
+	 * for exact values and {@link TimeConverter} for calendar time.
 	 * 
 	 * @param in the input stream to read from.
 	 * @param dataType	the data type of the value.
@@ -73,8 +76,8 @@ public class Record {
 			case Constant.CDF_FLOAT: value = in.readFloat(); break;
 			case Constant.CDF_DOUBLE: value = in.readDouble(); break; 
 			case Constant.CDF_EPOCH: value = in.readDouble(); break;
-			case Constant.CDF_EPOCH16: value = in.readDouble(); value = in.readDouble(); break; // Does not return full value
-			case Constant.CDF_TIME_TT2000: value = in.readLong(); break; // Does not return full value
+			case Constant.CDF_EPOCH16: value = in.readDouble(); in.readDouble(); break; // Seconds, picoseconds are skipped
+			case Constant.CDF_TIME_TT2000: value = in.readLong(); break;
 			case Constant.CDF_CHAR: value = in.readByte(); break;
 		}
 
@@ -0,0 +1,267 @@
+package pds.cdf;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * An index of the data records for a variable.
+ *
+ * The index is built from the complete VXR hierarchy of a variable. This includes
+ * chains of VXRs linked with VXRnext and entries which refer to lower level VXRs.
+ * Each entry in the index is a VVR (or CVVR) with the range of records it contains.
+ * Entries are ordered by record number so the block holding a record can be found
+ * with a binary search. A compressed variable may hold both kinds of block, since the CDF
+ * library writes a block as a VVR when compressing it does not make it smaller.
+ *
+ * @author tking
+ *
+ */
+public class RecordIndex {
+	int mCount = 0;
+	int[] mFirst = new int[8];	// First record in each block
+	int[] mLast = new int[8];	// Last record in each block
+	long[] mOffset = new long[8];	// File offset of each VVR or CVVR
+	boolean[] mPacked = new boolean[8];	// Block is a CVVR
+
+	int mRecordSize = 0;	// Bytes per record
+	boolean mCompressed = false;	// Variable is compressed, blocks may be CVVRs
+
+	/**
+	 * Build the index for a variable.
+	 *
+	 * @param cdf the parsed {@link CDF} containing the variable.
+	 * @param vdr the {@link VDRecord} for the variable.
+	 */
+	public RecordIndex(CDF cdf, VDRecord vdr) {
+		mRecordSize = cdf.getRecordSize(vdr);
+		mCompressed = (vdr.mFlags & Constant.FLAG_COMPRESSION) == Constant.FLAG_COMPRESSION;
+
+		add(cdf, vdr.mVXRHead, 0);
+		sort();
+	}
+
+	/**
+	 * Add the entries from a chain of VXRs and any lower level VXRs.
+	 *
+	 * @param cdf the parsed {@link CDF} containing the variable.
+	 * @param next the file offset of the first VXR in the chain.
+	 * @param depth the level in the hierarchy. Used to stop on malformed files.
+	 */
+	private void add(CDF cdf, long next, int depth) {
+		if(depth > 64) return;	// Not a tree
+
+		int links = 0;
+		while(next != 0) {
+			VXRecord vxr = cdf.getVXR(next);
+			if(vxr == null) return;
+			for(int i = 0; i < vxr.mNusedEntries; i++) {
+				long offset = vxr.mVVRList[i];
+				if(offset == 0) continue;
+				if(cdf.getVXR(offset) != null) {	// Lower level
+					add(cdf, offset, depth + 1);
+				} else {
+					add(vxr.mFirst[i], vxr.mLast[i], offset, isPacked(cdf, offset));
+				}
+			}
+			next = vxr.mVXRnext;
+			if(++links > cdf.mVXRList.size()) return;	// Loop in chain
+		}
+	}
+
+	/**
+	 * Determine if a block of the variable is a CVVR.
+	 *
+	 * @param cdf the parsed {@link CDF} containing the variable.
+	 * @param offset the file offset of the VVR or CVVR.
+	 *
+	 * @return true if the block is a CVVR.
+	 */
+	private boolean isPacked(CDF cdf, long offset) {
+		if( ! mCompressed) return false;
+
+		Record data = cdf.mIndex.get(offset);
+		if(data instanceof VVRecord) return false;
+		if(data instanceof CVVRecord) return true;
+		if(cdf.mMappedFile != null) {	// Data records are not parsed when reading only metadata
+			try {
+				return cdf.mMappedFile.getRecordType(offset) == Constant.RECORD_CVVR;
+			} catch(IOException e) {
+				// Reported when the block is read
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * Add an entry to the index.
+	 *
+	 * @param first the first record in the block.
+	 * @param last the last record in the block.
+	 * @param offset the file offset of the VVR or CVVR.
+	 * @param packed true if the block is a CVVR.
+	 */
+	private void add(int first, int last, long offset, boolean packed) {
+		if(mCount == mFirst.length) {
+			mFirst = Arrays.copyOf(mFirst, mCount * 2);
+			mLast = Arrays.copyOf(mLast, mCount * 2);
+			mOffset = Arrays.copyOf(mOffset, mCount * 2);
+			mPacked = Arrays.copyOf(mPacked, mCount * 2);
+		}
+		mFirst[mCount] = first;
+		mLast[mCount] = last;
+		mOffset[mCount] = offset;
+		mPacked[mCount] = packed;
+		mCount++;
+	}
+
+	/**
+	 * Order the entries by first record. Entries written by the CDF library are
+	 * normally in order, so this is usually a single check.
+	 */
+	private void sort() {
+		boolean sorted = true;
+		for(int i = 1; i < mCount && sorted; i++) {
+			if(mFirst[i] < mFirst[i - 1]) sorted = false;
+		}
+		if(sorted) return;
+
+		// Insertion sort - entries are nearly ordered
+		for(int i = 1; i < mCount; i++) {
+			int first = mFirst[i]; int last = mLast[i]; long offset = mOffset[i]; boolean packed = mPacked[i];
+			int j = i - 1;
+			while(j >= 0 && mFirst[j] > first) {
+				mFirst[j + 1] = mFirst[j]; mLast[j + 1] = mLast[j]; mOffset[j + 1] = mOffset[j]; mPacked[j + 1] = mPacked[j];
+				j--;
+			}
+			mFirst[j + 1] = first; mLast[j + 1] = last; mOffset[j + 1] = offset; mPacked[j + 1] = packed;
+		}
+	}
+
+	/**
+	 * Find the block which contains a record.
+	 *
+	 * @param record the record number.
+	 *
+	 * @return the index of the block containing the record or -1 if the record is not stored.
+	 */
+	public int find(long record) {
+		int low = 0;
+		int high = mCount - 1;
+		while(low <= high) {
+			int mid = (low + high) >>> 1;
+			if(mLast[mid] < record) low = mid + 1;
+			else if(mFirst[mid] > record) high = mid - 1;
+			else return mid;
+		}
+
+		return -1;
+	}
+
+	/**
+	 * Find the last block which starts at or before a record.
+	 * If the record is not stored this is the block holding the nearest earlier record.
+	 *
+	 * @param record the record number.
+	 *
+	 * @return the index of the block or -1 if no block starts at or before the record.
+	 */
+	public int findPrevious(long record) {
+		int low = 0;
+		int high = mCount - 1;
+		while(low <= high) {
+			int mid = (low + high) >>> 1;
+			if(mFirst[mid] <= record) low = mid + 1;
+			else high = mid - 1;
+		}
+
+		return high;
+	}
+
+	/**
+	 * Determine the file offset of a record.
+	 *
+	 * @param record the record number.
+	 *
+	 * @return the byte offset of the start of the record or -1 if the record is not
+	 *         stored or is held in a compressed block.
+	 */
+	public long getRecordOffset(long record) {
+		int block = find(record);
+		if(block < 0 || mPacked[block]) return -1;
+
+		return getDataOffset(block) + (record - mFirst[block]) * mRecordSize;
+	}
+
+	/**
+	 * Retrieve the file offset of the data in a block.
+	 *
+	 * @param block the index of the block.
+	 *
+	 * @return the byte offset of the data in the block or -1 if the block is compressed.
+	 */
+	public long getDataOffset(int block) {
+		if(mPacked[block]) return -1;
+
+		return mOffset[block] + 12;	// Skip record header
+	}
+
+	/**
+	 * Retrieve the number of blocks in the index.
+	 *
+	 * @return the number of blocks.
+	 */
+	public int getBlockCount() { return mCount; }
+
+	/**
+	 * Retrieve the first record number stored in a block.
+	 *
+	 * @param block the index of the block.
+	 *
+	 * @return the first record number in the block.
+	 */
+	public int getFirstRecord(int block) { return mFirst[block]; }
+
+	/**
+	 * Retrieve the last record number stored in a block.
+	 *
+	 * @param block the index of the block.
+	 *
+	 * @return the last record number in the block.
+	 */
+	public int getLastRecord(int block) { return mLast[block]; }
+
+	/**
+	 * Retrieve the file offset of the VVR or CVVR for a block.
+	 *
+	 * @param block the index of the block.
+	 *
+	 * @return the file offset of the record holding the block.
+	 */
+	public long getOffset(int block) { return mOffset[block]; }
+
+	/**
+	 * Retrieve the number of bytes in each record of the variable.
+	 *
+	 * @return the number of bytes in each record.
+	 */
+	public int getRecordSize() { return mRecordSize; }
+
+	/**
+	 * Determine if the variable is compressed. Blocks of a compressed variable may still be VVRs.
+	 *
+	 * @return true if the variable is compressed, otherwise false.
+	 *
+	 * @see #isCompressed(int)
+	 */
+	public boolean isCompressed() { return mCompressed; }
+
+	/**
+	 * Determine if a block is compressed (CVVR).
+	 *
+	 * @param block the index of the block.
+	 *
+	 * @return true if the block is a CVVR, false if it is a VVR.
+	 */
+	public boolean isCompressed(int block) { return mPacked[block]; }
+}
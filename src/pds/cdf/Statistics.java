@@ -0,0 +1,468 @@
+package pds.cdf;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Summary statistics of the values of a variable.
+ *
+ * The minimum, maximum and mean are determined from the values which are not fill values (FILLVAL),
+ * pad values or NaN. Each of these is counted instead. Values outside the VALIDMIN and VALIDMAX of the
+ * variable are counted. If VALIDMIN or VALIDMAX has a value for each value in a record each value is
+ * compared with its own limit, otherwise the first limit is used for all values.
+ * Only stored records are examined, records of a sparse variable which are not stored are not included.
+ *
+ * Statistics are accumulated in parts, one for each block, which are merged. All data variables of a CDF
+ * are processed in a single pass over the VVRs in the order they are placed in the file.
+ *
+ * @author tking
+ *
+ */
+public class Statistics {
+	/** Number of values decoded at once. */	static final int CHUNK_SIZE = 8192;
+
+	String mName = "";
+	int mDataType = 0;
+	int mValues = 1;	// Values in each record
+	boolean mHasFill = false;
+	double mFill = 0.0;
+	boolean mHasPad = false;
+	double mPad = 0.0;
+	double[] mValidMin = new double[0];
+	double[] mValidMax = new double[0];
+
+	long mCount = 0L;	// Values examined
+	long mValidCount = 0L;	// Values included in the minimum, maximum and mean
+	long mFillCount = 0L;
+	long mPadCount = 0L;
+	long mNaNCount = 0L;
+	long mBelowMinCount = 0L;
+	long mAboveMaxCount = 0L;
+	double mMin = Double.POSITIVE_INFINITY;
+	double mMax = Double.NEGATIVE_INFINITY;
+	double mSum = 0.0;
+
+	/**
+	 * Create empty statistics for a variable.
+	 * The fill value, valid range and pad value are taken from the attributes and the definition of the variable.
+	 *
+	 * @param reader the {@link VariableReader} for the variable.
+	 * @param variable the description of the variable with its attributes. May be null if the variable has no attributes.
+	 */
+	public Statistics(VariableReader reader, Variable variable) {
+		VDRecord vdr = reader.getVDR();
+		mName = vdr.mName;
+		mDataType = vdr.mDataType;
+		int size = Constant.getDataTypeSize(mDataType);
+		mValues = (size == 0) ? 0 : reader.getRecordSize() / size;
+
+		// Only a declared pad value marks values which may not have been written. Stored values equal to the
+		// default pad for the data type, like 0 for integers, are ordinary values.
+		double[] value = new double[1];
+		if((vdr.mFlags & Constant.FLAG_PAD) == Constant.FLAG_PAD && vdr.mPadBytes != null
+				&& reader.mDecoder.toDoubleArray(reader.getPadRecord(), mDataType, 1, value, 0) == 1) {
+			mHasPad = true;
+			mPad = value[0];
+		}
+		if(variable != null) {
+			double[] fill = getDoubleValues(variable, "FILLVAL");
+			if(fill.length > 0) {
+				mHasFill = true;
+				mFill = toDataType(fill[0]);
+			}
+			mValidMin = getDoubleValues(variable, "VALIDMIN");
+			mValidMax = getDoubleValues(variable, "VALIDMAX");
+		}
+	}
+
+	/**
+	 * Create empty statistics with the same variable, fill value, pad value and valid range as other statistics.
+	 *
+	 * @param template the statistics to take the definition from.
+	 */
+	public Statistics(Statistics template) {
+		mName = template.mName;
+		mDataType = template.mDataType;
+		mValues = template.mValues;
+		mHasFill = template.mHasFill;
+		mFill = template.mFill;
+		mHasPad = template.mHasPad;
+		mPad = template.mPad;
+		mValidMin = template.mValidMin;
+		mValidMax = template.mValidMax;
+	}
+
+	/**
+	 * Retrieve the numeric values of an attribute of a variable.
+	 *
+	 * @param variable the description of the variable.
+	 * @param name the name of the attribute.
+	 *
+	 * @return the values or an empty array if the attribute is not defined or is not numeric.
+	 */
+	private static double[] getDoubleValues(Variable variable, String name) {
+		Attribute attribute = variable.getAttribute(name);
+		if(attribute == null) return new double[0];
+
+		return attribute.getDoubleValues();
+	}
+
+	/**
+	 * Round a value to the precision of the data type of the variable,
+	 * so an attribute value of a different type matches the stored values.
+	 *
+	 * @param value the value.
+	 *
+	 * @return the value as it would be stored in the variable.
+	 */
+	private double toDataType(double value) {
+		switch(mDataType) {
+		case Constant.CDF_REAL4:
+		case Constant.CDF_FLOAT:
+			return (float) value;
+		}
+
+		return value;
+	}
+
+	/**
+	 * Add values to the statistics. The first value must be the first value of a record.
+	 *
+	 * @param values the array of values.
+	 * @param start the index in values of the first value.
+	 * @param count the number of values.
+	 */
+	public void add(double[] values, int start, int count) {
+		boolean eachMin = (mValidMin.length > 1 && mValidMin.length == mValues);
+		boolean eachMax = (mValidMax.length > 1 && mValidMax.length == mValues);
+		int element = 0;	// Index of the value in the record
+		for(int i = start; i < start + count; i++) {
+			double value = values[i];
+			int n = element;
+			if(++element == mValues) element = 0;
+
+			if(Double.isNaN(value)) { mNaNCount++; continue; }
+			if(mHasFill && value == mFill) { mFillCount++; continue; }
+			if(mHasPad && value == mPad) { mPadCount++; continue; }
+
+			mValidCount++;
+			mSum += value;
+			if(value < mMin) mMin = value;
+			if(value > mMax) mMax = value;
+			if(mValidMin.length > 0 && value < mValidMin[eachMin ? n : 0]) mBelowMinCount++;
+			if(mValidMax.length > 0 && value > mValidMax[eachMax ? n : 0]) mAboveMaxCount++;
+		}
+		mCount += count;
+	}
+
+	/**
+	 * Add the values of a block of a variable to the statistics.
+	 *
+	 * @param reader the {@link VariableReader} for the variable.
+	 * @param block the index of the VVR or CVVR.
+	 *
+	 * @throws IOException if the block is outside the file or can not be decompressed.
+	 */
+	public void add(VariableReader reader, int block) throws IOException { add(reader, block, null); }
+
+	/**
+	 * Add the values of a block of a variable to the statistics, stopping if the thread is interrupted or a flag is set.
+	 *
+	 * @param reader the {@link VariableReader} for the variable.
+	 * @param block the index of the VVR or CVVR.
+	 * @param stop the flag which is set to stop or null for none.
+	 *
+	 * @throws IOException if the block is outside the file or can not be decompressed.
+	 * @throws InterruptedIOException if the thread is interrupted or the flag is set.
+	 */
+	void add(VariableReader reader, int block, AtomicBoolean stop) throws IOException {
+		if(mValues == 0) return;
+
+		ByteBuffer data = reader.readBuffer(block);
+		int total = reader.getValueCount(block);
+		int chunk = Math.max(CHUNK_SIZE / mValues, 1) * mValues;	// Whole records
+		int size = Constant.getDataTypeSize(mDataType);
+		double[] values = new double[Math.min(chunk, total)];
+		for(int n = 0; n < total; n += chunk) {
+			if(Thread.currentThread().isInterrupted() || (stop != null && stop.get())) throw new InterruptedIOException("Interrupted while determining statistics of '" + mName + "'.");
+			data.position(n * size);
+			int count = reader.mDecoder.toDoubleArray(data, mDataType, Math.min(chunk, total - n), values, 0);
+			add(values, 0, count);
+			if(count < Math.min(chunk, total - n)) break;	// Block is short
+		}
+	}
+
+	/**
+	 * Add the results of other statistics of the same variable.
+	 *
+	 * @param other the statistics to merge.
+	 */
+	public void merge(Statistics other) {
+		mCount += other.mCount;
+		mValidCount += other.mValidCount;
+		mFillCount += other.mFillCount;
+		mPadCount += other.mPadCount;
+		mNaNCount += other.mNaNCount;
+		mBelowMinCount += other.mBelowMinCount;
+		mAboveMaxCount += other.mAboveMaxCount;
+		mSum += other.mSum;
+		if(other.mMin < mMin) mMin = other.mMin;
+		if(other.mMax > mMax) mMax = other.mMax;
+	}
+
+	/**
+	 * Determine the statistics of all data variables in a CDF.
+	 * The blocks are processed concurrently using the common {@link ForkJoinPool}.
+	 *
+	 * @param cdf the parsed CDF.
+	 *
+	 * @return the {@link Statistics} for each numeric data variable.
+	 *
+	 * @throws IOException if the file can not be mapped or a block can not be read.
+	 *
+	 * @see #compute(CDF, ForkJoinPool)
+	 */
+	static public ArrayList<Statistics> compute(CDF cdf) throws IOException {
+		return compute(cdf, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Determine the statistics of all data variables in a CDF.
+	 *
+	 * The blocks of all variables are ordered by their location in the file so the file is read in a single
+	 * sequential pass. Each block is a separate task in the pool and produces its own statistics, which are merged
+	 * in record order when all blocks are done so the results do not depend on the number of threads.
+	 * Decompressed blocks are not added to the cache.
+	 *
+	 * @param cdf the parsed CDF.
+	 * @param pool the {@link ForkJoinPool} to run the tasks or null to process the blocks in the calling thread.
+	 *
+	 * @return the {@link Statistics} for each numeric data variable.
+	 *
+	 * @throws IOException if the file can not be mapped or a block can not be read.
+	 */
+	static public ArrayList<Statistics> compute(CDF cdf, ForkJoinPool pool) throws IOException {
+		HashMap<String, VDRecord> vdrs = new HashMap<String, VDRecord>();
+		for(VDRecord vdr : cdf.mVDRList) if( ! vdrs.containsKey(vdr.mName)) vdrs.put(vdr.mName, vdr);
+
+		ArrayList<VariableReader> readers = new ArrayList<VariableReader>();
+		ArrayList<Statistics> results = new ArrayList<Statistics>();
+		for(Variable variable : cdf.getDataVariables()) {
+			VDRecord vdr = vdrs.get(variable.getName());
+			if(vdr == null || vdr.mDataType == Constant.CDF_CHAR || Constant.getDataTypeSize(vdr.mDataType) == 0) continue;
+			VariableReader reader = new VariableReader(cdf, vdr);
+			readers.add(reader);
+			results.add(new Statistics(reader, variable));
+		}
+
+		// Blocks in file order
+		ArrayList<long[]> blocks = new ArrayList<long[]>();	// Offset, variable, block
+		for(int i = 0; i < readers.size(); i++) {
+			RecordIndex index = readers.get(i).getRecordIndex();
+			for(int block = 0; block < index.getBlockCount(); block++) blocks.add(new long[] { index.getOffset(block), i, block });
+		}
+		blocks.sort(Comparator.comparingLong(b -> b[0]));
+
+		Statistics[][] parts = new Statistics[readers.size()][];
+		for(int i = 0; i < readers.size(); i++) parts[i] = new Statistics[readers.get(i).getBlockCount()];
+
+		final AtomicBoolean stop = new AtomicBoolean(false);	// Set when the caller is interrupted, since pool threads are not
+		ArrayList<Callable<Void>> tasks = new ArrayList<Callable<Void>>(blocks.size());
+		for(long[] b : blocks) {
+			final int variable = (int) b[1];
+			final int block = (int) b[2];
+			tasks.add(() -> {
+				if(stop.get()) throw new InterruptedIOException("Interrupted while determining statistics.");
+				Statistics part = new Statistics(results.get(variable));
+				part.add(readers.get(variable), block, stop);
+				parts[variable][block] = part;
+				return null;
+			});
+		}
+		run(tasks, pool, stop);
+
+		for(int i = 0; i < readers.size(); i++) {
+			for(Statistics part : parts[i]) results.get(i).merge(part);
+		}
+
+		return results;
+	}
+
+	/**
+	 * Run tasks in a pool or in the calling thread.
+	 *
+	 * @param tasks the tasks in the order to start them.
+	 * @param pool the {@link ForkJoinPool} to run the tasks or null to run them in the calling thread.
+	 * @param stop the flag which is set to stop tasks which have not started when the calling thread is interrupted.
+	 *
+	 * @throws IOException if a task fails.
+	 * @throws InterruptedIOException if the calling thread is interrupted.
+	 */
+	private static void run(List<Callable<Void>> tasks, ForkJoinPool pool, AtomicBoolean stop) throws IOException {
+		ArrayList<Future<Void>> results = new ArrayList<Future<Void>>(tasks.size());
+		try {
+			if(pool == null) {
+				for(Callable<Void> task : tasks) {
+					if(Thread.currentThread().isInterrupted()) throw new InterruptedIOException("Interrupted while determining statistics.");
+					task.call();
+				}
+				return;
+			}
+			for(Callable<Void> task : tasks) results.add(pool.submit(task));
+			for(Future<Void> result : results) result.get();	// Waiting can be interrupted, unlike invokeAll()
+		} catch(ExecutionException e) {
+			stop.set(true);
+			throw VariableReader.getIOException(e);
+		} catch(InterruptedException e) {
+			stop.set(true);
+			for(Future<Void> result : results) result.cancel(false);
+			throw new InterruptedIOException("Interrupted while determining statistics.");
+		} catch(IOException e) {
+			throw e;
+		} catch(Exception e) {
+			throw new IOException(e);
+		}
+	}
+
+	/**
+	 * Retrieve the name of the variable.
+	 *
+	 * @return the name of the variable.
+	 */
+	public String getName() { return mName; }
+
+	/**
+	 * Retrieve the number of values examined.
+	 *
+	 * @return the number of values.
+	 */
+	public long getCount() { return mCount; }
+
+	/**
+	 * Retrieve the number of values which are not fill values, pad values or NaN.
+	 *
+	 * @return the number of values included in the minimum, maximum and mean.
+	 */
+	public long getValidCount() { return mValidCount; }
+
+	/**
+	 * Retrieve the number of values equal to the fill value (FILLVAL).
+	 *
+	 * @return the number of fill values.
+	 */
+	public long getFillCount() { return mFillCount; }
+
+	/**
+	 * Retrieve the number of values equal to the pad value.
+	 * Values are only counted if the variable declares a pad value.
+	 *
+	 * @return the number of pad values.
+	 */
+	public long getPadCount() { return mPadCount; }
+
+	/**
+	 * Retrieve the number of values which are NaN.
+	 *
+	 * @return the number of NaN values.
+	 */
+	public long getNaNCount() { return mNaNCount; }
+
+	/**
+	 * Retrieve the number of values less than VALIDMIN.
+	 *
+	 * @return the number of values below the valid range.
+	 */
+	public long getBelowMinCount() { return mBelowMinCount; }
+
+	/**
+	 * Retrieve the number of values greater than VALIDMAX.
+	 *
+	 * @return the number of values above the valid range.
+	 */
+	public long getAboveMaxCount() { return mAboveMaxCount; }
+
+	/**
+	 * Determine if all values are within VALIDMIN and VALIDMAX.
+	 *
+	 * @return true if no value is outside the valid range.
+	 */
+	public boolean isInRange() { return mBelowMinCount == 0 && mAboveMaxCount == 0; }
+
+	/**
+	 * Retrieve the smallest value.
+	 *
+	 * @return the smallest value or NaN if there are no values.
+	 */
+	public double getMin() { return mValidCount == 0 ? Double.NaN : mMin; }
+
+	/**
+	 * Retrieve the largest value.
+	 *
+	 * @return the largest value or NaN if there are no values.
+	 */
+	public double getMax() { return mValidCount == 0 ? Double.NaN : mMax; }
+
+	/**
+	 * Retrieve the mean of the values.
+	 *
+	 * @return the mean or NaN if there are no values.
+	 */
+	public double getMean() { return mValidCount == 0 ? Double.NaN : mSum / mValidCount; }
+
+	/**
+	 * Determine if the variable has a fill value (FILLVAL).
+	 *
+	 * @return true if there is a fill value.
+	 */
+	public boolean hasFill() { return mHasFill; }
+
+	/**
+	 * Retrieve the fill value (FILLVAL) of the variable.
+	 *
+	 * @return the fill value or NaN if there is none.
+	 */
+	public double getFill() { return mHasFill ? mFill : Double.NaN; }
+
+	/**
+	 * Determine if the variable declares a pad value. The default pad value of the data type is not used.
+	 *
+	 * @return true if there is a pad value.
+	 */
+	public boolean hasPad() { return mHasPad; }
+
+	/**
+	 * Retrieve the VALIDMIN of the variable.
+	 *
+	 * @return the values of VALIDMIN or an empty array if there is none.
+	 */
+	public double[] getValidMin() { return Arrays.copyOf(mValidMin, mValidMin.length); }
+
+	/**
+	 * Retrieve the VALIDMAX of the variable.
+	 *
+	 * @return the values of VALIDMAX or an empty array if there is none.
+	 */
+	public double[] getValidMax() { return Arrays.copyOf(mValidMax, mValidMax.length); }
+
+	/**
+	 * Describe the statistics in a single line.
+	 *
+	 * @return the description.
+	 */
+	public String toString() {
+		return mName + ": count=" + mCount + " valid=" + mValidCount + " min=" + getMin() + " max=" + getMax() + " mean=" + getMean()
+			+ " fill=" + mFillCount + " pad=" + mPadCount + " NaN=" + mNaNCount
+			+ " belowValidMin=" + mBelowMinCount + " aboveValidMax=" + mAboveMaxCount;
+	}
+}
@@ -0,0 +1,404 @@
+package pds.cdf;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+
+/**
+ * Convert CDF time values to Unix time and ISO-8601 text.
+ *
+ * CDF_EPOCH is milliseconds since 0000-01-01T00:00:00, CDF_EPOCH16 is seconds and picoseconds since
+ * 0000-01-01T00:00:00 and CDF_TIME_TT2000 is nanoseconds of Terrestrial Time since J2000
+ * (2000-01-01T12:00:00 TT), including leap seconds. Unix time is nanoseconds since 1970-01-01T00:00:00 UTC
+ * without leap seconds, so a leap second repeats the last second of the day. In ISO-8601 text a leap second
+ * is shown as second 60.
+ *
+ * A converter holds the result of the last value set, so converting a column of values does not create
+ * any objects. The position in the leap second table is kept between values, so for time ordered
+ * values the table is not searched. A converter is not thread safe.
+ *
+ * The leap second table is built in. An updated table in the format of the CDF library (CDFLeapSeconds.txt)
+ * is loaded from the file named by the environment variable CDF_LEAPSECONDSTABLE or with {@link #setLeapSeconds(String)}.
+ * Only entries from 1972 on, when TAI-UTC became a whole number of seconds, are used. Earlier times use the offset for 1972.
+ *
+ * @author tking
+ *
+ */
+public class TimeConverter {
+	/** Unix time returned for fill values and times which can not be represented. */	static final public long FILL = Long.MIN_VALUE;
+	/** Number of characters in ISO-8601 text for a time (yyyy-mm-ddThh:mm:ss.nnnnnnnnn). */	static final public int ISO_LENGTH = 29;
+	/** ISO-8601 text for fill values. */	static final public String ISO_FILL = "9999-12-31T23:59:59.999999999";
+	/** ISO-8601 text for the TT2000 pad value. */	static final public String ISO_PAD = "0000-01-01T00:00:00.000000000";
+
+	/** CDF_TIME_TT2000 fill value. */	static final public long TT2000_FILL = Long.MIN_VALUE;
+	/** CDF_TIME_TT2000 pad value. */	static final public long TT2000_PAD = Long.MIN_VALUE + 1;
+	/** CDF_EPOCH and CDF_EPOCH16 fill value. */	static final public double EPOCH_FILL = -1.0e31;
+
+	/** Seconds from 0000-01-01 to 1970-01-01. */	static final long EPOCH_TO_UNIX = 62167219200L;
+	/** Unix seconds at 2000-01-01T12:00:00 UTC. */	static final long J2000_UNIX = 946728000L;
+	/** Nanoseconds of TT-TAI beyond whole seconds. */	static final long TT_TAI_NANOS = 184000000L;
+	/** Whole seconds of TT-TAI. */	static final long TT_TAI_SECONDS = 32L;
+	/** Last second which can be formatted (9999-12-31T23:59:59). */	static final long MAX_SECONDS = 253402300799L;
+	static final long NANOS = 1000000000L;
+
+	// Leap seconds from 1972 (year, month, TAI-UTC on the first day of the month)
+	static final int[][] LEAP_SECONDS = {
+		{1972, 1, 10}, {1972, 7, 11}, {1973, 1, 12}, {1974, 1, 13}, {1975, 1, 14}, {1976, 1, 15},
+		{1977, 1, 16}, {1978, 1, 17}, {1979, 1, 18}, {1980, 1, 19}, {1981, 7, 20}, {1982, 7, 21},
+		{1983, 7, 22}, {1985, 7, 23}, {1988, 1, 24}, {1990, 1, 25}, {1991, 1, 26}, {1992, 7, 27},
+		{1993, 7, 28}, {1994, 7, 29}, {1996, 1, 30}, {1997, 7, 31}, {1999, 1, 32}, {2006, 1, 33},
+		{2009, 1, 34}, {2012, 7, 35}, {2015, 7, 36}, {2017, 1, 37}
+	};
+
+	// TT2000 value at the start of each leap second followed by TAI-UTC after it, as pairs
+	static volatile long[] mLeapTable = buildTable(LEAP_SECONDS);
+
+	static {
+		String pathname = System.getenv("CDF_LEAPSECONDSTABLE");
+		if(pathname != null) {
+			try {
+				setLeapSeconds(pathname);
+			} catch(IOException e) {
+				System.out.println("Unable to read leap second table " + pathname + ": " + e.getMessage() + " Using the built in table.");
+			}
+		}
+	}
+
+	long[] mTable = mLeapTable;
+	int mLeap = -1;	// Index of the leap second pair used for the last TT2000 value
+
+	// Result of the last conversion
+	long mSeconds = 0L;	// Unix seconds
+	int mNanos = 0;	// Nanoseconds within the second
+	boolean mLeapSecond = false;	// Time is within a leap second
+	boolean mValid = false;	// Time is not a fill value
+	boolean mPad = false;	// Time is the TT2000 pad value
+
+	/**
+	 * Create a converter using the current leap second table.
+	 */
+	public TimeConverter() {
+	}
+
+	/**
+	 * Build the table of leap second start times.
+	 *
+	 * @param list the year, month and TAI-UTC of each change.
+	 *
+	 * @return pairs of the TT2000 value at the start of each leap second and TAI-UTC after it.
+	 */
+	static long[] buildTable(int[][] list) {
+		long[] table = new long[list.length * 2];
+		for(int i = 0; i < list.length; i++) {
+			long midnight = daysFromCivil(list[i][0], list[i][1], 1) * 86400L;
+			long delta = list[i][2];
+			// Leap second is the last second before midnight with the new offset
+			table[i * 2] = (midnight - 1 - J2000_UNIX + TT_TAI_SECONDS + delta) * NANOS + TT_TAI_NANOS;
+			table[i * 2 + 1] = delta;
+		}
+
+		return table;
+	}
+
+	/**
+	 * Load a leap second table in the format of the CDF library.
+	 * Each line is year, month, day, TAI-UTC and two drift values. Lines starting with a semicolon are comments.
+	 * The table is used by converters created after it is loaded.
+	 *
+	 * @param pathname the file containing the table.
+	 *
+	 * @throws IOException if the file can not be read or has no entries from 1972 on.
+	 */
+	static public void setLeapSeconds(String pathname) throws IOException {
+		ArrayList<int[]> list = new ArrayList<int[]>();
+		BufferedReader reader = new BufferedReader(new FileReader(pathname));
+		try {
+			String line;
+			while((line = reader.readLine()) != null) {
+				line = line.trim();
+				if(line.isEmpty() || line.startsWith(";")) continue;
+				String[] part = line.split("\\s+");
+				if(part.length < 4) throw new IOException("Leap second entry is not valid: " + line);
+				try {
+					int year = Integer.parseInt(part[0]);
+					if(year < 1972) continue;	// Offsets before 1972 drift
+					list.add(new int[] { year, Integer.parseInt(part[1]), (int) Math.round(Double.parseDouble(part[3])) });
+				} catch(NumberFormatException e) {
+					throw new IOException("Leap second entry is not valid: " + line);
+				}
+			}
+		} finally {
+			reader.close();
+		}
+		if(list.isEmpty()) throw new IOException("Leap second table has no entries from 1972 on.");
+
+		mLeapTable = buildTable(list.toArray(new int[list.size()][]));
+	}
+
+	/**
+	 * Determine the number of days from 1970-01-01 to a date in the proleptic Gregorian calendar.
+	 *
+	 * @param year the year.
+	 * @param month the month (1 to 12).
+	 * @param day the day of the month.
+	 *
+	 * @return the number of days since 1970-01-01.
+	 */
+	static long daysFromCivil(long year, int month, int day) {
+		year -= (month <= 2) ? 1 : 0;
+		long era = Math.floorDiv(year, 400);
+		long yoe = year - era * 400;
+		long doy = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+		long doe = yoe * 365 + yoe / 4 - yoe / 100 + doy;
+
+		return era * 146097 + doe - 719468;
+	}
+
+	/**
+	 * Convert Unix time to a CDF_TIME_TT2000 value.
+	 * Times before 1677 or after 2262 are limited to the smallest or largest TT2000 value.
+	 *
+	 * @param unixNanos nanoseconds since 1970-01-01T00:00:00 UTC.
+	 *
+	 * @return nanoseconds since J2000 including leap seconds.
+	 */
+	static public long unixToTT2000(long unixNanos) {
+		long seconds = Math.floorDiv(unixNanos, NANOS);
+		long nanos = Math.floorMod(unixNanos, NANOS);
+
+		// TAI-UTC at the time, changes at midnight after each leap second
+		long[] table = mLeapTable;
+		long delta = table[1];
+		for(int i = table.length / 2 - 1; i >= 0; i--) {
+			long midnight = (table[i * 2] - TT_TAI_NANOS) / NANOS + 1 + J2000_UNIX - TT_TAI_SECONDS - table[i * 2 + 1];
+			if(seconds >= midnight) { delta = table[i * 2 + 1]; break; }
+		}
+
+		seconds = seconds - J2000_UNIX + TT_TAI_SECONDS + delta;
+		if(seconds >= Long.MAX_VALUE / NANOS) return Long.MAX_VALUE;
+		if(seconds <= Long.MIN_VALUE / NANOS) return TT2000_PAD + 1;
+
+		return seconds * NANOS + TT_TAI_NANOS + nanos;
+	}
+
+	/**
+	 * Convert Unix time to a CDF_EPOCH value.
+	 *
+	 * @param unixNanos nanoseconds since 1970-01-01T00:00:00 UTC.
+	 *
+	 * @return milliseconds since 0000-01-01T00:00:00.
+	 */
+	static public double unixToEpoch(long unixNanos) {
+		return (Math.floorDiv(unixNanos, 1000000L) + EPOCH_TO_UNIX * 1000L) + Math.floorMod(unixNanos, 1000000L) / 1.0e6;
+	}
+
+	/**
+	 * Convert Unix time to the seconds of a CDF_EPOCH16 value.
+	 *
+	 * @param unixNanos nanoseconds since 1970-01-01T00:00:00 UTC.
+	 *
+	 * @return seconds since 0000-01-01T00:00:00.
+	 *
+	 * @see #unixToEpoch16Picoseconds(long)
+	 */
+	static public double unixToEpoch16Seconds(long unixNanos) {
+		return Math.floorDiv(unixNanos, NANOS) + EPOCH_TO_UNIX;
+	}
+
+	/**
+	 * Convert Unix time to the picoseconds of a CDF_EPOCH16 value.
+	 *
+	 * @param unixNanos nanoseconds since 1970-01-01T00:00:00 UTC.
+	 *
+	 * @return picoseconds within the second.
+	 *
+	 * @see #unixToEpoch16Seconds(long)
+	 */
+	static public double unixToEpoch16Picoseconds(long unixNanos) {
+		return Math.floorMod(unixNanos, NANOS) * 1000.0;
+	}
+
+	/**
+	 * Set the time from a CDF_EPOCH value.
+	 *
+	 * @param epoch milliseconds since 0000-01-01T00:00:00.
+	 *
+	 * @return true if the value is a time, false if it is a fill value or out of range.
+	 */
+	public boolean setEpoch(double epoch) {
+		mLeapSecond = false;
+		mPad = false;
+		if( ! (epoch >= 0.0 && epoch < (MAX_SECONDS + EPOCH_TO_UNIX + 1) * 1000.0)) return mValid = false;	// Includes NaN
+
+		long ms = (long) epoch;
+		long nanos = (ms % 1000) * 1000000L + Math.round((epoch - ms) * 1.0e6);
+		long seconds = ms / 1000;
+		if(nanos >= NANOS) { nanos -= NANOS; seconds++; }
+		mSeconds = seconds - EPOCH_TO_UNIX;
+		mNanos = (int) nanos;
+
+		return mValid = true;
+	}
+
+	/**
+	 * Set the time from a CDF_EPOCH16 value.
+	 * Picoseconds are truncated to nanoseconds.
+	 *
+	 * @param seconds seconds since 0000-01-01T00:00:00.
+	 * @param picoseconds picoseconds within the second.
+	 *
+	 * @return true if the value is a time, false if it is a fill value or out of range.
+	 */
+	public boolean setEpoch16(double seconds, double picoseconds) {
+		mLeapSecond = false;
+		mPad = false;
+		if( ! (seconds >= 0.0 && seconds <= MAX_SECONDS + EPOCH_TO_UNIX)) return mValid = false;
+		if( ! (picoseconds >= 0.0 && picoseconds < 1.0e12)) return mValid = false;
+
+		mSeconds = (long) seconds - EPOCH_TO_UNIX;
+		mNanos = (int) (picoseconds / 1000.0);
+
+		return mValid = true;
+	}
+
+	/**
+	 * Set the time from a CDF_TIME_TT2000 value.
+	 *
+	 * @param tt2000 nanoseconds since J2000 including leap seconds.
+	 *
+	 * @return true if the value is a time, false if it is the fill or pad value.
+	 */
+	public boolean setTT2000(long tt2000) {
+		mLeapSecond = false;
+		mPad = (tt2000 == TT2000_PAD);
+		if(tt2000 == TT2000_FILL || mPad) return mValid = false;
+
+		// Find the last leap second starting at or before the time. Usually the same as the previous value.
+		long[] table = mTable;
+		int count = table.length / 2;
+		int i = mLeap;
+		if(i < 0 || tt2000 < table[i * 2] || (i + 1 < count && tt2000 >= table[(i + 1) * 2])) {
+			int low = 0;
+			int high = count - 1;
+			while(low <= high) {
+				int mid = (low + high) >>> 1;
+				if(table[mid * 2] <= tt2000) low = mid + 1;
+				else high = mid - 1;
+			}
+			i = high;	// -1 before 1972
+			mLeap = i;
+		}
+		long delta = table[Math.max(i, 0) * 2 + 1];
+		mLeapSecond = (i > 0 && tt2000 - table[i * 2] < NANOS);
+
+		long seconds = Math.floorDiv(tt2000, NANOS);
+		long nanos = Math.floorMod(tt2000, NANOS) - TT_TAI_NANOS;
+		if(nanos < 0) { nanos += NANOS; seconds--; }
+		mSeconds = seconds + J2000_UNIX - TT_TAI_SECONDS - delta;
+		mNanos = (int) nanos;
+
+		return mValid = true;
+	}
+
+	/**
+	 * Determine if the last value set was a time.
+	 *
+	 * @return true if the last value is a time, false if it was a fill or pad value or out of range.
+	 */
+	public boolean isValid() { return mValid; }
+
+	/**
+	 * Determine if the last value set was within a leap second.
+	 *
+	 * @return true if the time is within a leap second.
+	 */
+	public boolean isLeapSecond() { return mLeapSecond; }
+
+	/**
+	 * Retrieve the last value set as Unix time.
+	 *
+	 * @return nanoseconds since 1970-01-01T00:00:00 UTC or {@link #FILL} if the value is not a time or
+	 *         is outside the range of a long (1677 to 2262).
+	 */
+	public long getUnixNanos() {
+		if( ! mValid || mSeconds < Long.MIN_VALUE / NANOS || mSeconds >= Long.MAX_VALUE / NANOS) return FILL;
+
+		return mSeconds * NANOS + mNanos;
+	}
+
+	/**
+	 * Place the last value set in an array as ISO-8601 text (yyyy-mm-ddThh:mm:ss.nnnnnnnnn).
+	 * Fill values are shown as {@link #ISO_FILL} and the TT2000 pad value as {@link #ISO_PAD}.
+	 *
+	 * @param text the array to place the text in. Must have room for {@link #ISO_LENGTH} characters after start.
+	 * @param start the index in text for the first character.
+	 */
+	public void format(char[] text, int start) {
+		if( ! mValid) {
+			(mPad ? ISO_PAD : ISO_FILL).getChars(0, ISO_LENGTH, text, start);
+			return;
+		}
+
+		long days = Math.floorDiv(mSeconds, 86400L);
+		int time = (int) Math.floorMod(mSeconds, 86400L);	// A leap second has the time of the last second of the day
+
+		// Civil date from days since 1970-01-01
+		long z = days + 719468;
+		long era = Math.floorDiv(z, 146097);
+		long doe = z - era * 146097;
+		long yoe = (doe - doe / 1460 + doe / 36524 - doe / 146096) / 365;
+		long doy = doe - (365 * yoe + yoe / 4 - yoe / 100);
+		long mp = (5 * doy + 2) / 153;
+		int day = (int) (doy - (153 * mp + 2) / 5 + 1);
+		int month = (int) (mp < 10 ? mp + 3 : mp - 9);
+		long year = yoe + era * 400 + (month <= 2 ? 1 : 0);
+		if(year < 0 || year > 9999) {
+			ISO_FILL.getChars(0, ISO_LENGTH, text, start);
+			return;
+		}
+
+		int second = time % 60;
+		if(mLeapSecond) second = 60;
+		put(text, start, year, 4);
+		text[start + 4] = '-';
+		put(text, start + 5, month, 2);
+		text[start + 7] = '-';
+		put(text, start + 8, day, 2);
+		text[start + 10] = 'T';
+		put(text, start + 11, time / 3600, 2);
+		text[start + 13] = ':';
+		put(text, start + 14, (time / 60) % 60, 2);
+		text[start + 16] = ':';
+		put(text, start + 17, second, 2);
+		text[start + 19] = '.';
+		put(text, start + 20, mNanos, 9);
+	}
+
+	/**
+	 * Retrieve the last value set as ISO-8601 text.
+	 *
+	 * @return the text of the time.
+	 */
+	public String toString() {
+		char[] text = new char[ISO_LENGTH];
+		format(text, 0);
+
+		return new String(text);
+	}
+
+	/**
+	 * Place the decimal digits of a value in an array with leading zeros.
+	 *
+	 * @param text the array to place the digits in.
+	 * @param start the index in text for the first digit.
+	 * @param value the value. Must not be negative.
+	 * @param digits the number of digits.
+	 */
+	private static void put(char[] text, int start, long value, int digits) {
+		for(int i = start + digits - 1; i >= start; i--) {
+			text[i] = (char) ('0' + (value % 10));
+			value /= 10;
+		}
+	}
+}
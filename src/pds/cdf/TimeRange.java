@@ -0,0 +1,413 @@
+package pds.cdf;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * The records of a variable within a time interval.
+ *
+ * The times of the records are the values of the time variable named by the DEPEND_0 attribute
+ * of the variable. Time values must be in order, so the first and last record in the interval are found
+ * with a binary search of the time variable. Times are compared in the time scale of the
+ * data type (CDF_EPOCH, CDF_EPOCH16 or CDF_TIME_TT2000) so records within a leap second remain in order.
+ * Only the blocks holding the records in the interval are read.
+ *
+ * @author tking
+ *
+ */
+public class TimeRange {
+	VariableReader mReader = null;	// Variable with the data
+	VariableReader mEpoch = null;	// Variable with the times
+	int mDataType = 0;	// Data type of the times
+	int mSign = 1;	// 1 for increasing times, -1 for decreasing times
+	long mStart = 0L;	// Start of the interval as Unix time
+	long mEnd = 0L;	// End of the interval as Unix time
+	long mFirst = 0L;	// First record in the interval
+	long mLast = -1L;	// Last record in the interval
+
+	// Interval in the time scale of the data type, start then end
+	long[] mTT2000 = new long[2];
+	double[] mSeconds = new double[2];	// Milliseconds for CDF_EPOCH
+	double[] mPicoseconds = new double[2];
+
+	/**
+	 * Find the records of a variable within a time interval. Both ends of the interval are included.
+	 *
+	 * @param reader the {@link VariableReader} for the variable.
+	 * @param epoch the {@link VariableReader} for the time variable.
+	 * @param increasing true if the times increase with record number, false if they decrease.
+	 * @param start the start of the interval as nanoseconds since 1970-01-01T00:00:00 UTC.
+	 * @param end the end of the interval as nanoseconds since 1970-01-01T00:00:00 UTC.
+	 *
+	 * @throws IOException if the time variable is not a time type or a record can not be read.
+	 */
+	public TimeRange(VariableReader reader, VariableReader epoch, boolean increasing, long start, long end) throws IOException {
+		mReader = reader;
+		mEpoch = epoch;
+		mDataType = epoch.getVDR().mDataType;
+		mSign = increasing ? 1 : -1;
+		mStart = start;
+		mEnd = end;
+		if( ! isTimeType(mDataType)) {
+			throw new IOException("Variable '" + epoch.getVDR().mName + "' is not a time variable.");
+		}
+		if(start > end) return;	// Empty
+
+		long[] bound = { start, end };
+		for(int i = 0; i < 2; i++) {
+			mTT2000[i] = TimeConverter.unixToTT2000(bound[i]);
+			if(mDataType == Constant.CDF_EPOCH) {
+				mSeconds[i] = TimeConverter.unixToEpoch(bound[i]);
+			} else {
+				mSeconds[i] = TimeConverter.unixToEpoch16Seconds(bound[i]);
+				mPicoseconds[i] = TimeConverter.unixToEpoch16Picoseconds(bound[i]);
+			}
+		}
+
+		// The record order of the bounds is reversed when times decrease
+		int low = increasing ? 0 : 1;
+		int high = increasing ? 1 : 0;
+		long count = Math.min(epoch.getRecordCount(), reader.getRecordCount());
+		mFirst = search(low, count, false);
+		mLast = search(high, count, true) - 1;
+	}
+
+	/**
+	 * Determine if a data type is a time type which can be searched.
+	 *
+	 * @param dataType the data type.
+	 *
+	 * @return true for CDF_EPOCH, CDF_EPOCH16 and CDF_TIME_TT2000, otherwise false.
+	 */
+	static public boolean isTimeType(int dataType) {
+		switch(dataType) {
+		case Constant.CDF_EPOCH:
+		case Constant.CDF_EPOCH16:
+		case Constant.CDF_TIME_TT2000:
+			return true;
+		}
+
+		return false;
+	}
+
+	/**
+	 * Determine if the stored values of a time variable are in order.
+	 * Fill and pad values are skipped. Blocks are read up to the first time out of order,
+	 * so the result should be kept by the caller.
+	 *
+	 * @param epoch the {@link VariableReader} for the time variable.
+	 * @param increasing true to test for increasing times, false for decreasing times.
+	 *
+	 * @return true if no time is out of order, otherwise false.
+	 *
+	 * @throws IOException if a block can not be read.
+	 */
+	static public boolean isSorted(VariableReader epoch, boolean increasing) throws IOException {
+		if( ! isTimeType(epoch.getVDR().mDataType)) return false;
+
+		return countBreaks(epoch, increasing, null, 1) == 0;
+	}
+
+	/**
+	 * Determine if a value of a time variable is a time. Fill values and pad values are not times.
+	 *
+	 * @param data the values.
+	 * @param index the index of the value.
+	 * @param dataType the data type of the values.
+	 *
+	 * @return true if the value is a time, false if it is a fill or pad value or the data type is not a time type.
+	 */
+	static boolean isTime(ByteBuffer data, int index, int dataType) {
+		switch(dataType) {
+		case Constant.CDF_TIME_TT2000: {
+			long value = data.getLong(index * 8);
+			return value != TimeConverter.TT2000_FILL && value != TimeConverter.TT2000_PAD;
+			}
+		case Constant.CDF_EPOCH: {
+			double value = data.getDouble(index * 8);
+			return value != TimeConverter.EPOCH_FILL && value != 0.0;
+			}
+		case Constant.CDF_EPOCH16: {
+			double seconds = data.getDouble(index * 16);
+			return seconds != TimeConverter.EPOCH_FILL && ! (seconds == 0.0 && data.getDouble(index * 16 + 8) == 0.0);
+			}
+		}
+
+		return false;
+	}
+
+	/**
+	 * Count the stored values of a time variable which are out of order.
+	 * A value is out of order if it is before the previous value in the given order.
+	 * Fill and pad values are skipped. Every block is read.
+	 *
+	 * @param epoch the {@link VariableReader} for the time variable.
+	 * @param increasing true if times should increase, false if they should decrease.
+	 *
+	 * @return the number of values which break the order.
+	 *
+	 * @throws IOException if the variable is not a time variable or a block can not be read.
+	 */
+	static public long countBreaks(VariableReader epoch, boolean increasing) throws IOException { return countBreaks(epoch, increasing, null); }
+
+	/**
+	 * Count the stored values of a time variable which are out of order, stopping if the thread is interrupted or a flag is set.
+	 *
+	 * @param epoch the {@link VariableReader} for the time variable.
+	 * @param increasing true if times should increase, false if they should decrease.
+	 * @param stop the flag which is set to stop or null for none.
+	 *
+	 * @return the number of values which break the order.
+	 *
+	 * @throws IOException if the variable is not a time variable or a block can not be read.
+	 * @throws InterruptedIOException if the thread is interrupted or the flag is set.
+	 */
+	static long countBreaks(VariableReader epoch, boolean increasing, AtomicBoolean stop) throws IOException {
+		return countBreaks(epoch, increasing, stop, Long.MAX_VALUE);
+	}
+
+	/**
+	 * Count the stored values of a time variable which are out of order, up to a limit.
+	 *
+	 * @param epoch the {@link VariableReader} for the time variable.
+	 * @param increasing true if times should increase, false if they should decrease.
+	 * @param stop the flag which is set to stop or null for none.
+	 * @param limit the count at which to stop reading.
+	 *
+	 * @return the number of values which break the order, at most limit.
+	 *
+	 * @throws IOException if the variable is not a time variable or a block can not be read.
+	 * @throws InterruptedIOException if the thread is interrupted or the flag is set.
+	 */
+	private static long countBreaks(VariableReader epoch, boolean increasing, AtomicBoolean stop, long limit) throws IOException {
+		int dataType = epoch.getVDR().mDataType;
+		if( ! isTimeType(dataType)) throw new IOException("Variable '" + epoch.getVDR().mName + "' is not a time variable.");
+
+		int sign = increasing ? 1 : -1;
+		boolean started = false;
+		long lastTT2000 = 0L;
+		double lastSeconds = 0.0;
+		double lastPicoseconds = 0.0;
+		long breaks = 0;
+
+		for(int block = 0; block < epoch.getBlockCount(); block++) {
+			if(Thread.currentThread().isInterrupted() || (stop != null && stop.get())) throw new InterruptedIOException("Interrupted while checking the order of '" + epoch.getVDR().mName + "'.");
+			ByteBuffer data = epoch.getBuffer(block);
+			int count = epoch.getValueCount(block);
+			for(int i = 0; i < count; i++) {
+				if( ! isTime(data, i, dataType)) continue;
+				int c = 0;
+				switch(dataType) {
+				case Constant.CDF_TIME_TT2000: {
+					long value = data.getLong(i * 8);
+					if(started) c = Long.compare(value, lastTT2000);
+					lastTT2000 = value;
+					} break;
+				case Constant.CDF_EPOCH: {
+					double value = data.getDouble(i * 8);
+					if(started) c = Double.compare(value, lastSeconds);
+					lastSeconds = value;
+					} break;
+				default: {	// CDF_EPOCH16
+					double seconds = data.getDouble(i * 16);
+					double picoseconds = data.getDouble(i * 16 + 8);
+					if(started) c = compare(seconds, picoseconds, lastSeconds, lastPicoseconds);
+					lastSeconds = seconds;
+					lastPicoseconds = picoseconds;
+					} break;
+				}
+				if(sign * c < 0 && ++breaks >= limit) return breaks;
+				started = true;
+			}
+		}
+
+		return breaks;
+	}
+
+	/**
+	 * Compare two CDF_EPOCH16 values.
+	 *
+	 * @return a negative value, zero or a positive value as the first value is before, the same as or after the second.
+	 */
+	private static int compare(double seconds1, double picoseconds1, double seconds2, double picoseconds2) {
+		int c = Double.compare(seconds1, seconds2);
+		if(c != 0) return c;
+
+		return Double.compare(picoseconds1, picoseconds2);
+	}
+
+	/**
+	 * Find the next record which may be stored.
+	 * A gap of records which are not stored is passed in one step, so a large gap costs a single lookup.
+	 *
+	 * @param record a record which is not stored.
+	 *
+	 * @return the first record of the next stored block or Long.MAX_VALUE if there is none.
+	 */
+	private long nextStored(long record) {
+		RecordIndex index = mEpoch.getRecordIndex();
+		int block = index.findPrevious(record) + 1;
+
+		return (block < index.getBlockCount()) ? index.getFirstRecord(block) : Long.MAX_VALUE;
+	}
+
+	/**
+	 * Compare a time with one end of the interval.
+	 *
+	 * @param value the time.
+	 * @param bound 0 for the start of the interval, 1 for the end.
+	 *
+	 * @return a negative value, zero or a positive value as the time is before, at or after the bound.
+	 */
+	private int compare(ByteBuffer value, int bound) {
+		switch(mDataType) {
+		case Constant.CDF_TIME_TT2000:
+			return Long.compare(value.getLong(0), mTT2000[bound]);
+		case Constant.CDF_EPOCH:
+			return Double.compare(value.getDouble(0), mSeconds[bound]);
+		default:	// CDF_EPOCH16
+			return compare(value.getDouble(0), value.getDouble(8), mSeconds[bound], mPicoseconds[bound]);
+		}
+	}
+
+	/**
+	 * Find the first record past a bound in record order.
+	 * Records without a time (fill, pad or not stored) are skipped, so they do not break the search.
+	 * A run of such records next to the bound is placed after it. Records which are not stored are
+	 * skipped a block at a time, fill and pad values within a block one record at a time.
+	 *
+	 * @param bound 0 for the start of the interval, 1 for the end.
+	 * @param count the number of records.
+	 * @param after true to find the first record after the bound, false to find the first record at or after the bound.
+	 *
+	 * @return the record number or count if there is no such record.
+	 *
+	 * @throws IOException if a record can not be read.
+	 */
+	private long search(int bound, long count, boolean after) throws IOException {
+		// Every time before low is before the bound, every time from high on is past it
+		long low = 0;
+		long high = count;
+		while(low < high) {
+			long mid = (low + high) >>> 1;
+			long probe = mid;
+			ByteBuffer value = null;
+			while(probe < high) {
+				ByteBuffer data = mEpoch.getStoredRecord(probe);
+				if(data == null) { probe = nextStored(probe); continue; }
+				if(isTime(data, 0, mDataType)) { value = data; break; }
+				probe++;	// Fill or pad value
+			}
+			if(value == null) { high = mid; continue; }	// No times from mid to high
+			int c = mSign * compare(value, bound);
+			if(c > 0 || ( ! after && c == 0)) high = mid;
+			else low = probe + 1;
+		}
+
+		return low;
+	}
+
+	/**
+	 * Determine if there are no records in the interval.
+	 *
+	 * @return true if no records are in the interval.
+	 */
+	public boolean isEmpty() { return mLast < mFirst; }
+
+	/**
+	 * Retrieve the first record in the interval.
+	 *
+	 * @return the record number of the first record.
+	 */
+	public long getFirstRecord() { return mFirst; }
+
+	/**
+	 * Retrieve the last record in the interval.
+	 *
+	 * @return the record number of the last record or one less than the first record if the interval is empty.
+	 */
+	public long getLastRecord() { return mLast; }
+
+	/**
+	 * Retrieve the number of records in the interval.
+	 *
+	 * @return the number of records.
+	 */
+	public long getRecordCount() { return isEmpty() ? 0 : mLast - mFirst + 1; }
+
+	/**
+	 * Retrieve the records of the variable in the interval.
+	 * Only the blocks holding the records are read.
+	 *
+	 * @return an {@link Iterable} of read-only {@link ByteBuffer} records.
+	 *
+	 * @see VariableReader#getRecords(long, long)
+	 */
+	public Iterable<ByteBuffer> getRecords() { return mReader.getRecords(mFirst, mLast); }
+
+	/**
+	 * Retrieve the times of the records in the interval.
+	 *
+	 * @return an {@link Iterable} of read-only {@link ByteBuffer} time values.
+	 *
+	 * @see VariableReader#getRecords(long, long)
+	 */
+	public Iterable<ByteBuffer> getTimes() { return mEpoch.getRecords(mFirst, mLast); }
+
+	/**
+	 * Copy the records of the variable in the interval into a single buffer.
+	 * Records which are not stored and are not virtual records are filled with zeros.
+	 *
+	 * @return a {@link ByteBuffer} of the records in record order.
+	 *
+	 * @throws IOException if the data is too large for one buffer or a block can not be read.
+	 */
+	public ByteBuffer getData() throws IOException {
+		long size = getRecordCount() * mReader.getRecordSize();
+		if(size > Integer.MAX_VALUE) throw new IOException("Records " + mFirst + " to " + mLast + " are too large to read into one buffer.");
+
+		ByteBuffer data = ByteBuffer.allocate((int) size).order(mReader.mOrder);
+		try {
+			for(ByteBuffer record : getRecords()) {
+				if(record == null) data.position(data.position() + mReader.getRecordSize());
+				else data.put(record);
+			}
+		} catch(UncheckedIOException e) {
+			throw e.getCause();
+		}
+		data.flip();
+
+		return data;
+	}
+
+	/**
+	 * Retrieve the {@link VariableReader} for the variable.
+	 *
+	 * @return the {@link VariableReader} for the variable.
+	 */
+	public VariableReader getReader() { return mReader; }
+
+	/**
+	 * Retrieve the {@link VariableReader} for the time variable.
+	 *
+	 * @return the {@link VariableReader} for the time variable.
+	 */
+	public VariableReader getEpochReader() { return mEpoch; }
+
+	/**
+	 * Retrieve the start of the interval.
+	 *
+	 * @return the start as nanoseconds since 1970-01-01T00:00:00 UTC.
+	 */
+	public long getStart() { return mStart; }
+
+	/**
+	 * Retrieve the end of the interval.
+	 *
+	 * @return the end as nanoseconds since 1970-01-01T00:00:00 UTC.
+	 */
+	public long getEnd() { return mEnd; }
+}
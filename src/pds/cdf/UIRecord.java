@@ -36,8 +36,8 @@ public class UIRecord extends Record {
 	 * @throws IOException if any reading error occurs.
 	 */
 	public long read(long offset, DataInputStream in) throws IOException {
-		mPrevUIR = in.readLong(); offset += 8; // The file offset of the previous UIR. 
 		mNextUIR = in.readLong(); offset += 8; // The file offset of the next UIR. 
+		mPrevUIR = in.readLong(); offset += 8; // The file offset of the previous UIR. 
 		
 		// Skip remainder - unused data
 		long loffset = getSize() - 28;
@@ -29,13 +29,18 @@ public class VDRecord extends Record {
 	int[] mZDimSize; // Zero or more contiguous dimension sizes for this zVariable
 	int[] mDimVarys; // Zero or more contiguous dimension variances.
 	double[] mPadValue; // The variable's pad value if numeric data type.
+	byte[] mPadBytes; // The variable's pad value as stored in the file.
 	String mPadString; // The variable's pad value if character data type.
 
 	// Passed from GDR for rVDR
 	int mRNumDims; // The number of dimensions for this zVariable. This field will not be present if this is an rVDR (rVariable).
 	
+	// Passed from CDR
+	Decoder mDecoder = Decoder.BIG_ENDIAN; // Decoder for the encoding of the CDF.
+	
 	/**
 	 * Create a VDRecord based on a base record.
+	 * Pad values are decoded in network (big-endian) order.
 	 * 
 	 * @param base the base record to derive a VDRecord.
 	 * @param rNumDims the number of dimensions in the VDRecord.
@@ -45,6 +50,18 @@ public class VDRecord extends Record {
 		mRNumDims = rNumDims;
 	}
 
+	/**
+	 * Create a VDRecord based on a base record.
+	 * 
+	 * @param base the base record to derive a VDRecord.
+	 * @param rNumDims the number of dimensions in the VDRecord.
+	 * @param decoder the {@link Decoder} for the encoding of the CDF. Used to decode pad values.
+	 */
+	public VDRecord(Record base, int rNumDims, Decoder decoder) {
+		this(base, rNumDims);
+		mDecoder = decoder;
+	}
+
 	/**
 	 * Read the contents of a VDRecord from an input stream.
 	 * 
@@ -88,11 +105,14 @@ public class VDRecord extends Record {
 		
 		if((mFlags & Constant.FLAG_PAD) == Constant.FLAG_PAD) {
 			if(mDataType == Constant.CDF_CHAR) {
-				mPadString = readStringValue(in, mDataType, mNumElems);
-				offset += Constant.getDataTypeSize(mDataType) * mNumElems;
+				mPadBytes = new byte[Constant.getDataTypeSize(mDataType) * mNumElems];
+				in.readFully(mPadBytes); offset += mPadBytes.length;
+				mPadString = new String(mPadBytes, "US-ASCII");
 			} else {
+				mPadBytes = new byte[Constant.getDataTypeSize(mDataType) * mNumElems];
+				in.readFully(mPadBytes); offset += mPadBytes.length;
 				mPadValue = new double[mNumElems];
-				for(int i = 0; i < mNumElems; i++) { mPadValue[i] = readDataValue(in, mDataType); offset += Constant.getDataTypeSize(mDataType); }
+				mDecoder.toDoubleArray(mPadBytes, mDataType, mNumElems, mPadValue, 0);
 			}
 		}
 		
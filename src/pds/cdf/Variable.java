@@ -222,6 +222,38 @@ public class Variable {
 		mAttributes.add(a);
 	}
 	
+	/**
+	 * Define an attribute with a value which is decoded when first requested.
+	 * 
+	 * @param name the name of the attribute.
+	 * @param aedr the {@link AEDRecord} containing the value of the attribute.
+	 * @param decoder the {@link Decoder} for the encoding of the CDF.
+	 */
+	public void setAttribute(String name, AEDRecord aedr, Decoder decoder) { 
+		Attribute a = new Attribute();
+		a.setName(name);
+		a.setDecoder(decoder);
+		a.setDataType(aedr.mDataType);
+		a.setStartByte(aedr.mDataStartByte);
+		a.addEntry(aedr);
+		mAttributes.add(a);
+	}
+	
+	/**
+	 * Retrieve the attribute with a given name.
+	 * 
+	 * @param name the name of the attribute.
+	 * 
+	 * @return the {@link Attribute} with the matching name or null if none found.
+	 */
+	public Attribute getAttribute(String name) {
+		for(Attribute a : mAttributes) {
+			if(a.getName().equals(name)) return a;
+		}
+		
+		return null;
+	}
+	
 	/**
 	 * Retrieve an attribute with a given name.
 	 * 
@@ -0,0 +1,1335 @@
+package pds.cdf;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.ShortBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+import java.util.function.DoubleConsumer;
+import java.util.function.LongConsumer;
+import java.util.stream.DoubleStream;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Access the data values of a variable.
+ *
+ * All VXR entries for a variable are resolved to the VVRs holding the data using the {@link RecordIndex}.
+ * The data in each VVR is returned as a read-only view of the mapped file, so no
+ * bytes are copied. Views are in the byte order declared by the encoding of the CDF.
+ * For a compressed variable the data in each CVVR is decompressed and held in a {@link BlockCache},
+ * so repeated reads of the same records do not decompress the data again.
+ *
+ * Records of a sparse variable which are not stored are virtual. When read they are the pad value
+ * or the previous stored record, as declared by the sparse record type of the variable.
+ * Virtual records are never materialised, a single pad record is shared by all reads.
+ *
+ * @author tking
+ *
+ */
+public class VariableReader {
+	CDF mCDF = null;
+	VDRecord mVDR = null;
+	MappedFile mFile = null;
+	RecordIndex mIndex = null;
+	Decoder mDecoder = Decoder.BIG_ENDIAN;
+	ByteOrder mOrder = ByteOrder.BIG_ENDIAN;
+	CPRecord mCPR = null;	// Compression of CVVRs
+	BlockCache mCache = BlockCache.getShared();
+	Object mCacheFile = null;	// Identifies the file in the cache
+	ByteBuffer mPad = null;	// One record of pad values
+
+	/**
+	 * Create a reader for a variable.
+	 *
+	 * @param cdf the parsed {@link CDF} containing the variable.
+	 * @param vdr the {@link VDRecord} for the variable.
+	 *
+	 * @throws IOException if the file can not be mapped or the compression parameters for the variable can not be read.
+	 */
+	public VariableReader(CDF cdf, VDRecord vdr) throws IOException {
+		mCDF = cdf;
+		mVDR = vdr;
+		mFile = cdf.map();
+		mIndex = cdf.getRecordIndex(vdr);
+		mDecoder = cdf.getDecoder();
+		mOrder = mDecoder.getOrder();
+
+		// Blocks are cached by the content of the file, so a file which is replaced is not read from the cache
+		mCacheFile = mFile.getPathName() + "\t" + mFile.length() + "\t" + mFile.lastModified();
+		if(mFile.getPathName().equals("-channel-")) mCacheFile = mFile;
+
+		if(mIndex.isCompressed()) {
+			mCPR = cdf.getCPR(vdr.mCPRorSPRoffset);
+			if(mCPR == null) mCPR = readCPR(vdr.mCPRorSPRoffset);
+		}
+	}
+
+	/**
+	 * Read the {@link CPRecord} for a compressed variable from the mapped file.
+	 *
+	 * @param offset the file offset of the CPR.
+	 *
+	 * @return the {@link CPRecord}.
+	 *
+	 * @throws IOException if there is no CPR at the offset.
+	 */
+	private CPRecord readCPR(long offset) throws IOException {
+		if(offset <= 0 || offset >= mFile.length() || mFile.getRecordType(offset) != Constant.RECORD_CPR) {
+			throw new IOException("Variable '" + mVDR.mName + "' is compressed, but there is no CPR.");
+		}
+		DataInputStream in = mFile.getStream(offset, mFile.getRecordSize(offset));
+		Record base = new Record(offset);
+		base.read(in);
+		CPRecord cpr = new CPRecord(base);
+		cpr.read(offset + 12, in);
+
+		return cpr;
+	}
+
+	/**
+	 * Set the cache used to hold decompressed blocks.
+	 *
+	 * @param cache the {@link BlockCache} to use.
+	 */
+	public void setCache(BlockCache cache) { mCache = cache; }
+
+	/**
+	 * Retrieve the cache used to hold decompressed blocks.
+	 *
+	 * @return the {@link BlockCache} in use.
+	 */
+	public BlockCache getCache() { return mCache; }
+
+	/**
+	 * Determine if the data for the variable is compressed.
+	 * Blocks which do not become smaller when compressed are still stored as VVRs.
+	 *
+	 * @return true if the data may be stored in CVVRs, otherwise false.
+	 */
+	public boolean isCompressed() { return mIndex.isCompressed(); }
+
+	/**
+	 * Retrieve the sparse record type of the variable.
+	 *
+	 * @return the sparse record type as defined in {@link Constant}.
+	 */
+	public int getSparseRecords() { return mVDR.mSRecords; }
+
+	/**
+	 * Determine if records which are not stored are returned as virtual records.
+	 *
+	 * @return true if the sparse record type is pad or previous, otherwise false.
+	 */
+	public boolean isSparse() {
+		return mVDR.mSRecords == Constant.SPARSE_RECORDS_PAD || mVDR.mSRecords == Constant.SPARSE_RECORDS_PREVIOUS;
+	}
+
+	/**
+	 * Retrieve the number of records in the variable, including records which are not stored.
+	 *
+	 * @return the maximum record number plus one.
+	 */
+	public long getRecordCount() { return (long) mVDR.mMaxRec + 1; }
+
+	/**
+	 * Retrieve the number of bytes in each record of the variable.
+	 *
+	 * @return the number of bytes in each record.
+	 */
+	public int getRecordSize() { return mIndex.getRecordSize(); }
+
+	/**
+	 * Retrieve the number of VVRs which contain data for the variable.
+	 *
+	 * @return the number of VVRs.
+	 */
+	public int getBlockCount() { return mIndex.getBlockCount(); }
+
+	/**
+	 * Retrieve the first record number stored in a VVR.
+	 *
+	 * @param block the index of the VVR.
+	 *
+	 * @return the first record number in the VVR.
+	 */
+	public int getFirstRecord(int block) { return mIndex.getFirstRecord(block); }
+
+	/**
+	 * Retrieve the last record number stored in a VVR.
+	 *
+	 * @param block the index of the VVR.
+	 *
+	 * @return the last record number in the VVR.
+	 */
+	public int getLastRecord(int block) { return mIndex.getLastRecord(block); }
+
+	/**
+	 * Retrieve the data for a VVR.
+	 *
+	 * @param block the index of the VVR.
+	 *
+	 * @return a read-only {@link ByteBuffer} view of the data.
+	 *
+	 * @throws IOException if the VVR is outside the file or the data can not be decompressed.
+	 */
+	public ByteBuffer getBuffer(int block) throws IOException {
+		if(mIndex.isCompressed(block)) return getCompressedBuffer(block);
+		
+		long offset = mIndex.getOffset(block);
+		long size = mFile.getRecordSize(offset) - 12;
+		long length = (long) (mIndex.getLastRecord(block) - mIndex.getFirstRecord(block) + 1) * mIndex.getRecordSize();
+		if(length > size) length = size;
+
+		return mFile.slice(mIndex.getDataOffset(block), length).asReadOnlyBuffer().order(mOrder);
+	}
+
+	/**
+	 * Retrieve the decompressed data for a CVVR.
+	 * The data is taken from the cache if present, otherwise it is decompressed into a direct buffer
+	 * which is added to the cache, so cached blocks are held off the heap.
+	 *
+	 * @param block the index of the CVVR.
+	 *
+	 * @return a read-only {@link ByteBuffer} of the data.
+	 *
+	 * @throws IOException if the CVVR is outside the file or the data can not be decompressed.
+	 */
+	ByteBuffer getCompressedBuffer(int block) throws IOException {
+		long offset = mIndex.getOffset(block);
+		ByteBuffer data = mCache.get(mCacheFile, offset);
+		if(data == null) {
+			long length = getBlockSize(block);
+			if(length > Integer.MAX_VALUE) throw new IOException("CVVR at offset " + offset + " is too large to decompress.");
+			ByteBuffer buffer = ByteBuffer.allocateDirect((int) length);
+			open(block).readFully(buffer);
+			buffer.flip();
+			data = mCache.put(mCacheFile, offset, buffer);
+		}
+
+		return data.order(mOrder);
+	}
+
+	/**
+	 * Retrieve the data for a block without adding it to the cache.
+	 * Used for a single pass over all data so the blocks kept for repeated reads are not removed from the cache.
+	 *
+	 * @param block the index of the VVR or CVVR.
+	 *
+	 * @return a read-only {@link ByteBuffer} of the data.
+	 *
+	 * @throws IOException if the block is outside the file or can not be decompressed.
+	 */
+	ByteBuffer readBuffer(int block) throws IOException {
+		if( ! mIndex.isCompressed(block)) return getBuffer(block);
+
+		ByteBuffer data = mCache.get(mCacheFile, mIndex.getOffset(block));
+		if(data == null) data = ByteBuffer.wrap(decompress(block)).asReadOnlyBuffer();
+
+		return data.order(mOrder);
+	}
+
+	/**
+	 * Decompress the data in a CVVR.
+	 *
+	 * @param block the index of the CVVR.
+	 *
+	 * @return the uncompressed records.
+	 *
+	 * @throws IOException if the CVVR is outside the file or the data can not be decompressed.
+	 */
+	byte[] decompress(int block) throws IOException {
+		long length = getBlockSize(block);
+		if(length > Integer.MAX_VALUE) throw new IOException("CVVR at offset " + mIndex.getOffset(block) + " is too large to decompress.");
+
+		byte[] data = new byte[(int) length];
+		decompress(block, data, 0);
+
+		return data;
+	}
+
+	/**
+	 * Decompress the data in a CVVR into part of an array.
+	 *
+	 * @param block the index of the CVVR.
+	 * @param data the array to place the uncompressed records in.
+	 * @param start the index in data for the first byte.
+	 *
+	 * @throws IOException if the CVVR is outside the file or the data can not be decompressed.
+	 */
+	void decompress(int block, byte[] data, int start) throws IOException {
+		open(block).readFully(data, start, (int) getBlockSize(block));
+	}
+
+	/**
+	 * Prepare the {@link Decompressor} of the current thread to read the data in a CVVR.
+	 *
+	 * @param block the index of the CVVR.
+	 *
+	 * @return the {@link Decompressor} reset to the compressed data.
+	 *
+	 * @throws IOException if the CVVR is outside the file or the compression type is not supported.
+	 */
+	private Decompressor open(int block) throws IOException {
+		long offset = mIndex.getOffset(block);
+		if(mFile.getRecordType(offset) != Constant.RECORD_CVVR) {
+			throw new IOException("Record at offset " + offset + " is not a CVVR.");
+		}
+		long cSize = mFile.slice(offset, CVVRecord.HEADER_SIZE).getLong(16);
+
+		return Decompressor.getThreadDecompressor(mCPR.mCType).reset(mFile.slice(offset + CVVRecord.HEADER_SIZE, cSize));
+	}
+
+	/**
+	 * Determine the number of bytes of record data in a block.
+	 *
+	 * @param block the index of the VVR or CVVR.
+	 *
+	 * @return the number of bytes for all records in the block.
+	 */
+	long getBlockSize(int block) {
+		return (long) (mIndex.getLastRecord(block) - mIndex.getFirstRecord(block) + 1) * mIndex.getRecordSize();
+	}
+
+	/**
+	 * Retrieve the data for all blocks in a single buffer.
+	 * The blocks are read concurrently using the common {@link ForkJoinPool}.
+	 *
+	 * @return a {@link ByteBuffer} of all stored records in record order.
+	 *
+	 * @throws IOException if a block is outside the file, can not be decompressed or the data is too large for one buffer.
+	 *
+	 * @see #getData(ForkJoinPool)
+	 */
+	public ByteBuffer getData() throws IOException {
+		return getData(ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Retrieve the data for all blocks in a single buffer.
+	 *
+	 * Each block is a separate task in the pool. A CVVR is decompressed directly into its place in the buffer,
+	 * so the time to read a compressed variable decreases with the number of threads in the pool.
+	 * Blocks already in the cache are copied from the cache. Blocks which are decompressed are not added
+	 * to the cache so a full read does not remove the blocks used for repeated reads.
+	 * Records which are not stored (sparse records) are not included in the buffer.
+	 *
+	 * @param pool the {@link ForkJoinPool} to run the tasks.
+	 *
+	 * @return a {@link ByteBuffer} of all stored records in record order.
+	 *
+	 * @throws IOException if a block is outside the file, can not be decompressed or the data is too large for one buffer.
+	 */
+	public ByteBuffer getData(ForkJoinPool pool) throws IOException {
+		int count = getBlockCount();
+		final int[] start = new int[count];
+		long total = 0;
+		for(int i = 0; i < count; i++) {
+			if(total > Integer.MAX_VALUE) break;
+			start[i] = (int) total;
+			total += getBlockSize(i);
+		}
+		if(total > Integer.MAX_VALUE) throw new IOException("Variable '" + mVDR.mName + "' is too large to read into one buffer.");
+
+		final byte[] data = new byte[(int) total];
+		ArrayList<Callable<Void>> tasks = new ArrayList<Callable<Void>>(count);
+		for(int i = 0; i < count; i++) {
+			final int block = i;
+			tasks.add(() -> { readBlock(block, data, start[block]); return null; });
+		}
+		
+		List<Future<Void>> results = pool.invokeAll(tasks);
+		try {
+			for(Future<Void> result : results) result.get();
+		} catch(ExecutionException e) {
+			throw getIOException(e);
+		} catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while reading variable '" + mVDR.mName + "'.");
+		}
+
+		return ByteBuffer.wrap(data).order(mOrder);
+	}
+
+	/**
+	 * Find the {@link IOException} which caused a task to fail.
+	 * A {@link ForkJoinPool} wraps a checked exception thrown by a {@link Callable} in {@link RuntimeException}s.
+	 *
+	 * @param e the exception thrown when getting the result of the task.
+	 *
+	 * @return the {@link IOException} thrown by the task or a new one with the cause of the failure.
+	 */
+	static IOException getIOException(ExecutionException e) {
+		for(Throwable cause = e.getCause(); cause != null; cause = cause.getCause()) {
+			if(cause instanceof IOException) return (IOException) cause;
+		}
+
+		return new IOException(e.getCause());
+	}
+
+	/**
+	 * Copy the data for a block into part of an array.
+	 *
+	 * @param block the index of the VVR or CVVR.
+	 * @param data the array to place the records in.
+	 * @param start the index in data for the first byte.
+	 *
+	 * @throws IOException if the block is outside the file or can not be decompressed.
+	 */
+	private void readBlock(int block, byte[] data, int start) throws IOException {
+		ByteBuffer buffer = null;
+		if( ! mIndex.isCompressed(block)) buffer = getBuffer(block);
+		else buffer = mCache.get(mCacheFile, mIndex.getOffset(block));
+		
+		if(buffer == null) decompress(block, data, start);
+		else buffer.get(data, start, (int) Math.min(buffer.remaining(), getBlockSize(block)));
+	}
+
+	/**
+	 * Retrieve the data for a single record.
+	 * The VVR holding the record is located with a binary search of the record index.
+	 * For a sparse variable a record which is not stored is returned as the pad record
+	 * or the previous stored record.
+	 *
+	 * @param record the record number.
+	 *
+	 * @return a read-only {@link ByteBuffer} view of the record or null if the record is not stored
+	 *         and is not a virtual record.
+	 *
+	 * @throws IOException if the record is outside the file.
+	 */
+	public ByteBuffer getRecord(long record) throws IOException {
+		ByteBuffer data = getStoredRecord(record);
+		if(data != null) return data;
+
+		return getVirtualRecord(record, mIndex.findPrevious(record));
+	}
+
+	/**
+	 * Retrieve the data for a record only if it is stored.
+	 *
+	 * @param record the record number.
+	 *
+	 * @return a read-only {@link ByteBuffer} view of the record or null if the record is not stored.
+	 *
+	 * @throws IOException if the record is outside the file.
+	 */
+	public ByteBuffer getStoredRecord(long record) throws IOException {
+		int block = mIndex.find(record);
+		if(block < 0) return null;
+		if(mIndex.isCompressed(block)) return slice(getBuffer(block), block, record);	// Slice of the decompressed block
+		
+		long offset = mIndex.getRecordOffset(record);
+
+		return mFile.slice(offset, mIndex.getRecordSize()).asReadOnlyBuffer().order(mOrder);
+	}
+
+	/**
+	 * Determine the content of a record which is not stored.
+	 *
+	 * @param record the record number.
+	 * @param previous the index of the block holding the nearest earlier record or -1 if there is none.
+	 *
+	 * @return a read-only {@link ByteBuffer} of the record or null if the record is not a virtual record.
+	 *
+	 * @throws IOException if the previous record is outside the file.
+	 */
+	private ByteBuffer getVirtualRecord(long record, int previous) throws IOException {
+		if(record < 0 || record > mVDR.mMaxRec) return null;
+
+		switch(mVDR.mSRecords) {
+		case Constant.SPARSE_RECORDS_PAD:
+			return getPadRecord();
+		case Constant.SPARSE_RECORDS_PREVIOUS:
+			if(previous < 0) return getPadRecord();
+			return getStoredRecord(mIndex.getLastRecord(previous));
+		}
+
+		return null;
+	}
+
+	/**
+	 * Retrieve a record filled with the pad value of the variable.
+	 * If the variable does not declare a pad value the default pad value for the data type is used.
+	 *
+	 * @return a read-only {@link ByteBuffer} of one record.
+	 */
+	public ByteBuffer getPadRecord() {
+		if(mPad == null) {
+			byte[] value = mVDR.mPadBytes;
+			if(value == null || value.length == 0) value = Constant.getDefaultPad(mVDR.mDataType, mOrder);
+			byte[] record = new byte[mIndex.getRecordSize()];
+			if(value.length > 0) {
+				for(int i = 0; i < record.length; i += value.length) {
+					System.arraycopy(value, 0, record, i, Math.min(value.length, record.length - i));
+				}
+			}
+			mPad = ByteBuffer.wrap(record);
+		}
+
+		return mPad.asReadOnlyBuffer().order(mOrder);
+	}
+
+	/**
+	 * Select a single record from the data of a block.
+	 *
+	 * @param data the data for the block.
+	 * @param block the index of the block.
+	 * @param record the record number.
+	 *
+	 * @return a read-only {@link ByteBuffer} view of the record.
+	 *
+	 * @throws IOException if the record is not contained in the data.
+	 */
+	private ByteBuffer slice(ByteBuffer data, int block, long record) throws IOException {
+		long start = (record - mIndex.getFirstRecord(block)) * mIndex.getRecordSize();
+		if(start + mIndex.getRecordSize() > data.limit()) throw new IOException("Record " + record + " is outside the block at offset " + mIndex.getOffset(block) + ".");
+		data = data.duplicate();
+		data.position((int) start);
+		data.limit((int) start + mIndex.getRecordSize());
+
+		return data.slice().order(mOrder);
+	}
+
+	/**
+	 * Retrieve a range of records in record order.
+	 * Records are read as the range is iterated. Each block is read once and stored records are views of the block.
+	 * Records which are not stored are returned as by {@link #getRecord(long)}, so only
+	 * stored records use memory.
+	 *
+	 * @param first the first record number.
+	 * @param last the last record number.
+	 *
+	 * @return an {@link Iterable} of read-only {@link ByteBuffer} records. A record which is not stored
+	 *         and is not a virtual record is null. An {@link IOException} while reading is thrown as an
+	 *         {@link UncheckedIOException}.
+	 */
+	public Iterable<ByteBuffer> getRecords(long first, long last) {
+		return () -> new RecordIterator(first, last);
+	}
+
+	/**
+	 * Retrieve all records as a stream.
+	 *
+	 * @return a {@link Stream} of read-only {@link ByteBuffer} records.
+	 *
+	 * @see #records(long, long)
+	 */
+	public Stream<ByteBuffer> records() {
+		return records(0, getRecordCount() - 1);
+	}
+
+	/**
+	 * Retrieve a range of records as a stream.
+	 *
+	 * The stream is sequential. A parallel stream splits the range along VVR boundaries, so each task reads
+	 * different blocks and a compressed block is decompressed by only one task.
+	 * Records are returned as by {@link #getRecords(long, long)}.
+	 *
+	 * @param first the first record number.
+	 * @param last the last record number.
+	 *
+	 * @return a {@link Stream} of read-only {@link ByteBuffer} records. A record which is not stored
+	 *         and is not a virtual record is null. An {@link IOException} while reading is thrown as an
+	 *         {@link UncheckedIOException}.
+	 */
+	public Stream<ByteBuffer> records(long first, long last) {
+		return StreamSupport.stream(new RecordSpliterator(first, last), false);
+	}
+
+	/**
+	 * Retrieve all values of a numeric variable as a stream.
+	 *
+	 * Values are in record order, with the values of each record in the order they are stored.
+	 * For a scalar variable there is one value for each record.
+	 * Values are converted as by {@link #getDoubleValues(int, double[], int)}.
+	 * Records which are not stored and are not virtual records are the pad value.
+	 * A parallel stream splits along VVR boundaries.
+	 *
+	 * @return a {@link DoubleStream} of the values. An {@link IOException} while reading is thrown as an
+	 *         {@link UncheckedIOException}.
+	 *
+	 * @throws UnsupportedOperationException if the data type is not numeric.
+	 */
+	public DoubleStream doubleValues() {
+		if(mVDR.mDataType == Constant.CDF_CHAR) throw new UnsupportedOperationException("Variable '" + mVDR.mName + "' is not numeric.");
+
+		return StreamSupport.doubleStream(new DoubleSpliterator(0, getRecordCount() - 1), false);
+	}
+
+	/**
+	 * Retrieve all values of an integer variable (including CDF_TIME_TT2000) as a stream.
+	 *
+	 * Values are in record order, with the values of each record in the order they are stored.
+	 * For a scalar variable there is one value for each record.
+	 * Values are converted as by {@link #getLongValues(int, long[], int)}.
+	 * Records which are not stored and are not virtual records are the pad value.
+	 * A parallel stream splits along VVR boundaries.
+	 *
+	 * @return a {@link LongStream} of the values. An {@link IOException} while reading is thrown as an
+	 *         {@link UncheckedIOException}.
+	 *
+	 * @throws UnsupportedOperationException if the data type is not an integer type.
+	 */
+	public LongStream longValues() {
+		switch(mVDR.mDataType) {
+		case Constant.CDF_INT1:
+		case Constant.CDF_BYTE:
+		case Constant.CDF_UINT1:
+		case Constant.CDF_INT2:
+		case Constant.CDF_UINT2:
+		case Constant.CDF_INT4:
+		case Constant.CDF_UINT4:
+		case Constant.CDF_INT8:
+		case Constant.CDF_TIME_TT2000:
+			break;
+		default:
+			throw new UnsupportedOperationException("Variable '" + mVDR.mName + "' is not an integer type.");
+		}
+
+		return StreamSupport.longStream(new LongSpliterator(0, getRecordCount() - 1), false);
+	}
+
+	/**
+	 * Retrieve the data for all VVRs in record order.
+	 *
+	 * @return a list of read-only {@link ByteBuffer} views of the data.
+	 *
+	 * @throws IOException if a VVR is outside the file.
+	 */
+	public ArrayList<ByteBuffer> getBuffers() throws IOException {
+		ArrayList<ByteBuffer> list = new ArrayList<ByteBuffer>(getBlockCount());
+		for(int i = 0; i < getBlockCount(); i++) list.add(getBuffer(i));
+
+		return list;
+	}
+
+	/**
+	 * Retrieve the data for all VVRs as views of double values.
+	 *
+	 * @return a list of {@link DoubleBuffer} or null if the data type is not an 8-byte floating point type.
+	 *
+	 * @throws IOException if a VVR is outside the file.
+	 */
+	public ArrayList<DoubleBuffer> getDoubleBuffers() throws IOException {
+		switch(mVDR.mDataType) {
+		case Constant.CDF_REAL8:
+		case Constant.CDF_DOUBLE:
+		case Constant.CDF_EPOCH:
+		case Constant.CDF_EPOCH16:
+			break;
+		default:
+			return null;
+		}
+		ArrayList<DoubleBuffer> list = new ArrayList<DoubleBuffer>(getBlockCount());
+		for(int i = 0; i < getBlockCount(); i++) list.add(getBuffer(i).asDoubleBuffer());
+
+		return list;
+	}
+
+	/**
+	 * Retrieve the data for all VVRs as views of float values.
+	 *
+	 * @return a list of {@link FloatBuffer} or null if the data type is not an 4-byte floating point type.
+	 *
+	 * @throws IOException if a VVR is outside the file.
+	 */
+	public ArrayList<FloatBuffer> getFloatBuffers() throws IOException {
+		switch(mVDR.mDataType) {
+		case Constant.CDF_REAL4:
+		case Constant.CDF_FLOAT:
+			break;
+		default:
+			return null;
+		}
+		ArrayList<FloatBuffer> list = new ArrayList<FloatBuffer>(getBlockCount());
+		for(int i = 0; i < getBlockCount(); i++) list.add(getBuffer(i).asFloatBuffer());
+
+		return list;
+	}
+
+	/**
+	 * Retrieve the data for all VVRs as views of long values.
+	 *
+	 * @return a list of {@link LongBuffer} or null if the data type is not an 8-byte integer type.
+	 *
+	 * @throws IOException if a VVR is outside the file.
+	 */
+	public ArrayList<LongBuffer> getLongBuffers() throws IOException {
+		switch(mVDR.mDataType) {
+		case Constant.CDF_INT8:
+		case Constant.CDF_TIME_TT2000:
+			break;
+		default:
+			return null;
+		}
+		ArrayList<LongBuffer> list = new ArrayList<LongBuffer>(getBlockCount());
+		for(int i = 0; i < getBlockCount(); i++) list.add(getBuffer(i).asLongBuffer());
+
+		return list;
+	}
+
+	/**
+	 * Retrieve the data for all VVRs as views of int values.
+	 * Unsigned values must be masked with 0xFFFFFFFFL by the caller.
+	 *
+	 * @return a list of {@link IntBuffer} or null if the data type is not an 4-byte integer type.
+	 *
+	 * @throws IOException if a VVR is outside the file.
+	 */
+	public ArrayList<IntBuffer> getIntBuffers() throws IOException {
+		switch(mVDR.mDataType) {
+		case Constant.CDF_INT4:
+		case Constant.CDF_UINT4:
+			break;
+		default:
+			return null;
+		}
+		ArrayList<IntBuffer> list = new ArrayList<IntBuffer>(getBlockCount());
+		for(int i = 0; i < getBlockCount(); i++) list.add(getBuffer(i).asIntBuffer());
+
+		return list;
+	}
+
+	/**
+	 * Retrieve the data for all VVRs as views of short values.
+	 * Unsigned values must be masked with 0xFFFF by the caller.
+	 *
+	 * @return a list of {@link ShortBuffer} or null if the data type is not an 2-byte integer type.
+	 *
+	 * @throws IOException if a VVR is outside the file.
+	 */
+	public ArrayList<ShortBuffer> getShortBuffers() throws IOException {
+		switch(mVDR.mDataType) {
+		case Constant.CDF_INT2:
+		case Constant.CDF_UINT2:
+			break;
+		default:
+			return null;
+		}
+		ArrayList<ShortBuffer> list = new ArrayList<ShortBuffer>(getBlockCount());
+		for(int i = 0; i < getBlockCount(); i++) list.add(getBuffer(i).asShortBuffer());
+
+		return list;
+	}
+
+	/**
+	 * Determine the number of values in a VVR.
+	 * 
+	 * @param block the index of the VVR.
+	 * 
+	 * @return the number of values of the data type of the variable in the VVR.
+	 */
+	public int getValueCount(int block) {
+		int size = Constant.getDataTypeSize(mVDR.mDataType);
+		if(size == 0) return 0;
+		
+		return (int) ((long) (getLastRecord(block) - getFirstRecord(block) + 1) * getRecordSize() / size);
+	}
+	
+	/**
+	 * Decode all values in a VVR as numbers.
+	 * Any numeric data type is converted. For CDF_EPOCH16 only the seconds portion of each value is returned.
+	 * 
+	 * @param block the index of the VVR.
+	 * @param values the array to place values in. Must have room for {@link #getValueCount(int)} values after start.
+	 * @param start the index in values for the first value.
+	 * 
+	 * @return the number of values placed in the array.
+	 * 
+	 * @throws IOException if the VVR is outside the file.
+	 */
+	public int getDoubleValues(int block, double[] values, int start) throws IOException {
+		return mDecoder.toDoubleArray(getBuffer(block), mVDR.mDataType, getValueCount(block), values, start);
+	}
+	
+	/**
+	 * Decode all values in a VVR as integers without loss of precision.
+	 * 
+	 * @param block the index of the VVR.
+	 * @param values the array to place values in. Must have room for {@link #getValueCount(int)} values after start.
+	 * @param start the index in values for the first value.
+	 * 
+	 * @return the number of values placed in the array or 0 if the data type is not an integer type.
+	 * 
+	 * @throws IOException if the VVR is outside the file.
+	 */
+	public int getLongValues(int block, long[] values, int start) throws IOException {
+		return mDecoder.toLongArray(getBuffer(block), mVDR.mDataType, getValueCount(block), values, start);
+	}
+	
+	/**
+	 * Retrieve the size of each dimension of the variable.
+	 *
+	 * @return the dimension sizes. Empty for a scalar variable.
+	 */
+	public int[] getDimSizes() {
+		int[] dims = mVDR.mZDimSize;
+		if(mVDR.mType == Constant.RECORD_RVDR && mCDF.getGDR() != null) dims = mCDF.getGDR().rDimSizes;
+		if(dims == null) return new int[0];
+
+		return dims.clone();
+	}
+
+	/**
+	 * Determine if each dimension varies. Only dimensions which vary are stored,
+	 * every index of a dimension which does not vary has the same value.
+	 *
+	 * @return true for each dimension which varies.
+	 */
+	public boolean[] getDimVarys() {
+		int[] dims = getDimSizes();
+		boolean[] varys = new boolean[dims.length];
+		for(int i = 0; i < dims.length; i++) varys[i] = (mVDR.mDimVarys != null && i < mVDR.mDimVarys.length && mVDR.mDimVarys[i] != 0);
+
+		return varys;
+	}
+
+	/**
+	 * Determine the order of values within a record.
+	 *
+	 * @return true if the last dimension varies fastest (row major), false if the first dimension varies fastest (column major).
+	 */
+	public boolean isRowMajor() {
+		return mCDF.getCDR() == null || (mCDF.getCDR().getFlags() & 0x01) != 0;
+	}
+
+	/**
+	 * Retrieve the byte order of the data values.
+	 *
+	 * @return the byte order of the encoding of the CDF.
+	 */
+	public ByteOrder getOrder() { return mOrder; }
+
+	/**
+	 * Copy part of each record in a range of records (a hyperslab) into a buffer.
+	 *
+	 * For each dimension a start index, count and stride select the values. Values are placed in the buffer
+	 * record by record in the order they are stored (see {@link #isRowMajor()}) and in the byte order of the CDF.
+	 * Only the selected values are copied. Values which are adjacent in the record are copied
+	 * together and when whole records are selected all records in a block are copied at once.
+	 * Records which are not stored are taken from {@link #getRecord(long)}, or the pad record if there is none.
+	 *
+	 * @param first the first record number.
+	 * @param last the last record number.
+	 * @param start the first index of each dimension.
+	 * @param count the number of indices of each dimension.
+	 * @param stride the step between indices of each dimension.
+	 * @param out the buffer to place the values in. Values are placed at the position of the buffer, which is advanced.
+	 *
+	 * @return the number of values copied.
+	 *
+	 * @throws IOException if a block is outside the file or can not be decompressed.
+	 * @throws IllegalArgumentException if the selection is outside the dimensions or the buffer is too small.
+	 */
+	public long getHyperslab(long first, long last, int[] start, int[] count, int[] stride, ByteBuffer out) throws IOException {
+		int[] dims = getDimSizes();
+		boolean[] varys = getDimVarys();
+		int n = dims.length;
+		if(start.length != n || count.length != n || stride.length != n) {
+			throw new IllegalArgumentException("Variable '" + mVDR.mName + "' has " + n + " dimensions.");
+		}
+		long values = (last >= first) ? last - first + 1 : 0;
+		for(int d = 0; d < n; d++) {
+			if(start[d] < 0 || count[d] < 1 || stride[d] < 1 || start[d] + (long) (count[d] - 1) * stride[d] >= dims[d]) {
+				throw new IllegalArgumentException("Selection of dimension " + d + " is outside the size " + dims[d] + ".");
+			}
+			values *= count[d];
+		}
+		int valueSize = Constant.getDataTypeSize(mVDR.mDataType) * mVDR.mNumElems;
+		if(values * valueSize > out.remaining()) {
+			throw new IllegalArgumentException("Buffer has room for " + out.remaining() + " of " + (values * valueSize) + " bytes.");
+		}
+		if(values == 0) return 0;
+
+		// Dimensions from slowest to fastest varying and the bytes between indices of each
+		int[] order = new int[n];
+		int[] step = new int[n];
+		int size = valueSize;
+		for(int i = n - 1; i >= 0; i--) {
+			int d = isRowMajor() ? i : n - 1 - i;
+			order[i] = d;
+			step[d] = varys[d] ? size : 0;
+			if(varys[d]) size *= dims[d];
+		}
+
+		// Merge the fastest dimensions which are contiguous into a single run
+		int run = valueSize;
+		int loops = n;	// Dimensions order[0 .. loops - 1] are stepped through
+		while(loops > 0) {
+			int d = order[loops - 1];
+			if(count[d] == 1) { loops--; continue; }	// Fixed offset
+			if(step[d] != run || stride[d] != 1) break;
+			run *= count[d];
+			loops--;
+			if(count[d] != dims[d]) break;
+		}
+		int base = 0;
+		for(int d = 0; d < n; d++) base += start[d] * step[d];
+
+		Hyperslab slab = new Hyperslab(order, loops, start, count, stride, step, base, run);
+		int recordSize = mIndex.getRecordSize();
+		boolean whole = (loops == 0 && run == recordSize);
+		long record = first;
+		while(record <= last) {
+			int block = mIndex.find(record);
+			if(block < 0) {	// Not stored
+				ByteBuffer data = getRecord(record);
+				if(data == null) data = getPadRecord();
+				slab.copy(data, 0, out);
+				record++;
+				continue;
+			}
+			ByteBuffer data = getBuffer(block);
+			long end = Math.min(last, mIndex.getLastRecord(block));
+			long position = (record - mIndex.getFirstRecord(block)) * recordSize;
+			long length = (end - record + 1) * recordSize;
+			if(position + length > data.limit()) throw new IOException("Record " + end + " is outside the block at offset " + mIndex.getOffset(block) + ".");
+			int offset = (int) position;
+			if(whole) {
+				Hyperslab.copy(data, offset, (int) length, out);
+			} else {
+				for(long r = record; r <= end; r++, offset += recordSize) slab.copy(data, offset, out);
+			}
+			record = end + 1;
+		}
+
+		return values;
+	}
+
+	/**
+	 * Convert all time values in a VVR to Unix time.
+	 * 
+	 * @param block the index of the VVR.
+	 * @param values the array to place times in. Must have room for {@link #getValueCount(int)} values after start.
+	 * @param start the index in values for the first time.
+	 * 
+	 * @return the number of times placed in the array or 0 if the data type is not a time type.
+	 * 
+	 * @throws IOException if the VVR is outside the file.
+	 * 
+	 * @see Decoder#toUnixNanos(ByteBuffer, int, int, long[], int)
+	 */
+	public int getUnixNanos(int block, long[] values, int start) throws IOException {
+		return mDecoder.toUnixNanos(getBuffer(block), mVDR.mDataType, getValueCount(block), values, start);
+	}
+	
+	/**
+	 * Convert all time values in a VVR to ISO-8601 text.
+	 * 
+	 * @param block the index of the VVR.
+	 * @param text the array to place the text in. Must have room for {@link #getValueCount(int)} times
+	 *        {@link TimeConverter#ISO_LENGTH} characters after start.
+	 * @param start the index in text for the first character.
+	 * 
+	 * @return the number of times placed in the array or 0 if the data type is not a time type.
+	 * 
+	 * @throws IOException if the VVR is outside the file.
+	 * 
+	 * @see Decoder#toISOText(ByteBuffer, int, int, char[], int)
+	 */
+	public int getISOText(int block, char[] text, int start) throws IOException {
+		return mDecoder.toISOText(getBuffer(block), mVDR.mDataType, getValueCount(block), text, start);
+	}
+	
+	/**
+	 * Retrieve the {@link VDRecord} for the variable.
+	 *
+	 * @return the {@link VDRecord} for the variable.
+	 */
+	public VDRecord getVDR() { return mVDR; }
+
+	/**
+	 * Retrieve the {@link RecordIndex} for the variable.
+	 *
+	 * @return the {@link RecordIndex} for the variable.
+	 */
+	public RecordIndex getRecordIndex() { return mIndex; }
+
+	/**
+	 * The selection of values within a record for a hyperslab.
+	 * The indices of the stepped dimensions are kept between records so copying does not create any objects.
+	 */
+	static class Hyperslab {
+		int[] mOrder;	// Dimensions from slowest to fastest varying
+		int mLoops;	// Number of dimensions stepped through
+		int[] mCount;
+		int[] mStep;	// Bytes between selected indices
+		int mBase;	// Offset of the first selected value
+		int mRun;	// Bytes copied at once
+		int[] mIndex;
+
+		Hyperslab(int[] order, int loops, int[] start, int[] count, int[] stride, int[] step, int base, int run) {
+			mOrder = order;
+			mLoops = loops;
+			mCount = count;
+			mStep = new int[step.length];
+			for(int d = 0; d < step.length; d++) mStep[d] = step[d] * stride[d];
+			mBase = base;
+			mRun = run;
+			mIndex = new int[loops];
+		}
+
+		/**
+		 * Copy the selected values of a record.
+		 *
+		 * @param data the buffer containing the record.
+		 * @param offset the position of the record in data.
+		 * @param out the buffer to place the values in.
+		 */
+		void copy(ByteBuffer data, int offset, ByteBuffer out) {
+			Arrays.fill(mIndex, 0);
+			int position = offset + mBase;
+			while(true) {
+				copy(data, position, mRun, out);
+
+				// Next index, fastest dimension first
+				int i = mLoops - 1;
+				for(; i >= 0; i--) {
+					int d = mOrder[i];
+					position += mStep[d];
+					if(++mIndex[i] < mCount[d]) break;
+					position -= mStep[d] * mCount[d];
+					mIndex[i] = 0;
+				}
+				if(i < 0) return;
+			}
+		}
+
+		/**
+		 * Copy bytes from one buffer to another without changing the position of the source.
+		 *
+		 * @param data the source buffer.
+		 * @param position the position of the first byte in data.
+		 * @param length the number of bytes to copy.
+		 * @param out the buffer to place the bytes in.
+		 */
+		static void copy(ByteBuffer data, int position, int length, ByteBuffer out) {
+			int limit = data.limit();
+			int mark = data.position();
+			data.limit(position + length);
+			data.position(position);
+			out.put(data);
+			data.limit(limit);
+			data.position(mark);
+		}
+	}
+
+	/**
+	 * An {@link Iterator} over a range of records which steps through the blocks in order.
+	 */
+	class RecordIterator implements Iterator<ByteBuffer> {
+		long mNext;
+		long mLast;
+		int mBlock;	// Last block starting at or before the next record
+		ByteBuffer mData = null;	// Data for mDataBlock
+		int mDataBlock = -1;
+
+		RecordIterator(long first, long last) {
+			mNext = first;
+			mLast = last;
+			mBlock = mIndex.findPrevious(first);
+		}
+
+		public boolean hasNext() { return mNext <= mLast; }
+
+		public ByteBuffer next() {
+			if( ! hasNext()) throw new NoSuchElementException();
+			long record = mNext++;
+			while(mBlock + 1 < mIndex.getBlockCount() && mIndex.getFirstRecord(mBlock + 1) <= record) mBlock++;
+
+			try {
+				if(mBlock >= 0 && record <= mIndex.getLastRecord(mBlock)) {
+					if(mBlock != mDataBlock) { mData = getBuffer(mBlock); mDataBlock = mBlock; }
+					return slice(mData, mBlock, record);
+				}
+				return getVirtualRecord(record, mBlock);
+			} catch(IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
+	}
+
+	/**
+	 * Base of the {@link Spliterator} classes over a range of records.
+	 *
+	 * Records are read in segments, a run of stored records within one block or a single record which is not stored.
+	 * A range is split at the first record of a block so each part reads different blocks.
+	 * A range within one uncompressed block may also be split in the middle since a view of the mapped file costs nothing.
+	 */
+	abstract class BlockSpliterator {
+		/** Smallest range split within a block. */	static final int MIN_SPLIT = 1024;
+
+		long mNext;	// First record not yet read
+		long mLast;
+		int mBlock;	// Last block starting at or before the next record
+		int mSegmentRecords = 0;	// Records in the current segment
+
+		BlockSpliterator(long first, long last) {
+			mNext = first;
+			mLast = last;
+			mBlock = mIndex.findPrevious(first);
+		}
+
+		/**
+		 * Find the record to split the remaining range at.
+		 *
+		 * @return the first record of the second part or -1 if the range can not be split.
+		 */
+		long split() {
+			if(mLast <= mNext) return -1;
+
+			long middle = mNext + (mLast - mNext + 1) / 2;
+			int block = mIndex.findPrevious(middle);
+			if(block >= 0 && mIndex.getFirstRecord(block) > mNext) return mIndex.getFirstRecord(block);
+			if(block + 1 < mIndex.getBlockCount() && mIndex.getFirstRecord(block + 1) <= mLast) return mIndex.getFirstRecord(block + 1);
+			if(mLast - mNext < MIN_SPLIT) return -1;
+			if(block < 0 || ! mIndex.isCompressed(block) || mIndex.getLastRecord(block) < mNext) return middle;
+
+			return -1;
+		}
+
+		/**
+		 * Move the start of the remaining range.
+		 *
+		 * @param record the new first record.
+		 */
+		void skipTo(long record) {
+			mNext = record;
+			mBlock = mIndex.findPrevious(record);
+		}
+
+		/**
+		 * Read the data for the next records and advance past them.
+		 *
+		 * @param maxRecords the maximum number of records to read.
+		 *
+		 * @return a read-only {@link ByteBuffer} with one or more whole records. The number of records
+		 *         is placed in mSegmentRecords. Null if the record is not stored and is not a virtual record.
+		 *
+		 * @throws IOException if the block is outside the file or can not be decompressed.
+		 */
+		ByteBuffer nextSegment(int maxRecords) throws IOException {
+			long record = mNext;
+			while(mBlock + 1 < mIndex.getBlockCount() && mIndex.getFirstRecord(mBlock + 1) <= record) mBlock++;
+
+			if(mBlock >= 0 && record <= mIndex.getLastRecord(mBlock)) {
+				long end = Math.min(Math.min(mLast, mIndex.getLastRecord(mBlock)), record + Math.max(maxRecords, 1) - 1);
+				int size = mIndex.getRecordSize();
+				long start = (record - mIndex.getFirstRecord(mBlock)) * size;
+				long limit = (end - mIndex.getFirstRecord(mBlock) + 1) * size;
+				ByteBuffer data = getBuffer(mBlock);
+				if(limit > data.limit()) throw new IOException("Record " + end + " is outside the block at offset " + mIndex.getOffset(mBlock) + ".");
+				data.limit((int) limit);
+				data.position((int) start);
+				mNext = end + 1;
+				mSegmentRecords = (int) (end - record + 1);
+				return data.slice().order(mOrder);
+			}
+			mNext++;
+			mSegmentRecords = 1;
+
+			return getVirtualRecord(record, mBlock);
+		}
+	}
+
+	/**
+	 * A {@link Spliterator} over a range of records.
+	 */
+	class RecordSpliterator extends BlockSpliterator implements Spliterator<ByteBuffer> {
+		ByteBuffer mSegment = null;	// Records read and not yet returned
+
+		RecordSpliterator(long first, long last) {
+			super(first, last);
+		}
+
+		public boolean tryAdvance(Consumer<? super ByteBuffer> action) {
+			if(mSegment == null || ! mSegment.hasRemaining()) {
+				if(mNext > mLast) return false;
+				try {
+					mSegment = nextSegment(Integer.MAX_VALUE);
+				} catch(IOException e) {
+					throw new UncheckedIOException(e);
+				}
+				if(mSegment == null) { action.accept(null); return true; }
+			}
+			ByteBuffer record = mSegment.slice().order(mOrder);
+			record.limit(mIndex.getRecordSize());
+			mSegment.position(mSegment.position() + mIndex.getRecordSize());
+			action.accept(record);
+
+			return true;
+		}
+
+		public Spliterator<ByteBuffer> trySplit() {
+			if(mSegment != null && mSegment.hasRemaining()) return null;
+			long record = split();
+			if(record < 0) return null;
+
+			RecordSpliterator prefix = new RecordSpliterator(mNext, record - 1);
+			skipTo(record);
+
+			return prefix;
+		}
+
+		public long estimateSize() {
+			long size = mLast - mNext + 1;
+			if(mSegment != null) size += mSegment.remaining() / mIndex.getRecordSize();
+
+			return Math.max(size, 0);
+		}
+
+		public int characteristics() { return ORDERED | SIZED | SUBSIZED | IMMUTABLE; }
+	}
+
+	/**
+	 * Base of the {@link Spliterator} classes over the values of a range of records.
+	 * Each segment is decoded into an array which is reused, so no objects are created for each value.
+	 */
+	abstract class ValueSpliterator extends BlockSpliterator {
+		/** Number of values decoded at once. */	static final int CHUNK_SIZE = 8192;
+
+		int mValues;	// Values in each record
+		int mPosition = 0;	// Next value in the decoded segment
+		int mCount = 0;	// Values in the decoded segment
+
+		ValueSpliterator(long first, long last) {
+			super(first, last);
+			int size = Constant.getDataTypeSize(mVDR.mDataType);
+			mValues = (size == 0) ? 0 : mIndex.getRecordSize() / size;
+		}
+
+		/**
+		 * Read and decode the next segment.
+		 *
+		 * @return false if there are no more records.
+		 */
+		boolean fill() {
+			if(mNext > mLast) return false;
+			try {
+				ByteBuffer data = nextSegment(CHUNK_SIZE / Math.max(mValues, 1));
+				if(data == null) data = getPadRecord();
+				mPosition = 0;
+				mCount = decode(data, mSegmentRecords * mValues);
+			} catch(IOException e) {
+				throw new UncheckedIOException(e);
+			}
+
+			return true;
+		}
+
+		/**
+		 * Decode the values of a segment into the array.
+		 *
+		 * @param data the records of the segment.
+		 * @param count the number of values.
+		 *
+		 * @return the number of values decoded.
+		 */
+		abstract int decode(ByteBuffer data, int count);
+
+		/**
+		 * Determine if the remaining range can be split.
+		 *
+		 * @return the first record of the second part or -1 if the range can not be split.
+		 */
+		long trySplitAt() {
+			if(mPosition < mCount) return -1;
+			long record = split();
+			if(record >= 0) skipTo(record);
+
+			return record;
+		}
+
+		public long estimateSize() { return Math.max(mLast - mNext + 1, 0) * mValues + (mCount - mPosition); }
+
+		public int characteristics() { return Spliterator.ORDERED | Spliterator.SIZED | Spliterator.SUBSIZED | Spliterator.IMMUTABLE | Spliterator.NONNULL; }
+	}
+
+	/**
+	 * A {@link Spliterator} over the values of a range of records as numbers.
+	 */
+	class DoubleSpliterator extends ValueSpliterator implements Spliterator.OfDouble {
+		double[] mData;
+
+		DoubleSpliterator(long first, long last) {
+			super(first, last);
+			mData = new double[Math.max(CHUNK_SIZE, mValues)];
+		}
+
+		int decode(ByteBuffer data, int count) { return mDecoder.toDoubleArray(data, mVDR.mDataType, count, mData, 0); }
+
+		public boolean tryAdvance(DoubleConsumer action) {
+			while(mPosition >= mCount) if( ! fill()) return false;
+			action.accept(mData[mPosition++]);
+
+			return true;
+		}
+
+		public void forEachRemaining(DoubleConsumer action) {
+			do {
+				for(; mPosition < mCount; mPosition++) action.accept(mData[mPosition]);
+			} while(fill());
+		}
+
+		public Spliterator.OfDouble trySplit() {
+			long first = mNext;
+			long record = trySplitAt();
+			if(record < 0) return null;
+
+			return new DoubleSpliterator(first, record - 1);
+		}
+	}
+
+	/**
+	 * A {@link Spliterator} over the values of a range of records as integers.
+	 */
+	class LongSpliterator extends ValueSpliterator implements Spliterator.OfLong {
+		long[] mData;
+
+		LongSpliterator(long first, long last) {
+			super(first, last);
+			mData = new long[Math.max(CHUNK_SIZE, mValues)];
+		}
+
+		int decode(ByteBuffer data, int count) { return mDecoder.toLongArray(data, mVDR.mDataType, count, mData, 0); }
+
+		public boolean tryAdvance(LongConsumer action) {
+			while(mPosition >= mCount) if( ! fill()) return false;
+			action.accept(mData[mPosition++]);
+
+			return true;
+		}
+
+		public void forEachRemaining(LongConsumer action) {
+			do {
+				for(; mPosition < mCount; mPosition++) action.accept(mData[mPosition]);
+			} while(fill());
+		}
+
+		public Spliterator.OfLong trySplit() {
+			long first = mNext;
+			long record = trySplitAt();
+			if(record < 0) return null;
+
+			return new LongSpliterator(first, record - 1);
+		}
+	}
+}
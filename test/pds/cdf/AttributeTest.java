@@ -0,0 +1,78 @@
+package pds.cdf;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+/**
+ * Tests for the lazy decoding of attribute values.
+ *
+ * @author tking
+ *
+ */
+public class AttributeTest {
+
+	/**
+	 * Create an entry holding double values in big-endian order.
+	 *
+	 * @param values the values.
+	 *
+	 * @return the {@link AEDRecord}.
+	 */
+	static AEDRecord entry(double... values) {
+		AEDRecord aedr = new AEDRecord(new Record(0));
+		aedr.mDataType = Constant.CDF_DOUBLE;
+		aedr.mNumElems = values.length;
+		ByteBuffer buffer = ByteBuffer.allocate(8 * values.length);
+		for(double v : values) buffer.putDouble(v);
+		aedr.mValue = buffer.array();
+
+		return aedr;
+	}
+
+	@Test
+	public void testDoubleValuesAfterStrings() {
+		Attribute attribute = new Attribute();
+		attribute.addEntry(entry(1000.0));
+
+		assertEquals(1, attribute.getValues().size());
+		attribute.getValueString();
+		assertArrayEquals(new double[] { 1000.0 }, attribute.getDoubleValues(), 0.0);
+	}
+
+	@Test
+	public void testStringsAfterDoubleValues() {
+		Attribute attribute = new Attribute();
+		attribute.addEntry(entry(-1.0, 2.5));
+
+		assertArrayEquals(new double[] { -1.0, 2.5 }, attribute.getDoubleValues(), 0.0);
+		assertEquals(2, attribute.getValues().size());
+		assertEquals(2, attribute.getValues().size());	// Entries are decoded only once
+	}
+
+	@Test
+	public void testEntryAddedAfterDecoding() {
+		Attribute attribute = new Attribute();
+		attribute.addEntry(entry(1.0));
+		assertEquals(1, attribute.getValues().size());
+
+		attribute.addEntry(entry(2.0));
+		assertEquals(2, attribute.getValues().size());
+		assertArrayEquals(new double[] { 1.0, 2.0 }, attribute.getDoubleValues(), 0.0);
+	}
+
+	@Test
+	public void testSetValues() {
+		Attribute attribute = new Attribute();
+		attribute.addEntry(entry(1.0));
+		attribute.setValues(new ArrayList<String>(Arrays.asList("a", "b")));
+
+		assertEquals(Arrays.asList("a", "b"), attribute.getValues());
+		assertEquals(0, attribute.getDoubleValues().length);
+	}
+}
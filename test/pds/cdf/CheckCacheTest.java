@@ -0,0 +1,141 @@
+package pds.cdf;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests for the persistent cache of check results.
+ *
+ * @author tking
+ *
+ */
+public class CheckCacheTest {
+	@Rule
+	public TemporaryFolder mFolder = new TemporaryFolder();
+
+	/**
+	 * Create a file with the given content.
+	 *
+	 * @param name the name of the file.
+	 * @param content the content.
+	 *
+	 * @return the {@link File}.
+	 *
+	 * @throws IOException if the file can not be written.
+	 */
+	File write(String name, String content) throws IOException {
+		File file = new File(mFolder.getRoot(), name);
+		Files.write(file.toPath(), content.getBytes("UTF-8"));
+		return file;
+	}
+
+	/**
+	 * Create a list of messages.
+	 *
+	 * @param text the text of each message.
+	 *
+	 * @return the messages.
+	 */
+	static ArrayList<CheckMessage> messages(String... text) {
+		ArrayList<CheckMessage> messages = new ArrayList<CheckMessage>();
+		for(String t : text) messages.add(new CheckMessage("rule", CheckMessage.WARNING, "entity", 12, t));
+		return messages;
+	}
+
+	/**
+	 * Store the results of checking a file as it is now.
+	 *
+	 * @param cache the {@link CheckCache}.
+	 * @param file the file.
+	 * @param mode the options used to check the file.
+	 * @param messages the messages.
+	 *
+	 * @throws IOException if the file can not be read.
+	 */
+	static void put(CheckCache cache, File file, String mode, ArrayList<CheckMessage> messages) throws IOException {
+		cache.put(file, mode, file.length(), file.lastModified(), null, messages);
+	}
+
+	@Test
+	public void testModes() throws IOException {
+		File file = write("a.cdf", "content");
+		CheckCache cache = new CheckCache(new File(mFolder.getRoot(), "cache").getPath(), "1");
+		put(cache, file, "metadata", messages("one"));
+		assertNull(cache.get(file, "data"));
+
+		put(cache, file, "data", messages("one", "two"));
+		assertEquals(1, cache.get(file, "metadata").size());	// Results of both modes are kept
+		assertEquals(2, cache.get(file, "data").size());
+		assertEquals(2, cache.size());
+	}
+
+	@Test
+	public void testSaveAndLoad() throws IOException {
+		File file = write("tab\tname.cdf", "content");
+		String pathname = new File(mFolder.getRoot(), "cache").getPath();
+		CheckCache cache = new CheckCache(pathname, "1");
+		put(cache, file, "data", messages("line\none\ttab \\ back"));
+		put(cache, file, "metadata", messages());
+		cache.save();
+
+		cache = new CheckCache(pathname, "1");
+		cache.load();
+		assertEquals(2, cache.size());
+		ArrayList<CheckMessage> messages = cache.get(file, "data");
+		assertEquals(1, messages.size());
+		CheckMessage message = messages.get(0);
+		assertEquals("rule", message.getRule());
+		assertEquals(CheckMessage.WARNING, message.getSeverity());
+		assertEquals("entity", message.getEntity());
+		assertEquals(12, message.getOffset());
+		assertEquals("line\none\ttab \\ back", message.getText());
+		assertEquals(0, cache.get(file, "metadata").size());
+
+		cache = new CheckCache(pathname, "2");	// Rules have changed
+		cache.load();
+		assertEquals(0, cache.size());
+	}
+
+	@Test
+	public void testChangedFile() throws IOException {
+		File file = write("a.cdf", "content");
+		CheckCache cache = new CheckCache(new File(mFolder.getRoot(), "cache").getPath(), "1");
+		put(cache, file, "data", messages("one"));
+
+		file.setLastModified(file.lastModified() - 10000);	// Touched, same content
+		assertNotNull(cache.get(file, "data"));
+
+		write("a.cdf", "CONTENT");	// Same size, different content
+		file.setLastModified(file.lastModified() - 20000);
+		assertNull(cache.get(file, "data"));
+
+		write("a.cdf", "longer content");
+		assertNull(cache.get(file, "data"));
+	}
+
+	@Test
+	public void testHash() throws IOException {
+		File file = write("a.cdf", "content");
+		CheckCache cache = new CheckCache(new File(mFolder.getRoot(), "cache").getPath(), "1");
+		String hash = CheckCache.hash(file);
+		assertEquals("ed7002b439e9ac845f22357d822bac1444730fbdb6016d3ec9432297b9ec9f73", hash);
+
+		// A hash computed while checking is stored as given
+		cache.put(file, "data", file.length(), file.lastModified(), "0123", messages());
+		assertEquals("0123", cache.mEntries.get(CheckCache.key(file.getAbsolutePath(), "data")).mHash);
+
+		// Not stored if the file changed while it was checked
+		cache.put(file, "metadata", file.length() + 1, file.lastModified(), hash, messages());
+		assertNull(cache.get(file, "metadata"));
+	}
+}
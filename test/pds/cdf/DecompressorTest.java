@@ -0,0 +1,321 @@
+package pds.cdf;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+import org.junit.Test;
+
+/**
+ * Known-answer tests for the RLE, HUFF, AHUFF and GZIP decoders.
+ *
+ * RLE and GZIP data is produced by a simple encoder and by {@link Deflater}. The HUFF and AHUFF vectors are
+ * worked out by hand from the encoder in "The Data Compression Book" by M. Nelson, which is the code used
+ * by the CDF library. Each vector is decoded from a buffer and from a stream which returns one byte at a
+ * time, so refilling the compressed data in the middle of a code is covered.
+ *
+ * @author tking
+ *
+ */
+public class DecompressorTest {
+
+	/**
+	 * A stream which returns at most one byte from each read.
+	 */
+	static class SlowStream extends FilterInputStream {
+		SlowStream(InputStream in) { super(in); }
+
+		public int read(byte[] b, int off, int len) throws IOException {
+			return super.read(b, off, Math.min(len, 1));
+		}
+	}
+
+	/**
+	 * Decode all of the data in a buffer.
+	 *
+	 * @param d the decoder.
+	 * @param compressed the compressed data.
+	 *
+	 * @return the uncompressed data.
+	 *
+	 * @throws IOException if the data is not valid.
+	 */
+	static byte[] decode(Decompressor d, byte[] compressed) throws IOException {
+		d.reset(ByteBuffer.wrap(compressed));
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		byte[] buffer = new byte[1000];
+		int n;
+		while((n = d.read(buffer, 0, buffer.length)) != -1) out.write(buffer, 0, n);
+
+		return out.toByteArray();
+	}
+
+	/**
+	 * Decode all of the data in a buffer into a direct buffer.
+	 *
+	 * @param d the decoder.
+	 * @param compressed the compressed data.
+	 * @param size the size of the uncompressed data.
+	 *
+	 * @return the uncompressed data.
+	 *
+	 * @throws IOException if the data is not valid.
+	 */
+	static byte[] decodeDirect(Decompressor d, byte[] compressed, int size) throws IOException {
+		d.reset(ByteBuffer.wrap(compressed));
+		ByteBuffer out = ByteBuffer.allocateDirect(size + 10);
+		out.limit(size);
+		d.readFully(out);
+		out.limit(out.capacity());
+		assertEquals(-1, d.read(out));	// Checks the end of the data
+		out.flip();
+		byte[] data = new byte[out.remaining()];
+		out.get(data);
+
+		return data;
+	}
+
+	/**
+	 * Decode all of the data read one byte at a time from a stream.
+	 *
+	 * @param cType the type of compression.
+	 * @param compressed the compressed data.
+	 *
+	 * @return the uncompressed data.
+	 *
+	 * @throws IOException if the data is not valid.
+	 */
+	static byte[] decodeStream(int cType, byte[] compressed) throws IOException {
+		InputStream in = Decompressor.getStream(new SlowStream(new ByteArrayInputStream(compressed)), compressed.length, cType);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		byte[] buffer = new byte[777];
+		int n;
+		while((n = in.read(buffer, 0, buffer.length)) != -1) out.write(buffer, 0, n);
+
+		return out.toByteArray();
+	}
+
+	/**
+	 * Check that data decodes the same from a buffer and a stream.
+	 *
+	 * @param cType the type of compression.
+	 * @param compressed the compressed data.
+	 * @param expected the uncompressed data.
+	 *
+	 * @throws IOException if the data is not valid.
+	 */
+	static void check(int cType, byte[] compressed, byte[] expected) throws IOException {
+		assertArrayEquals(expected, decode(Decompressor.getDecompressor(cType), compressed));
+		assertArrayEquals(expected, decodeStream(cType, compressed));
+		assertArrayEquals(expected, decodeDirect(Decompressor.getDecompressor(cType), compressed, expected.length));
+	}
+
+	/**
+	 * Create data with runs of zeros between random bytes.
+	 *
+	 * @param size the number of bytes.
+	 *
+	 * @return the data.
+	 */
+	static byte[] sample(int size) {
+		Random random = new Random(size);
+		byte[] data = new byte[size];
+		for(int i = 0; i < size; ) {
+			if(random.nextInt(4) == 0) {
+				i += random.nextInt(600);	// Run of zeros, some longer than one count
+			} else {
+				data[i++] = (byte) (random.nextInt(255) + 1);
+			}
+		}
+
+		return data;
+	}
+
+	/**
+	 * Encode data with run-length encoding of zeros as written by the CDF library.
+	 *
+	 * @param data the data.
+	 *
+	 * @return the compressed data.
+	 */
+	static byte[] encodeRLE(byte[] data) {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		for(int i = 0; i < data.length; ) {
+			if(data[i] != 0) { out.write(data[i++]); continue; }
+			int run = 0;
+			while(i < data.length && data[i] == 0 && run < 256) { run++; i++; }
+			out.write(0);
+			out.write(run - 1);
+		}
+
+		return out.toByteArray();
+	}
+
+	/**
+	 * Encode data in GZIP format using a {@link Deflater}.
+	 *
+	 * @param data the data.
+	 * @param name the file name to put in the header or null for none.
+	 *
+	 * @return the compressed data.
+	 */
+	static byte[] encodeGZIP(byte[] data, String name) {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		out.write(0x1F); out.write(0x8B); out.write(8);
+		out.write(name == null ? 0 : GZIPDecompressor.FNAME);
+		for(int i = 0; i < 6; i++) out.write(0);	// MTIME, XFL, OS
+		if(name != null) { out.write(name.getBytes(), 0, name.length()); out.write(0); }
+
+		Deflater deflater = new Deflater(6, true);
+		deflater.setInput(data);
+		deflater.finish();
+		byte[] buffer = new byte[4096];
+		while( ! deflater.finished()) {
+			int n = deflater.deflate(buffer);
+			out.write(buffer, 0, n);
+		}
+		deflater.end();
+
+		CRC32 crc = new CRC32();
+		crc.update(data);
+		writeInt(out, crc.getValue());
+		writeInt(out, data.length);
+
+		return out.toByteArray();
+	}
+
+	/**
+	 * Write a 4-byte little-endian value.
+	 *
+	 * @param out the stream.
+	 * @param value the value.
+	 */
+	static void writeInt(ByteArrayOutputStream out, long value) {
+		for(int i = 0; i < 4; i++) out.write((int) (value >> (8 * i)) & 0xFF);
+	}
+
+	@Test
+	public void testRLEVector() throws IOException {
+		check(Constant.COMPRESSION_RLE, new byte[] { 1, 0, 2, 3, 0, 0 }, new byte[] { 1, 0, 0, 0, 3, 0 });
+	}
+
+	@Test
+	public void testRLELarge() throws IOException {
+		byte[] data = sample(200000);	// More than one stream buffer
+		check(Constant.COMPRESSION_RLE, encodeRLE(data), data);
+	}
+
+	@Test(expected = EOFException.class)
+	public void testRLEMissingCount() throws IOException {
+		decode(new RLEDecompressor(), new byte[] { 5, 0 });
+	}
+
+	@Test
+	public void testGZIP() throws IOException {
+		byte[] data = sample(200000);
+		check(Constant.COMPRESSION_GZIP, encodeGZIP(data, null), data);
+		check(Constant.COMPRESSION_GZIP, encodeGZIP(data, "data.bin"), data);
+		check(Constant.COMPRESSION_GZIP, encodeGZIP(new byte[0], null), new byte[0]);
+	}
+
+	@Test
+	public void testGZIPBadCRC() throws IOException {
+		byte[] compressed = encodeGZIP(sample(1000), null);
+		compressed[compressed.length - 8] ^= 1;
+		try {
+			decode(new GZIPDecompressor(), compressed);
+			fail("A CRC which does not match must be reported.");
+		} catch(IOException e) {
+			assertEquals("GZIP CRC does not match the uncompressed data.", e.getMessage());
+		}
+		try {
+			decodeDirect(new GZIPDecompressor(), compressed, 1000);
+			fail("A CRC which does not match must be reported.");
+		} catch(IOException e) {
+			assertEquals("GZIP CRC does not match the uncompressed data.", e.getMessage());
+		}
+	}
+
+	@Test
+	public void testHUFFVectors() throws IOException {
+		// Counts a:1 b:1. Codes EOS:0 a:10 b:11. Bits 10 11 0
+		check(Constant.COMPRESSION_HUFF, new byte[] { 0x61, 0x62, 1, 1, 0, (byte) 0xB0 }, "ab".getBytes());
+		// Counts a:2 b:1. Codes a:0 b:10 EOS:11. Bits 0 0 10 11
+		check(Constant.COMPRESSION_HUFF, new byte[] { 0x61, 0x62, 2, 1, 0, 0x2C }, "aab".getBytes());
+		// A count for the byte value 0. Codes 0x00:0 EOS:1. Bits 0 1
+		check(Constant.COMPRESSION_HUFF, new byte[] { 0, 0, 1, 0, 0x40 }, new byte[] { 0 });
+	}
+
+	@Test(expected = IOException.class)
+	public void testHUFFTruncated() throws IOException {
+		decode(new HuffmanDecompressor(), new byte[] { 0x61, 0x62, 2, 1, 0 });
+	}
+
+	@Test
+	public void testAHUFFVectors() throws IOException {
+		// ESCAPE:1, 8 bits of 'a', then the tree is updated so EOS:1. Bits 1 01100001 1
+		check(Constant.COMPRESSION_AHUFF, new byte[] { (byte) 0xB0, (byte) 0xC0 }, "a".getBytes());
+		// Only EOS:0
+		check(Constant.COMPRESSION_AHUFF, new byte[] { 0x00 }, new byte[0]);
+	}
+
+	@Test(expected = EOFException.class)
+	public void testAHUFFTruncated() throws IOException {
+		decode(new AdaptiveHuffmanDecompressor(), new byte[] { (byte) 0xB0 });
+	}
+
+	@Test
+	public void testThreadDecompressor() throws Exception {
+		// One decompressor for each compression type on each thread
+		Decompressor gzip = Decompressor.getThreadDecompressor(Constant.COMPRESSION_GZIP);
+		assertSame(gzip, Decompressor.getThreadDecompressor(Constant.COMPRESSION_GZIP));
+		assertTrue(Decompressor.getThreadDecompressor(Constant.COMPRESSION_RLE) instanceof RLEDecompressor);
+		final Decompressor[] other = new Decompressor[1];
+		Thread thread = new Thread(() -> {
+			try {
+				other[0] = Decompressor.getThreadDecompressor(Constant.COMPRESSION_GZIP);
+			} catch(IOException e) {
+				// Checked below
+			}
+		});
+		thread.start();
+		thread.join();
+		assertTrue(other[0] instanceof GZIPDecompressor);
+		assertNotSame(gzip, other[0]);
+
+		byte[] data = sample(1000);
+		assertArrayEquals(data, decode(gzip, encodeGZIP(data, null)));
+	}
+
+	@Test(expected = IOException.class)
+	public void testThreadDecompressorUnsupported() throws IOException {
+		Decompressor.getThreadDecompressor(4);
+	}
+
+	@Test
+	public void testReuse() throws IOException {
+		// A decoder gives the same result when reset for another block
+		Decompressor d = new HuffmanDecompressor();
+		byte[] compressed = { 0x61, 0x62, 2, 1, 0, 0x2C };
+		assertArrayEquals("aab".getBytes(), decode(d, compressed));
+		assertArrayEquals("aab".getBytes(), decode(d, compressed));
+
+		d = new AdaptiveHuffmanDecompressor();
+		assertArrayEquals("a".getBytes(), decode(d, new byte[] { (byte) 0xB0, (byte) 0xC0 }));
+		assertArrayEquals("a".getBytes(), decode(d, new byte[] { (byte) 0xB0, (byte) 0xC0 }));
+	}
+}
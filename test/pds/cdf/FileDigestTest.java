@@ -0,0 +1,159 @@
+package pds.cdf;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.Map;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests for computing digests of files and streams.
+ *
+ * @author tking
+ *
+ */
+public class FileDigestTest {
+	/** MD5 of "abc". */	static final String ABC_MD5 = "900150983cd24fb0d6963f7d28e17f72";
+	/** SHA-256 of "abc". */	static final String ABC_SHA_256 = "ba7816bf8f01cfea414140de5dae2223b00361a396177a9cb410ff61f20015ad";
+
+	@Rule
+	public TemporaryFolder mFolder = new TemporaryFolder();
+
+	@Test
+	public void testKnownAnswers() throws IOException {
+		FileDigest digest = new FileDigest(FileDigest.MD5, FileDigest.SHA_256, FileDigest.MD5);
+		digest.update("xabcx".getBytes("US-ASCII"), 1, 3);
+		Map<String, String> values = digest.finish();
+		assertEquals(2, values.size());
+		assertEquals(ABC_MD5, values.get(FileDigest.MD5));
+		assertEquals(ABC_SHA_256, digest.get(FileDigest.SHA_256));
+		assertEquals(values, digest.finish());	// Same values when finished again
+		assertNull(digest.get("SHA-1"));
+	}
+
+	@Test
+	public void testBuffer() throws IOException {
+		FileDigest digest = new FileDigest(FileDigest.MD5);
+		ByteBuffer buffer = ByteBuffer.wrap("xabcx".getBytes("US-ASCII"));
+		buffer.position(1).limit(4);
+		digest.update(buffer);
+		assertEquals(4, buffer.position());
+		assertEquals(ABC_MD5, digest.get(FileDigest.MD5));
+	}
+
+	@Test
+	public void testTee() throws IOException {
+		byte[] data = DecompressorTest.sample(100000);
+		FileDigest expected = new FileDigest(FileDigest.SHA_256);
+		expected.update(data, 0, data.length);
+
+		FileDigest digest = new FileDigest(FileDigest.SHA_256);
+		InputStream in = digest.tee(new ByteArrayInputStream(data));
+		assertEquals(data[0] & 0xFF, in.read());
+		byte[] buffer = new byte[100];
+		assertEquals(100, in.read(buffer, 0, 100));
+		long skipped = 0;
+		while(skipped < 20000) skipped += in.skip(20000 - skipped);	// Skipped bytes are included
+		FileDigest.drain(in);
+		assertEquals(-1, in.read());
+		assertEquals(expected.get(FileDigest.SHA_256), digest.get(FileDigest.SHA_256));
+	}
+
+	@Test
+	public void testTeeThroughDataInputStream() throws IOException {
+		FileDigest digest = new FileDigest(FileDigest.MD5);
+		DataInputStream in = new DataInputStream(digest.tee(new ByteArrayInputStream("abc".getBytes("US-ASCII"))));
+		assertEquals('a', in.readByte());
+		assertEquals(1, in.skipBytes(1));
+		FileDigest.drain(in);
+		assertEquals(ABC_MD5, digest.get(FileDigest.MD5));
+	}
+
+	@Test(expected = IOException.class)
+	public void testUnknownAlgorithm() throws IOException {
+		new FileDigest("NO-SUCH-DIGEST");
+	}
+
+	@Test
+	public void testFile() throws IOException {
+		File file = mFolder.newFile("abc.txt");
+		Files.write(file.toPath(), "abc".getBytes("US-ASCII"));
+		assertEquals(ABC_SHA_256, FileDigest.digest(file.getPath(), FileDigest.SHA_256).get(FileDigest.SHA_256));
+		FileDigest digest = FileDigest.digest(new MappedFile(file.getPath()), FileDigest.MD5, FileDigest.SHA_256);
+		assertEquals(ABC_MD5, digest.get(FileDigest.MD5));
+		assertEquals(ABC_SHA_256, digest.get(FileDigest.SHA_256));
+	}
+
+	@Test
+	public void testCDFDigests() throws IOException {
+		String pathname = new File(mFolder.getRoot(), "test.cdf").getPath();
+		new Generator().write(pathname);
+		FileDigest expected = FileDigest.digest(pathname, FileDigest.MD5, FileDigest.SHA_256);
+
+		// Only the requested digest is computed while parsing, MD5 for the label is computed when needed
+		CDF cdf = new CDF();
+		cdf.setDigestAlgorithms(FileDigest.SHA_256);
+		cdf.parse(new MappedFile(pathname));
+		assertEquals(expected.get(FileDigest.SHA_256), cdf.getDigest(FileDigest.SHA_256));
+		assertNull(cdf.mDigests.get(FileDigest.MD5));
+		Map<String, Object> map = cdf.getHashMap();
+		assertEquals(expected.get(FileDigest.MD5), map.get("fileMD5"));
+		assertEquals(expected.get(FileDigest.SHA_256), map.get("fileSHA256"));
+
+		cdf = new CDF();
+		cdf.setDigestAlgorithms(FileDigest.SHA_256);
+		DataInputStream in = new DataInputStream(Files.newInputStream(new File(pathname).toPath()));
+		try {
+			cdf.parse(in);
+		} finally {
+			in.close();
+		}
+		assertEquals(expected.get(FileDigest.SHA_256), cdf.getDigest(FileDigest.SHA_256));
+		assertNull(cdf.mDigests.get(FileDigest.MD5));
+	}
+
+	@Test
+	public void testParseFailure() throws IOException {
+		File file = mFolder.newFile("bad.cdf");
+		byte[] data = new byte[1 << 20];
+		ByteBuffer.wrap(data).putInt(0xCDF30001).putInt(0xFFFFFFFF).putLong(16).putInt(Constant.RECORD_UIR);	// Not a CDR
+		Files.write(file.toPath(), data);
+
+		// The digest of a file which is not a CDF is stopped, then computed by reading the file when requested
+		CDF cdf = new CDF();
+		cdf.setDigestAlgorithms(FileDigest.SHA_256);
+		cdf.parse(new MappedFile(file.getPath()));
+		assertNull(cdf.mDigestTask);
+		assertEquals(FileDigest.digest(file.getPath(), FileDigest.SHA_256).get(FileDigest.SHA_256), cdf.getDigest(FileDigest.SHA_256));
+	}
+
+	@Test
+	public void testCompressedParseFailure() throws IOException {
+		File file = mFolder.newFile("bad.cdf");
+		byte[] data = new byte[1 << 20];
+		ByteBuffer.wrap(data).putInt(0xCDF30001).putInt(Constant.CompressionOn).putLong(16).putInt(Constant.RECORD_CDR);	// Not a CCR
+		Files.write(file.toPath(), data);
+
+		// The cause is reported and the digest is stopped
+		CDF cdf = new CDF();
+		cdf.setDigestAlgorithms(FileDigest.SHA_256);
+		try {
+			cdf.parse(new MappedFile(file.getPath()));
+			fail("A compressed CDF without a CCR must not be parsed.");
+		} catch(IOException e) {
+			assertEquals("The first record is not a CCR.", e.getMessage());
+		}
+		assertNull(cdf.mDigestTask);
+	}
+}
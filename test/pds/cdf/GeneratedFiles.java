@@ -0,0 +1,79 @@
+package pds.cdf;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Files made by {@link Generator} for the tests.
+ *
+ * @author tking
+ *
+ */
+class GeneratedFiles {
+	/**
+	 * Create a {@link Generator} for a file.
+	 * Other settings can be made on the returned generator before it is written.
+	 *
+	 * @param variables the number of variables, including the "Epoch" variable.
+	 * @param records the number of records in each variable.
+	 * @param blocking the number of records in each block.
+	 *
+	 * @return the {@link Generator}.
+	 */
+	static Generator create(int variables, int records, int blocking) {
+		Generator generator = new Generator();
+		generator.setVariables(variables);
+		generator.setRecords(records);
+		generator.setBlocking(blocking);
+		return generator;
+	}
+
+	/**
+	 * Write a file in a temporary folder.
+	 *
+	 * @param generator the {@link Generator}.
+	 * @param folder the {@link TemporaryFolder} of the test.
+	 * @param name the name of the file.
+	 *
+	 * @return the pathname of the file.
+	 *
+	 * @throws IOException if the file can not be written.
+	 */
+	static String write(Generator generator, TemporaryFolder folder, String name) throws IOException {
+		String pathname = new File(folder.getRoot(), name).getPath();
+		generator.write(pathname);
+		return pathname;
+	}
+
+	/**
+	 * Parse a file.
+	 *
+	 * @param pathname the pathname of the file.
+	 *
+	 * @return the parsed {@link CDF}.
+	 *
+	 * @throws IOException if the file can not be parsed.
+	 */
+	static CDF parse(String pathname) throws IOException {
+		CDF cdf = new CDF();
+		cdf.parse(new MappedFile(pathname));
+		return cdf;
+	}
+
+	/**
+	 * Write a file in a temporary folder and parse it.
+	 *
+	 * @param generator the {@link Generator}.
+	 * @param folder the {@link TemporaryFolder} of the test.
+	 * @param name the name of the file.
+	 *
+	 * @return the parsed {@link CDF}.
+	 *
+	 * @throws IOException if the file can not be written or parsed.
+	 */
+	static CDF generate(Generator generator, TemporaryFolder folder, String name) throws IOException {
+		return parse(write(generator, folder, name));
+	}
+}
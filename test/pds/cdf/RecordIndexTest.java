@@ -0,0 +1,137 @@
+package pds.cdf;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests for the index of the data records built from the VXR tree of a variable.
+ *
+ * @author tking
+ *
+ */
+public class RecordIndexTest {
+	/** Number of records. */	static final int RECORDS = 1000;
+	/** Records in each block. */	static final int BLOCKING = 10;
+
+	@Rule
+	public TemporaryFolder mFolder = new TemporaryFolder();
+
+	/**
+	 * Write a file with a VXR tree for each variable.
+	 *
+	 * @param depth the levels in the VXR tree.
+	 * @param entries the entries in each VXR.
+	 * @param sparse the sparse record type of the variables after the first.
+	 *
+	 * @return the pathname of the file.
+	 *
+	 * @throws IOException if the file can not be written.
+	 */
+	String generate(int depth, int entries, int sparse) throws IOException {
+		Generator generator = GeneratedFiles.create(3, RECORDS, BLOCKING);
+		generator.setDepth(depth);
+		generator.setEntries(entries);
+		generator.setSparse(sparse);
+
+		return GeneratedFiles.write(generator, mFolder, "index_" + depth + "_" + entries + "_" + sparse + ".cdf");
+	}
+
+	/**
+	 * Check that every record of a variable is found in the file where the index places it.
+	 *
+	 * @param cdf the parsed {@link CDF}.
+	 * @param data the content of the file.
+	 * @param vdr the {@link VDRecord} of the variable.
+	 *
+	 * @throws IOException if a record can not be read.
+	 */
+	static void verifyOffsets(CDF cdf, byte[] data, VDRecord vdr) throws IOException {
+		RecordIndex index = cdf.getRecordIndex(vdr);
+		VariableReader reader = cdf.getReader(vdr.mName);
+		int size = index.getRecordSize();
+		for(long record = 0; record < RECORDS; record++) {
+			long offset = index.getRecordOffset(record);
+			if(offset < 0) continue;
+			ByteBuffer expected = ByteBuffer.wrap(data, (int) offset, size);
+			assertEquals("Record " + record + " of " + vdr.mName, expected, reader.getRecord(record));
+		}
+	}
+
+	@Test
+	public void testTree() throws IOException {
+		String pathname = generate(3, 3, 0);
+		CDF cdf = GeneratedFiles.parse(pathname);
+		byte[] data = Files.readAllBytes(new File(pathname).toPath());
+		for(VDRecord vdr : cdf.mVDRList) {
+			RecordIndex index = cdf.getRecordIndex(vdr);
+			assertEquals(RECORDS / BLOCKING, index.getBlockCount());	// Every block below each level is found
+			for(int block = 0; block < index.getBlockCount(); block++) {
+				assertEquals(block * BLOCKING, index.getFirstRecord(block));
+				assertEquals(block * BLOCKING + BLOCKING - 1, index.getLastRecord(block));
+				assertEquals(index.getOffset(block) + 12, index.getDataOffset(block));
+			}
+			for(int record = 0; record < RECORDS; record++) {
+				assertEquals(record / BLOCKING, index.find(record));
+				assertEquals(record / BLOCKING, index.findPrevious(record));
+			}
+			assertEquals(-1, index.find(-1));
+			assertEquals(-1, index.find(RECORDS));
+			assertEquals(-1, index.findPrevious(-1));
+			assertEquals(index.getBlockCount() - 1, index.findPrevious(RECORDS + 5));
+			verifyOffsets(cdf, data, vdr);
+		}
+	}
+
+	@Test
+	public void testSameAsFlatIndex() throws IOException {
+		CDF flat = GeneratedFiles.parse(generate(1, RECORDS, 0));
+		RecordIndex expected = flat.getRecordIndex(flat.mVDRList.get(1));
+		assertEquals(1, flat.mVXRList.size() / flat.mVDRList.size());
+
+		for(int depth = 2; depth <= 4; depth++) {
+			CDF cdf = GeneratedFiles.parse(generate(depth, 4, 0));
+			RecordIndex index = cdf.getRecordIndex(cdf.mVDRList.get(1));
+			assertEquals(expected.getBlockCount(), index.getBlockCount());
+			for(int block = 0; block < index.getBlockCount(); block++) {
+				assertEquals(expected.getFirstRecord(block), index.getFirstRecord(block));
+				assertEquals(expected.getLastRecord(block), index.getLastRecord(block));
+			}
+			assertEquals(flat.getReader(flat.mVDRList.get(1).mName).getData(), cdf.getReader(cdf.mVDRList.get(1).mName).getData());
+		}
+	}
+
+	@Test
+	public void testSparseRecords() throws IOException {
+		String pathname = generate(2, 4, 1);
+		CDF cdf = GeneratedFiles.parse(pathname);
+		byte[] data = Files.readAllBytes(new File(pathname).toPath());
+		VDRecord vdr = cdf.mVDRList.get(1);
+		RecordIndex index = cdf.getRecordIndex(vdr);
+		int blocks = RECORDS / BLOCKING;
+		assertEquals(blocks / 2 + 1, index.getBlockCount());	// Every other block and the last
+		for(int record = 0; record < RECORDS; record++) {
+			int block = record / BLOCKING;
+			boolean stored = (block % 2 == 0 || block == blocks - 1);
+			int found = index.find(record);
+			if(stored) {
+				assertTrue("Record " + record, found >= 0);
+				assertTrue(index.getFirstRecord(found) <= record && record <= index.getLastRecord(found));
+				assertEquals(found, index.findPrevious(record));
+			} else {
+				assertEquals("Record " + record, -1, found);
+				assertEquals(-1, index.getRecordOffset(record));
+				assertEquals((block - 1) * BLOCKING, index.getFirstRecord(index.findPrevious(record)));	// Block before the gap
+			}
+		}
+		verifyOffsets(cdf, data, vdr);
+	}
+}
@@ -0,0 +1,150 @@
+package pds.cdf;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests for converting CDF time values, including leap seconds.
+ *
+ * The TT2000 values are from the CDF library (computeTT2000).
+ *
+ * @author tking
+ *
+ */
+public class TimeConverterTest {
+	/** TT2000 of 2016-12-31T23:59:60 UTC, the last leap second. */	static final long LEAP_2016 = 536500868184000000L;
+	/** TT2000 of 2017-01-01T00:00:00 UTC. */	static final long START_2017 = 536500869184000000L;
+	/** Unix seconds of 2017-01-01T00:00:00 UTC. */	static final long UNIX_2017 = 1483228800L;
+
+	@Rule
+	public TemporaryFolder mFolder = new TemporaryFolder();
+
+	@After
+	public void restoreTable() {
+		TimeConverter.mLeapTable = TimeConverter.buildTable(TimeConverter.LEAP_SECONDS);
+	}
+
+	/**
+	 * Format the last value set in a converter.
+	 *
+	 * @param converter the {@link TimeConverter}.
+	 *
+	 * @return the ISO-8601 text.
+	 */
+	static String format(TimeConverter converter) {
+		char[] text = new char[TimeConverter.ISO_LENGTH];
+		converter.format(text, 0);
+		return new String(text);
+	}
+
+	@Test
+	public void testLeapSecond() {
+		TimeConverter converter = new TimeConverter();
+		assertTrue(converter.setTT2000(LEAP_2016 - 1));
+		assertEquals("2016-12-31T23:59:59.999999999", format(converter));
+		assertFalse(converter.isLeapSecond());
+
+		converter.setTT2000(LEAP_2016);
+		assertEquals("2016-12-31T23:59:60.000000000", format(converter));
+		assertTrue(converter.isLeapSecond());
+		assertEquals((UNIX_2017 - 1) * TimeConverter.NANOS, converter.getUnixNanos());	// Repeats the last second
+
+		converter.setTT2000(LEAP_2016 + 999999999L);
+		assertEquals("2016-12-31T23:59:60.999999999", format(converter));
+		assertTrue(converter.isLeapSecond());
+
+		converter.setTT2000(START_2017);
+		assertEquals("2017-01-01T00:00:00.000000000", format(converter));
+		assertFalse(converter.isLeapSecond());
+		assertEquals(UNIX_2017 * TimeConverter.NANOS, converter.getUnixNanos());
+	}
+
+	@Test
+	public void testOutOfOrder() {
+		// The position in the table is kept between values, so a jump back must search again
+		TimeConverter converter = new TimeConverter();
+		converter.setTT2000(START_2017);
+		converter.setTT2000(0L);
+		assertEquals("2000-01-01T11:58:55.816000000", format(converter));
+		converter.setTT2000(LEAP_2016);
+		assertTrue(converter.isLeapSecond());
+		converter.setTT2000(-883655957816000000L);
+		assertEquals("1972-01-01T00:00:00.000000000", format(converter));
+	}
+
+	@Test
+	public void testUnixToTT2000() {
+		assertEquals(START_2017, TimeConverter.unixToTT2000(UNIX_2017 * TimeConverter.NANOS));
+		assertEquals(LEAP_2016 - TimeConverter.NANOS, TimeConverter.unixToTT2000((UNIX_2017 - 1) * TimeConverter.NANOS));
+		assertEquals(0L, TimeConverter.unixToTT2000(946727935816000000L));
+	}
+
+	@Test
+	public void testEpoch() {
+		TimeConverter converter = new TimeConverter();
+		converter.setEpoch(63113904000000.0);
+		assertEquals("2000-01-01T00:00:00.000000000", format(converter));
+		assertEquals(63113904000000.0, TimeConverter.unixToEpoch(946684800L * TimeConverter.NANOS), 0.0);
+
+		converter.setEpoch16(63113904000.0, 123456789012.0);
+		assertEquals("2000-01-01T00:00:00.123456789", format(converter));
+	}
+
+	@Test
+	public void testFillAndPad() {
+		TimeConverter converter = new TimeConverter();
+		assertFalse(converter.setTT2000(TimeConverter.TT2000_FILL));
+		assertEquals(TimeConverter.ISO_FILL, format(converter));
+		assertEquals(TimeConverter.FILL, converter.getUnixNanos());
+		assertFalse(converter.setTT2000(TimeConverter.TT2000_PAD));
+		assertEquals(TimeConverter.ISO_PAD, format(converter));
+		assertFalse(converter.setEpoch(TimeConverter.EPOCH_FILL));
+		assertEquals(TimeConverter.ISO_FILL, format(converter));
+	}
+
+	@Test
+	public void testLoadedTable() throws IOException {
+		// A table which ends before the 2017 leap second
+		File file = mFolder.newFile("CDFLeapSeconds.txt");
+		Files.write(file.toPath(), Arrays.asList(
+				"; Year Month Day Leap Seconds Drift",
+				"1960 1 1 1.4178180 37300.0 0.001296",
+				"1972 1 1 10.0 0.0 0.0",
+				"2015 7 1 36.0 0.0 0.0"));
+
+		ByteBuffer buffer = ByteBuffer.allocate(8);
+		buffer.putLong(0, START_2017);
+		long[] values = new long[1];
+		Decoder.BIG_ENDIAN.toUnixNanos(buffer, Constant.CDF_TIME_TT2000, 1, values, 0);
+		assertEquals(UNIX_2017 * TimeConverter.NANOS, values[0]);
+
+		// The converter of the thread is replaced when the table changes
+		TimeConverter.setLeapSeconds(file.getPath());
+		Decoder.BIG_ENDIAN.toUnixNanos(buffer, Constant.CDF_TIME_TT2000, 1, values, 0);
+		assertEquals((UNIX_2017 + 1) * TimeConverter.NANOS, values[0]);
+
+		TimeConverter converter = new TimeConverter();
+		converter.setTT2000(LEAP_2016);
+		assertFalse(converter.isLeapSecond());
+		assertEquals("2017-01-01T00:00:00.000000000", format(converter));
+	}
+
+	@Test(expected = IOException.class)
+	public void testEmptyTable() throws IOException {
+		File file = mFolder.newFile("empty.txt");
+		Files.write(file.toPath(), Arrays.asList("; No entries", "1961 1 1 1.4 37300.0 0.001296"));
+		TimeConverter.setLeapSeconds(file.getPath());
+	}
+}
@@ -0,0 +1,156 @@
+package pds.cdf;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests for finding the records of a variable within a time interval.
+ *
+ * @author tking
+ *
+ */
+public class TimeRangeTest {
+	/** Unix seconds of the first record made by {@link Generator}. */	static final long START_UNIX = 1388534400L;
+	/** Number of records. */	static final int RECORDS = 1000;
+
+	@Rule
+	public TemporaryFolder mFolder = new TemporaryFolder();
+
+	/**
+	 * Write a file and replace some of the times with other values.
+	 *
+	 * @param records the record numbers to replace.
+	 * @param value the value to store in each record.
+	 *
+	 * @return the parsed {@link CDF}.
+	 *
+	 * @throws IOException if the file can not be written or parsed.
+	 */
+	CDF generate(int[] records, double value) throws IOException {
+		String pathname = GeneratedFiles.write(GeneratedFiles.create(2, RECORDS, 90), mFolder, "times.cdf");
+
+		// Times are stored uncompressed and big-endian
+		CDF cdf = GeneratedFiles.parse(pathname);
+		RecordIndex index = cdf.getRecordIndex(cdf.mVDRList.get(0));
+		byte[] data = Files.readAllBytes(new File(pathname).toPath());
+		ByteBuffer buffer = ByteBuffer.wrap(data);
+		for(int record : records) {
+			int offset = (int) index.getRecordOffset(record);
+			assertEquals(Generator.START_EPOCH + (record * 1000.0), buffer.getDouble(offset), 0.0);
+			buffer.putDouble(offset, value);
+		}
+		Files.write(new File(pathname).toPath(), data);
+
+		return GeneratedFiles.parse(pathname);
+	}
+
+	/**
+	 * Unix time of a record.
+	 *
+	 * @param record the record number.
+	 *
+	 * @return nanoseconds since 1970-01-01T00:00:00 UTC.
+	 */
+	static long time(long record) { return (START_UNIX + record) * TimeConverter.NANOS; }
+
+	/**
+	 * Check that a range holds exactly the records with times in its interval.
+	 *
+	 * @param range the {@link TimeRange}.
+	 * @param start the first record in the interval.
+	 * @param end the last record in the interval.
+	 *
+	 * @return the number of records in the range which have a time.
+	 *
+	 * @throws IOException if a record can not be read.
+	 */
+	static long verify(TimeRange range, long start, long end) throws IOException {
+		VariableReader epoch = range.getEpochReader();
+		long times = 0;
+		for(long record = 0; record < RECORDS; record++) {
+			if( ! TimeRange.isTime(epoch.getRecord(record), 0, Constant.CDF_EPOCH)) continue;
+			long expected = Math.round((epoch.getRecord(record).getDouble(0) - Generator.START_EPOCH) / 1000.0);
+			boolean inside = record >= range.getFirstRecord() && record <= range.getLastRecord();
+			assertEquals("Record " + record, expected >= start && expected <= end, inside);
+			if(inside) times++;
+		}
+
+		return times;
+	}
+
+	@Test
+	public void testQuery() throws IOException {
+		CDF cdf = generate(new int[0], 0.0);
+		String name = cdf.mVDRList.get(1).mName;
+		TimeRange range = cdf.query(name, time(10), time(20));
+		assertEquals(10, range.getFirstRecord());
+		assertEquals(20, range.getLastRecord());
+		assertEquals(Generator.START_EPOCH + 10000.0, range.getTimes().iterator().next().getDouble(0), 0.0);
+
+		assertTrue(cdf.query(name, time(RECORDS), time(RECORDS + 10)).isEmpty());
+		assertEquals(RECORDS, cdf.query(name, time(-5), time(RECORDS)).getRecordCount());
+	}
+
+	@Test
+	public void testFillValues() throws IOException {
+		int[] fill = { 0, 1, 3, 4, 5, 250, 499, 500, 501, 998, 999 };
+		CDF cdf = generate(fill, TimeConverter.EPOCH_FILL);
+		String name = cdf.mVDRList.get(1).mName;
+		VariableReader epoch = cdf.getReader(cdf.mVDRList.get(0).mName);
+		assertTrue(TimeRange.isSorted(epoch, true));	// Fill values are not out of order
+		assertFalse(TimeRange.isSorted(epoch, false));
+		assertEquals(0, TimeRange.countBreaks(epoch, true));
+
+		assertEquals(2, verify(cdf.query(name, time(2), time(6)), 2, 6));
+		assertEquals(0, verify(cdf.query(name, time(3), time(5)), 3, 5));
+		assertEquals(2, verify(cdf.query(name, time(498), time(502)), 498, 502));
+		assertEquals(RECORDS - fill.length, verify(cdf.query(name, time(0), time(RECORDS)), 0, RECORDS));
+		for(int start = 0; start < RECORDS; start += 37) {
+			verify(cdf.query(name, time(start), time(start + 120)), start, start + 120);
+		}
+	}
+
+	@Test
+	public void testSparseTimes() throws IOException {
+		Generator generator = GeneratedFiles.create(2, 100000, 10000);
+		generator.setDataTypes(new int[] { Constant.CDF_TIME_TT2000 });
+		generator.setSparse(1);	// Every other block is not stored
+		CDF cdf = GeneratedFiles.generate(generator, mFolder, "sparse.cdf");
+		VDRecord vdr = cdf.mVDRList.get(1);
+		final long[] reads = { 0 };
+		VariableReader epoch = new VariableReader(cdf, vdr) {
+			public ByteBuffer getStoredRecord(long record) throws IOException { reads[0]++; return super.getStoredRecord(record); }
+		};
+
+		// Records 10000 to 19999 are not stored, so the first stored time at or after 15000 is 20000
+		TimeRange range = new TimeRange(epoch, epoch, true, time(15000), time(25000));
+		assertTrue("Records read: " + reads[0], reads[0] < 200);	// Gaps are not stepped through
+		RecordIndex index = epoch.getRecordIndex();
+		long first = range.getFirstRecord();
+		if(index.find(first) < 0) first = index.getFirstRecord(index.findPrevious(first) + 1);	// First stored record in the range
+		assertEquals(20000, first);
+		assertEquals(25000, range.getLastRecord());
+
+		range = new TimeRange(epoch, epoch, true, time(10500), time(19500));
+		for(long record = range.getFirstRecord(); record <= range.getLastRecord(); record++) assertNull(epoch.getStoredRecord(record));
+	}
+
+	@Test
+	public void testPadValues() throws IOException {
+		CDF cdf = generate(new int[] { 100, 101, 102, 103, 104, 105, 106, 107 }, 0.0);
+		String name = cdf.mVDRList.get(1).mName;
+		assertEquals(1, verify(cdf.query(name, time(104), time(108)), 104, 108));
+		assertEquals(4, verify(cdf.query(name, time(96), time(103)), 96, 103));
+	}
+}
@@ -0,0 +1,448 @@
+package pds.cdf;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.PrimitiveIterator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests for reading the data of variables from files made by {@link Generator}.
+ *
+ * @author tking
+ *
+ */
+public class VariableReaderTest {
+	@Rule
+	public TemporaryFolder mFolder = new TemporaryFolder();
+
+	/**
+	 * Write a file with several blocks for each variable.
+	 *
+	 * @param name the name of the file.
+	 * @param compress true to compress the data of each variable.
+	 *
+	 * @return the pathname of the file.
+	 *
+	 * @throws IOException if the file can not be written.
+	 */
+	String generate(String name, boolean compress) throws IOException {
+		Generator generator = GeneratedFiles.create(3, 1000, 90);	// Last block is short
+		generator.setDimSizes(new int[] { 3 });
+		generator.setCompress(compress);
+
+		return GeneratedFiles.write(generator, mFolder, name);
+	}
+
+	/**
+	 * Read all blocks of a variable one at a time in the calling thread.
+	 *
+	 * @param reader the {@link VariableReader}.
+	 *
+	 * @return the data of all blocks in record order.
+	 *
+	 * @throws IOException if a block can not be read.
+	 */
+	static byte[] readSequential(VariableReader reader) throws IOException {
+		ByteBuffer out = ByteBuffer.allocate((int) (reader.getRecordCount() * reader.getRecordSize()));
+		for(int block = 0; block < reader.getBlockCount(); block++) out.put(reader.getBuffer(block));
+		assertEquals(0, out.remaining());
+
+		return out.array();
+	}
+
+	/**
+	 * Select part of each record in a range one value at a time.
+	 *
+	 * @param reader the {@link VariableReader}.
+	 * @param first the first record number.
+	 * @param last the last record number.
+	 * @param start the first index of each dimension.
+	 * @param count the number of indices of each dimension.
+	 * @param stride the step between indices of each dimension.
+	 *
+	 * @return the selected values in the order they are stored.
+	 *
+	 * @throws IOException if a record can not be read.
+	 */
+	static byte[] select(VariableReader reader, long first, long last, int[] start, int[] count, int[] stride) throws IOException {
+		int[] dims = reader.getDimSizes();
+		int n = dims.length;
+		int valueSize = Constant.getDataTypeSize(reader.getVDR().mDataType) * reader.getVDR().mNumElems;
+		int[] step = new int[n];
+		int size = valueSize;
+		for(int i = n - 1; i >= 0; i--) {
+			int d = reader.isRowMajor() ? i : n - 1 - i;
+			step[d] = size;
+			size *= dims[d];
+		}
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		int[] index = new int[n];
+		for(long record = first; record <= last; record++) {
+			ByteBuffer data = reader.getRecord(record);
+			if(data == null) data = reader.getPadRecord();
+			Arrays.fill(index, 0);
+			while(true) {
+				int offset = 0;
+				for(int d = 0; d < n; d++) offset += (start[d] + index[d] * stride[d]) * step[d];
+				for(int i = 0; i < valueSize; i++) out.write(data.get(offset + i));
+
+				// Next index, fastest varying dimension first
+				int i = n - 1;
+				for(; i >= 0; i--) {
+					int d = reader.isRowMajor() ? i : n - 1 - i;
+					if(++index[d] < count[d]) break;
+					index[d] = 0;
+				}
+				if(i < 0) break;
+			}
+		}
+
+		return out.toByteArray();
+	}
+
+	/**
+	 * Check a hyperslab against the values selected one at a time.
+	 *
+	 * @param reader the {@link VariableReader}.
+	 * @param first the first record number.
+	 * @param last the last record number.
+	 * @param start the first index of each dimension.
+	 * @param count the number of indices of each dimension.
+	 * @param stride the step between indices of each dimension.
+	 *
+	 * @throws IOException if a record can not be read.
+	 */
+	static void verifyHyperslab(VariableReader reader, long first, long last, int[] start, int[] count, int[] stride) throws IOException {
+		byte[] expected = select(reader, first, last, start, count, stride);
+		ByteBuffer out = ByteBuffer.allocate(expected.length + 8);
+		out.position(3);	// Values are placed at the position
+		long values = reader.getHyperslab(first, last, start, count, stride, out);
+		String text = reader.getVDR().mName + " records " + first + "-" + last + " start " + Arrays.toString(start)
+				+ " count " + Arrays.toString(count) + " stride " + Arrays.toString(stride);
+		long selected = Math.max(0, last - first + 1);
+		for(int c : count) selected *= c;
+		assertEquals(text, selected, values);
+		assertEquals(text, 3 + expected.length, out.position());
+		assertArrayEquals(text, expected, Arrays.copyOfRange(out.array(), 3, 3 + expected.length));
+	}
+
+	@Test
+	public void testHyperslab() throws IOException {
+		for(boolean compress : new boolean[] { false, true }) {
+			Generator generator = GeneratedFiles.create(3, 200, 30);
+			generator.setDimSizes(new int[] { 4, 5, 3 });
+			generator.setDataTypes(new int[] { Constant.CDF_INT2, Constant.CDF_DOUBLE });
+			generator.setSparse(1);	// Records in every other block are not stored
+			generator.setCompress(compress);
+			CDF cdf = GeneratedFiles.generate(generator, mFolder, "slab" + compress + ".cdf");
+
+			for(int v = 1; v < cdf.mVDRList.size(); v++) {
+				VariableReader reader = new VariableReader(cdf, cdf.mVDRList.get(v));
+				assertArrayEquals(new int[] { 4, 5, 3 }, reader.getDimSizes());
+				long last = reader.getRecordCount() - 1;
+				verifyHyperslab(reader, 0, last, new int[] { 0, 0, 0 }, new int[] { 4, 5, 3 }, new int[] { 1, 1, 1 });	// Whole records
+				verifyHyperslab(reader, 25, 95, new int[] { 1, 0, 0 }, new int[] { 2, 5, 3 }, new int[] { 1, 1, 1 });	// Contiguous run
+				verifyHyperslab(reader, 0, last, new int[] { 0, 1, 1 }, new int[] { 2, 2, 2 }, new int[] { 3, 3, 1 });
+				verifyHyperslab(reader, 10, 10, new int[] { 3, 4, 2 }, new int[] { 1, 1, 1 }, new int[] { 1, 1, 1 });	// One value
+				verifyHyperslab(reader, 59, 61, new int[] { 0, 2, 0 }, new int[] { 4, 1, 2 }, new int[] { 1, 2, 2 });	// Fixed middle index
+				verifyHyperslab(reader, 5, 4, new int[] { 0, 0, 0 }, new int[] { 1, 1, 1 }, new int[] { 1, 1, 1 });	// No records
+			}
+
+			// Same values in column major order
+			cdf.getCDR().mFlags &= ~0x01;
+			VariableReader reader = new VariableReader(cdf, cdf.mVDRList.get(1));
+			assertTrue( ! reader.isRowMajor());
+			verifyHyperslab(reader, 0, 99, new int[] { 1, 0, 0 }, new int[] { 2, 5, 3 }, new int[] { 1, 1, 1 });
+			verifyHyperslab(reader, 0, 99, new int[] { 0, 0, 1 }, new int[] { 4, 5, 2 }, new int[] { 1, 1, 1 });
+			verifyHyperslab(reader, 0, 99, new int[] { 0, 1, 0 }, new int[] { 2, 2, 3 }, new int[] { 3, 2, 1 });
+		}
+	}
+
+	@Test
+	public void testHyperslabErrors() throws IOException {
+		CDF cdf = GeneratedFiles.parse(generate("plain.cdf", false));
+		VariableReader reader = cdf.getReader(cdf.mVDRList.get(1).mName);
+		ByteBuffer out = ByteBuffer.allocate(1000);
+		int[] one = { 1 };
+		for(int[][] selection : new int[][][] { { { 0, 0 }, { 1, 1 }, { 1, 1 } }, { { 0 }, { 4 }, one }, { { 1 }, { 2 }, { 2 } }, { { 0 }, { 0 }, one }, { { -1 }, one, one } }) {
+			try {
+				reader.getHyperslab(0, 0, selection[0], selection[1], selection[2], out);
+				fail("Selection " + Arrays.deepToString(selection) + " is outside the dimensions.");
+			} catch(IllegalArgumentException e) {
+				assertEquals(0, out.position());
+			}
+		}
+		try {
+			reader.getHyperslab(0, 999, new int[] { 0 }, new int[] { 3 }, one, out);	// 3000 bytes
+			fail("The buffer is too small.");
+		} catch(IllegalArgumentException e) {
+			assertEquals(0, out.position());
+		}
+	}
+
+	/**
+	 * Write a file with a numeric, an integer and a text variable.
+	 *
+	 * @param name the name of the file.
+	 * @param compress true to compress the data of each variable.
+	 * @param sparse the sparse record type of the variables.
+	 *
+	 * @return the parsed {@link CDF}.
+	 *
+	 * @throws IOException if the file can not be written or parsed.
+	 */
+	CDF generateStreams(String name, boolean compress, int sparse) throws IOException {
+		Generator generator = GeneratedFiles.create(4, 5000, 700);
+		generator.setDimSizes(new int[] { 3 });
+		generator.setDataTypes(new int[] { Constant.CDF_INT4, Constant.CDF_DOUBLE, Constant.CDF_CHAR });
+		generator.setCompress(compress);
+		generator.setSparse(sparse);
+
+		return GeneratedFiles.generate(generator, mFolder, name);
+	}
+
+	/**
+	 * Split a spliterator until no part can be split.
+	 *
+	 * @param spliterator the {@link VariableReader.RecordSpliterator}.
+	 * @param parts the list to add the parts to, in record order.
+	 */
+	static void splitAll(VariableReader.RecordSpliterator spliterator, List<VariableReader.RecordSpliterator> parts) {
+		VariableReader.RecordSpliterator prefix = (VariableReader.RecordSpliterator) spliterator.trySplit();
+		if(prefix == null) { parts.add(spliterator); return; }
+		splitAll(prefix, parts);
+		splitAll(spliterator, parts);
+	}
+
+	@Test
+	public void testRecordStream() throws IOException {
+		for(CDF cdf : new CDF[] { generateStreams("plain.cdf", false, 0), generateStreams("compressed.cdf", true, 0), generateStreams("sparse.cdf", false, 1) }) {
+			for(VDRecord vdr : cdf.mVDRList) {
+				VariableReader reader = new VariableReader(cdf, vdr);
+				List<ByteBuffer> expected = new ArrayList<ByteBuffer>();
+				for(long record = 0; record < reader.getRecordCount(); record++) expected.add(reader.getRecord(record));
+
+				assertEquals(vdr.mName, expected, reader.records().collect(Collectors.toList()));
+				assertEquals(vdr.mName, expected, reader.records().parallel().collect(Collectors.toList()));
+				assertEquals(vdr.mName, expected.subList(650, 2101), reader.records(650, 2100).parallel().collect(Collectors.toList()));
+				assertEquals(0, reader.records(10, 9).count());
+			}
+		}
+	}
+
+	@Test
+	public void testSplitAtBlocks() throws IOException {
+		CDF cdf = generateStreams("compressed.cdf", true, 0);
+		VariableReader reader = new VariableReader(cdf, cdf.mVDRList.get(1));
+		RecordIndex index = reader.getRecordIndex();
+		List<VariableReader.RecordSpliterator> parts = new ArrayList<VariableReader.RecordSpliterator>();
+		splitAll(reader.new RecordSpliterator(100, 4900), parts);
+
+		// Each part of a compressed variable reads whole blocks after the first
+		assertEquals(index.getBlockCount(), parts.size());
+		long next = 100;
+		for(VariableReader.RecordSpliterator part : parts) {
+			assertEquals(next, part.mNext);
+			int block = index.find(part.mNext);
+			assertEquals(Math.min(index.getLastRecord(block), 4900), part.mLast);
+			assertEquals(part.mLast - part.mNext + 1, part.estimateSize());
+			next = part.mLast + 1;
+		}
+		assertEquals(4901, next);
+
+		// A large range within one uncompressed block may split at its middle
+		cdf = generateStreams("plain.cdf", false, 0);
+		reader = new VariableReader(cdf, cdf.mVDRList.get(1));
+		VariableReader.RecordSpliterator spliterator = reader.new RecordSpliterator(0, 2999);
+		assertEquals(0, ((VariableReader.RecordSpliterator) spliterator.trySplit()).mNext);
+		assertEquals(1400, spliterator.mNext);	// Start of the block after the middle
+		VariableReader.RecordSpliterator small = reader.new RecordSpliterator(10, 500);
+		assertNull(small.trySplit());
+	}
+
+	@Test
+	public void testValueStreams() throws IOException {
+		for(CDF cdf : new CDF[] { generateStreams("plain.cdf", false, 0), generateStreams("compressed.cdf", true, 0) }) {
+			VariableReader integers = cdf.getReader(cdf.mVDRList.get(1).mName);
+			VariableReader doubles = cdf.getReader(cdf.mVDRList.get(2).mName);
+			int total = (int) integers.getRecordCount() * 3;
+			double[] expectedDoubles = new double[total];
+			long[] expectedLongs = new long[total];
+			int start = 0;
+			for(int block = 0; block < doubles.getBlockCount(); block++) start += doubles.getDoubleValues(block, expectedDoubles, start);
+			assertEquals(total, start);
+			start = 0;
+			for(int block = 0; block < integers.getBlockCount(); block++) start += integers.getLongValues(block, expectedLongs, start);
+			assertEquals(total, start);
+
+			assertArrayEquals(expectedDoubles, doubles.doubleValues().toArray(), 0.0);
+			assertArrayEquals(expectedDoubles, doubles.doubleValues().parallel().toArray(), 0.0);
+			assertArrayEquals(expectedLongs, integers.longValues().toArray());
+			assertArrayEquals(expectedLongs, integers.longValues().parallel().toArray());
+			assertEquals(total, integers.doubleValues().parallel().count());
+			PrimitiveIterator.OfDouble iterator = doubles.doubleValues().iterator();	// One value at a time
+			for(int i = 0; i < 100; i++) assertEquals(expectedDoubles[i], iterator.nextDouble(), 0.0);
+		}
+	}
+
+	@Test
+	public void testValueStreamsOfSparseRecords() throws IOException {
+		CDF cdf = generateStreams("sparse.cdf", false, 1);
+		VariableReader reader = cdf.getReader(cdf.mVDRList.get(1).mName);
+		long[] expected = new long[(int) reader.getRecordCount() * 3];
+		for(int record = 0; record < reader.getRecordCount(); record++) {
+			ByteBuffer data = reader.getRecord(record);
+			for(int i = 0; i < 3; i++) expected[record * 3 + i] = data.getInt(i * 4);	// Pad value if not stored
+		}
+		assertArrayEquals(expected, reader.longValues().toArray());
+		assertArrayEquals(expected, reader.longValues().parallel().toArray());
+	}
+
+	@Test
+	public void testValueStreamTypes() throws IOException {
+		CDF cdf = generateStreams("plain.cdf", false, 0);
+		try {
+			cdf.getReader(cdf.mVDRList.get(2).mName).longValues();
+			fail("A CDF_DOUBLE variable has no integer values.");
+		} catch(UnsupportedOperationException e) {
+			// Expected
+		}
+		try {
+			cdf.getReader(cdf.mVDRList.get(3).mName).doubleValues();
+			fail("A CDF_CHAR variable has no numeric values.");
+		} catch(UnsupportedOperationException e) {
+			// Expected
+		}
+	}
+
+	@Test
+	public void testParallelDecompression() throws IOException {
+		CDF plain = GeneratedFiles.parse(generate("plain.cdf", false));
+		CDF compressed = GeneratedFiles.parse(generate("compressed.cdf", true));
+		ForkJoinPool pool = new ForkJoinPool(4);
+		try {
+			int checked = 0;
+			for(VDRecord vdr : compressed.mVDRList) {
+				VariableReader reader = new VariableReader(compressed, vdr);
+				reader.setCache(new BlockCache(0));	// Every read decompresses
+				if( ! reader.isCompressed()) continue;
+				assertTrue(reader.getBlockCount() > 1);
+
+				assertTrue(reader.getBuffer(0).isDirect());	// Cached off the heap
+				byte[] sequential = readSequential(reader);
+				assertEquals(sequential.length, reader.getRecordCount() * reader.getRecordSize());
+				assertEquals("Variable " + vdr.mName, ByteBuffer.wrap(sequential), reader.getData(pool));
+				assertEquals("Variable " + vdr.mName, ByteBuffer.wrap(sequential), reader.getData(new ForkJoinPool(1)));
+				assertEquals("Variable " + vdr.mName, ByteBuffer.wrap(sequential), plain.getReader(vdr.mName).getData(pool));
+				checked++;
+			}
+			assertEquals(3, checked);
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	@Test
+	public void testMixedBlocks() throws IOException {
+		// A short last block does not become smaller when compressed, so it is written as a VVR
+		CDF[] files = new CDF[2];
+		for(int i = 0; i < 2; i++) {
+			Generator generator = GeneratedFiles.create(3, 1001, 500);
+			generator.setDataTypes(new int[] { Constant.CDF_INT1 });
+			generator.setCompress(i == 1);
+			files[i] = GeneratedFiles.generate(generator, mFolder, "mixed" + i + ".cdf");
+		}
+		CDF plain = files[0];
+		CDF cdf = files[1];
+
+		for(VDRecord vdr : cdf.mVDRList) {
+			VariableReader reader = new VariableReader(cdf, vdr);
+			RecordIndex index = reader.getRecordIndex();
+			int last = index.getBlockCount() - 1;
+			assertTrue(reader.isCompressed());
+			assertTrue(index.isCompressed(0));
+			assertEquals(-1, index.getDataOffset(0));
+			assertTrue( ! index.isCompressed(last));
+			assertEquals(index.getOffset(last) + 12, index.getDataOffset(last));
+			assertEquals(index.getDataOffset(last), index.getRecordOffset(1000));
+
+			VariableReader expected = plain.getReader(vdr.mName);
+			assertEquals(vdr.mName, expected.getData(), reader.getData());
+			for(int block = 0; block <= last; block++) assertEquals(expected.getBuffer(block), reader.getBuffer(block));
+			assertEquals(expected.getRecord(1000), reader.getRecord(1000));
+			assertEquals(expected.records().collect(Collectors.toList()), reader.records().parallel().collect(Collectors.toList()));
+			if(vdr.mDataType == Constant.CDF_INT1) assertArrayEquals(expected.longValues().toArray(), reader.longValues().parallel().toArray());
+		}
+		ArrayList<Statistics> statistics = Statistics.compute(cdf);
+		ArrayList<Statistics> expected = Statistics.compute(plain);
+		for(int i = 0; i < expected.size(); i++) assertEquals(expected.get(i).getMean(), statistics.get(i).getMean(), 0.0);
+	}
+
+	@Test
+	public void testParallelDecompressionError() throws IOException {
+		String pathname = generate("compressed.cdf", true);
+		CDF cdf = GeneratedFiles.parse(pathname);
+		VDRecord vdr = cdf.mVDRList.get(1);
+		VariableReader reader = new VariableReader(cdf, vdr);
+		reader.setCache(new BlockCache(0));
+		int bad = reader.getBlockCount() / 2;
+		long offset = cdf.getRecordIndex(vdr).getOffset(bad) + CVVRecord.HEADER_SIZE;
+
+		// Damage the GZIP header of one CVVR
+		RandomAccessFile file = new RandomAccessFile(pathname, "rw");
+		try {
+			file.seek(offset);
+			file.write(new byte[] { 0, 0 });
+		} finally {
+			file.close();
+		}
+		cdf = GeneratedFiles.parse(pathname);
+		reader = new VariableReader(cdf, cdf.mVDRList.get(1));
+		reader.setCache(new BlockCache(0));
+
+		String expected = null;
+		try {
+			reader.getBuffer(bad);
+			fail("A damaged block must not be read.");
+		} catch(IOException e) {
+			expected = e.getMessage();
+		}
+		for(int threads : new int[] { 1, 4 }) {
+			ForkJoinPool pool = new ForkJoinPool(threads);
+			try {
+				reader.getData(pool);
+				fail("A damaged block must fail the read of the variable.");
+			} catch(IOException e) {
+				assertEquals(expected, e.getMessage());	// Same error as reading the block alone
+			} finally {
+				pool.shutdown();
+			}
+		}
+		reader.getBuffer(bad - 1);	// Other blocks are still readable
+
+		try {
+			reader.records().parallel().mapToInt(ByteBuffer::remaining).sum();
+			fail("A damaged block must fail the stream.");
+		} catch(UncheckedIOException e) {
+			assertEquals(expected, e.getCause().getMessage());
+		}
+	}
+}